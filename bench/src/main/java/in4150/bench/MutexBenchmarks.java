@@ -0,0 +1,322 @@
+package in4150.bench;
+
+import in4150.application.IApplicationToMutex;
+import in4150.mutex.IMutexToApplication;
+import in4150.mutex.IMutexToNetwork;
+import in4150.mutex.Request;
+import in4150.mutex.SuzukiKasamiMutex;
+import in4150.mutex.TokenHoldPolicy;
+import in4150.network.INetworkFactory;
+import in4150.network.INetworkToMutex;
+import in4150.network.Message;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The MutexBenchmarks measure SuzukiKasamiMutex controllers handling messages. The
+ * controllers are the first processes of a cluster of the provided size, the others
+ * never answer. Events, messages between the controllers and the critical section
+ * all run on the calling thread, so a call measures all the controllers do for it.
+ *
+ * For receiveRequest the controller holds the Token and is in its critical section,
+ * so the Requests of the other processes are only recorded. For requestCycle two
+ * controllers take turns: one requests, the other sends it the Token, and it enters
+ * and leaves its critical section.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MutexBenchmarks
+{
+	// Runs everything on the calling thread.
+	private static final Executor DIRECT = new Executor()
+	{
+		@Override
+		public void execute(Runnable pTask)
+		{
+			pTask.run();
+		}
+	};
+
+	/**
+	 * A network reaching the processes of the cluster. Messages to the peer, if there
+	 * is one, are delivered at once on the sending thread; the others are dropped.
+	 */
+	private static class StubNetwork implements IMutexToNetwork, INetworkFactory
+	{
+		// Our own ID.
+		private final int fOwnID;
+
+		// The processes of the cluster.
+		private final Integer[] fConnected;
+
+		// The network of the other controller, or null if there is none.
+		private StubNetwork fPeer;
+
+		// The controller using the network.
+		private INetworkToMutex fMutexLayer;
+
+		StubNetwork(int pOwnID, int pSize)
+		{
+			fOwnID		= pOwnID;
+			fConnected	= new Integer[pSize];
+
+			for (int i = 0; i < pSize; i++)
+			{
+				fConnected[i] = i + 1;
+			}
+		}
+
+		@Override
+		public IMutexToNetwork createNetwork(INetworkToMutex pMutexLayer)
+		{
+			fMutexLayer = pMutexLayer;
+
+			return this;
+		}
+
+		@Override
+		public void connect()
+		{
+		}
+
+		@Override
+		public void disconnect()
+		{
+		}
+
+		@Override
+		public int getOwnID()
+		{
+			return fOwnID;
+		}
+
+		@Override
+		public Integer[] getConnectedIDs()
+		{
+			return fConnected;
+		}
+
+		@Override
+		public void sendMessage(Message pMessage, int pReceiver)
+		{
+			if (fPeer != null && pReceiver == fPeer.fOwnID)
+			{
+				fPeer.fMutexLayer.receiveMessage(pMessage);
+			}
+		}
+
+		@Override
+		public void broadcastMessage(Message pMessage)
+		{
+			if (fPeer != null)
+			{
+				fPeer.fMutexLayer.receiveMessage(pMessage);
+			}
+		}
+	}
+
+	/**
+	 * An application that leaves its critical section at once, unless told to stay.
+	 */
+	private static class StubApplication implements IMutexToApplication
+	{
+		// The controller of the application.
+		private IApplicationToMutex fMutexController;
+
+		// True iff the application stays in its critical section.
+		private boolean fStay;
+
+		// The number of times the critical section was granted.
+		private int fGrants;
+
+		@Override
+		public void doCriticalSection()
+		{
+			fGrants++;
+
+			if (!fStay)
+			{
+				fMutexController.releaseCriticalSection();
+			}
+		}
+
+		@Override
+		public Executor getCriticalSectionExecutor()
+		{
+			return DIRECT;
+		}
+
+		@Override
+		public boolean inCriticalSection()
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Creates a controller on the calling thread, for the provided application.
+	 */
+	private static SuzukiKasamiMutex createMutex(StubApplication pApplication, StubNetwork pNetwork,
+												 boolean pInitialHolder)
+	{
+		SuzukiKasamiMutex lMutex = new SuzukiKasamiMutex(pApplication, pNetwork, DIRECT, TokenHoldPolicy.DEFAULT,
+														 pInitialHolder, new AtomicInteger(), null);
+
+		pApplication.fMutexController = lMutex;
+
+		return lMutex;
+	}
+
+	/**
+	 * A controller with the Token, in its critical section.
+	 */
+	@State(Scope.Thread)
+	public static class Holder
+	{
+		// The number of processes in the cluster.
+		@Param({ "5", "50", "500" })
+		public int fSize;
+
+		// The controller.
+		private SuzukiKasamiMutex fMutex;
+
+		// The process that requests next.
+		private int fNext;
+
+		// The latest request number of each process.
+		private int[] fNumbers;
+
+		@Setup
+		public void create()
+		{
+			StubApplication lApplication = new StubApplication();
+
+			lApplication.fStay = true;
+
+			fMutex		= createMutex(lApplication, new StubNetwork(1, fSize), true);
+			fNext		= 2;
+			fNumbers	= new int[fSize + 1];
+
+			// Enter the critical section, and stay.
+			fMutex.requestCriticalSection();
+		}
+
+		/**
+		 * @return The next Request of the other processes, taking turns.
+		 */
+		Request nextRequest()
+		{
+			int lRequester = fNext;
+
+			fNext = fNext == fSize ? 2 : fNext + 1;
+			fNumbers[lRequester]++;
+
+			return new Request(lRequester, fNumbers[lRequester], 0);
+		}
+
+		@TearDown
+		public void close()
+		{
+			fMutex.close();
+		}
+	}
+
+	/**
+	 * Two controllers passing the Token back and forth.
+	 */
+	@State(Scope.Thread)
+	public static class Pair
+	{
+		// The number of processes in the cluster.
+		@Param({ "5", "50", "500" })
+		public int fSize;
+
+		// The controllers, the first starting with the Token.
+		private SuzukiKasamiMutex[] fMutexes;
+
+		// Their applications.
+		private StubApplication[] fApplications;
+
+		// The index of the controller that requests next.
+		private int fNext;
+
+		@Setup
+		public void create()
+		{
+			StubNetwork lFirst	= new StubNetwork(1, fSize);
+			StubNetwork lSecond	= new StubNetwork(2, fSize);
+
+			lFirst.fPeer	= lSecond;
+			lSecond.fPeer	= lFirst;
+
+			fApplications	= new StubApplication[] { new StubApplication(), new StubApplication() };
+			fMutexes		= new SuzukiKasamiMutex[] { createMutex(fApplications[0], lFirst, true),
+														createMutex(fApplications[1], lSecond, false) };
+
+			// The second asks the first for the Token.
+			fNext = 1;
+		}
+
+		@TearDown
+		public void close()
+		{
+			fMutexes[0].close();
+			fMutexes[1].close();
+		}
+	}
+
+	/**
+	 * The controller in its critical section receives a Request, and queues it.
+	 */
+	@Benchmark
+	public Request receiveRequest(Holder pHolder)
+	{
+		Request lRequest = pHolder.nextRequest();
+
+		pHolder.fMutex.receiveMessage(lRequest);
+
+		return lRequest;
+	}
+
+	/**
+	 * One controller requests its critical section, the other sends it the Token, and
+	 * it enters and leaves. The controllers take turns, so the Token goes back and forth.
+	 */
+	@Benchmark
+	public void requestCycle(Pair pPair, Blackhole pBlackhole)
+	{
+		SuzukiKasamiMutex lMutex		= pPair.fMutexes[pPair.fNext];
+		StubApplication lApplication	= pPair.fApplications[pPair.fNext];
+		int lGrants						= lApplication.fGrants;
+
+		lMutex.requestCriticalSection();
+
+		if (lApplication.fGrants != lGrants + 1)
+		{
+			throw new IllegalStateException("Process " + (pPair.fNext + 1) + " was not granted its critical section");
+		}
+
+		pPair.fNext = 1 - pPair.fNext;
+
+		pBlackhole.consume(lMutex.getSnapshot());
+	}
+}
@@ -0,0 +1,142 @@
+package in4150.bench;
+
+import in4150.mutex.Token;
+import in4150.network.rmi.IRMIClient;
+import in4150.network.rmi.RMIAddress;
+import in4150.network.rmi.RMISocket;
+
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The RMISocketBenchmarks measure a round trip between two RMISockets in this
+ * process, over the loopback interface: one sends a Token, the other sends it back.
+ * The Token has satisfied a request of every process of the cluster.
+ *
+ * The sockets install a security manager, so the benchmark JVM needs the security
+ * policy of the processes: -Djava.security.policy=my.policy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RMISocketBenchmarks
+{
+	// The number of processes in the cluster.
+	@Param({ "5", "50", "500" })
+	public int fSize;
+
+	// The registry the sockets bind to, created here so it can be shut down again.
+	private Registry fRegistry;
+
+	// The socket starting the round trips.
+	private RMISocket fSender;
+
+	// The socket sending the messages back.
+	private RMISocket fEchoer;
+
+	// The address of the sender.
+	private RMIAddress fSenderAddress;
+
+	// The address of the echoer.
+	private RMIAddress fEchoerAddress;
+
+	// The messages that made the round trip.
+	private BlockingQueue<Object> fReturned;
+
+	// The Token sent around.
+	private Token fToken;
+
+	/**
+	 * Creates the registry, both sockets, and the Token.
+	 */
+	@Setup
+	public void connect() throws RemoteException
+	{
+		fRegistry = LocateRegistry.createRegistry(Registry.REGISTRY_PORT);
+
+		fToken = new Token();
+		for (int lID = 1; lID <= fSize; lID++)
+		{
+			fToken.satisfiedRequest(lID, lID);
+		}
+
+		fReturned	   = new ArrayBlockingQueue<Object>(1);
+		fSenderAddress = new RMIAddress("bench-sender");
+		fEchoerAddress = new RMIAddress("bench-echoer");
+
+		fSender = new RMISocket(fSenderAddress.objectname, new IRMIClient()
+		{
+			@Override
+			public void receive(Object pContent)
+			{
+				fReturned.add(pContent);
+			}
+
+			@Override
+			public void undeliverable(RMIAddress pTo, Exception pCause)
+			{
+				pCause.printStackTrace();
+			}
+		});
+
+		fEchoer = new RMISocket(fEchoerAddress.objectname, new IRMIClient()
+		{
+			@Override
+			public void receive(Object pContent)
+			{
+				fEchoer.send(fSenderAddress, pContent, 0);
+			}
+
+			@Override
+			public void undeliverable(RMIAddress pTo, Exception pCause)
+			{
+				pCause.printStackTrace();
+			}
+		});
+	}
+
+	@Benchmark
+	public Object roundTrip() throws InterruptedException
+	{
+		fSender.send(fEchoerAddress, fToken, 0);
+
+		return fReturned.take();
+	}
+
+	/**
+	 * Removes both sockets from the registry, and stops exporting them and the
+	 * registry, so no RMI thread keeps the benchmark JVM alive.
+	 */
+	@TearDown
+	public void disconnect() throws NoSuchObjectException
+	{
+		fSender.unregister();
+		fEchoer.unregister();
+
+		UnicastRemoteObject.unexportObject(fSender, true);
+		UnicastRemoteObject.unexportObject(fEchoer, true);
+		UnicastRemoteObject.unexportObject(fRegistry, true);
+	}
+}
@@ -0,0 +1,91 @@
+package in4150.bench;
+
+import in4150.mutex.VectorClock;
+import in4150.mutex.VectorComparison;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The VectorClockBenchmarks measure the operations on VectorClocks, on two clocks
+ * holding every process of the cluster. Neither clock is before the other, so
+ * compare has to look at all entries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VectorClockBenchmarks
+{
+	// The number of processes in the cluster.
+	@Param({ "5", "50", "500" })
+	public int fSize;
+
+	// The first clock.
+	private VectorClock fOne;
+
+	// The second clock.
+	private VectorClock fTwo;
+
+	/**
+	 * Fills both clocks with an entry for each process.
+	 */
+	@Setup
+	public void fill()
+	{
+		Random lRandom = new Random(fSize);
+
+		fOne = new VectorClock();
+		fTwo = new VectorClock();
+
+		for (int lID = 1; lID <= fSize; lID++)
+		{
+			int lValue = lRandom.nextInt(1000);
+
+			fOne.put(lID, lValue);
+			fTwo.put(lID, lValue);
+		}
+
+		// Each is ahead of the other somewhere.
+		fOne.incrementClock(1);
+		fTwo.incrementClock(fSize);
+	}
+
+	@Benchmark
+	public VectorClock max()
+	{
+		return VectorClock.max(fOne, fTwo);
+	}
+
+	@Benchmark
+	public VectorComparison compare()
+	{
+		return VectorClock.compare(fOne, fTwo);
+	}
+
+	@Benchmark
+	public VectorClock copy()
+	{
+		return fOne.clone();
+	}
+
+	@Benchmark
+	public String format()
+	{
+		return fOne.toString();
+	}
+}
@@ -0,0 +1,119 @@
+package in4150.bench;
+
+import in4150.mutex.Request;
+import in4150.mutex.Token;
+import in4150.network.wire.WireCodec;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The WireBenchmarks measure writing Tokens and Requests in the wire format and
+ * reading them back. The Token has satisfied a request of every process of the
+ * cluster, each in another hand-off, and a quarter of them wait in its queue. The
+ * delta holds what changed in the last hand-off.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireBenchmarks
+{
+	// The number of processes in the cluster.
+	@Param({ "5", "50", "500" })
+	public int fSize;
+
+	// The Token in full.
+	private Token fToken;
+
+	// The encoded Token in full.
+	private byte[] fTokenBytes;
+
+	// The delta of the last hand-off of the Token.
+	private Token fDelta;
+
+	// A Request of the process with the highest ID.
+	private Request fRequest;
+
+	// The encoded Request.
+	private byte[] fRequestBytes;
+
+	/**
+	 * Builds the messages for a cluster of the provided size.
+	 */
+	@Setup
+	public void build()
+	{
+		Token lToken = new Token();
+
+		for (int lID = 1; lID <= fSize; lID++)
+		{
+			lToken.satisfiedRequest(lID, lID);
+			lToken = lToken.delta(0).receive(null);
+		}
+
+		for (int lID = 1; lID <= fSize; lID += 4)
+		{
+			lToken.enqueue(lID);
+		}
+
+		fToken		  = lToken;
+		fTokenBytes	  = WireCodec.encode(lToken);
+		fDelta		  = lToken.delta(lToken.getVersion() - 1);
+		fRequest	  = new Request(fSize, 1000, lToken.getVersion());
+		fRequestBytes = WireCodec.encode(fRequest);
+	}
+
+	@Benchmark
+	public byte[] encodeToken()
+	{
+		return WireCodec.encode(fToken);
+	}
+
+	@Benchmark
+	public Object decodeToken() throws IOException
+	{
+		return WireCodec.decode(fTokenBytes);
+	}
+
+	/**
+	 * Takes the delta of the last hand-off and encodes it, as a sender does.
+	 */
+	@Benchmark
+	public byte[] deltaAndEncodeToken()
+	{
+		return WireCodec.encode(fToken.delta(fToken.getVersion() - 1));
+	}
+
+	@Benchmark
+	public byte[] encodeDelta()
+	{
+		return WireCodec.encode(fDelta);
+	}
+
+	@Benchmark
+	public byte[] encodeRequest()
+	{
+		return WireCodec.encode(fRequest);
+	}
+
+	@Benchmark
+	public Object decodeRequest() throws IOException
+	{
+		return WireCodec.decode(fRequestBytes);
+	}
+}
@@ -0,0 +1,962 @@
+package in4150;
+
+import in4150.application.DistributedLock;
+import in4150.application.DistributedReadWriteLock;
+import in4150.application.IApplicationToMutex;
+import in4150.application.IMutexFactory;
+import in4150.application.LoadStatistics;
+import in4150.lock.LockManager;
+import in4150.lock.LockMessage;
+import in4150.mutex.IMutexToApplication;
+import in4150.mutex.IMutexToNetwork;
+import in4150.mutex.MutexAlgorithm;
+import in4150.mutex.Request;
+import in4150.mutex.Token;
+import in4150.network.CountingNetwork;
+import in4150.network.INetworkFactory;
+import in4150.network.INetworkToMutex;
+import in4150.network.LoopbackHub;
+import in4150.network.LoopbackNetwork;
+import in4150.network.Message;
+import in4150.network.rmi.IRMIClient;
+import in4150.network.rmi.RMIAddress;
+import in4150.network.rmi.RMISocket;
+import in4150.network.wire.WireCodec;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * The Checks run the guarantees of the network and the Mutual Exclusion controllers
+ * without a user interface, and report which hold. Like the LoadTest, the checks of a
+ * controller count the times a process entered while another was inside, and fail if
+ * they saw one.
+ * The checks to run are given as arguments, all of them if there are none:
+ *
+ *   java -Djava.security.policy=my.policy in4150.Checks [fifo] [delta] [queue] [eviction] [reacquire]
+ *                                                       [readwrite] [maekawa]
+ *
+ * The fifo check sends over RMI, so it needs the security policy and creates the
+ * registry. The program exits with status 1 if a check failed.
+ */
+public class Checks
+{
+	/**
+	 * One check of a guarantee.
+	 */
+	private static abstract class Check
+	{
+		// The name of the check, used to select it.
+		private final String fName;
+
+		// What the check makes sure of.
+		private final String fDescription;
+
+		Check(String pName, String pDescription)
+		{
+			fName			= pName;
+			fDescription	= pDescription;
+		}
+
+		/**
+		 * Runs the check, throwing an exception if the guarantee does not hold.
+		 *
+		 * @return What the check saw.
+		 */
+		abstract String run() throws Exception;
+	}
+
+	// All checks, in the order they run.
+	private static final Check[] CHECKS =
+	{
+		new Check("fifo", "RMI links deliver in the order sent, whatever the delays")
+		{
+			@Override
+			String run() throws Exception
+			{
+				return checkFifo();
+			}
+		},
+		new Check("delta", "Token deltas merged into kept copies rebuild the Token")
+		{
+			@Override
+			String run() throws Exception
+			{
+				return checkDelta();
+			}
+		},
+		new Check("queue", "Waiting processes get the Token in the order they asked for it")
+		{
+			@Override
+			String run() throws Exception
+			{
+				return checkQueue();
+			}
+		},
+		new Check("eviction", "LockManager locks stay exclusive while controllers are dropped and created again")
+		{
+			@Override
+			String run() throws Exception
+			{
+				return checkEviction();
+			}
+		},
+		new Check("reacquire", "A LockManager lock dropped while another process holds its Token can be taken again")
+		{
+			@Override
+			String run() throws Exception
+			{
+				return checkReacquire();
+			}
+		},
+		new Check("readwrite", "Readers share a DistributedReadWriteLock, writers have it to themselves")
+		{
+			@Override
+			String run() throws Exception
+			{
+				return checkReadWrite();
+			}
+		},
+		new Check("maekawa", "Maekawa is safe, and serves every request when all contend")
+		{
+			@Override
+			String run() throws Exception
+			{
+				return checkMaekawa();
+			}
+		},
+	};
+
+	public static void main(String[] pArguments)
+	{
+		List<Check> lSelected = new ArrayList<Check>();
+
+		if (pArguments.length == 0)
+		{
+			Collections.addAll(lSelected, CHECKS);
+		}
+
+		for (String lArgument : pArguments)
+		{
+			Check lFound = null;
+
+			for (Check lCheck : CHECKS)
+			{
+				if (lCheck.fName.equals(lArgument))
+				{
+					lFound = lCheck;
+				}
+			}
+
+			if (lFound == null)
+			{
+				usage("Unknown check " + lArgument);
+			}
+
+			lSelected.add(lFound);
+		}
+
+		int lFailed = 0;
+
+		for (Check lCheck : lSelected)
+		{
+			System.out.printf("%-10s %s%n", lCheck.fName, lCheck.fDescription);
+
+			try
+			{
+				System.out.printf("%-10s passed: %s%n", "", lCheck.run());
+			}
+			catch (Exception lException)
+			{
+				System.out.printf("%-10s FAILED: %s%n", "", lException);
+				lFailed++;
+			}
+		}
+
+		System.out.printf("%d of %d checks passed%n", lSelected.size() - lFailed, lSelected.size());
+
+		System.exit(lFailed == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Prints the problem and the checks, and stops.
+	 *
+	 * @param pProblem - What was wrong with the arguments.
+	 */
+	private static void usage(String pProblem)
+	{
+		System.err.println(pProblem);
+		System.err.println("Usage: java in4150.Checks [check]...");
+
+		for (Check lCheck : CHECKS)
+		{
+			System.err.printf("  %-10s %s%n", lCheck.fName, lCheck.fDescription);
+		}
+
+		System.exit(2);
+	}
+
+	/**
+	 * Fails the running check if a condition does not hold.
+	 *
+	 * @param pCondition - The condition that should hold.
+	 * @param pProblem - What is wrong if it does not.
+	 */
+	private static void require(boolean pCondition, String pProblem)
+	{
+		if (!pCondition)
+		{
+			throw new IllegalStateException(pProblem);
+		}
+	}
+
+	/**
+	 * Sends numbered messages over one RMI link, each travelling a random delay and
+	 * some a long one, and makes sure they arrive in order. A message that arrives
+	 * early has to wait for those sent before it.
+	 */
+	private static String checkFifo() throws Exception
+	{
+		final int lMessages				= 2000;
+		final List<Object> lReceived	= Collections.synchronizedList(new ArrayList<Object>());
+		final AtomicInteger lLost		= new AtomicInteger();
+		Random lRandom					= new Random(4150);
+
+		IRMIClient lReceiver = new IRMIClient()
+		{
+			@Override
+			public void receive(Object pContent)
+			{
+				lReceived.add(pContent);
+			}
+
+			@Override
+			public void undeliverable(RMIAddress pTo, Exception pCause)
+			{
+				lLost.incrementAndGet();
+			}
+		};
+
+		RMISocket lTo	= new RMISocket("check-fifo-receiver", lReceiver);
+		RMISocket lFrom	= new RMISocket("check-fifo-sender", lReceiver);
+
+		try
+		{
+			RMIAddress lAddress = new RMIAddress("check-fifo-receiver");
+
+			for (int i = 0; i < lMessages; i++)
+			{
+				lFrom.send(lAddress, Integer.valueOf(i), i % 250 == 10 ? 200 : lRandom.nextInt(20));
+			}
+
+			// Wait for the last to arrive.
+			long lDeadline = System.currentTimeMillis() + 10000;
+			while (lReceived.size() < lMessages && lLost.get() == 0 && System.currentTimeMillis() < lDeadline)
+			{
+				Thread.sleep(50);
+			}
+
+			require(lLost.get() == 0, lLost.get() + " messages could not be delivered");
+			require(lReceived.size() == lMessages, "received " + lReceived.size() + " of " + lMessages + " messages");
+
+			for (int i = 0; i < lMessages; i++)
+			{
+				require(lReceived.get(i).equals(i), "message " + lReceived.get(i) + " arrived as number " + i);
+			}
+		}
+		finally
+		{
+			lFrom.unregister();
+			lTo.unregister();
+		}
+
+		return lMessages + " messages in order";
+	}
+
+	/**
+	 * Passes a Token around a cluster at random, the way the SuzukiKasamiMutex does:
+	 * the holder changes it, sends the receiver what changed since the version it
+	 * reported, and keeps its copy. The receiver completes the delta from the copy it
+	 * kept. Receivers often report an older version than they hold, as a Request
+	 * that crossed the Token would. Every Token rebuilt must equal the Token sent.
+	 */
+	private static String checkDelta() throws Exception
+	{
+		final int lProcesses	= 40;
+		final int lHandOffs		= 20000;
+		Random lRandom			= new Random(4150);
+
+		// What the Token should hold.
+		int[] lSatisfied				= new int[lProcesses + 1];
+		ArrayDeque<Integer> lQueue		= new ArrayDeque<Integer>();
+
+		// What each process kept of the Token, the holder keeps nothing.
+		Token[] lKept	= new Token[lProcesses + 1];
+		Token lToken	= new Token();
+		int lHolder		= 1;
+		int lSends		= 0;
+		int lDeltas		= 0;
+		long lBytes		= 0;
+
+		for (int lHandOff = 0; lHandOff < lHandOffs; lHandOff++)
+		{
+			// The holder serves a few queued processes, and more queue up.
+			for (int i = lRandom.nextInt(3); i > 0 && lToken.hasQueued(); i--)
+			{
+				Integer lExpected	= lQueue.poll();
+				int lServed			= lToken.dequeue();
+
+				require(lExpected != null && lExpected == lServed, "served " + lServed + " instead of " + lExpected);
+
+				lToken.satisfiedRequest(lServed, ++lSatisfied[lServed]);
+			}
+
+			for (int i = lRandom.nextInt(4); i > 0; i--)
+			{
+				int lWaiting = 1 + lRandom.nextInt(lProcesses);
+
+				if (!lQueue.contains(lWaiting))
+				{
+					lQueue.add(lWaiting);
+				}
+				lToken.enqueue(lWaiting);
+			}
+
+			// The holder satisfies its own request.
+			lToken.satisfiedRequest(lHolder, ++lSatisfied[lHolder]);
+
+			int lReceiver = 1 + lRandom.nextInt(lProcesses);
+			if (lReceiver == lHolder)
+			{
+				continue;
+			}
+
+			// The version the receiver reported, possibly older than the one it kept.
+			int lKnown = 0;
+			if (lKept[lReceiver] != null && lRandom.nextInt(4) != 0)
+			{
+				lKnown = Math.max(lKept[lReceiver].getVersion() - lRandom.nextInt(3), 0);
+			}
+
+			byte[] lSent	= WireCodec.encode(lToken.delta(lKnown));
+			Token lArrived	= (Token)WireCodec.decode(lSent);
+
+			lSends++;
+			lDeltas += lKnown > 0 ? 1 : 0;
+			lBytes += lSent.length;
+
+			lKept[lHolder]		= lToken;
+			lToken				= lArrived.receive(lKept[lReceiver]);
+			lKept[lReceiver]	= null;
+			lHolder				= lReceiver;
+
+			for (int lID = 1; lID <= lProcesses; lID++)
+			{
+				require(lToken.getSatisfiedRequests().get(lID) == lSatisfied[lID],
+						"after hand-off " + lHandOff + " process " + lID + " has request " +
+						lToken.getSatisfiedRequests().get(lID) + " satisfied instead of " + lSatisfied[lID]);
+			}
+
+			require(lToken.getQueueLength() == lQueue.size(), "after hand-off " + lHandOff + " " +
+					lToken.getQueueLength() + " processes are queued instead of " + lQueue.size());
+		}
+
+		return String.format("%d Tokens sent, %d as deltas, %.1f bytes each", lSends, lDeltas,
+							 (double)lBytes / lSends);
+	}
+
+	/**
+	 * Has the first process keep the critical section while the others ask for it
+	 * one by one, the highest ID first. Once it leaves, they must be served in the
+	 * order they asked, which is the reverse of the order of their IDs.
+	 */
+	private static String checkQueue() throws Exception
+	{
+		final int lProcesses			= 8;
+		final List<Integer> lServed		= Collections.synchronizedList(new ArrayList<Integer>());
+		List<Integer> lAsked			= new ArrayList<Integer>();
+		LoopbackHub lHub				= new LoopbackHub(2);
+		DistributedLock[] lLocks		= new DistributedLock[lProcesses];
+		Thread[] lThreads				= new Thread[lProcesses];
+
+		// The first to connect holds the Token.
+		for (int i = 0; i < lProcesses; i++)
+		{
+			lLocks[i] = new DistributedLock(LoopbackNetwork.factory(lHub));
+		}
+
+		try
+		{
+			// Let every process learn about the others before anyone asks.
+			Thread.sleep(200);
+
+			lLocks[0].lock();
+
+			for (int i = lProcesses - 1; i > 0; i--)
+			{
+				final DistributedLock lLock	= lLocks[i];
+				final Integer lProcess		= i;
+
+				lThreads[i] = new Thread("Checks waiter")
+				{
+					@Override
+					public void run()
+					{
+						lLock.lock();
+						lServed.add(lProcess);
+						lLock.unlock();
+					}
+				};
+				lThreads[i].start();
+				lAsked.add(lProcess);
+
+				// Give the Request time to reach the holder before the next one is sent.
+				Thread.sleep(50);
+			}
+
+			lLocks[0].unlock();
+
+			for (int i = 1; i < lProcesses; i++)
+			{
+				lThreads[i].join(10000);
+			}
+
+			require(lServed.equals(lAsked), "served in the order " + lServed + " after asking in the order " +
+					lAsked);
+		}
+		finally
+		{
+			for (DistributedLock lLock : lLocks)
+			{
+				lLock.close();
+			}
+		}
+
+		return lAsked.size() + " processes served in the order they asked";
+	}
+
+	/**
+	 * Has the threads of four LockManagers contend for named locks in three phases.
+	 * The first uses half of the names. The second uses the other half, long enough
+	 * for the idle controllers of the first half to be dropped. The third uses all
+	 * names, creating the dropped controllers again while others are in use. Every
+	 * lock has LoadStatistics of its own.
+	 */
+	private static String checkEviction() throws Exception
+	{
+		final int lNames				= 20;
+		LoopbackHub lHub				= new LoopbackHub(4);
+		LockManager[] lManagers			= new LockManager[4];
+		LoadStatistics[] lStatistics	= new LoadStatistics[lNames];
+
+		for (int i = 0; i < lManagers.length; i++)
+		{
+			lManagers[i] = new LockManager(LoopbackNetwork.factory(lHub));
+		}
+
+		for (int i = 0; i < lNames; i++)
+		{
+			lStatistics[i] = new LoadStatistics();
+		}
+
+		try
+		{
+			int lFirst	= contend(lManagers, lStatistics, 0, lNames / 2, 3000);
+			int lBefore	= activeLocks(lManagers);
+			int lSecond	= contend(lManagers, lStatistics, lNames / 2, lNames, 12000);
+			int lAfter	= activeLocks(lManagers);
+			int lThird	= contend(lManagers, lStatistics, 0, lNames, 3000);
+
+			// Only the holders of the Tokens of the first half may keep their controllers.
+			require(lAfter <= lManagers.length * lNames / 2 + lNames / 2,
+					lAfter + " controllers are left after the first half went idle");
+			require(lFirst > 0 && lSecond > 0 && lThird > 0,
+					"critical sections per phase " + lFirst + ", " + lSecond + ", " + lThird);
+
+			int lViolations = 0;
+			for (LoadStatistics lLock : lStatistics)
+			{
+				lViolations += lLock.getViolations();
+			}
+
+			require(lViolations == 0, lViolations + " violations");
+
+			return String.format("%d, %d and %d critical sections, %d controllers before and %d after eviction",
+								 lFirst, lSecond, lThird, lBefore, lAfter);
+		}
+		finally
+		{
+			for (LockManager lManager : lManagers)
+			{
+				lManager.close();
+			}
+		}
+	}
+
+	/**
+	 * Runs four threads on each LockManager, taking random locks of a range of names.
+	 *
+	 * @param pManagers - The LockManagers.
+	 * @param pStatistics - The LoadStatistics of each name.
+	 * @param pFrom - The first name used.
+	 * @param pTo - The name after the last used.
+	 * @param pMillis - How long the threads keep taking locks.
+	 *
+	 * @return The number of critical sections.
+	 */
+	private static int contend(LockManager[] pManagers, final LoadStatistics[] pStatistics, final int pFrom,
+							   final int pTo, long pMillis) throws InterruptedException
+	{
+		final long lEnd				= System.currentTimeMillis() + pMillis;
+		final AtomicInteger lCount	= new AtomicInteger();
+		Thread[] lThreads			= new Thread[pManagers.length * 4];
+
+		for (int i = 0; i < lThreads.length; i++)
+		{
+			final LockManager lManager	= pManagers[i % pManagers.length];
+			final Random lRandom		= new Random(i);
+
+			lThreads[i] = new Thread("Checks contender")
+			{
+				@Override
+				public void run()
+				{
+					while (System.currentTimeMillis() < lEnd)
+					{
+						int lName	= pFrom + lRandom.nextInt(pTo - pFrom);
+						Lock lLock	= lManager.getLock("check-" + lName);
+
+						long lRequestTime = System.nanoTime();
+
+						lLock.lock();
+						try
+						{
+							pStatistics[lName].enter(lRequestTime);
+							Thread.yield();
+							pStatistics[lName].exit();
+						}
+						finally
+						{
+							lLock.unlock();
+						}
+
+						lCount.incrementAndGet();
+					}
+				}
+			};
+			lThreads[i].start();
+		}
+
+		for (Thread lThread : lThreads)
+		{
+			lThread.join();
+		}
+
+		return lCount.get();
+	}
+
+	/**
+	 * @return The number of controllers the LockManagers hold together.
+	 */
+	private static int activeLocks(LockManager[] pManagers)
+	{
+		int lActive = 0;
+
+		for (LockManager lManager : pManagers)
+		{
+			lActive += lManager.getActiveLocks();
+		}
+
+		return lActive;
+	}
+
+	/**
+	 * Passes the Token of a lock around three LockManagers, so each knows which copy
+	 * the others kept. Once the controller of the second is dropped, the third takes
+	 * the lock and the first asks for it. Then the second asks with a new controller,
+	 * which has no copy; the first does not hear of it yet. The third serves the first,
+	 * which passes the Token on to the second knowing only its old request. The second
+	 * must get the lock, and the first after it.
+	 */
+	private static String checkReacquire() throws Exception
+	{
+		final String lName						= "check-reacquire";
+		final LoopbackHub lHub					= new LoopbackHub(2);
+		final AtomicBoolean lHolding			= new AtomicBoolean(false);
+		final List<Message> lHeld				= new ArrayList<Message>();
+		final List<INetworkToMutex> lFirstLayer	= new ArrayList<INetworkToMutex>();
+		final AtomicInteger lTaken				= new AtomicInteger();
+		LockManager[] lManagers					= new LockManager[3];
+		final Lock[] lLocks						= new Lock[3];
+
+		// The first process holds back the Requests it receives while asked to.
+		INetworkFactory lFirstNetwork = new INetworkFactory()
+		{
+			@Override
+			public IMutexToNetwork createNetwork(final INetworkToMutex pMutexLayer)
+			{
+				lFirstLayer.add(pMutexLayer);
+
+				return new CountingNetwork(pMutexLayer, LoopbackNetwork.factory(lHub), new AtomicLong())
+				{
+					@Override
+					public void receiveMessage(Message pMessage)
+					{
+						synchronized (lHeld)
+						{
+							if (lHolding.get() && pMessage instanceof LockMessage &&
+								((LockMessage)pMessage).getPayload() instanceof Request)
+							{
+								lHeld.add(pMessage);
+								return;
+							}
+						}
+
+						super.receiveMessage(pMessage);
+					}
+				};
+			}
+		};
+
+		// The first to connect creates the Token.
+		lManagers[0] = new LockManager(lFirstNetwork);
+		Thread.sleep(200);
+		lManagers[1] = new LockManager(LoopbackNetwork.factory(lHub));
+		lManagers[2] = new LockManager(LoopbackNetwork.factory(lHub));
+
+		for (int i = 0; i < lManagers.length; i++)
+		{
+			lLocks[i] = lManagers[i].getLock(lName);
+		}
+
+		try
+		{
+			Thread.sleep(200);
+
+			for (int lRound = 0; lRound < 3; lRound++)
+			{
+				for (int i = 1; i <= lLocks.length; i++)
+				{
+					lLocks[i % lLocks.length].lock();
+					lLocks[i % lLocks.length].unlock();
+				}
+			}
+
+			long lDropped	= System.currentTimeMillis();
+			long lDeadline	= lDropped + 30000;
+			while (lManagers[1].getActiveLocks() > 0 && System.currentTimeMillis() < lDeadline)
+			{
+				Thread.sleep(100);
+			}
+
+			require(lManagers[1].getActiveLocks() == 0, "the idle controller of the second process was not dropped");
+			lDropped = System.currentTimeMillis() - lDropped;
+
+			lLocks[2].lock();
+
+			Thread[] lThreads = new Thread[2];
+			for (int i = 0; i < lThreads.length; i++)
+			{
+				final Lock lLock = lLocks[i];
+
+				lThreads[i] = new Thread("Checks reacquirer")
+				{
+					@Override
+					public void run()
+					{
+						lLock.lock();
+						lTaken.incrementAndGet();
+						lLock.unlock();
+					}
+				};
+				lThreads[i].setDaemon(true);
+				lThreads[i].start();
+
+				// Let the Request arrive before the next is sent.
+				Thread.sleep(200);
+
+				lHolding.set(true);
+			}
+
+			lLocks[2].unlock();
+
+			for (Thread lThread : lThreads)
+			{
+				lThread.join(10000);
+			}
+
+			require(lTaken.get() == 2, (2 - lTaken.get()) + " processes did not get the lock");
+
+			synchronized (lHeld)
+			{
+				lHolding.set(false);
+
+				for (Message lMessage : lHeld)
+				{
+					lFirstLayer.get(0).receiveMessage(lMessage);
+				}
+			}
+
+			require(lLocks[0].tryLock(10, TimeUnit.SECONDS), "the first process did not get the lock back");
+			lLocks[0].unlock();
+
+			return "dropped after " + lDropped + " ms, then served from a Token sent by a process that missed the Request";
+		}
+		finally
+		{
+			for (LockManager lManager : lManagers)
+			{
+				lManager.close();
+			}
+		}
+	}
+
+	/**
+	 * Has the threads of three processes read and write under a shared lock. A writer
+	 * counts a violation if it finds anyone inside, a reader if it finds a writer.
+	 */
+	private static String checkReadWrite() throws Exception
+	{
+		LoopbackHub lHub						= new LoopbackHub(4);
+		final DistributedReadWriteLock[] lLocks	= new DistributedReadWriteLock[3];
+		final AtomicInteger lWriting			= new AtomicInteger();
+		final AtomicInteger lReading			= new AtomicInteger();
+		final AtomicInteger lMostReading		= new AtomicInteger();
+		final AtomicInteger lWrites				= new AtomicInteger();
+		final AtomicInteger lReads				= new AtomicInteger();
+		final AtomicInteger lWriteViolations	= new AtomicInteger();
+		final AtomicInteger lReadViolations		= new AtomicInteger();
+		final long lEnd							= System.currentTimeMillis() + 5000;
+		Thread[] lThreads						= new Thread[lLocks.length * 4];
+
+		for (int i = 0; i < lLocks.length; i++)
+		{
+			lLocks[i] = new DistributedReadWriteLock(LoopbackNetwork.factory(lHub));
+		}
+
+		try
+		{
+			for (int i = 0; i < lThreads.length; i++)
+			{
+				final DistributedReadWriteLock lLock	= lLocks[i % lLocks.length];
+				final Random lRandom					= new Random(i);
+
+				lThreads[i] = new Thread("Checks reader and writer")
+				{
+					@Override
+					public void run()
+					{
+						while (System.currentTimeMillis() < lEnd)
+						{
+							if (lRandom.nextInt(5) == 0)
+							{
+								lLock.writeLock().lock();
+								try
+								{
+									if (lWriting.incrementAndGet() != 1)
+									{
+										lWriteViolations.incrementAndGet();
+									}
+
+									if (lReading.get() != 0)
+									{
+										lReadViolations.incrementAndGet();
+									}
+
+									Thread.yield();
+
+									lWriting.decrementAndGet();
+									lWrites.incrementAndGet();
+								}
+								finally
+								{
+									lLock.writeLock().unlock();
+								}
+							}
+							else
+							{
+								lLock.readLock().lock();
+								try
+								{
+									int lReaders = lReading.incrementAndGet();
+
+									if (lWriting.get() != 0)
+									{
+										lReadViolations.incrementAndGet();
+									}
+
+									if (lReaders > lMostReading.get())
+									{
+										lMostReading.set(lReaders);
+									}
+
+									Thread.yield();
+
+									lReading.decrementAndGet();
+									lReads.incrementAndGet();
+								}
+								finally
+								{
+									lLock.readLock().unlock();
+								}
+							}
+						}
+					}
+				};
+				lThreads[i].start();
+			}
+
+			for (Thread lThread : lThreads)
+			{
+				lThread.join();
+			}
+		}
+		finally
+		{
+			for (DistributedReadWriteLock lLock : lLocks)
+			{
+				lLock.close();
+			}
+		}
+
+		require(lWriteViolations.get() == 0, lWriteViolations.get() + " times writers were inside together");
+		require(lReadViolations.get() == 0, lReadViolations.get() + " times readers and a writer were inside together");
+		require(lReads.get() > 0 && lWrites.get() > 0, lReads.get() + " reads and " + lWrites.get() + " writes");
+
+		return String.format("%d reads, %d writes, at most %d readers at once", lReads.get(), lWrites.get(),
+							 lMostReading.get());
+	}
+
+	/**
+	 * Has a thread of every process take the lock of a MaekawaMutex again as soon as it
+	 * left, on a square grid and on one with a short row. Each second must see critical
+	 * sections, and every thread must finish its rounds. A deadlock would stop both.
+	 */
+	private static String checkMaekawa() throws Exception
+	{
+		StringBuilder lResult = new StringBuilder();
+
+		for (int lProcesses : new int[] { 9, 14 })
+		{
+			if (lResult.length() > 0)
+			{
+				lResult.append(", ");
+			}
+
+			lResult.append(checkMaekawa(lProcesses));
+		}
+
+		return lResult.toString();
+	}
+
+	/**
+	 * Runs the Maekawa check with the provided number of processes.
+	 *
+	 * @return What the check saw.
+	 */
+	private static String checkMaekawa(final int pProcesses) throws Exception
+	{
+		final int lRounds					= 1000;
+		final INetworkFactory lNetwork		= LoopbackNetwork.factory(new LoopbackHub(4));
+		final LoadStatistics lStatistics	= new LoadStatistics();
+		final AtomicInteger lEntries		= new AtomicInteger();
+		DistributedLock[] lLocks			= new DistributedLock[pProcesses];
+		Thread[] lThreads					= new Thread[pProcesses];
+		Executor lGrants = Executors.newCachedThreadPool(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable pTask)
+			{
+				Thread lThread = new Thread(pTask, "Checks grants");
+				lThread.setDaemon(true);
+				return lThread;
+			}
+		});
+
+		IMutexFactory lFactory = new IMutexFactory()
+		{
+			@Override
+			public IApplicationToMutex createMutex(IMutexToApplication pApplication)
+			{
+				return MutexAlgorithm.MAEKAWA.createMutex(pApplication, lNetwork, pProcesses);
+			}
+		};
+
+		for (int i = 0; i < pProcesses; i++)
+		{
+			lLocks[i] = new DistributedLock(lFactory, lGrants);
+
+			final DistributedLock lLock = lLocks[i];
+
+			lThreads[i] = new Thread("Checks Maekawa process")
+			{
+				@Override
+				public void run()
+				{
+					for (int lRound = 0; lRound < lRounds; lRound++)
+					{
+						long lRequestTime = System.nanoTime();
+
+						lLock.lock();
+						try
+						{
+							lStatistics.enter(lRequestTime);
+							Thread.yield();
+							lStatistics.exit();
+						}
+						finally
+						{
+							lLock.unlock();
+						}
+
+						lEntries.incrementAndGet();
+					}
+				}
+			};
+		}
+
+		try
+		{
+			// Let every process learn about the others, so all quorums are complete.
+			Thread.sleep(200);
+
+			for (Thread lThread : lThreads)
+			{
+				lThread.start();
+			}
+
+			for (int lSecond = 1; lEntries.get() < pProcesses * lRounds; lSecond++)
+			{
+				int lBefore = lEntries.get();
+
+				Thread.sleep(1000);
+
+				require(lEntries.get() > lBefore || lEntries.get() == pProcesses * lRounds,
+						pProcesses + " processes entered no critical section in second " + lSecond);
+			}
+
+			require(lStatistics.getViolations() == 0, lStatistics.getViolations() + " violations with " + pProcesses +
+					" processes");
+		}
+		finally
+		{
+			for (DistributedLock lLock : lLocks)
+			{
+				lLock.close();
+			}
+		}
+
+		return lEntries.get() + " critical sections of " + pProcesses + " processes";
+	}
+}
@@ -0,0 +1,277 @@
+package in4150;
+
+import in4150.application.LoadProcess;
+import in4150.application.LoadStatistics;
+import in4150.mutex.MutexAlgorithm;
+import in4150.network.CountingNetwork;
+import in4150.network.INetworkFactory;
+import in4150.network.LoopbackHub;
+import in4150.network.LoopbackNetwork;
+import in4150.network.TCPNetwork;
+import in4150.network.TreeBroadcastNetwork;
+
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The LoadTest runs a number of LoadProcesses without a user interface, and reports
+ * how the Mutual Exclusion controllers hold up: the critical sections per second,
+ * the time to acquire one, the synchronization delay between one process leaving
+ * and the next entering, and the messages sent per critical section.
+ *
+ * Settings are given as name=value arguments, for example
+ *
+ *   java in4150.LoadTest processes=100 rate=2 duration=1 transport=tcp seconds=60 reads=0.8
+ *
+ * The rmi transport needs -Djava.security.policy=my.policy, and creates the registry.
+ */
+public class LoadTest
+{
+	// The settings and their defaults.
+	private static final String[][] SETTINGS =
+	{
+		{ "processes",	"10",				"The number of processes." },
+		{ "rate",		"1",				"Requests per second of a thinking process, 0 to request at once." },
+		{ "duration",	"1",				"Milliseconds spent in the critical section." },
+		{ "reads",		"0",				"The fraction of requests for SHARED access, from 0 to 1." },
+		{ "transport",	"loopback",			"The network: loopback, tcp or rmi." },
+		{ "fanout",		"0",				"Spread broadcasts along a tree of this fanout, 0 to send them directly." },
+		{ "algorithm",	"SUZUKI_KASAMI",	"The controller: SUZUKI_KASAMI, RAYMOND or MAEKAWA." },
+		{ "warmup",		"5",				"Seconds run before measuring." },
+		{ "seconds",	"30",				"Seconds measured." },
+	};
+
+	// The percentiles reported, and their labels.
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+	private static final String[] PERCENTILE_LABELS = { "p50", "p90", "p99", "p99.9" };
+
+	public static void main(String[] pArguments)
+	{
+		Map<String, String> lSettings = new LinkedHashMap<String, String>();
+		for (String[] lSetting : SETTINGS)
+		{
+			lSettings.put(lSetting[0], lSetting[1]);
+		}
+
+		for (String lArgument : pArguments)
+		{
+			int lSplit = lArgument.indexOf('=');
+
+			if (lSplit < 0 || !lSettings.containsKey(lArgument.substring(0, lSplit)))
+			{
+				usage("Unknown setting " + lArgument);
+			}
+
+			lSettings.put(lArgument.substring(0, lSplit), lArgument.substring(lSplit + 1));
+		}
+
+		try
+		{
+			run(Integer.parseInt(lSettings.get("processes")),
+				Double.parseDouble(lSettings.get("rate")),
+				Double.parseDouble(lSettings.get("duration")),
+				Double.parseDouble(lSettings.get("reads")),
+				lSettings.get("transport"),
+				Integer.parseInt(lSettings.get("fanout")),
+				MutexAlgorithm.valueOf(lSettings.get("algorithm")),
+				Double.parseDouble(lSettings.get("warmup")),
+				Double.parseDouble(lSettings.get("seconds")));
+		}
+		catch (IllegalArgumentException lException)
+		{
+			usage(lException.getMessage());
+		}
+
+		System.exit(0);
+	}
+
+	/**
+	 * Prints the problem and the settings, and stops.
+	 *
+	 * @param pProblem - What was wrong with the arguments.
+	 */
+	private static void usage(String pProblem)
+	{
+		System.err.println(pProblem);
+		System.err.println("Usage: java in4150.LoadTest [name=value]...");
+
+		for (String[] lSetting : SETTINGS)
+		{
+			System.err.printf("  %-10s %s (default %s)%n", lSetting[0], lSetting[2], lSetting[1]);
+		}
+
+		System.exit(1);
+	}
+
+	/**
+	 * Creates the network factory of a transport, counting the messages sent.
+	 *
+	 * @param pTransport - The name of the transport.
+	 * @param pProcesses - The number of processes using it.
+	 * @param pFanout - The fanout of broadcasts, or 0 to send them directly.
+	 * @param pMessages - Counts the messages sent.
+	 *
+	 * @return The factory of the networks.
+	 */
+	private static INetworkFactory createFactory(String pTransport, int pProcesses, int pFanout, AtomicLong pMessages)
+	{
+		INetworkFactory lFactory;
+
+		if (pTransport.equals("loopback"))
+		{
+			lFactory = LoopbackNetwork.factory(new LoopbackHub(Runtime.getRuntime().availableProcessors()));
+		}
+		else if (pTransport.equals("tcp"))
+		{
+			lFactory = TCPNetwork.factory("localhost", TCPNetwork.DEFAULT_BASE_PORT,
+										  Math.max(pProcesses, TCPNetwork.DEFAULT_MAX_PROCESSES));
+		}
+		else if (pTransport.equals("rmi"))
+		{
+			// The processes find each other in a fresh Registry.
+			try
+			{
+				LocateRegistry.createRegistry(Registry.REGISTRY_PORT);
+			}
+			catch (Exception lException)
+			{
+				throw new IllegalStateException("Could not create the registry", lException);
+			}
+
+			lFactory = MutexAlgorithm.rmiFactory(false);
+		}
+		else
+		{
+			throw new IllegalArgumentException("Unknown transport " + pTransport);
+		}
+
+		// Count below the tree, so every hop of a broadcast is counted.
+		lFactory = CountingNetwork.factory(lFactory, pMessages);
+
+		if (pFanout > 0)
+		{
+			lFactory = TreeBroadcastNetwork.factory(lFactory, pFanout);
+		}
+
+		return lFactory;
+	}
+
+	/**
+	 * Runs the processes, and reports what they saw while measuring.
+	 */
+	private static void run(int pProcesses, double pRate, double pDuration, double pReads, String pTransport,
+							int pFanout, MutexAlgorithm pAlgorithm, double pWarmup, double pSeconds)
+	{
+		AtomicLong lMessages			= new AtomicLong();
+		LoadStatistics lStatistics		= new LoadStatistics();
+		INetworkFactory lFactory		= createFactory(pTransport, pProcesses, pFanout, lMessages);
+		LoadProcess[] lProcesses		= new LoadProcess[pProcesses];
+		ScheduledExecutorService lScheduler = Executors.newScheduledThreadPool(2, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable pTask)
+			{
+				Thread lThread = new Thread(pTask, "LoadTest scheduler");
+				lThread.setDaemon(true);
+				return lThread;
+			}
+		});
+
+		System.out.printf("%d processes, %s over %s, rate %s/s, duration %s ms, reads %s%n",
+						  pProcesses, pAlgorithm, pTransport, pRate, pDuration, pReads);
+
+		for (int i = 0; i < pProcesses; i++)
+		{
+			lProcesses[i] = new LoadProcess(pAlgorithm, lFactory, pProcesses, lScheduler, lStatistics, pRate,
+											(long)(pDuration * 1e6), pReads);
+		}
+
+		for (LoadProcess lProcess : lProcesses)
+		{
+			lProcess.start();
+		}
+
+		sleep(pWarmup);
+
+		// Measure.
+		long lStartMessages = lMessages.get();
+		long lStart			= System.nanoTime();
+		lStatistics.setMeasuring(true);
+
+		sleep(pSeconds);
+
+		lStatistics.setMeasuring(false);
+		long lElapsed		= System.nanoTime() - lStart;
+		long lSent			= lMessages.get() - lStartMessages;
+
+		for (LoadProcess lProcess : lProcesses)
+		{
+			lProcess.stop();
+		}
+
+		// Report.
+		int lCount = lStatistics.getCriticalSections();
+
+		System.out.printf("Critical sections      %d (%.1f/s), %d shared%n", lCount, lCount / (lElapsed / 1e9),
+						  lStatistics.getSharedCriticalSections());
+		System.out.printf("Acquisition latency    %s%n", percentiles(lStatistics.getLatencies()));
+		System.out.printf("Synchronization delay  %s%n", percentiles(lStatistics.getSynchronizationDelays()));
+		System.out.printf("Messages per CS        %.2f%n", lCount == 0 ? 0.0 : (double)lSent / lCount);
+		System.out.printf("Violations             %d%n", lStatistics.getViolations());
+
+		for (LoadProcess lProcess : lProcesses)
+		{
+			lProcess.close();
+		}
+	}
+
+	/**
+	 * @param pSorted - Times in nanoseconds, in increasing order.
+	 *
+	 * @return The percentiles and maximum of the times, in milliseconds.
+	 */
+	private static String percentiles(long[] pSorted)
+	{
+		if (pSorted.length == 0)
+		{
+			return "no samples";
+		}
+
+		StringBuilder lResult = new StringBuilder();
+
+		for (int i = 0; i < PERCENTILES.length; i++)
+		{
+			int lIndex = (int)Math.ceil(PERCENTILES[i] / 100 * pSorted.length) - 1;
+
+			lResult.append(String.format("%s %.3f  ", PERCENTILE_LABELS[i], pSorted[Math.max(lIndex, 0)] / 1e6));
+		}
+
+		lResult.append(String.format("max %.3f ms (%d samples)", pSorted[pSorted.length - 1] / 1e6, pSorted.length));
+
+		return lResult.toString();
+	}
+
+	/**
+	 * Sleeps for the provided time.
+	 *
+	 * @param pSeconds - The time to sleep, in seconds.
+	 */
+	private static void sleep(double pSeconds)
+	{
+		try
+		{
+			Thread.sleep((long)(pSeconds * 1000));
+		}
+		catch (InterruptedException lException)
+		{
+			lException.printStackTrace();
+			System.exit(0);
+		}
+	}
+}
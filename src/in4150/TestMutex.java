@@ -3,6 +3,7 @@ package in4150;
 import in4150.application.MutexProcess;
 import in4150.control.NetworkBuffer;
 import in4150.control.gui.MutexView;
+import in4150.mutex.MutexAlgorithm;
 
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
@@ -11,6 +12,7 @@ public class TestMutex
 {
 	private static final int COMPONENTS = 5;
 	private static final boolean MANUAL	= true;
+	private static final MutexAlgorithm ALGORITHM = MutexAlgorithm.SUZUKI_KASAMI;
 
 	public static void main(String[] pUnused)
 	{
@@ -37,7 +39,7 @@ public class TestMutex
 
 		for (int i = 0; i < COMPONENTS; i++)
 		{
-			lProcesses[i] = new MutexProcess(MANUAL);
+			lProcesses[i] = new MutexProcess(MANUAL, ALGORITHM);
 			lThreads[i]	  = new Thread(lProcesses[i]);
 		}
 
@@ -0,0 +1,13 @@
+package in4150.application;
+
+/**
+ * The AccessMode tells how an application wants to use its critical section.
+ */
+public enum AccessMode
+{
+	// The critical section only reads, so others reading may be in theirs at the same time.
+	SHARED,
+
+	// The critical section may write, so nobody else may be in theirs.
+	EXCLUSIVE
+}
@@ -0,0 +1,589 @@
+package in4150.application;
+
+import in4150.control.gui.IGUItoMutex;
+import in4150.mutex.IMutexToApplication;
+import in4150.mutex.MutexAlgorithm;
+import in4150.mutex.MutexEventLoop;
+import in4150.mutex.SuzukiKasamiMutex;
+import in4150.mutex.TokenHoldPolicy;
+import in4150.network.INetworkFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * A DistributedLock is a Lock shared with the DistributedLocks of other processes.
+ * Only one thread in all processes holds it at a time. Underneath, a Mutual
+ * Exclusion controller negotiates access to the critical section.
+ *
+ * Callers either park in lock and tryLock until the critical section is granted,
+ * or use acquire to receive a Grant when it is. Either way the critical section
+ * runs on the thread of the caller, not on the network thread delivering the
+ * Token, and it lasts until the caller releases it. Grants are handed out on the
+ * grant executor, which is ours unless one is provided.
+ *
+ * The local callers share one request of the controller. Once granted, the
+ * critical section goes to the longest waiting caller, and a new request is made
+ * on release if others are still waiting.
+ *
+ * Taken through the Lock functions, the lock is reentrant: the owning thread may
+ * lock it again, and must unlock it as often. It does not support conditions.
+ *
+ * A lock that is no longer needed is closed, which disconnects its controller and
+ * stops the threads the lock created.
+ */
+public class DistributedLock implements Lock, IMutexToApplication
+{
+	// The local callers waiting for the critical section, longest waiting first.
+	private final LinkedList<CompletableFuture<Grant>> fWaiters;
+
+	// The Grant of the caller in the critical section, or null if there is none.
+	private Grant fGrant;
+
+	// The thread holding the Grant if it was obtained through the Lock functions.
+	private Thread fOwner;
+
+	// The number of times the owner locked without unlocking.
+	private int fHoldCount;
+
+	// True while the controller has a request of ours that was not granted yet.
+	private boolean fRequested;
+
+	// The executor handing out Grants, and running the stages depending on them.
+	private final Executor fGrantExecutor;
+
+	// True iff we created the grant executor, so it stops when we are closed.
+	private final boolean fOwnsGrantExecutor;
+
+	// True once the lock is closed.
+	private boolean fClosed;
+
+	// The controller which guards access to the critical section.
+	private final IApplicationToMutex fMutexController;
+
+	/**
+	 * Constructs a new DistributedLock, communicating over the provided type of network.
+	 *
+	 * @param pNetworkFactory - Creates the network used to reach the other processes.
+	 */
+	public DistributedLock(INetworkFactory pNetworkFactory)
+	{
+		this(controllerFactory(pNetworkFactory, TokenHoldPolicy.DEFAULT), newGrantExecutor(), true);
+	}
+
+	/**
+	 * Constructs a new DistributedLock, communicating over the provided type of network.
+	 *
+	 * @param pNetworkFactory - Creates the network used to reach the other processes.
+	 * @param pGrantExecutor - The executor handing out Grants.
+	 */
+	public DistributedLock(INetworkFactory pNetworkFactory, Executor pGrantExecutor)
+	{
+		this(pNetworkFactory, pGrantExecutor, TokenHoldPolicy.DEFAULT);
+	}
+
+	/**
+	 * Constructs a new DistributedLock, communicating over the provided type of network.
+	 *
+	 * @param pNetworkFactory - Creates the network used to reach the other processes.
+	 * @param pGrantExecutor - The executor handing out Grants.
+	 * @param pHoldPolicy - Bounds the callers served from one visit of the Token.
+	 */
+	public DistributedLock(INetworkFactory pNetworkFactory, Executor pGrantExecutor, TokenHoldPolicy pHoldPolicy)
+	{
+		this(controllerFactory(pNetworkFactory, pHoldPolicy), pGrantExecutor, false);
+	}
+
+	/**
+	 * Constructs a new DistributedLock over RMI.
+	 *
+	 * @param pManualMode - Debug variable. If true, the controller uses the debug network.
+	 */
+	public DistributedLock(boolean pManualMode)
+	{
+		this(MutexAlgorithm.rmiFactory(pManualMode));
+	}
+
+	/**
+	 * Constructs a new DistributedLock using the controller created by the provided factory.
+	 *
+	 * @param pMutexFactory - Creates the controller which guards access to the critical section.
+	 * @param pGrantExecutor - The executor handing out Grants.
+	 */
+	public DistributedLock(IMutexFactory pMutexFactory, Executor pGrantExecutor)
+	{
+		this(pMutexFactory, pGrantExecutor, false);
+	}
+
+	/**
+	 * Constructs a new DistributedLock using the controller created by the provided factory.
+	 *
+	 * @param pOwnsGrantExecutor - True iff the grant executor was created for this lock alone.
+	 */
+	private DistributedLock(IMutexFactory pMutexFactory, Executor pGrantExecutor, boolean pOwnsGrantExecutor)
+	{
+		fGrantExecutor		= pGrantExecutor;
+		fOwnsGrantExecutor	= pOwnsGrantExecutor;
+		fClosed				= false;
+		fWaiters			= new LinkedList<CompletableFuture<Grant>>();
+		fGrant				= null;
+		fOwner				= null;
+		fHoldCount			= 0;
+		fRequested			= false;
+
+		// Created last, the controller may call us as soon as it exists.
+		fMutexController = pMutexFactory.createMutex(this);
+	}
+
+	/**
+	 * @return A factory of SuzukiKasamiMutex controllers running on a thread of their own.
+	 */
+	private static IMutexFactory controllerFactory(final INetworkFactory pNetworkFactory,
+												   final TokenHoldPolicy pHoldPolicy)
+	{
+		return new IMutexFactory()
+		{
+			@Override
+			public IApplicationToMutex createMutex(IMutexToApplication pApplication)
+			{
+				return new SuzukiKasamiMutex(pApplication, pNetworkFactory,
+											 MutexEventLoop.newDedicatedExecutor("SuzukiKasamiMutex events"),
+											 pHoldPolicy);
+			}
+		};
+	}
+
+	/**
+	 * @return A single daemon thread handing out Grants.
+	 */
+	private static ExecutorService newGrantExecutor()
+	{
+		return Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable pTask)
+			{
+				Thread lThread = new Thread(pTask, "DistributedLock grants");
+				lThread.setDaemon(true);
+				return lThread;
+			}
+		});
+	}
+
+	/**
+	 * Asks for the critical section without waiting for it.
+	 *
+	 * The future completes with a Grant once the critical section is ours, which
+	 * must be released when done. Dependent stages without an executor of their own
+	 * run on the grant executor, so they should be short or release the Grant soon.
+	 * Cancelling the future withdraws the caller.
+	 *
+	 * @return A future completing with the Grant.
+	 */
+	public CompletableFuture<Grant> acquire()
+	{
+		CompletableFuture<Grant> lFuture = new CompletableFuture<Grant>();
+		boolean lRequest;
+
+		synchronized (this)
+		{
+			if (fClosed)
+			{
+				lFuture.completeExceptionally(new IllegalStateException("DistributedLock is closed"));
+				return lFuture;
+			}
+
+			fWaiters.add(lFuture);
+
+			// A request that is still open, or a release to come, serves this caller as well.
+			lRequest = !fRequested && fGrant == null;
+			fRequested |= lRequest;
+		}
+
+		// Ask outside our lock, the grant thread takes it in doCriticalSection and should not wait for us.
+		if (lRequest)
+		{
+			fMutexController.requestCriticalSection();
+		}
+
+		return lFuture;
+	}
+
+	/**
+	 * Waits until the critical section is ours, ignoring interrupts.
+	 */
+	@Override
+	public void lock()
+	{
+		if (this.reenter())
+		{
+			return;
+		}
+
+		CompletableFuture<Grant> lFuture = this.acquire();
+		boolean lInterrupted = false;
+
+		while (true)
+		{
+			try
+			{
+				lFuture.get();
+				this.own();
+				break;
+			}
+			catch (InterruptedException lException)
+			{
+				// Keep waiting, and restore the interrupt when done.
+				lInterrupted = true;
+			}
+			catch (ExecutionException lException)
+			{
+				throw new IllegalStateException(lException.getCause());
+			}
+		}
+
+		if (lInterrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Waits until the critical section is ours, unless interrupted.
+	 */
+	@Override
+	public void lockInterruptibly() throws InterruptedException
+	{
+		if (this.reenter())
+		{
+			return;
+		}
+
+		CompletableFuture<Grant> lFuture = this.acquire();
+
+		try
+		{
+			lFuture.get();
+			this.own();
+		}
+		catch (InterruptedException lException)
+		{
+			this.withdraw(lFuture);
+			throw lException;
+		}
+		catch (ExecutionException lException)
+		{
+			throw new IllegalStateException(lException.getCause());
+		}
+	}
+
+	/**
+	 * Takes the critical section only if it is granted without asking the other
+	 * processes, which is when this process holds the Token and nobody uses it. The
+	 * controller decides at once; local callers holding or waiting for the lock come
+	 * first, so then it fails. A controller without a token, like the MaekawaMutex,
+	 * never grants it this way, so it always fails; lock or tryLock with a time instead.
+	 */
+	@Override
+	public boolean tryLock()
+	{
+		if (this.reenter())
+		{
+			return true;
+		}
+
+		synchronized (this)
+		{
+			if (fClosed || fGrant != null || fRequested || !fWaiters.isEmpty())
+			{
+				return false;
+			}
+		}
+
+		// Ask outside our lock, tryRequestCriticalSection waits for the event loop, which waits
+		// for our lock in doCriticalSection if the grant executor runs on the loop thread.
+		if (!fMutexController.tryRequestCriticalSection(AccessMode.EXCLUSIVE))
+		{
+			return false;
+		}
+
+		synchronized (this)
+		{
+			fGrant = new Grant(this);
+		}
+
+		this.own();
+		return true;
+	}
+
+	/**
+	 * Waits at most the provided time until the critical section is ours.
+	 */
+	@Override
+	public boolean tryLock(long pTime, TimeUnit pUnit) throws InterruptedException
+	{
+		if (this.reenter())
+		{
+			return true;
+		}
+
+		CompletableFuture<Grant> lFuture = this.acquire();
+
+		try
+		{
+			lFuture.get(pTime, pUnit);
+			this.own();
+			return true;
+		}
+		catch (TimeoutException lException)
+		{
+			if (this.withdraw(lFuture))
+			{
+				return false;
+			}
+
+			// Granted while giving up, keep it.
+			this.own();
+			return true;
+		}
+		catch (InterruptedException lException)
+		{
+			this.withdraw(lFuture);
+			throw lException;
+		}
+		catch (ExecutionException lException)
+		{
+			throw new IllegalStateException(lException.getCause());
+		}
+	}
+
+	/**
+	 * Leaves the critical section taken by lock or tryLock, once the owner unlocked as
+	 * often as it locked.
+	 *
+	 * @throws IllegalMonitorStateException If the calling thread does not hold the lock.
+	 */
+	@Override
+	public void unlock()
+	{
+		Grant lGrant;
+
+		synchronized (this)
+		{
+			if (fOwner != Thread.currentThread())
+			{
+				throw new IllegalMonitorStateException("Lock not held by " + Thread.currentThread().getName());
+			}
+
+			fHoldCount--;
+
+			if (fHoldCount > 0)
+			{
+				return;
+			}
+
+			lGrant = fGrant;
+			fOwner = null;
+		}
+
+		lGrant.release();
+	}
+
+	/**
+	 * Conditions are not supported.
+	 */
+	@Override
+	public Condition newCondition()
+	{
+		throw new UnsupportedOperationException("DistributedLock has no conditions");
+	}
+
+	/**
+	 * Records the calling thread as the owner of the Grant it obtained by the Lock functions.
+	 */
+	private synchronized void own()
+	{
+		fOwner	   = Thread.currentThread();
+		fHoldCount = 1;
+	}
+
+	/**
+	 * Locks again if the calling thread owns the lock.
+	 *
+	 * @return true iff the calling thread owns the lock.
+	 */
+	private synchronized boolean reenter()
+	{
+		if (fOwner == Thread.currentThread())
+		{
+			fHoldCount++;
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Withdraws a caller that stopped waiting. If the critical section was granted
+	 * to it anyway, it stays granted.
+	 *
+	 * @return true iff the caller was withdrawn before it was granted.
+	 */
+	private boolean withdraw(CompletableFuture<Grant> pFuture)
+	{
+		return pFuture.cancel(false) || pFuture.isCancelled();
+	}
+
+	/**
+	 * Called by the controller when the critical section is ours. It goes to the
+	 * longest waiting caller that did not give up, or back to the controller if
+	 * there is none.
+	 */
+	@Override
+	public void doCriticalSection()
+	{
+		CompletableFuture<Grant> lWaiter;
+		Grant lGrant = null;
+
+		synchronized (this)
+		{
+			fRequested = false;
+
+			// Skip the callers that gave up.
+			do
+			{
+				lWaiter = fWaiters.poll();
+			}
+			while (lWaiter != null && lWaiter.isDone());
+
+			if (lWaiter != null)
+			{
+				lGrant = new Grant(this);
+				fGrant = lGrant;
+			}
+		}
+
+		if (lWaiter == null)
+		{
+			// Nobody wants it anymore.
+			fMutexController.releaseCriticalSection();
+		}
+		else if (!lWaiter.complete(lGrant))
+		{
+			// The caller gave up just now, pass it on.
+			lGrant.release();
+		}
+	}
+
+	/**
+	 * Called by a Grant when it is released. Gives the critical section back to the
+	 * controller, and asks for it again if other callers are waiting.
+	 */
+	void release(Grant pGrant)
+	{
+		boolean lRequest;
+
+		synchronized (this)
+		{
+			if (fGrant != pGrant)
+			{
+				throw new IllegalStateException("Grant does not hold the critical section");
+			}
+
+			fGrant	   = null;
+			fOwner	   = null;
+			fHoldCount = 0;
+
+			// Forget the callers that gave up.
+			while (!fWaiters.isEmpty() && fWaiters.peek().isDone())
+			{
+				fWaiters.poll();
+			}
+
+			lRequest = !fWaiters.isEmpty() && !fRequested;
+			fRequested |= lRequest;
+		}
+
+		// Asking before releasing lets the controller serve the next caller from this visit of the Token.
+		if (lRequest)
+		{
+			fMutexController.requestCriticalSection();
+		}
+
+		fMutexController.releaseCriticalSection();
+	}
+
+	/**
+	 * Disconnects the controller from the other processes, and stops the grant executor
+	 * if we created it. Callers still waiting fail with an IllegalStateException, and
+	 * a critical section held here is lost.
+	 */
+	public void close()
+	{
+		List<CompletableFuture<Grant>> lWaiters;
+
+		synchronized (this)
+		{
+			fClosed  = true;
+			lWaiters = new ArrayList<CompletableFuture<Grant>>(fWaiters);
+			fWaiters.clear();
+		}
+
+		for (CompletableFuture<Grant> lWaiter : lWaiters)
+		{
+			lWaiter.completeExceptionally(new IllegalStateException("DistributedLock is closed"));
+		}
+
+		fMutexController.close();
+
+		if (fOwnsGrantExecutor)
+		{
+			((ExecutorService)fGrantExecutor).shutdown();
+		}
+	}
+
+	/**
+	 * Returns the executor handing out Grants.
+	 */
+	@Override
+	public Executor getCriticalSectionExecutor()
+	{
+		return fGrantExecutor;
+	}
+
+	/**
+	 * @return true iff no caller holds, waits for or asked for the critical section.
+	 */
+	public synchronized boolean isIdle()
+	{
+		return fGrant == null && fWaiters.isEmpty() && !fRequested;
+	}
+
+	/**
+	 * Returns true iff a caller holds the critical section.
+	 */
+	@Override
+	public synchronized boolean inCriticalSection()
+	{
+		return fGrant != null;
+	}
+
+	/**
+	 * @return An interface to the gui functions of the mutex controller.
+	 */
+	public IGUItoMutex getMutexController()
+	{
+		return fMutexController.getGUIinterface();
+	}
+}
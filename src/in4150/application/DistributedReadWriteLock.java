@@ -0,0 +1,675 @@
+package in4150.application;
+
+import in4150.control.gui.IGUItoMutex;
+import in4150.mutex.IMutexToApplication;
+import in4150.mutex.MutexEventLoop;
+import in4150.mutex.SuzukiKasamiMutex;
+import in4150.network.INetworkFactory;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * A DistributedReadWriteLock is a ReadWriteLock shared with the DistributedReadWriteLocks
+ * of other processes. Any number of threads in all processes may hold the read lock at
+ * the same time, while a thread holding the write lock is alone. Underneath, a Mutual
+ * Exclusion controller negotiates SHARED or EXCLUSIVE access to the critical section.
+ *
+ * The local callers share one request of the controller, made in the mode of the
+ * longest waiting caller. Once granted, the critical section goes to that caller,
+ * and to all readers waiting right behind it. Callers arriving later wait for the
+ * next grant, so readers in other processes can not be shut out forever by ours.
+ * Once the last of them unlocks, the critical section goes back to the controller,
+ * and a new request is made if others are waiting.
+ *
+ * Both locks are reentrant, and the writer may take the read lock as well. A reader
+ * can not take the write lock. Conditions are not supported.
+ *
+ * A lock that is no longer needed is closed, which disconnects its controller and
+ * stops the threads the lock created.
+ */
+public class DistributedReadWriteLock implements ReadWriteLock, IMutexToApplication
+{
+	// The local callers waiting for the critical section, longest waiting first.
+	private final LinkedList<Waiter> fWaiters;
+
+	// The number of times each reading thread locked without unlocking.
+	private final Map<Thread, Integer> fReadHolds;
+
+	// The thread holding the write lock, or null if there is none.
+	private Thread fWriter;
+
+	// The number of times the writer locked without unlocking.
+	private int fWriteHolds;
+
+	// The access the controller granted, or null if the critical section is not ours.
+	private AccessMode fGranted;
+
+	// True while the controller has a request of ours that was not granted yet.
+	private boolean fRequested;
+
+	// The access asked for by that request.
+	private AccessMode fRequestedMode;
+
+	// The executor the controller grants the critical section on.
+	private final Executor fGrantExecutor;
+
+	// True iff we created the grant executor, so it stops when we are closed.
+	private final boolean fOwnsGrantExecutor;
+
+	// True once the lock is closed.
+	private boolean fClosed;
+
+	// The controller which guards access to the critical section.
+	private final IApplicationToMutex fMutexController;
+
+	// The read lock.
+	private final Lock fReadLock;
+
+	// The write lock.
+	private final Lock fWriteLock;
+
+	/**
+	 * A caller waiting for the critical section.
+	 */
+	private static class Waiter
+	{
+		// The access the caller wants.
+		private final AccessMode fMode;
+
+		// The thread of the caller.
+		private final Thread fThread;
+
+		// True once the caller holds its lock.
+		private boolean fAdmitted;
+
+		Waiter(AccessMode pMode, Thread pThread)
+		{
+			fMode		= pMode;
+			fThread		= pThread;
+			fAdmitted	= false;
+		}
+	}
+
+	/**
+	 * One of the two locks, taking the critical section in its own mode.
+	 */
+	private class ModeLock implements Lock
+	{
+		// The access the lock takes.
+		private final AccessMode fMode;
+
+		ModeLock(AccessMode pMode)
+		{
+			fMode = pMode;
+		}
+
+		/**
+		 * Waits until the lock is ours, ignoring interrupts.
+		 */
+		@Override
+		public void lock()
+		{
+			try
+			{
+				DistributedReadWriteLock.this.acquire(fMode, false, 0, false);
+			}
+			catch (InterruptedException lException)
+			{
+				// Not thrown when not interruptible.
+				throw new IllegalStateException(lException);
+			}
+		}
+
+		/**
+		 * Waits until the lock is ours, unless interrupted.
+		 */
+		@Override
+		public void lockInterruptibly() throws InterruptedException
+		{
+			DistributedReadWriteLock.this.acquire(fMode, false, 0, true);
+		}
+
+		/**
+		 * Takes the lock only if it is granted without asking the other processes,
+		 * which is when this process holds the Token and nobody uses it. The controller
+		 * decides at once; local callers holding or waiting for a lock come first, so
+		 * then it fails. A controller without a token, like the MaekawaMutex, never
+		 * grants it this way, so it always fails.
+		 */
+		@Override
+		public boolean tryLock()
+		{
+			return DistributedReadWriteLock.this.tryAcquire(fMode);
+		}
+
+		/**
+		 * Waits at most the provided time until the lock is ours.
+		 */
+		@Override
+		public boolean tryLock(long pTime, TimeUnit pUnit) throws InterruptedException
+		{
+			return DistributedReadWriteLock.this.acquire(fMode, true, pUnit.toNanos(pTime), true);
+		}
+
+		/**
+		 * Leaves the lock, once the calling thread unlocked as often as it locked.
+		 *
+		 * @throws IllegalMonitorStateException If the calling thread does not hold the lock.
+		 */
+		@Override
+		public void unlock()
+		{
+			DistributedReadWriteLock.this.release(fMode);
+		}
+
+		/**
+		 * Conditions are not supported.
+		 */
+		@Override
+		public Condition newCondition()
+		{
+			throw new UnsupportedOperationException("DistributedReadWriteLock has no conditions");
+		}
+	}
+
+	/**
+	 * Constructs a new DistributedReadWriteLock, communicating over the provided type of network.
+	 *
+	 * @param pNetworkFactory - Creates the network used to reach the other processes.
+	 */
+	public DistributedReadWriteLock(INetworkFactory pNetworkFactory)
+	{
+		this(controllerFactory(pNetworkFactory), newGrantExecutor(), true);
+	}
+
+	/**
+	 * Constructs a new DistributedReadWriteLock, communicating over the provided type of network.
+	 *
+	 * @param pNetworkFactory - Creates the network used to reach the other processes.
+	 * @param pGrantExecutor - The executor the controller grants the critical section on.
+	 */
+	public DistributedReadWriteLock(INetworkFactory pNetworkFactory, Executor pGrantExecutor)
+	{
+		this(controllerFactory(pNetworkFactory), pGrantExecutor, false);
+	}
+
+	/**
+	 * Constructs a new DistributedReadWriteLock using the controller created by the provided factory.
+	 *
+	 * @param pMutexFactory - Creates the controller which guards access to the critical section.
+	 * @param pGrantExecutor - The executor the controller grants the critical section on.
+	 */
+	public DistributedReadWriteLock(IMutexFactory pMutexFactory, Executor pGrantExecutor)
+	{
+		this(pMutexFactory, pGrantExecutor, false);
+	}
+
+	/**
+	 * Constructs a new DistributedReadWriteLock using the controller created by the provided factory.
+	 *
+	 * @param pOwnsGrantExecutor - True iff the grant executor was created for this lock alone.
+	 */
+	private DistributedReadWriteLock(IMutexFactory pMutexFactory, Executor pGrantExecutor, boolean pOwnsGrantExecutor)
+	{
+		fGrantExecutor		= pGrantExecutor;
+		fOwnsGrantExecutor	= pOwnsGrantExecutor;
+		fClosed				= false;
+		fWaiters			= new LinkedList<Waiter>();
+		fReadHolds			= new HashMap<Thread, Integer>();
+		fWriter				= null;
+		fWriteHolds			= 0;
+		fGranted			= null;
+		fRequested			= false;
+		fRequestedMode		= null;
+		fReadLock			= new ModeLock(AccessMode.SHARED);
+		fWriteLock			= new ModeLock(AccessMode.EXCLUSIVE);
+
+		// Created last, the controller may call us as soon as it exists.
+		fMutexController = pMutexFactory.createMutex(this);
+	}
+
+	/**
+	 * @return A factory of SuzukiKasamiMutex controllers running on a thread of their own.
+	 */
+	private static IMutexFactory controllerFactory(final INetworkFactory pNetworkFactory)
+	{
+		return new IMutexFactory()
+		{
+			@Override
+			public IApplicationToMutex createMutex(IMutexToApplication pApplication)
+			{
+				return new SuzukiKasamiMutex(pApplication, pNetworkFactory,
+											 MutexEventLoop.newDedicatedExecutor("SuzukiKasamiMutex events"));
+			}
+		};
+	}
+
+	/**
+	 * @return A single daemon thread the critical section is granted on.
+	 */
+	private static ExecutorService newGrantExecutor()
+	{
+		return Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable pTask)
+			{
+				Thread lThread = new Thread(pTask, "DistributedReadWriteLock grants");
+				lThread.setDaemon(true);
+				return lThread;
+			}
+		});
+	}
+
+	/**
+	 * Disconnects the controller from the other processes, and stops the grant executor
+	 * if we created it. Callers still waiting fail with an IllegalStateException, and
+	 * a critical section held here is lost.
+	 */
+	public void close()
+	{
+		synchronized (this)
+		{
+			fClosed = true;
+			this.notifyAll();
+		}
+
+		fMutexController.close();
+
+		if (fOwnsGrantExecutor)
+		{
+			((ExecutorService)fGrantExecutor).shutdown();
+		}
+	}
+
+	/**
+	 * @throws IllegalStateException If the lock is closed.
+	 */
+	private void checkOpen()
+	{
+		if (fClosed)
+		{
+			throw new IllegalStateException("DistributedReadWriteLock is closed");
+		}
+	}
+
+	@Override
+	public Lock readLock()
+	{
+		return fReadLock;
+	}
+
+	@Override
+	public Lock writeLock()
+	{
+		return fWriteLock;
+	}
+
+	/**
+	 * Waits until the calling thread holds the lock of the provided mode.
+	 *
+	 * @param pMode - The access the caller wants.
+	 * @param pTimed - True iff the caller waits at most pNanos.
+	 * @param pNanos - How long the caller waits, in nanoseconds.
+	 * @param pInterruptible - True iff the caller stops waiting when interrupted.
+	 *
+	 * @return true iff the calling thread holds the lock.
+	 */
+	private boolean acquire(AccessMode pMode, boolean pTimed, long pNanos, boolean pInterruptible)
+		throws InterruptedException
+	{
+		long lDeadline = System.nanoTime() + pNanos;
+		Waiter lWaiter;
+		boolean lRequest;
+
+		synchronized (this)
+		{
+			if (this.reenter(pMode))
+			{
+				return true;
+			}
+
+			this.checkOpen();
+
+			lWaiter = new Waiter(pMode, Thread.currentThread());
+			fWaiters.add(lWaiter);
+
+			// A request that is still open, or a release to come, serves this caller as well.
+			lRequest = !fRequested && fGranted == null;
+
+			if (lRequest)
+			{
+				fRequested	   = true;
+				fRequestedMode = pMode;
+			}
+		}
+
+		// Ask outside our lock, the grant thread takes it in doCriticalSection and should not wait for us.
+		if (lRequest)
+		{
+			fMutexController.requestCriticalSection(pMode);
+		}
+
+		boolean lInterrupted = false;
+
+		synchronized (this)
+		{
+			while (!lWaiter.fAdmitted)
+			{
+				if (fClosed)
+				{
+					fWaiters.remove(lWaiter);
+					this.checkOpen();
+				}
+
+				try
+				{
+					if (!pTimed)
+					{
+						this.wait();
+					}
+					else
+					{
+						long lLeft = lDeadline - System.nanoTime();
+
+						if (lLeft <= 0)
+						{
+							fWaiters.remove(lWaiter);
+							return false;
+						}
+
+						TimeUnit.NANOSECONDS.timedWait(this, lLeft);
+					}
+				}
+				catch (InterruptedException lException)
+				{
+					if (pInterruptible && !lWaiter.fAdmitted)
+					{
+						fWaiters.remove(lWaiter);
+						throw lException;
+					}
+
+					// Keep waiting, or keep what was granted just now, and restore the interrupt when done.
+					lInterrupted = true;
+				}
+			}
+		}
+
+		if (lInterrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Takes the lock of the provided mode for the calling thread, if the controller
+	 * grants it without asking the other processes.
+	 *
+	 * @param pMode - The access the caller wants.
+	 *
+	 * @return true iff the calling thread holds the lock.
+	 */
+	private boolean tryAcquire(AccessMode pMode)
+	{
+		synchronized (this)
+		{
+			if (this.reenter(pMode))
+			{
+				return true;
+			}
+
+			if (fClosed || fGranted != null || fRequested || !fWaiters.isEmpty())
+			{
+				return false;
+			}
+		}
+
+		// Ask outside our lock, tryRequestCriticalSection waits for the event loop, which waits
+		// for our lock in doCriticalSection if the grant executor runs on the loop thread.
+		if (!fMutexController.tryRequestCriticalSection(pMode))
+		{
+			return false;
+		}
+
+		synchronized (this)
+		{
+			fGranted = pMode;
+
+			if (pMode == AccessMode.EXCLUSIVE)
+			{
+				fWriter		= Thread.currentThread();
+				fWriteHolds	= 1;
+			}
+			else
+			{
+				fReadHolds.put(Thread.currentThread(), 1);
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Locks again if the calling thread holds a lock that covers the provided mode.
+	 *
+	 * @return true iff the calling thread locked again.
+	 */
+	private synchronized boolean reenter(AccessMode pMode)
+	{
+		Thread lThread = Thread.currentThread();
+
+		if (pMode == AccessMode.EXCLUSIVE)
+		{
+			if (fWriter == lThread)
+			{
+				fWriteHolds++;
+				return true;
+			}
+		}
+		else if (fReadHolds.containsKey(lThread))
+		{
+			fReadHolds.put(lThread, fReadHolds.get(lThread) + 1);
+			return true;
+		}
+		else if (fWriter == lThread)
+		{
+			fReadHolds.put(lThread, 1);
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Unlocks the lock of the provided mode held by the calling thread, and gives the
+	 * critical section back once nobody holds a lock anymore.
+	 *
+	 * @throws IllegalMonitorStateException If the calling thread does not hold the lock.
+	 */
+	private void release(AccessMode pMode)
+	{
+		Thread lThread = Thread.currentThread();
+		AccessMode lRequest;
+
+		synchronized (this)
+		{
+			if (pMode == AccessMode.SHARED)
+			{
+				Integer lHolds = fReadHolds.get(lThread);
+
+				if (lHolds == null)
+				{
+					throw new IllegalMonitorStateException("Read lock not held by " + lThread.getName());
+				}
+
+				if (lHolds > 1)
+				{
+					fReadHolds.put(lThread, lHolds - 1);
+					return;
+				}
+
+				fReadHolds.remove(lThread);
+			}
+			else
+			{
+				if (fWriter != lThread)
+				{
+					throw new IllegalMonitorStateException("Write lock not held by " + lThread.getName());
+				}
+
+				fWriteHolds--;
+
+				if (fWriteHolds > 0)
+				{
+					return;
+				}
+
+				fWriter = null;
+			}
+
+			if (fWriter != null || !fReadHolds.isEmpty())
+			{
+				return;
+			}
+
+			lRequest = this.endGrant();
+		}
+
+		this.giveBack(lRequest);
+	}
+
+	/**
+	 * Lets the waiting callers the grant is for take their locks: the longest waiting
+	 * writer alone if the grant is exclusive, or else the readers waiting in front.
+	 */
+	private void admit()
+	{
+		Waiter lHead = fWaiters.peek();
+
+		if (lHead != null && lHead.fMode == AccessMode.EXCLUSIVE)
+		{
+			if (fGranted == AccessMode.EXCLUSIVE)
+			{
+				fWaiters.poll();
+				lHead.fAdmitted = true;
+				fWriter			= lHead.fThread;
+				fWriteHolds		= 1;
+			}
+		}
+		else
+		{
+			while (lHead != null && lHead.fMode == AccessMode.SHARED)
+			{
+				fWaiters.poll();
+				lHead.fAdmitted = true;
+				fReadHolds.put(lHead.fThread, 1);
+
+				lHead = fWaiters.peek();
+			}
+		}
+
+		this.notifyAll();
+	}
+
+	/**
+	 * Ends the grant of the critical section, and decides whether to ask for it again.
+	 *
+	 * @return The access to ask for, or null if nobody waits or a request is open.
+	 */
+	private AccessMode endGrant()
+	{
+		fGranted = null;
+
+		if (fWaiters.isEmpty() || fRequested)
+		{
+			return null;
+		}
+
+		fRequested	   = true;
+		fRequestedMode = fWaiters.peek().fMode;
+
+		return fRequestedMode;
+	}
+
+	/**
+	 * Gives the critical section back to the controller.
+	 *
+	 * @param pRequest - The access to ask for again, or null.
+	 */
+	private void giveBack(AccessMode pRequest)
+	{
+		// Asking before releasing lets the controller serve the next callers from this visit of the Token.
+		if (pRequest != null)
+		{
+			fMutexController.requestCriticalSection(pRequest);
+		}
+
+		fMutexController.releaseCriticalSection();
+	}
+
+	/**
+	 * Called by the controller when the critical section is ours. It goes to the
+	 * callers waiting for it, or back to the controller if none of them can use it.
+	 */
+	@Override
+	public void doCriticalSection()
+	{
+		AccessMode lRequest;
+
+		synchronized (this)
+		{
+			fRequested = false;
+			fGranted   = fRequestedMode;
+
+			this.admit();
+
+			if (fWriter != null || !fReadHolds.isEmpty())
+			{
+				return;
+			}
+
+			// Nobody that waits can use it.
+			lRequest = this.endGrant();
+		}
+
+		this.giveBack(lRequest);
+	}
+
+	/**
+	 * Returns the executor the critical section is granted on.
+	 */
+	@Override
+	public Executor getCriticalSectionExecutor()
+	{
+		return fGrantExecutor;
+	}
+
+	/**
+	 * Returns true iff a caller holds one of the locks.
+	 */
+	@Override
+	public synchronized boolean inCriticalSection()
+	{
+		return fGranted != null;
+	}
+
+	/**
+	 * @return An interface to the gui functions of the mutex controller.
+	 */
+	public IGUItoMutex getMutexController()
+	{
+		return fMutexController.getGUIinterface();
+	}
+}
@@ -0,0 +1,51 @@
+package in4150.application;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A Grant is the permission to be in the critical section, handed out by a
+ * DistributedLock. The holder must release it exactly once when it leaves the
+ * critical section; the Token is only passed on after that.
+ */
+public final class Grant
+{
+	// The lock that handed out this Grant.
+	private final DistributedLock fLock;
+
+	// True once the Grant was released.
+	private final AtomicBoolean fReleased;
+
+	/**
+	 * Constructs a new Grant of the provided lock.
+	 *
+	 * @param pLock - The lock handing out the Grant.
+	 */
+	Grant(DistributedLock pLock)
+	{
+		fLock		= pLock;
+		fReleased	= new AtomicBoolean(false);
+	}
+
+	/**
+	 * @return true iff the Grant was not released yet.
+	 */
+	public boolean isHeld()
+	{
+		return !fReleased.get();
+	}
+
+	/**
+	 * Leaves the critical section.
+	 *
+	 * @throws IllegalStateException If the Grant was already released.
+	 */
+	public void release()
+	{
+		if (!fReleased.compareAndSet(false, true))
+		{
+			throw new IllegalStateException("Grant released twice");
+		}
+
+		fLock.release(this);
+	}
+}
@@ -12,10 +12,33 @@ import in4150.control.gui.IGUItoMutex;
 public interface IApplicationToMutex
 {
 	/**
-	 * This function requests permission to enter the critical section.
+	 * This function requests permission to enter the critical section exclusively.
 	 */
 	public void requestCriticalSection();
 
+	/**
+	 * This function requests permission to enter the critical section. Processes
+	 * that request SHARED access may be in their critical sections at the same
+	 * time, a process that requests EXCLUSIVE access is alone in its.
+	 * 
+	 * @param pMode - How the application will use its critical section.
+	 */
+	public void requestCriticalSection(AccessMode pMode);
+
+	/**
+	 * This function takes the critical section right away if it can be granted without
+	 * asking the other processes, and does nothing otherwise. A critical section taken
+	 * this way is not passed to doCriticalSection: the caller holds it on return, and
+	 * must release it. The caller waits for the controller to decide, never for the
+	 * other processes, so it must not be the thread running the controller. A controller
+	 * without a token, like the MaekawaMutex, always asks, so it always returns false.
+	 * 
+	 * @param pMode - How the application will use its critical section.
+	 * 
+	 * @return true iff the critical section was granted.
+	 */
+	public boolean tryRequestCriticalSection(AccessMode pMode);
+
 	/**
 	 * This function asks whether or not the application has permission to enter
 	 * the critical section right now.
@@ -24,6 +47,19 @@ public interface IApplicationToMutex
 	 */
 	public boolean canEnterCriticalSection();
 
+	/**
+	 * This function gives up the critical section granted by doCriticalSection. It may
+	 * be called from doCriticalSection itself, or later from any other thread.
+	 */
+	public void releaseCriticalSection();
+
+	/**
+	 * This function disconnects the controller from the other processes, and frees
+	 * what it registered in this one. A critical section held or requested here is
+	 * lost, so only a controller that nobody uses should be closed.
+	 */
+	public void close();
+
 	/**
 	 * This function requests the user interface monitor controls for this layer.
 	 * 
@@ -0,0 +1,19 @@
+package in4150.application;
+
+import in4150.mutex.IMutexToApplication;
+
+/**
+ * An IMutexFactory creates the Mutual Exclusion controller of an application, so the
+ * application does not have to know how the controller is built.
+ */
+public interface IMutexFactory
+{
+	/**
+	 * This function creates a controller for the provided application.
+	 *
+	 * @param pApplication - The application that wants to negotiate for access to Critical Section.
+	 *
+	 * @return The controller, connected to the others.
+	 */
+	public IApplicationToMutex createMutex(IMutexToApplication pApplication);
+}
@@ -0,0 +1,238 @@
+package in4150.application;
+
+import in4150.mutex.IMutexToApplication;
+import in4150.mutex.MutexAlgorithm;
+import in4150.network.INetworkFactory;
+
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A LoadProcess is a process without a user interface that keeps requesting its
+ * critical section, to put load on the Mutual Exclusion controllers.
+ *
+ * After leaving its critical section, the process waits a random think time and
+ * requests it again. Think times are exponentially distributed, so a process that
+ * does not wait for the critical section requests it at the provided rate. The
+ * process spends a fixed time inside its critical section, and reports entering and
+ * leaving it to the shared LoadStatistics. A fraction of the requests, drawn at random,
+ * is for SHARED access, the rest for EXCLUSIVE access.
+ */
+public class LoadProcess implements IMutexToApplication
+{
+	// The controller which guards access to the critical section.
+	private final IApplicationToMutex fMutexController;
+
+	// The thread running our critical section, apart from the threads of the network.
+	private final ExecutorService fCriticalSectionExecutor;
+
+	// Runs the requests after their think time, may be shared with other processes.
+	private final ScheduledExecutorService fScheduler;
+
+	// Collects what we see of the critical section.
+	private final LoadStatistics fStatistics;
+
+	// The number of requests per second while thinking, or 0 to request at once.
+	private final double fRate;
+
+	// The time spent inside the critical section, in nanoseconds.
+	private final long fDuration;
+
+	// The fraction of the requests for SHARED access.
+	private final double fReadFraction;
+
+	// Draws the think times.
+	private final Random fRandom;
+
+	// The time of our outstanding request.
+	private volatile long fRequestTime;
+
+	// The access asked for by our outstanding request.
+	private volatile AccessMode fMode;
+
+	// A flag indicating to ourself whether we are in the critical section.
+	private volatile boolean fInCriticalSection;
+
+	// A flag indicating to ourself whether we keep requesting.
+	private volatile boolean fRunning;
+
+	/**
+	 * Constructs a new LoadProcess, and its controller connected to the others. All
+	 * its requests are for EXCLUSIVE access.
+	 *
+	 * @param pAlgorithm - The Mutual Exclusion algorithm of the controller.
+	 * @param pNetworkFactory - Creates the network used to reach the other controllers.
+	 * @param pProcesses - The number of processes taking part.
+	 * @param pScheduler - Runs the requests after their think time.
+	 * @param pStatistics - Collects what the process sees of the critical section.
+	 * @param pRate - The number of requests per second while thinking, or 0 to request at once.
+	 * @param pDuration - The time spent inside the critical section, in nanoseconds.
+	 */
+	public LoadProcess(MutexAlgorithm pAlgorithm, INetworkFactory pNetworkFactory, int pProcesses,
+					   ScheduledExecutorService pScheduler, LoadStatistics pStatistics, double pRate, long pDuration)
+	{
+		this(pAlgorithm, pNetworkFactory, pProcesses, pScheduler, pStatistics, pRate, pDuration, 0);
+	}
+
+	/**
+	 * Constructs a new LoadProcess, and its controller connected to the others.
+	 *
+	 * @param pAlgorithm - The Mutual Exclusion algorithm of the controller.
+	 * @param pNetworkFactory - Creates the network used to reach the other controllers.
+	 * @param pProcesses - The number of processes taking part.
+	 * @param pScheduler - Runs the requests after their think time.
+	 * @param pStatistics - Collects what the process sees of the critical section.
+	 * @param pRate - The number of requests per second while thinking, or 0 to request at once.
+	 * @param pDuration - The time spent inside the critical section, in nanoseconds.
+	 * @param pReadFraction - The fraction of the requests for SHARED access, from 0 to 1.
+	 */
+	public LoadProcess(MutexAlgorithm pAlgorithm, INetworkFactory pNetworkFactory, int pProcesses,
+					   ScheduledExecutorService pScheduler, LoadStatistics pStatistics, double pRate, long pDuration,
+					   double pReadFraction)
+	{
+		if (pReadFraction < 0 || pReadFraction > 1)
+		{
+			throw new IllegalArgumentException("Read fraction " + pReadFraction);
+		}
+
+		fCriticalSectionExecutor	= Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable pTask)
+			{
+				Thread lThread = new Thread(pTask, "LoadProcess critical section");
+				lThread.setDaemon(true);
+				return lThread;
+			}
+		});
+		fScheduler					= pScheduler;
+		fStatistics					= pStatistics;
+		fRate						= pRate;
+		fDuration					= pDuration;
+		fReadFraction				= pReadFraction;
+		fRandom						= new Random();
+		fMode						= AccessMode.EXCLUSIVE;
+		fInCriticalSection			= false;
+		fRunning					= false;
+		fMutexController			= pAlgorithm.createMutex(this, pNetworkFactory, pProcesses);
+	}
+
+	/**
+	 * Starts requesting the critical section, after a first think time.
+	 */
+	public void start()
+	{
+		fRunning = true;
+
+		this.think();
+	}
+
+	/**
+	 * Stops requesting the critical section. An outstanding request is still served.
+	 */
+	public void stop()
+	{
+		fRunning = false;
+	}
+
+	/**
+	 * Stops the process, disconnects its controller from the others and stops the
+	 * thread of our critical section. An outstanding request is lost.
+	 */
+	public void close()
+	{
+		fRunning = false;
+
+		fMutexController.close();
+		fCriticalSectionExecutor.shutdown();
+	}
+
+	/**
+	 * Requests the critical section after a random think time, if still running.
+	 */
+	private void think()
+	{
+		if (!fRunning)
+		{
+			return;
+		}
+
+		final AccessMode lMode = fRandom.nextDouble() < fReadFraction ? AccessMode.SHARED : AccessMode.EXCLUSIVE;
+
+		Runnable lRequest = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				fRequestTime = System.nanoTime();
+				fMode		 = lMode;
+
+				fMutexController.requestCriticalSection(lMode);
+			}
+		};
+
+		if (fRate > 0)
+		{
+			long lThinkTime = (long)(-Math.log(1 - fRandom.nextDouble()) / fRate * 1e9);
+
+			fScheduler.schedule(lRequest, lThinkTime, TimeUnit.NANOSECONDS);
+		}
+		else
+		{
+			lRequest.run();
+		}
+	}
+
+	/**
+	 * Implements the critical section of this process. Spends the fixed time inside,
+	 * and thinks about the next request once it has left.
+	 */
+	@Override
+	public void doCriticalSection()
+	{
+		if (fMutexController.canEnterCriticalSection())
+		{
+			fInCriticalSection = true;
+			fStatistics.enter(fRequestTime, fMode);
+
+			// Stay until the end, parking may return early.
+			long lEnd = System.nanoTime() + fDuration;
+			while (System.nanoTime() < lEnd)
+			{
+				LockSupport.parkNanos(lEnd - System.nanoTime());
+			}
+
+			fStatistics.exit(fMode);
+			fInCriticalSection = false;
+		}
+
+		// Always give the critical section back, so the Token moves on.
+		fMutexController.releaseCriticalSection();
+
+		this.think();
+	}
+
+	/**
+	 * Returns the thread our critical section runs on.
+	 */
+	@Override
+	public Executor getCriticalSectionExecutor()
+	{
+		return fCriticalSectionExecutor;
+	}
+
+	/**
+	 * Returns true iff this process is in its critical section.
+	 */
+	@Override
+	public boolean inCriticalSection()
+	{
+		return fInCriticalSection;
+	}
+}
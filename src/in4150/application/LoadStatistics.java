@@ -0,0 +1,226 @@
+package in4150.application;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The LoadStatistics collect what the LoadProcesses of one run see of their critical
+ * sections: how long each waited to enter, how long the critical section stood empty
+ * while someone waited, and how often a process entered while it should not have.
+ * Readers may share the critical section, so only entering while a writer is in, or
+ * writing while anyone is, counts against the controller.
+ *
+ * Only critical sections entered while measuring are counted, so a run can leave
+ * out its start. All times are in nanoseconds of System.nanoTime.
+ */
+public class LoadStatistics
+{
+	/**
+	 * A growing list of samples.
+	 */
+	private static class Samples
+	{
+		// The samples, followed by free space.
+		private long[] fValues = new long[1024];
+
+		// The number of samples.
+		private int fSize = 0;
+
+		synchronized void add(long pValue)
+		{
+			if (fSize == fValues.length)
+			{
+				fValues = Arrays.copyOf(fValues, fSize * 2);
+			}
+
+			fValues[fSize++] = pValue;
+		}
+
+		synchronized int size()
+		{
+			return fSize;
+		}
+
+		synchronized long[] sorted()
+		{
+			long[] lSorted = Arrays.copyOf(fValues, fSize);
+
+			Arrays.sort(lSorted);
+
+			return lSorted;
+		}
+	}
+
+	// The number of processes in their critical section for SHARED access.
+	private final AtomicInteger fReaders;
+
+	// The number of processes in their critical section for EXCLUSIVE access.
+	private final AtomicInteger fWriters;
+
+	// The number of times a process entered while it should have been kept out.
+	private final AtomicInteger fViolations;
+
+	// The number of critical sections counted that were for SHARED access.
+	private final AtomicInteger fSharedSections;
+
+	// The time from each request to entering the critical section.
+	private final Samples fLatencies;
+
+	// The time from a process leaving to the next entering, if that one was already waiting.
+	private final Samples fSynchronizationDelays;
+
+	// The time the last process left its critical section.
+	private volatile long fLastExit;
+
+	// A flag indicating that critical sections are counted.
+	private volatile boolean fMeasuring;
+
+	/**
+	 * Constructs new, empty LoadStatistics, not yet measuring.
+	 */
+	public LoadStatistics()
+	{
+		fReaders				= new AtomicInteger();
+		fWriters				= new AtomicInteger();
+		fViolations				= new AtomicInteger();
+		fSharedSections			= new AtomicInteger();
+		fLatencies				= new Samples();
+		fSynchronizationDelays	= new Samples();
+		fLastExit				= System.nanoTime();
+		fMeasuring				= false;
+	}
+
+	/**
+	 * Starts or stops counting critical sections.
+	 *
+	 * @param pMeasuring - True iff critical sections entered from now on are counted.
+	 */
+	public void setMeasuring(boolean pMeasuring)
+	{
+		fMeasuring = pMeasuring;
+	}
+
+	/**
+	 * Function called by a process entering its critical section for EXCLUSIVE access.
+	 *
+	 * @param pRequestTime - The time the process requested it.
+	 */
+	public void enter(long pRequestTime)
+	{
+		this.enter(pRequestTime, AccessMode.EXCLUSIVE);
+	}
+
+	/**
+	 * Function called by a process entering its critical section.
+	 *
+	 * @param pRequestTime - The time the process requested it.
+	 * @param pMode - The access the process was granted.
+	 */
+	public void enter(long pRequestTime, AccessMode pMode)
+	{
+		long lNow = System.nanoTime();
+
+		// Each counts itself before looking at the others, so of a reader and a writer
+		// entering at once, at least one sees the other.
+		boolean lViolation;
+		if (pMode == AccessMode.SHARED)
+		{
+			fReaders.incrementAndGet();
+			lViolation = fWriters.get() != 0;
+		}
+		else
+		{
+			lViolation = fWriters.incrementAndGet() != 1 || fReaders.get() != 0;
+		}
+
+		if (lViolation)
+		{
+			fViolations.incrementAndGet();
+		}
+
+		if (fMeasuring)
+		{
+			fLatencies.add(lNow - pRequestTime);
+
+			if (pMode == AccessMode.SHARED)
+			{
+				fSharedSections.incrementAndGet();
+			}
+
+			// If the last process left after we asked, we waited for the hand over.
+			long lLastExit = fLastExit;
+			if (lLastExit > pRequestTime)
+			{
+				fSynchronizationDelays.add(lNow - lLastExit);
+			}
+		}
+	}
+
+	/**
+	 * Function called by a process leaving its critical section for EXCLUSIVE access.
+	 */
+	public void exit()
+	{
+		this.exit(AccessMode.EXCLUSIVE);
+	}
+
+	/**
+	 * Function called by a process leaving its critical section.
+	 *
+	 * @param pMode - The access the process was granted.
+	 */
+	public void exit(AccessMode pMode)
+	{
+		fLastExit = System.nanoTime();
+
+		if (pMode == AccessMode.SHARED)
+		{
+			fReaders.decrementAndGet();
+		}
+		else
+		{
+			fWriters.decrementAndGet();
+		}
+	}
+
+	/**
+	 * @return The number of critical sections counted.
+	 */
+	public int getCriticalSections()
+	{
+		return fLatencies.size();
+	}
+
+	/**
+	 * @return The number of critical sections counted that were for SHARED access.
+	 */
+	public int getSharedCriticalSections()
+	{
+		return fSharedSections.get();
+	}
+
+	/**
+	 * @return The number of times a process entered while a writer was in, or wrote
+	 * while anyone was.
+	 */
+	public int getViolations()
+	{
+		return fViolations.get();
+	}
+
+	/**
+	 * @return The time from each request to entering, in increasing order.
+	 */
+	public long[] getLatencies()
+	{
+		return fLatencies.sorted();
+	}
+
+	/**
+	 * @return The synchronization delays, in increasing order.
+	 */
+	public long[] getSynchronizationDelays()
+	{
+		return fSynchronizationDelays.sorted();
+	}
+}
@@ -3,7 +3,12 @@ package in4150.application;
 import in4150.control.gui.IGUItoApplication;
 import in4150.control.gui.IGUItoMutex;
 import in4150.mutex.IMutexToApplication;
-import in4150.mutex.SuzukiKasamiMutex;
+import in4150.mutex.MutexAlgorithm;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * A MutexProcess is a Process that has shares a critical section with
@@ -27,11 +32,14 @@ public class MutexProcess implements IGUItoApplication, IMutexToApplication, Run
 	// The controller which guards access to the critical section.
 	private final IApplicationToMutex fMutexController;
 
+	// The thread running our critical section, apart from the threads of the network.
+	private final ExecutorService fCriticalSectionExecutor;
+
 	// A flag indicating to ourself whether we have requested access to the critical section.
-	private boolean fRequestedCriticalSection;
+	private volatile boolean fRequestedCriticalSection;
 
 	// A flag indicating to ourself whether we are in the critical section.
-	private boolean fInCriticalSection;
+	private volatile boolean fInCriticalSection;
 
 	// A flag indicating to ourself whether we are actively running.
 	private boolean fRunning;
@@ -42,10 +50,32 @@ public class MutexProcess implements IGUItoApplication, IMutexToApplication, Run
 	 */
 	public MutexProcess(boolean pManualMode)
 	{
-		fMutexController			= new SuzukiKasamiMutex(this, pManualMode);
+		this(pManualMode, MutexAlgorithm.SUZUKI_KASAMI);
+	}
+
+	/**
+	 * Constructs a new MutexProcess. This function initializes the process and 
+	 * its Mutual Exclusion controller.
+	 * 
+	 * @param pManualMode - Debug variable. If true, the controller uses the debug network.
+	 * @param pAlgorithm - The Mutual Exclusion algorithm of the controller.
+	 */
+	public MutexProcess(boolean pManualMode, MutexAlgorithm pAlgorithm)
+	{
+		fCriticalSectionExecutor	= Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable pTask)
+			{
+				Thread lThread = new Thread(pTask, "MutexProcess critical section");
+				lThread.setDaemon(true);
+				return lThread;
+			}
+		});
 		fRequestedCriticalSection	= false;
 		fInCriticalSection			= false;
 		fRunning					= false;
+		fMutexController			= pAlgorithm.createMutex(this, pManualMode);
 	}
 
 	/**
@@ -135,6 +165,30 @@ public class MutexProcess implements IGUItoApplication, IMutexToApplication, Run
 			// We are now leaving our CS.
 			fInCriticalSection		  = false;
 		}
+
+		// Always give the critical section back, so the Token moves on.
+		fMutexController.releaseCriticalSection();
+	}
+
+	/**
+	 * Stops the process, disconnects its controller from the others and stops the
+	 * thread of our critical section.
+	 */
+	public void close()
+	{
+		fRunning = false;
+
+		fMutexController.close();
+		fCriticalSectionExecutor.shutdown();
+	}
+
+	/**
+	 * Returns the thread our critical section runs on.
+	 */
+	@Override
+	public Executor getCriticalSectionExecutor()
+	{
+		return fCriticalSectionExecutor;
 	}
 
 	/**
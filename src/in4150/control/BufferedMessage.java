@@ -1,18 +1,47 @@
 package in4150.control;
 
 import in4150.network.Message;
+import in4150.network.wire.IWireFormat;
+import in4150.network.wire.WireCodec;
+import in4150.network.wire.WireInput;
+import in4150.network.wire.WireOutput;
+
+import java.io.IOException;
 
 public class BufferedMessage extends Message
 {
 	//
 	private static final long serialVersionUID = 3786635339497071400L;
 
+	// Writes the buffered message, its sender and its receiver.
+	public static final IWireFormat<BufferedMessage> WIRE_FORMAT = new IWireFormat<BufferedMessage>()
+	{
+		@Override
+		public void write(BufferedMessage pMessage, WireOutput pOutput)
+		{
+			WireCodec.write(pMessage.fMessage, pOutput);
+			pOutput.writeVarInt(pMessage.fSender);
+			pOutput.writeVarInt(pMessage.fReceiver);
+		}
+
+		@Override
+		public BufferedMessage read(WireInput pInput) throws IOException
+		{
+			Message lMessage = (Message)WireCodec.read(pInput);
+			int lSender		 = pInput.readVarInt();
+
+			return new BufferedMessage(lMessage, lSender, pInput.readVarInt());
+		}
+	};
+
 	private final Message fMessage;
+	private final int fSender;
 	private final int fReceiver;
 
-	public BufferedMessage(Message pMessage, int pReceiver)
+	public BufferedMessage(Message pMessage, int pSender, int pReceiver)
 	{
 		fMessage	= pMessage;
+		fSender		= pSender;
 		fReceiver	= pReceiver;
 	}
 
@@ -21,15 +50,28 @@ public class BufferedMessage extends Message
 		return fMessage;
 	}
 
+	public int getSender()
+	{
+		return fSender;
+	}
+
 	public int getReceiver()
 	{
 		return fReceiver;
 	}
 
+	/**
+	 * @return The name of the type of the buffered message.
+	 */
+	public String getType()
+	{
+		return fMessage.getClass().getSimpleName();
+	}
+
 	@Override
 	public String toString()
 	{
-		String lResult = fMessage.toString() + " to Process " + fReceiver;
+		String lResult = fMessage.toString() + " from Process " + fSender + " to Process " + fReceiver;
 
 		return lResult;
 	}
@@ -11,12 +11,29 @@ public class DebugRMINetwork extends RMINetwork
 		super(pMutexLayer);
 	}
 
+	/**
+	 * broadcastMessage sends the provided message to ALL others, but not to ourselves.
+	 * Every copy is buffered on its own, so the buffer only shows messages that are
+	 * really sent.
+	 */
+	@Override
+	public void broadcastMessage(Message pMessage)
+	{
+		for (int lID : this.getConnectedIDs())
+		{
+			if (lID != this.getOwnID())
+			{
+				this.sendMessage(pMessage, lID);
+			}
+		}
+	}
+
 	/**
 	 * sendMessage sends the provided message to the intended receiver.
 	 */
 	@Override
 	public void sendMessage(Message pMessage, int pReceiver)
 	{
-		super.sendMessage(new BufferedMessage(pMessage, pReceiver), 0);
+		super.sendMessage(new BufferedMessage(pMessage, this.getOwnID(), pReceiver), 0);
 	}
 }
\ No newline at end of file
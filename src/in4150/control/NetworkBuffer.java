@@ -1,6 +1,7 @@
 package in4150.control;
 
 import in4150.control.gui.IGUItoDebugNetwork;
+import in4150.control.gui.IMessageBufferListener;
 import in4150.network.rmi.IRMIClient;
 import in4150.network.rmi.RMIAddress;
 import in4150.network.rmi.RMISocket;
@@ -8,16 +9,22 @@ import in4150.network.rmi.RMISocket;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-public class NetworkBuffer extends IGUItoDebugNetwork implements IRMIClient
+public class NetworkBuffer implements IGUItoDebugNetwork, IRMIClient
 {
+	// The messages held, in the order they arrived.
 	private final List<BufferedMessage> fMessages;
 
+	// The listeners following every change of the buffer.
+	private final List<IMessageBufferListener> fListeners;
+
 	private RMISocket fSocket;
 
 	public NetworkBuffer()
 	{
-		fMessages = new ArrayList<BufferedMessage>();
+		fMessages	= new ArrayList<BufferedMessage>();
+		fListeners	= new CopyOnWriteArrayList<IMessageBufferListener>();
 
 		try
 		{
@@ -30,22 +37,26 @@ public class NetworkBuffer extends IGUItoDebugNetwork implements IRMIClient
 		}
 	}
 
-	public void deliverMessage(int pIndex)
+	public synchronized void deliverMessage(int pIndex)
 	{
 		BufferedMessage lMessage = fMessages.remove(pIndex);
 
 		fSocket.send(new RMIAddress(Integer.toString(lMessage.getReceiver())), lMessage.getMessage(), 0);
 
-		this.setChanged();
-		this.notifyObservers(fMessages.toArray());
+		for (IMessageBufferListener lListener : fListeners)
+		{
+			lListener.messageDelivered(lMessage);
+		}
 	}
 
-	private void bufferMessage(BufferedMessage pMessage)
+	private synchronized void bufferMessage(BufferedMessage pMessage)
 	{
 		fMessages.add(pMessage);
 
-		this.setChanged();
-		this.notifyObservers(fMessages.toArray());
+		for (IMessageBufferListener lListener : fListeners)
+		{
+			lListener.messageBuffered(pMessage);
+		}
 	}
 
 	@Override
@@ -59,18 +70,48 @@ public class NetworkBuffer extends IGUItoDebugNetwork implements IRMIClient
 		}
 	}
 
+	/**
+	 * A delivered message that did not reach its receiver is dropped, the receiver has
+	 * most likely left.
+	 */
 	@Override
-	public void deliverMessage(BufferedMessage pMessage)
+	public void undeliverable(RMIAddress pTo, Exception pCause)
 	{
-		if (fMessages.contains(pMessage))
+		System.err.println("NetworkBuffer could not deliver to " + pTo + ": " + pCause);
+	}
+
+	@Override
+	public synchronized void deliverMessage(BufferedMessage pMessage)
+	{
+		// Messages are mostly delivered oldest first, so the search ends early.
+		int lIndex = fMessages.indexOf(pMessage);
+
+		if (lIndex != -1)
+		{
+			this.deliverMessage(lIndex);
+		}
+	}
+
+	@Override
+	public synchronized List<BufferedMessage> getMessageBuffer()
+	{
+		return new ArrayList<BufferedMessage>(fMessages);
+	}
+
+	@Override
+	public synchronized void addListener(IMessageBufferListener pListener)
+	{
+		fListeners.add(pListener);
+
+		for (BufferedMessage lMessage : fMessages)
 		{
-			this.deliverMessage(fMessages.indexOf(pMessage));
+			pListener.messageBuffered(lMessage);
 		}
 	}
 
 	@Override
-	public List<BufferedMessage> getMessageBuffer()
+	public void removeListener(IMessageBufferListener pListener)
 	{
-		return fMessages;
+		fListeners.remove(pListener);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,84 @@
+package in4150.control.gui;
+
+import in4150.control.gui.process.ProcessPanel;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * The FrameUpdater brings the ProcessPanels up to date on the event dispatch thread,
+ * at most once per frame. Panels are marked dirty from any thread when the state they
+ * show changes; the first mark of a frame starts a timer, and when it fires every
+ * dirty panel is updated. Panels that did not change are left alone. A panel marks
+ * itself only once until it is updated, so a busy process costs one update a frame.
+ */
+public class FrameUpdater implements ActionListener
+{
+	// The time between two updates, in milliseconds.
+	private static final int FRAME_MILLIS = 16;
+
+	// The panels marked dirty since the last update.
+	private final Queue<ProcessPanel> fDirty;
+
+	// True while an update is scheduled.
+	private final AtomicBoolean fScheduled;
+
+	// Fires the update on the event dispatch thread.
+	private final Timer fTimer;
+
+	/**
+	 * Constructs a new FrameUpdater, without any dirty panels.
+	 */
+	public FrameUpdater()
+	{
+		fDirty		= new ConcurrentLinkedQueue<ProcessPanel>();
+		fScheduled	= new AtomicBoolean(false);
+		fTimer		= new Timer(FRAME_MILLIS, this);
+
+		fTimer.setRepeats(false);
+	}
+
+	/**
+	 * Marks a panel to be updated in the next frame. May be called from any thread.
+	 *
+	 * @param pPanel - The panel whose state changed.
+	 */
+	public void markDirty(ProcessPanel pPanel)
+	{
+		fDirty.add(pPanel);
+
+		if (fScheduled.compareAndSet(false, true))
+		{
+			SwingUtilities.invokeLater(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					fTimer.start();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Updates the dirty panels, on the event dispatch thread.
+	 */
+	@Override
+	public void actionPerformed(ActionEvent pEvent)
+	{
+		// Marks from now on need another frame.
+		fScheduled.set(false);
+
+		ProcessPanel lPanel;
+		while ((lPanel = fDirty.poll()) != null)
+		{
+			lPanel.updateNow();
+		}
+	}
+}
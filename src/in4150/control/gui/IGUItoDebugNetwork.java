@@ -3,11 +3,23 @@ package in4150.control.gui;
 import in4150.control.BufferedMessage;
 
 import java.util.List;
-import java.util.Observable;
 
-public abstract class IGUItoDebugNetwork extends Observable
+public interface IGUItoDebugNetwork
 {
-	public abstract List<BufferedMessage> getMessageBuffer();
+	/**
+	 * @return A copy of the messages in the buffer, in the order they arrived.
+	 */
+	public List<BufferedMessage> getMessageBuffer();
 
-	public abstract void deliverMessage(BufferedMessage pMessage);
+	public void deliverMessage(BufferedMessage pMessage);
+
+	/**
+	 * Tells the listener about every message in the buffer now, and then about every
+	 * message buffered or delivered from here on.
+	 *
+	 * @param pListener - The listener to add.
+	 */
+	public void addListener(IMessageBufferListener pListener);
+
+	public void removeListener(IMessageBufferListener pListener);
 }
\ No newline at end of file
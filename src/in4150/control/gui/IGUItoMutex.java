@@ -1,5 +1,7 @@
 package in4150.control.gui;
 
+import in4150.mutex.IMutexListener;
+import in4150.mutex.MutexSnapshot;
 import in4150.mutex.VectorClock;
 
 public interface IGUItoMutex
@@ -9,4 +11,10 @@ public interface IGUItoMutex
 	public boolean hasToken();
 
 	public VectorClock getRequests();
+
+	public MutexSnapshot getSnapshot();
+
+	public void addListener(IMutexListener pListener);
+
+	public void removeListener(IMutexListener pListener);
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+package in4150.control.gui;
+
+import in4150.control.BufferedMessage;
+
+/**
+ * An IMessageBufferListener follows the messages held by a debug network one change
+ * at a time, so it never has to look at the whole buffer again.
+ *
+ * The listener is called on the thread changing the buffer, while the buffer is
+ * locked. It should only record the change, and do any real work elsewhere.
+ */
+public interface IMessageBufferListener
+{
+	/**
+	 * This function is called after a message was added to the end of the buffer.
+	 *
+	 * @param pMessage - The message buffered.
+	 */
+	public void messageBuffered(BufferedMessage pMessage);
+
+	/**
+	 * This function is called after a message was taken from the buffer to be delivered.
+	 *
+	 * @param pMessage - The message delivered.
+	 */
+	public void messageDelivered(BufferedMessage pMessage);
+}
@@ -4,11 +4,9 @@ import in4150.control.gui.network.NetworkPanel;
 import in4150.control.gui.process.ProcessPanel;
 
 import java.awt.GridLayout;
-import java.util.ArrayList;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
-import javax.swing.SwingWorker;
 
 /**
  * The MutexView implements the overall Frame used to display the operation of the
@@ -16,6 +14,9 @@ import javax.swing.SwingWorker;
  * 
  * Can be used to perform manual use cases.
  * 
+ * The process panels follow the changes their controllers publish, and are updated
+ * together by a FrameUpdater, at most once per frame.
+ * 
  * @author Frits de Nijs
  * @author Peter Dijkshoorn
  */
@@ -24,7 +25,8 @@ public class MutexView extends JFrame
 	// Unique Serial ID.
 	private static final long serialVersionUID = -3820402804045322410L;
 
-	private ArrayList<ProcessPanel> fProcesses;
+	// Brings the process panels up to date when their processes change.
+	private final FrameUpdater fUpdater;
 
 	/**
 	 * Constructs a single frame containing two panels, one for all the processes,
@@ -42,10 +44,11 @@ public class MutexView extends JFrame
 		// Set the layout to a single row.
 		this.setLayout(new GridLayout(1,0));
 
+		fUpdater = new FrameUpdater();
+
 		// If we have processes to display,
 		if (pProcesses != null)
 		{
-			fProcesses = new ArrayList<ProcessPanel>();
 			JPanel lProcessGroup = new JPanel();
 			lProcessGroup.setLayout(new GridLayout(0, 1));
 
@@ -54,9 +57,7 @@ public class MutexView extends JFrame
 			{
 				if (lProcess != null)
 				{
-					ProcessPanel lPanel = new ProcessPanel(lProcess);
-					fProcesses.add(lPanel);
-					lProcessGroup.add(lPanel);
+					lProcessGroup.add(new ProcessPanel(lProcess, fUpdater));
 				}
 			}
 
@@ -69,58 +70,5 @@ public class MutexView extends JFrame
 			// Add a NetworkPanel.
 			this.add(new NetworkPanel(pNetwork));
 		}
-
-		// If we have processes to display,
-		if (pProcesses != null)
-		{
-			// Start the update task.
-			DataUpdateTask lUpdateTask = new DataUpdateTask();
-			lUpdateTask.execute();
-		}
-	}
-
-	/**
-	 * The DataUpdateTask is a background thread responsible
-	 * for keeping the GUI up to date with the actual system state.
-	 * 
-	 * @author Frits de Nijs
-	 */
-	class DataUpdateTask extends SwingWorker<Void, Void>
-	{
-		/**
-		 * Equivalent to run in meaning, this function simply handles the updates
-		 * in an infinite loop, waiting some time every cycle.
-		 */
-		@Override
-		protected Void doInBackground()
-		{
-			// If we ever decide to allow stopping only the GUI, this allows leaving the loop.
-			try
-			{
-			while (!this.isCancelled())
-			{
-				for (ProcessPanel lPanel : fProcesses)
-				{
-					lPanel.updateNow();
-				}
-
-				// Make the update visible.
-				if (isVisible()) repaint();
-
-				try
-				{
-					Thread.sleep(100);
-				}
-				catch (InterruptedException e)
-				{
-				}
-			}
-			}
-			catch (Exception e)
-			{
-				e.printStackTrace();
-			}
-			return null;
-		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,104 @@
+package in4150.control.gui.network;
+
+import in4150.control.BufferedMessage;
+
+/**
+ * A MessageFilter selects the buffered messages shown by the NetworkPanel by one of
+ * their properties. Every filter but ALL has an index in the MessageListModel.
+ */
+public enum MessageFilter
+{
+	// Shows every message.
+	ALL("All")
+	{
+		@Override
+		public Object keyOf(BufferedMessage pMessage)
+		{
+			return null;
+		}
+
+		@Override
+		public Object parseKey(String pText)
+		{
+			return null;
+		}
+	},
+
+	// Shows the messages of one sender.
+	SENDER("Sender")
+	{
+		@Override
+		public Object keyOf(BufferedMessage pMessage)
+		{
+			return pMessage.getSender();
+		}
+
+		@Override
+		public Object parseKey(String pText)
+		{
+			return Integer.valueOf(pText.trim());
+		}
+	},
+
+	// Shows the messages to one receiver.
+	RECEIVER("Receiver")
+	{
+		@Override
+		public Object keyOf(BufferedMessage pMessage)
+		{
+			return pMessage.getReceiver();
+		}
+
+		@Override
+		public Object parseKey(String pText)
+		{
+			return Integer.valueOf(pText.trim());
+		}
+	},
+
+	// Shows the messages of one type, such as Request or Token.
+	TYPE("Type")
+	{
+		@Override
+		public Object keyOf(BufferedMessage pMessage)
+		{
+			return pMessage.getType();
+		}
+
+		@Override
+		public Object parseKey(String pText)
+		{
+			return pText.trim();
+		}
+	};
+
+	// The name shown to the user.
+	private final String fLabel;
+
+	private MessageFilter(String pLabel)
+	{
+		fLabel = pLabel;
+	}
+
+	/**
+	 * @param pMessage - A buffered message.
+	 *
+	 * @return The value of the message this filter selects on.
+	 */
+	public abstract Object keyOf(BufferedMessage pMessage);
+
+	/**
+	 * @param pText - The value typed by the user.
+	 *
+	 * @return The value to select on.
+	 *
+	 * @throws NumberFormatException If the filter selects on a number, and the text is not one.
+	 */
+	public abstract Object parseKey(String pText);
+
+	@Override
+	public String toString()
+	{
+		return fLabel;
+	}
+}
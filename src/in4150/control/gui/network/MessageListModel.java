@@ -0,0 +1,275 @@
+package in4150.control.gui.network;
+
+import in4150.control.BufferedMessage;
+import in4150.control.gui.IMessageBufferListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.AbstractListModel;
+import javax.swing.SwingUtilities;
+
+/**
+ * The MessageListModel follows the buffer of a debug network one message at a time,
+ * and tells its JList only which rows were added or removed, so the list never
+ * rebuilds and only draws the rows in view.
+ *
+ * Changes arrive on the threads of the buffer and are queued; they are applied
+ * together on the event dispatch thread, which is the only thread reading the model.
+ *
+ * Every message is also kept in an index per MessageFilter, by the value it selects
+ * on. Showing the messages of one sender, receiver or type reads that index directly.
+ * Messages are mostly delivered oldest first, so removing one from the lists finds
+ * it near their start.
+ */
+public class MessageListModel extends AbstractListModel<BufferedMessage> implements IMessageBufferListener
+{
+	// Unique Serial ID.
+	private static final long serialVersionUID = 2581749063395146738L;
+
+	/**
+	 * A Change of the buffer, not yet applied to the model.
+	 */
+	private static class Change
+	{
+		// The message buffered or delivered.
+		private final BufferedMessage fMessage;
+
+		// True iff the message was buffered.
+		private final boolean fBuffered;
+
+		Change(BufferedMessage pMessage, boolean pBuffered)
+		{
+			fMessage	= pMessage;
+			fBuffered	= pBuffered;
+		}
+	}
+
+	// Changes of the buffer waiting to be applied.
+	private final Queue<Change> fChanges;
+
+	// True while applying the changes is scheduled.
+	private final AtomicBoolean fScheduled;
+
+	// All messages, in the order they were buffered.
+	private final List<BufferedMessage> fMessages;
+
+	// Per filter, the messages by the value the filter selects on, in the order they were buffered.
+	private final Map<MessageFilter, Map<Object, List<BufferedMessage>>> fIndexes;
+
+	// The filter selecting the messages shown.
+	private MessageFilter fFilter;
+
+	// The value the filter selects on.
+	private Object fKey;
+
+	/**
+	 * Constructs a new, empty MessageListModel showing all messages.
+	 */
+	public MessageListModel()
+	{
+		fChanges	= new ConcurrentLinkedQueue<Change>();
+		fScheduled	= new AtomicBoolean(false);
+		fMessages	= new ArrayList<BufferedMessage>();
+		fIndexes	= new EnumMap<MessageFilter, Map<Object, List<BufferedMessage>>>(MessageFilter.class);
+		fFilter		= MessageFilter.ALL;
+		fKey		= null;
+
+		for (MessageFilter lFilter : MessageFilter.values())
+		{
+			if (lFilter != MessageFilter.ALL)
+			{
+				fIndexes.put(lFilter, new HashMap<Object, List<BufferedMessage>>());
+			}
+		}
+	}
+
+	@Override
+	public void messageBuffered(BufferedMessage pMessage)
+	{
+		this.post(new Change(pMessage, true));
+	}
+
+	@Override
+	public void messageDelivered(BufferedMessage pMessage)
+	{
+		this.post(new Change(pMessage, false));
+	}
+
+	/**
+	 * Queues a change, and schedules applying the queue unless that is scheduled already.
+	 */
+	private void post(Change pChange)
+	{
+		fChanges.add(pChange);
+
+		if (fScheduled.compareAndSet(false, true))
+		{
+			SwingUtilities.invokeLater(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					MessageListModel.this.applyChanges();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Applies the queued changes, on the event dispatch thread.
+	 */
+	private void applyChanges()
+	{
+		// Changes from now on need another run.
+		fScheduled.set(false);
+
+		Change lChange;
+		while ((lChange = fChanges.poll()) != null)
+		{
+			if (lChange.fBuffered)
+			{
+				this.add(lChange.fMessage);
+			}
+			else
+			{
+				this.remove(lChange.fMessage);
+			}
+		}
+	}
+
+	/**
+	 * Adds a message to the end of the lists, and shows it if the filter selects it.
+	 */
+	private void add(BufferedMessage pMessage)
+	{
+		fMessages.add(pMessage);
+
+		for (Map.Entry<MessageFilter, Map<Object, List<BufferedMessage>>> lIndex : fIndexes.entrySet())
+		{
+			Object lKey = lIndex.getKey().keyOf(pMessage);
+			List<BufferedMessage> lMessages = lIndex.getValue().get(lKey);
+
+			if (lMessages == null)
+			{
+				lMessages = new ArrayList<BufferedMessage>();
+				lIndex.getValue().put(lKey, lMessages);
+			}
+
+			lMessages.add(pMessage);
+		}
+
+		if (this.selects(pMessage))
+		{
+			int lRow = this.shown().size() - 1;
+
+			this.fireIntervalAdded(this, lRow, lRow);
+		}
+	}
+
+	/**
+	 * Removes a message from the lists, and from view if it was shown.
+	 */
+	private void remove(BufferedMessage pMessage)
+	{
+		int lRow = this.selects(pMessage) ? this.shown().indexOf(pMessage) : -1;
+
+		fMessages.remove(pMessage);
+
+		for (Map.Entry<MessageFilter, Map<Object, List<BufferedMessage>>> lIndex : fIndexes.entrySet())
+		{
+			Object lKey = lIndex.getKey().keyOf(pMessage);
+			List<BufferedMessage> lMessages = lIndex.getValue().get(lKey);
+
+			if (lMessages != null)
+			{
+				lMessages.remove(pMessage);
+
+				// Forget values no message has anymore.
+				if (lMessages.isEmpty())
+				{
+					lIndex.getValue().remove(lKey);
+				}
+			}
+		}
+
+		if (lRow != -1)
+		{
+			this.fireIntervalRemoved(this, lRow, lRow);
+		}
+	}
+
+	/**
+	 * Shows only the messages the provided filter selects. Only call on the event
+	 * dispatch thread.
+	 *
+	 * @param pFilter - The filter selecting the messages shown.
+	 * @param pKey - The value the filter selects on, ignored for ALL.
+	 */
+	public void setFilter(MessageFilter pFilter, Object pKey)
+	{
+		int lOldSize = this.getSize();
+
+		fFilter	= pFilter;
+		fKey	= pKey;
+
+		int lNewSize = this.getSize();
+
+		if (lOldSize > 0)
+		{
+			this.fireIntervalRemoved(this, 0, lOldSize - 1);
+		}
+
+		if (lNewSize > 0)
+		{
+			this.fireIntervalAdded(this, 0, lNewSize - 1);
+		}
+	}
+
+	/**
+	 * @return true iff the filter selects the message.
+	 */
+	private boolean selects(BufferedMessage pMessage)
+	{
+		return fFilter == MessageFilter.ALL || fFilter.keyOf(pMessage).equals(fKey);
+	}
+
+	/**
+	 * @return The messages shown, in the order they were buffered.
+	 */
+	private List<BufferedMessage> shown()
+	{
+		if (fFilter == MessageFilter.ALL)
+		{
+			return fMessages;
+		}
+
+		List<BufferedMessage> lMessages = fIndexes.get(fFilter).get(fKey);
+
+		if (lMessages == null)
+		{
+			return Collections.emptyList();
+		}
+
+		return lMessages;
+	}
+
+	@Override
+	public int getSize()
+	{
+		return this.shown().size();
+	}
+
+	@Override
+	public BufferedMessage getElementAt(int pIndex)
+	{
+		return this.shown().get(pIndex);
+	}
+}
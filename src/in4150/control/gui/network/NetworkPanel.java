@@ -4,36 +4,58 @@ import in4150.control.BufferedMessage;
 import in4150.control.gui.IGUItoDebugNetwork;
 
 import java.awt.BorderLayout;
+import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.Observable;
-import java.util.Observer;
 
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JList;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
 import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 
-public class NetworkPanel extends JPanel implements ActionListener, Observer
+public class NetworkPanel extends JPanel implements ActionListener, ListDataListener
 {
 	// Unique Serial ID.
 	private static final long serialVersionUID = 8196794846314120471L;
 
 	// All possible (Button press) Events.
 	private static final String TRANSMIT_EVENT = "Transmit Message";
+	private static final String FILTER_EVENT = "Filter";
+
+	// The size of a row of the message list, fixed so rows out of view are never measured.
+	private static final int CELL_HEIGHT = 18;
+	private static final int CELL_WIDTH = 400;
 
 	// The Network being observed and controlled by this Frame.
 	private final IGUItoDebugNetwork fMonitoredNetwork;
 
+	// The messages in transit, as far as the filter selects them.
+	private final MessageListModel fMessageModel;
+
 	// Selection List Object showing messages in transit.
-	private final JList fMessageList;
+	private final JList<BufferedMessage> fMessageList;
 
 	// Button to force sending the selected message.
 	private final JButton fTransmitMessage;
 
+	// The property the messages shown are selected by.
+	private final JComboBox<MessageFilter> fFilterChoice;
+
+	// The value of the property the messages shown have.
+	private final JTextField fFilterKey;
+
 	// Which message was selected when it was sent.
 	private int fSelected;
 
+	// True while restoring the selection is scheduled.
+	private boolean fSelectionPending;
+
 	public NetworkPanel(IGUItoDebugNetwork pMonitoredNetwork)
 	{
 		// Initialize the frame with a title.
@@ -43,10 +65,14 @@ public class NetworkPanel extends JPanel implements ActionListener, Observer
 		fMonitoredNetwork = pMonitoredNetwork;
 
 		// Create the interface elements.
-		fMessageList	 = new JList();
+		fMessageModel	 = new MessageListModel();
+		fMessageList	 = new JList<BufferedMessage>(fMessageModel);
 		fTransmitMessage = new JButton(TRANSMIT_EVENT);
+		fFilterChoice	 = new JComboBox<MessageFilter>(MessageFilter.values());
+		fFilterKey		 = new JTextField(8);
 
-		fSelected = 0;
+		fSelected		  = 0;
+		fSelectionPending = false;
 
 		// Initialize the interface elements.
 		this.initialize();
@@ -61,16 +87,30 @@ public class NetworkPanel extends JPanel implements ActionListener, Observer
 		// Add this frame as a listener to the button events.
 		fTransmitMessage.addActionListener(this);
 
+		// Choosing a filter or typing its value applies it.
+		fFilterChoice.setActionCommand(FILTER_EVENT);
+		fFilterChoice.addActionListener(this);
+		fFilterKey.setActionCommand(FILTER_EVENT);
+		fFilterKey.addActionListener(this);
+
 		// Force the user to only select one message at a time.
 		fMessageList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		fMessageList.setFixedCellHeight(CELL_HEIGHT);
+		fMessageList.setFixedCellWidth(CELL_WIDTH);
+
+		JPanel lFilterPanel = new JPanel();
+		lFilterPanel.add(fFilterChoice);
+		lFilterPanel.add(fFilterKey);
 
 		// Set the Layout of this frame, and add the elements.
 		this.setLayout(new BorderLayout());
-		this.add(fMessageList, BorderLayout.CENTER);
+		this.add(lFilterPanel, BorderLayout.NORTH);
+		this.add(new JScrollPane(fMessageList), BorderLayout.CENTER);
 		this.add(fTransmitMessage, BorderLayout.SOUTH);
 
 		// The frame is now ready to observe changes in the Network.
-		fMonitoredNetwork.addObserver(this);
+		fMessageModel.addListDataListener(this);
+		fMonitoredNetwork.addListener(fMessageModel);
 	}
 
 	/**
@@ -86,7 +126,7 @@ public class NetworkPanel extends JPanel implements ActionListener, Observer
 		if (pEvent.getActionCommand().equals(TRANSMIT_EVENT))
 		{
 			// Retrieve the selected message.
-			BufferedMessage lMessage = (BufferedMessage)fMessageList.getSelectedValue();
+			BufferedMessage lMessage = fMessageList.getSelectedValue();
 
 			// Attempt to extract the selected index.
 			fSelected = fMessageList.getSelectedIndex();
@@ -97,23 +137,73 @@ public class NetworkPanel extends JPanel implements ActionListener, Observer
 				fMonitoredNetwork.deliverMessage(lMessage);
 			}
 		}
+		// If this was a change of the filter,
+		else if (pEvent.getActionCommand().equals(FILTER_EVENT))
+		{
+			MessageFilter lFilter = (MessageFilter)fFilterChoice.getSelectedItem();
+
+			try
+			{
+				fMessageModel.setFilter(lFilter, lFilter.parseKey(fFilterKey.getText()));
+			}
+			catch (NumberFormatException lException)
+			{
+				// Keep the filter we have until the value is a number.
+				Toolkit.getDefaultToolkit().beep();
+			}
+		}
 	}
 
 	/**
-	 * Function inherited from Observer. It is called whenever the observed Network has
-	 * changed.
-	 * 
-	 * Parameters are not used.
+	 * Functions inherited from ListDataListener. They are called whenever the messages
+	 * shown have changed, and keep a message selected.
 	 */
 	@Override
-	public void update(Observable pNetwork, Object pObject)
+	public void intervalAdded(ListDataEvent pEvent)
 	{
-		// Ask the Network for the current list of messages,
-		fMessageList.setListData((Object[])pObject);
+		this.keepSelection();
+	}
 
-		// and update the display.
-		this.repaint();
+	@Override
+	public void intervalRemoved(ListDataEvent pEvent)
+	{
+		this.keepSelection();
+	}
+
+	@Override
+	public void contentsChanged(ListDataEvent pEvent)
+	{
+		this.keepSelection();
+	}
 
-		fMessageList.setSelectedIndex(Math.min(fSelected, ((Object[])pObject).length-1));
+	/**
+	 * Selects the message now at the place of the last one sent, once the list has
+	 * handled the change itself.
+	 */
+	private void keepSelection()
+	{
+		// One check covers all changes of a batch.
+		if (fSelectionPending)
+		{
+			return;
+		}
+
+		fSelectionPending = true;
+
+		SwingUtilities.invokeLater(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				fSelectionPending = false;
+
+				int lSize = fMessageModel.getSize();
+
+				if (fMessageList.isSelectionEmpty() && lSize > 0)
+				{
+					fMessageList.setSelectedIndex(Math.max(0, Math.min(fSelected, lSize - 1)));
+				}
+			}
+		});
 	}
 }
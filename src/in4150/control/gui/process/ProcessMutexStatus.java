@@ -1,7 +1,7 @@
 package in4150.control.gui.process;
 
 import in4150.control.gui.IGUItoApplication;
-import in4150.control.gui.IGUItoMutex;
+import in4150.mutex.MutexSnapshot;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
@@ -16,19 +16,22 @@ public class ProcessMutexStatus extends JPanel
 	// Unique Serial ID.
 	private static final long serialVersionUID = -5757087529854196825L;
 
+	// The colours of the indicators when lit.
+	private static final Color REQUEST_COLOR	= new Color(220, 220, 0);
+	private static final Color TOKEN_COLOR		= new Color(0, 220, 0);
+	private static final Color CRITICAL_COLOR	= new Color(220, 0, 0);
+
 	private final Label fRequestIndicator;
 	private final Label fTokenIndicator;
 	private final Label fCriticalIndicator;
 
 	private final IGUItoApplication fApplication;
-	private final IGUItoMutex fMutex;
 
-	public ProcessMutexStatus(IGUItoApplication pApplication, IGUItoMutex pMutex)
+	public ProcessMutexStatus(IGUItoApplication pApplication)
 	{
 		super();
 
 		fApplication = pApplication;
-		fMutex		 = pMutex;
 
 		fRequestIndicator	= new Label("REQ", Label.CENTER);
 		fTokenIndicator		= new Label("TOK", Label.CENTER);
@@ -55,33 +58,30 @@ public class ProcessMutexStatus extends JPanel
 		this.add(lPanel);
 	}
 
-	public void updateNow()
+	/**
+	 * Lights the indicators for the provided state. The critical section is lit while
+	 * it is granted, the snapshot is published when that changes.
+	 *
+	 * @param pSnapshot - The latest state of the controller.
+	 */
+	public void updateNow(MutexSnapshot pSnapshot)
 	{
-		if (fApplication.requestedCriticalSection())
-		{
-			fRequestIndicator.setBackground(new Color(220, 220, 0));
-		}
-		else
-		{
-			fRequestIndicator.setBackground(null);
-		}
+		this.light(fRequestIndicator, fApplication.requestedCriticalSection(), REQUEST_COLOR);
+		this.light(fTokenIndicator, pSnapshot.hasToken(), TOKEN_COLOR);
+		this.light(fCriticalIndicator, pSnapshot.canEnterCriticalSection(), CRITICAL_COLOR);
+	}
 
-		if (fMutex.hasToken())
-		{
-			fTokenIndicator.setBackground(new Color(0, 220, 0));
-		}
-		else
-		{
-			fTokenIndicator.setBackground(null);
-		}
+	/**
+	 * Lights or dims an indicator, leaving it alone if it does not change.
+	 */
+	private void light(Label pIndicator, boolean pLit, Color pColor)
+	{
+		// A label without a background of its own shows that of its parent.
+		boolean lShown = pIndicator.getBackground() == pColor;
 
-		if (fApplication.inCriticalSection())
-		{
-			fCriticalIndicator.setBackground(new Color(220, 0, 0));
-		}
-		else
+		if (lShown != pLit)
 		{
-			fCriticalIndicator.setBackground(null);
+			pIndicator.setBackground(pLit ? pColor : null);
 		}
 	}
 }
\ No newline at end of file
@@ -1,18 +1,22 @@
 package in4150.control.gui.process;
 
+import in4150.control.gui.FrameUpdater;
 import in4150.control.gui.IGUItoApplication;
 import in4150.control.gui.IGUItoMutex;
+import in4150.mutex.IMutexListener;
+import in4150.mutex.MutexSnapshot;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 
-public class ProcessPanel extends JPanel implements ActionListener
+public class ProcessPanel extends JPanel implements ActionListener, IMutexListener
 {
 	// Unique Serial ID.
 	private static final long serialVersionUID = -709395356790449239L;
@@ -24,18 +28,30 @@ public class ProcessPanel extends JPanel implements ActionListener
 	private final ProcessRequestStatus fRequestStatus;
 	private final JButton fRequestButton;
 
-	public ProcessPanel(IGUItoApplication pProcess)
+	// Updates the panel once its process changed.
+	private final FrameUpdater fUpdater;
+
+	// True while the panel waits for its update.
+	private final AtomicBoolean fDirty;
+
+	public ProcessPanel(IGUItoApplication pProcess, FrameUpdater pUpdater)
 	{
 		super();
 
 		fProcess		= pProcess;
-		fMutexStatus	= new ProcessMutexStatus(fProcess, fProcess.getMutexController());
-		fRequestStatus	= new ProcessRequestStatus(fProcess.getMutexController());
+		fUpdater		= pUpdater;
+		fDirty			= new AtomicBoolean(false);
+		fMutexStatus	= new ProcessMutexStatus(fProcess);
+		fRequestStatus	= new ProcessRequestStatus();
 		fRequestButton	= new JButton(REQUEST_EVENT);
 
 		fRequestButton.addActionListener(this);
 
 		this.initialize();
+
+		// Show the state as it is now, and follow every change from here.
+		fProcess.getMutexController().addListener(this);
+		this.snapshotPublished(null);
 	}
 
 	private void initialize()
@@ -69,18 +85,31 @@ public class ProcessPanel extends JPanel implements ActionListener
 		}
 	}
 
-	public void updateNow()
+	/**
+	 * Called on the event loop of the controller; only asks for an update.
+	 */
+	@Override
+	public void snapshotPublished(MutexSnapshot pSnapshot)
 	{
-		fMutexStatus.updateNow();
-		fRequestStatus.updateNow();
-
-		if (fRequestButton != null && !fProcess.requestedCriticalSection())
+		if (fDirty.compareAndSet(false, true))
 		{
-			fRequestButton.setEnabled(true);
+			fUpdater.markDirty(this);
 		}
-		else if (fRequestButton != null)
-		{
-			fRequestButton.setEnabled(false);
-		}		
+	}
+
+	/**
+	 * Shows the latest state of the process. Only called on the event dispatch thread.
+	 */
+	public void updateNow()
+	{
+		// Changes from now on need another update.
+		fDirty.set(false);
+
+		MutexSnapshot lSnapshot = fProcess.getMutexController().getSnapshot();
+
+		fMutexStatus.updateNow(lSnapshot);
+		fRequestStatus.updateNow(lSnapshot);
+
+		fRequestButton.setEnabled(!fProcess.requestedCriticalSection());
 	}
 }
\ No newline at end of file
@@ -1,7 +1,6 @@
 package in4150.control.gui.process;
 
-import in4150.control.gui.IGUItoMutex;
-import in4150.mutex.VectorClock;
+import in4150.mutex.MutexSnapshot;
 
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -11,23 +10,18 @@ public class ProcessRequestStatus extends JPanel
 	// Unique Serial ID.
 	private static final long serialVersionUID = -4880716258131156635L;
 
-	private final IGUItoMutex fMutexController;
-
 	private final JLabel fClockLabel;
 
-	public ProcessRequestStatus(IGUItoMutex pMutexController)
+	public ProcessRequestStatus()
 	{
-		fMutexController = pMutexController;
-
 		fClockLabel = new JLabel("", JLabel.CENTER);
 
 		this.add(fClockLabel);
 	}
 
-	public void updateNow()
+	public void updateNow(MutexSnapshot pSnapshot)
 	{
-		VectorClock lRequests = fMutexController.getRequests();
-
-		fClockLabel.setText(lRequests.toString());
+		// JLabel only repaints if the text differs.
+		fClockLabel.setText(pSnapshot.getRequests().toString());
 	}
 }
\ No newline at end of file
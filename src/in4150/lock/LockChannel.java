@@ -0,0 +1,111 @@
+package in4150.lock;
+
+import in4150.mutex.IMutexToNetwork;
+import in4150.network.INetworkFactory;
+import in4150.network.INetworkToMutex;
+import in4150.network.Message;
+
+/**
+ * A LockChannel is the network of the controller of one named lock. It does not
+ * connect anywhere itself: it tags the messages of the controller with the name
+ * of the lock and sends them over the network of its LockManager, which in turn
+ * hands it the messages for this lock.
+ */
+class LockChannel implements IMutexToNetwork, INetworkFactory
+{
+	// The name of the lock.
+	private final String fLockName;
+
+	// The network shared by all locks.
+	private final IMutexToNetwork fNetwork;
+
+	// The controller of the lock.
+	private INetworkToMutex fMutexLayer;
+
+	/**
+	 * Constructs a new LockChannel.
+	 *
+	 * @param pLockName - The name of the lock.
+	 * @param pNetwork - The network shared by all locks.
+	 */
+	LockChannel(String pLockName, IMutexToNetwork pNetwork)
+	{
+		fLockName	= pLockName;
+		fNetwork	= pNetwork;
+	}
+
+	/**
+	 * The channel is its own factory, so it can be handed to the controller it serves.
+	 */
+	@Override
+	public IMutexToNetwork createNetwork(INetworkToMutex pMutexLayer)
+	{
+		fMutexLayer = pMutexLayer;
+
+		return this;
+	}
+
+	/**
+	 * The shared network is connected by the LockManager.
+	 */
+	@Override
+	public void connect()
+	{
+	}
+
+	/**
+	 * The shared network is disconnected by the LockManager.
+	 */
+	@Override
+	public void disconnect()
+	{
+	}
+
+	@Override
+	public int getOwnID()
+	{
+		return fNetwork.getOwnID();
+	}
+
+	@Override
+	public Integer[] getConnectedIDs()
+	{
+		return fNetwork.getConnectedIDs();
+	}
+
+	@Override
+	public void sendMessage(Message pMessage, int pReceiver)
+	{
+		fNetwork.sendMessage(new LockMessage(fLockName, pMessage), pReceiver);
+	}
+
+	@Override
+	public void broadcastMessage(Message pMessage)
+	{
+		fNetwork.broadcastMessage(new LockMessage(fLockName, pMessage));
+	}
+
+	/**
+	 * Hands a message for this lock to its controller.
+	 */
+	void deliver(Message pMessage)
+	{
+		fMutexLayer.receiveMessage(pMessage);
+	}
+
+	/**
+	 * Tells the controller a process joined.
+	 */
+	void processConnected(int pProcessID)
+	{
+		fMutexLayer.processConnected(pProcessID);
+	}
+
+	/**
+	 * Tells the controller a process left.
+	 */
+	void processDisconnected(int pProcessID)
+	{
+		fMutexLayer.processDisconnected(pProcessID);
+	}
+}
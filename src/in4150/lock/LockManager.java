@@ -0,0 +1,397 @@
+package in4150.lock;
+
+import in4150.application.DistributedLock;
+import in4150.application.IApplicationToMutex;
+import in4150.application.IMutexFactory;
+import in4150.metrics.MBeans;
+import in4150.metrics.MetricSet;
+import in4150.mutex.IMutexToApplication;
+import in4150.mutex.IMutexToNetwork;
+import in4150.mutex.SuzukiKasamiMutex;
+import in4150.mutex.TokenHoldPolicy;
+import in4150.network.INetworkFactory;
+import in4150.network.INetworkToMutex;
+import in4150.network.Message;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
+/**
+ * The LockManager offers any number of named locks, shared with the LockManagers of
+ * other processes. All locks use one network and its view of the processes; their
+ * messages are tagged with the name of the lock they belong to.
+ *
+ * Every lock has a controller of its own, created when the lock is first used here
+ * or when a message for it arrives. Controllers run their events on a pool shared
+ * by all locks. A controller that was idle for a while, and does not hold the Token,
+ * is dropped again; it is created anew when needed.
+ *
+ * The Token of a lock is created by the founding process: the one that was alone
+ * when it connected. It remembers which locks it created a Token for, so no lock
+ * ever gets a second one. Locks first used after the founding process left can not
+ * be taken.
+ *
+ * The controllers add up their measurements in one MetricSet, so a lock costs no
+ * histograms of its own. A LockManagerMXBean shows it to JMX clients, with the number
+ * of locks in use, until the LockManager is closed.
+ */
+public class LockManager implements INetworkToMutex
+{
+	// How often idle controllers are looked for, in milliseconds.
+	private static final long SWEEP_INTERVAL = 5000;
+
+	// The number of sweeps a controller must be found idle in a row before it is dropped.
+	private static final int EVICT_AFTER_SWEEPS = 2;
+
+	// The network shared by all locks.
+	private final IMutexToNetwork fNetwork;
+
+	// The controllers of the locks that are in use, by name.
+	private final Map<String, LockEntry> fEntries;
+
+	// The locks the founding process created a Token for.
+	private final Set<String> fMinted;
+
+	// Hands out the request numbers of all controllers, so a new one never reuses a number.
+	private final AtomicInteger fRequestNumbers;
+
+	// Bounds the callers served from one visit of a Token.
+	private final TokenHoldPolicy fHoldPolicy;
+
+	// Runs the events of all controllers.
+	private final ExecutorService fEventExecutor;
+
+	// Hands out the Grants of all locks.
+	private final ExecutorService fGrantExecutor;
+
+	// Drops the idle controllers.
+	private final ScheduledExecutorService fSweeper;
+
+	// The measurements of all controllers, added up.
+	private final MetricSet fMetrics;
+
+	// The name of our management bean, or null if it is not registered.
+	private final ObjectName fMBeanName;
+
+	// True iff we are the founding process, which creates the Tokens.
+	private boolean fFounder;
+
+	/**
+	 * The state of one named lock in use.
+	 */
+	private static class LockEntry
+	{
+		// The channel of the controller of the lock.
+		private final LockChannel fChannel;
+
+		// The lock, holding the controller.
+		private final DistributedLock fLock;
+
+		// The number of callers that are using the lock.
+		private int fPins;
+
+		// The number of sweeps in a row that found the lock idle.
+		private int fIdleSweeps;
+
+		LockEntry(LockChannel pChannel, DistributedLock pLock)
+		{
+			fChannel	= pChannel;
+			fLock		= pLock;
+			fPins		= 0;
+			fIdleSweeps	= 0;
+		}
+	}
+
+	/**
+	 * Constructs a new LockManager, and connects it to the others.
+	 *
+	 * @param pNetworkFactory - Creates the network shared by all locks.
+	 */
+	public LockManager(INetworkFactory pNetworkFactory)
+	{
+		this(pNetworkFactory, TokenHoldPolicy.DEFAULT, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructs a new LockManager, and connects it to the others.
+	 *
+	 * @param pNetworkFactory - Creates the network shared by all locks.
+	 * @param pHoldPolicy - Bounds the callers served from one visit of a Token.
+	 * @param pThreads - The number of threads running the controllers, and handing out Grants.
+	 */
+	public LockManager(INetworkFactory pNetworkFactory, TokenHoldPolicy pHoldPolicy, int pThreads)
+	{
+		fEntries		= new HashMap<String, LockEntry>();
+		fMinted			= new HashSet<String>();
+		fRequestNumbers	= new AtomicInteger(0);
+		fHoldPolicy		= pHoldPolicy;
+		fEventExecutor	= Executors.newFixedThreadPool(pThreads, daemonThreads("LockManager events"));
+		fGrantExecutor	= Executors.newFixedThreadPool(pThreads, daemonThreads("LockManager grants"));
+		fSweeper		= Executors.newSingleThreadScheduledExecutor(daemonThreads("LockManager sweeper"));
+		fMetrics		= new MetricSet();
+		fNetwork		= pNetworkFactory.createNetwork(this);
+
+		fNetwork.connect();
+
+		synchronized (this)
+		{
+			fFounder = fNetwork.getConnectedIDs().length == 1;
+		}
+
+		fMBeanName = MBeans.register(new Monitor(), "LockManager", fNetwork.getOwnID());
+
+		fSweeper.scheduleWithFixedDelay(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				LockManager.this.sweep();
+			}
+		}, SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return A factory of daemon threads with the provided name.
+	 */
+	private static ThreadFactory daemonThreads(final String pName)
+	{
+		return new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable pTask)
+			{
+				Thread lThread = new Thread(pTask, pName);
+				lThread.setDaemon(true);
+				return lThread;
+			}
+		};
+	}
+
+	/**
+	 * Returns the lock with the provided name. The handle is cheap, its controller is
+	 * only created once it is used.
+	 *
+	 * @param pName - The name of the lock.
+	 *
+	 * @return The lock.
+	 */
+	public NamedLock getLock(String pName)
+	{
+		return new NamedLock(this, pName);
+	}
+
+	/**
+	 * @return Our own ID in the shared network.
+	 */
+	public int getProcessID()
+	{
+		return fNetwork.getOwnID();
+	}
+
+	/**
+	 * @return The number of locks that have a controller here now.
+	 */
+	public synchronized int getActiveLocks()
+	{
+		return fEntries.size();
+	}
+
+	/**
+	 * @return The measurements of all controllers, added up, updated while they run.
+	 */
+	public MetricSet getMetrics()
+	{
+		return fMetrics;
+	}
+
+	/**
+	 * The Monitor shows the locks and their measurements through JMX.
+	 */
+	private class Monitor implements LockManagerMXBean
+	{
+		@Override
+		public int getProcessID()
+		{
+			return LockManager.this.getProcessID();
+		}
+
+		@Override
+		public int getActiveLocks()
+		{
+			return LockManager.this.getActiveLocks();
+		}
+
+		@Override
+		public SortedMap<String, Long> getMetrics()
+		{
+			return fMetrics.getValues();
+		}
+	}
+
+	/**
+	 * Disconnects from the others and removes our management bean. Locks held here are
+	 * lost.
+	 */
+	public void close()
+	{
+		MBeans.unregister(fMBeanName);
+
+		fSweeper.shutdownNow();
+
+		synchronized (this)
+		{
+			for (LockEntry lEntry : fEntries.values())
+			{
+				lEntry.fLock.close();
+			}
+		}
+
+		fNetwork.disconnect();
+		fEventExecutor.shutdown();
+		fGrantExecutor.shutdown();
+	}
+
+	/**
+	 * Returns the entry of a lock, creating its controller if there is none.
+	 */
+	private synchronized LockEntry entry(final String pName)
+	{
+		LockEntry lEntry = fEntries.get(pName);
+
+		if (lEntry == null)
+		{
+			final LockChannel lChannel = new LockChannel(pName, fNetwork);
+			final boolean lMint = fFounder && fMinted.add(pName);
+			DistributedLock lLock = new DistributedLock(new IMutexFactory()
+			{
+				@Override
+				public IApplicationToMutex createMutex(IMutexToApplication pApplication)
+				{
+					return new SuzukiKasamiMutex(pApplication, lChannel, fEventExecutor, fHoldPolicy, lMint,
+												 fRequestNumbers, fMetrics);
+				}
+			}, fGrantExecutor);
+
+			lEntry = new LockEntry(lChannel, lLock);
+			fEntries.put(pName, lEntry);
+		}
+
+		lEntry.fIdleSweeps = 0;
+
+		return lEntry;
+	}
+
+	/**
+	 * Marks a lock as used, so its controller is kept.
+	 *
+	 * @return The lock.
+	 */
+	synchronized DistributedLock pin(String pName)
+	{
+		LockEntry lEntry = this.entry(pName);
+
+		lEntry.fPins++;
+
+		return lEntry.fLock;
+	}
+
+	/**
+	 * Marks a lock as no longer used by one caller.
+	 */
+	synchronized void unpin(String pName)
+	{
+		LockEntry lEntry = fEntries.get(pName);
+
+		if (lEntry != null && lEntry.fPins > 0)
+		{
+			lEntry.fPins--;
+		}
+	}
+
+	/**
+	 * Drops the controllers that were idle for a number of sweeps. A controller is
+	 * idle if nobody uses its lock, no caller waits or asked for it, and it does not
+	 * hold the Token.
+	 */
+	private synchronized void sweep()
+	{
+		Iterator<LockEntry> lEntries = fEntries.values().iterator();
+		while (lEntries.hasNext())
+		{
+			LockEntry lEntry = lEntries.next();
+
+			if (lEntry.fPins == 0 && lEntry.fLock.isIdle() && !lEntry.fLock.getMutexController().hasToken())
+			{
+				lEntry.fIdleSweeps++;
+
+				if (lEntry.fIdleSweeps >= EVICT_AFTER_SWEEPS)
+				{
+					lEntry.fLock.close();
+					lEntries.remove();
+				}
+			}
+			else
+			{
+				lEntry.fIdleSweeps = 0;
+			}
+		}
+	}
+
+	/**
+	 * @return The channels of all controllers now.
+	 */
+	private synchronized List<LockChannel> channels()
+	{
+		List<LockChannel> lChannels = new ArrayList<LockChannel>(fEntries.size());
+
+		for (LockEntry lEntry : fEntries.values())
+		{
+			lChannels.add(lEntry.fChannel);
+		}
+
+		return lChannels;
+	}
+
+	@Override
+	public void processConnected(int pProcessID)
+	{
+		for (LockChannel lChannel : this.channels())
+		{
+			lChannel.processConnected(pProcessID);
+		}
+	}
+
+	@Override
+	public void processDisconnected(int pProcessID)
+	{
+		for (LockChannel lChannel : this.channels())
+		{
+			lChannel.processDisconnected(pProcessID);
+		}
+	}
+
+	@Override
+	public void receiveMessage(Message pMessage)
+	{
+		if (pMessage instanceof LockMessage)
+		{
+			LockMessage lMessage = (LockMessage)pMessage;
+
+			this.entry(lMessage.getLockName()).fChannel.deliver(lMessage.getPayload());
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package in4150.lock;
+
+import java.util.SortedMap;
+
+/**
+ * The management interface of a LockManager, as seen through JMX.
+ */
+public interface LockManagerMXBean
+{
+	/**
+	 * @return The ID of the process.
+	 */
+	public int getProcessID();
+
+	/**
+	 * @return The number of locks that have a controller here now.
+	 */
+	public int getActiveLocks();
+
+	/**
+	 * @return The count, mean, percentiles and maximum of the measurements of all controllers, added up.
+	 */
+	public SortedMap<String, Long> getMetrics();
+}
@@ -0,0 +1,84 @@
+package in4150.lock;
+
+import in4150.network.Message;
+import in4150.network.wire.IWireFormat;
+import in4150.network.wire.WireCodec;
+import in4150.network.wire.WireInput;
+import in4150.network.wire.WireOutput;
+
+import java.io.IOException;
+
+/**
+ * A LockMessage carries a Message of the controller of one named lock, over the
+ * network shared by all locks of a LockManager.
+ */
+public class LockMessage extends Message
+{
+	// Unique Serial ID.
+	private static final long serialVersionUID = 3904577312984469921L;
+
+	// Writes the name of the lock, followed by the message.
+	public static final IWireFormat<LockMessage> WIRE_FORMAT = new IWireFormat<LockMessage>()
+	{
+		@Override
+		public void write(LockMessage pMessage, WireOutput pOutput)
+		{
+			pOutput.writeString(pMessage.fLockName);
+			WireCodec.write(pMessage.fPayload, pOutput);
+		}
+
+		@Override
+		public LockMessage read(WireInput pInput) throws IOException
+		{
+			String lLockName = pInput.readString();
+			Object lPayload	 = WireCodec.read(pInput);
+
+			if (!(lPayload instanceof Message))
+			{
+				throw new IOException("Lock message of " + lPayload);
+			}
+
+			return new LockMessage(lLockName, (Message)lPayload);
+		}
+	};
+
+	// The name of the lock the message is for.
+	private final String fLockName;
+
+	// The message of the controller of the lock.
+	private final Message fPayload;
+
+	/**
+	 * Constructs a new LockMessage.
+	 *
+	 * @param pLockName - The name of the lock the message is for.
+	 * @param pPayload - The message of the controller of the lock.
+	 */
+	public LockMessage(String pLockName, Message pPayload)
+	{
+		fLockName	= pLockName;
+		fPayload	= pPayload;
+	}
+
+	/**
+	 * @return The name of the lock the message is for.
+	 */
+	public String getLockName()
+	{
+		return fLockName;
+	}
+
+	/**
+	 * @return The message of the controller of the lock.
+	 */
+	public Message getPayload()
+	{
+		return fPayload;
+	}
+
+	@Override
+	public String toString()
+	{
+		return fLockName + ": " + fPayload;
+	}
+}
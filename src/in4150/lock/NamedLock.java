@@ -0,0 +1,130 @@
+package in4150.lock;
+
+import in4150.application.DistributedLock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * A NamedLock is a handle to one lock of a LockManager. It finds the controller of the
+ * lock on every use, and keeps it from being dropped while the lock is taken or
+ * waited for. Like a DistributedLock, it is reentrant and has no conditions.
+ */
+public final class NamedLock implements Lock
+{
+	// The manager of the lock.
+	private final LockManager fManager;
+
+	// The name of the lock.
+	private final String fName;
+
+	/**
+	 * Constructs a new NamedLock.
+	 *
+	 * @param pManager - The manager of the lock.
+	 * @param pName - The name of the lock.
+	 */
+	NamedLock(LockManager pManager, String pName)
+	{
+		fManager	= pManager;
+		fName		= pName;
+	}
+
+	/**
+	 * @return The name of the lock.
+	 */
+	public String getName()
+	{
+		return fName;
+	}
+
+	@Override
+	public void lock()
+	{
+		fManager.pin(fName).lock();
+	}
+
+	@Override
+	public void lockInterruptibly() throws InterruptedException
+	{
+		try
+		{
+			fManager.pin(fName).lockInterruptibly();
+		}
+		catch (InterruptedException lException)
+		{
+			fManager.unpin(fName);
+			throw lException;
+		}
+	}
+
+	@Override
+	public boolean tryLock()
+	{
+		if (fManager.pin(fName).tryLock())
+		{
+			return true;
+		}
+
+		fManager.unpin(fName);
+		return false;
+	}
+
+	@Override
+	public boolean tryLock(long pTime, TimeUnit pUnit) throws InterruptedException
+	{
+		boolean lLocked = false;
+
+		try
+		{
+			lLocked = fManager.pin(fName).tryLock(pTime, pUnit);
+		}
+		finally
+		{
+			if (!lLocked)
+			{
+				fManager.unpin(fName);
+			}
+		}
+
+		return lLocked;
+	}
+
+	/**
+	 * The lock is pinned while taken, so this finds the controller that granted it.
+	 */
+	@Override
+	public void unlock()
+	{
+		DistributedLock lLock = fManager.pin(fName);
+
+		try
+		{
+			lLock.unlock();
+
+			// Undo the pin of the matching lock.
+			fManager.unpin(fName);
+		}
+		finally
+		{
+			// And the one of this call.
+			fManager.unpin(fName);
+		}
+	}
+
+	/**
+	 * Conditions are not supported.
+	 */
+	@Override
+	public Condition newCondition()
+	{
+		throw new UnsupportedOperationException("NamedLock has no conditions");
+	}
+
+	@Override
+	public String toString()
+	{
+		return "NamedLock " + fName;
+	}
+}
@@ -0,0 +1,170 @@
+package in4150.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Histogram counts recorded values in buckets of logarithmic size, like an HDR
+ * histogram: values below 16 each have a bucket of their own, and every power of two
+ * above is split into 16 buckets. A percentile read from it is at most 1/32 off.
+ *
+ * Recording takes no locks and allocates nothing, so it may be done from any thread
+ * on the hot path. Reading while others record gives a view that may miss the values
+ * recorded at that moment.
+ */
+public class Histogram
+{
+	// The number of bits below the highest one that select the bucket.
+	private static final int PRECISION_BITS = 4;
+
+	// The number of buckets per power of two.
+	private static final int SUB_BUCKETS = 1 << PRECISION_BITS;
+
+	// The number of buckets covering all positive longs.
+	private static final int BUCKETS = (64 - PRECISION_BITS) * SUB_BUCKETS;
+
+	// The number of values recorded in each bucket.
+	private final AtomicLongArray fBuckets;
+
+	// The number of values recorded.
+	private final LongAdder fCount;
+
+	// The sum of the values recorded.
+	private final LongAdder fSum;
+
+	// The largest value recorded.
+	private final AtomicLong fMax;
+
+	/**
+	 * Constructs a new, empty Histogram.
+	 */
+	public Histogram()
+	{
+		fBuckets = new AtomicLongArray(BUCKETS);
+		fCount	 = new LongAdder();
+		fSum	 = new LongAdder();
+		fMax	 = new AtomicLong();
+	}
+
+	/**
+	 * Records a value. Negative values are recorded as 0.
+	 *
+	 * @param pValue - The value to record.
+	 */
+	public void record(long pValue)
+	{
+		long lValue = Math.max(pValue, 0);
+
+		fBuckets.incrementAndGet(bucketOf(lValue));
+		fCount.increment();
+		fSum.add(lValue);
+
+		long lMax = fMax.get();
+		while (lValue > lMax && !fMax.compareAndSet(lMax, lValue))
+		{
+			lMax = fMax.get();
+		}
+	}
+
+	/**
+	 * @param pValue - A value that is not negative.
+	 *
+	 * @return The bucket counting the value.
+	 */
+	private static int bucketOf(long pValue)
+	{
+		if (pValue < SUB_BUCKETS)
+		{
+			return (int)pValue;
+		}
+
+		int lExponent = 63 - Long.numberOfLeadingZeros(pValue);
+		int lShift	  = lExponent - PRECISION_BITS;
+
+		return (lShift + 1) * SUB_BUCKETS + (int)((pValue >>> lShift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * @param pBucket - A bucket.
+	 *
+	 * @return The value in the middle of the values the bucket counts.
+	 */
+	private static long valueOf(int pBucket)
+	{
+		if (pBucket < SUB_BUCKETS)
+		{
+			return pBucket;
+		}
+
+		int lShift	= pBucket / SUB_BUCKETS - 1;
+		long lLower	= (long)(SUB_BUCKETS + pBucket % SUB_BUCKETS) << lShift;
+
+		return lLower + ((1L << lShift) - 1) / 2;
+	}
+
+	/**
+	 * @return The number of values recorded.
+	 */
+	public long getCount()
+	{
+		return fCount.sum();
+	}
+
+	/**
+	 * @return The mean of the values recorded, or 0 if there are none.
+	 */
+	public double getMean()
+	{
+		long lCount = fCount.sum();
+
+		return lCount == 0 ? 0 : (double)fSum.sum() / lCount;
+	}
+
+	/**
+	 * @return The largest value recorded, or 0 if there are none.
+	 */
+	public long getMax()
+	{
+		return fMax.get();
+	}
+
+	/**
+	 * @param pPercentile - The percentage of values at or below the result, from 0 to 100.
+	 *
+	 * @return The value the provided percentage of values does not exceed, or 0 if there are none.
+	 */
+	public long getPercentile(double pPercentile)
+	{
+		long lCount = 0;
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			lCount += fBuckets.get(i);
+		}
+
+		long lRank = Math.max(1, (long)Math.ceil(pPercentile / 100 * lCount));
+
+		for (int i = 0; i < BUCKETS; i++)
+		{
+			lRank -= fBuckets.get(i);
+
+			if (lRank <= 0)
+			{
+				return Math.min(valueOf(i), fMax.get());
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Prints the count, mean, median, 99th percentile and maximum.
+	 */
+	@Override
+	public String toString()
+	{
+		return String.format("count %d, mean %.1f, p50 %d, p99 %d, max %d",
+							 this.getCount(), this.getMean(), this.getPercentile(50), this.getPercentile(99),
+							 this.getMax());
+	}
+}
@@ -0,0 +1,93 @@
+package in4150.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * MBeans registers the management beans of the controllers and networks with the
+ * platform MBeanServer, under the domain in4150, so jconsole and other JMX clients
+ * can watch a running process.
+ *
+ * A bean is named after its type and process, for example
+ * in4150:type=SuzukiKasamiMutex,process=3. Processes of several networks may run in one JVM; the second bean of the same
+ * name gets an instance number added, unique in the JVM so one try is enough.
+ *
+ * Monitoring is no reason to stop a process, so failing to register only prints.
+ */
+public final class MBeans
+{
+	// The domain of all our beans.
+	public static final String DOMAIN = "in4150";
+
+	// The last instance number handed out to a bean whose name was taken.
+	private static final AtomicInteger INSTANCES = new AtomicInteger(1);
+
+	private MBeans()
+	{
+	}
+
+	/**
+	 * Registers a bean with the platform MBeanServer.
+	 *
+	 * @param pBean - The bean, implementing an MXBean interface.
+	 * @param pType - The type of component the bean watches.
+	 * @param pProcess - The ID of the process of the component.
+	 *
+	 * @return The name the bean was registered under, or null if it was not.
+	 */
+	public static ObjectName register(Object pBean, String pType, int pProcess)
+	{
+		MBeanServer lServer = ManagementFactory.getPlatformMBeanServer();
+		String lName		= DOMAIN + ":type=" + pType + ",process=" + pProcess;
+
+		try
+		{
+			ObjectName lObjectName = new ObjectName(lName);
+
+			while (true)
+			{
+				try
+				{
+					lServer.registerMBean(pBean, lObjectName);
+					return lObjectName;
+				}
+				catch (InstanceAlreadyExistsException lException)
+				{
+					lObjectName = new ObjectName(lName + ",instance=" + INSTANCES.incrementAndGet());
+				}
+			}
+		}
+		catch (JMException lException)
+		{
+			lException.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Removes a bean from the platform MBeanServer.
+	 *
+	 * @param pName - The name the bean was registered under, or null if it was not.
+	 */
+	public static void unregister(ObjectName pName)
+	{
+		if (pName == null)
+		{
+			return;
+		}
+
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(pName);
+		}
+		catch (JMException lException)
+		{
+			lException.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package in4150.metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A MetricSet holds the named counters and histograms of one component, so they can
+ * be read while it runs. Counters and histograms are created the first time their
+ * name is asked for; a component keeps the ones it records in fields of its own, so
+ * the names are only looked up once.
+ */
+public class MetricSet
+{
+	// The counters, by name.
+	private final ConcurrentMap<String, LongAdder> fCounters;
+
+	// The histograms, by name.
+	private final ConcurrentMap<String, Histogram> fHistograms;
+
+	/**
+	 * Constructs a new, empty MetricSet.
+	 */
+	public MetricSet()
+	{
+		fCounters	= new ConcurrentHashMap<String, LongAdder>();
+		fHistograms	= new ConcurrentHashMap<String, Histogram>();
+	}
+
+	/**
+	 * @param pName - The name of the counter.
+	 *
+	 * @return The counter with the provided name, created if there is none yet.
+	 */
+	public LongAdder counter(String pName)
+	{
+		LongAdder lCounter = fCounters.get(pName);
+
+		if (lCounter == null)
+		{
+			LongAdder lCreated = new LongAdder();
+
+			lCounter = fCounters.putIfAbsent(pName, lCreated);
+			if (lCounter == null)
+			{
+				lCounter = lCreated;
+			}
+		}
+
+		return lCounter;
+	}
+
+	/**
+	 * @param pName - The name of the histogram.
+	 *
+	 * @return The histogram with the provided name, created if there is none yet.
+	 */
+	public Histogram histogram(String pName)
+	{
+		Histogram lHistogram = fHistograms.get(pName);
+
+		if (lHistogram == null)
+		{
+			Histogram lCreated = new Histogram();
+
+			lHistogram = fHistograms.putIfAbsent(pName, lCreated);
+			if (lHistogram == null)
+			{
+				lHistogram = lCreated;
+			}
+		}
+
+		return lHistogram;
+	}
+
+	/**
+	 * @return The current value of every counter, by name.
+	 */
+	public SortedMap<String, Long> getCounters()
+	{
+		SortedMap<String, Long> lCounters = new TreeMap<String, Long>();
+
+		for (Map.Entry<String, LongAdder> lEntry : fCounters.entrySet())
+		{
+			lCounters.put(lEntry.getKey(), lEntry.getValue().sum());
+		}
+
+		return lCounters;
+	}
+
+	/**
+	 * @return Every histogram, by name.
+	 */
+	public SortedMap<String, Histogram> getHistograms()
+	{
+		return new TreeMap<String, Histogram>(fHistograms);
+	}
+
+	/**
+	 * Flattens the set into numbers: every counter under its own name, and the count,
+	 * mean, p50, p99 and max of every histogram under its name followed by the statistic.
+	 *
+	 * @return All values, by name.
+	 */
+	public SortedMap<String, Long> getValues()
+	{
+		SortedMap<String, Long> lValues = this.getCounters();
+
+		for (Map.Entry<String, Histogram> lEntry : fHistograms.entrySet())
+		{
+			Histogram lHistogram = lEntry.getValue();
+			String lName		 = lEntry.getKey();
+
+			lValues.put(lName + " count", lHistogram.getCount());
+			lValues.put(lName + " mean", Math.round(lHistogram.getMean()));
+			lValues.put(lName + " p50", lHistogram.getPercentile(50));
+			lValues.put(lName + " p99", lHistogram.getPercentile(99));
+			lValues.put(lName + " max", lHistogram.getMax());
+		}
+
+		return lValues;
+	}
+
+	/**
+	 * Prints every counter and histogram on a line of its own.
+	 */
+	@Override
+	public String toString()
+	{
+		StringBuilder lResult = new StringBuilder();
+
+		for (Map.Entry<String, Long> lEntry : this.getCounters().entrySet())
+		{
+			lResult.append(lEntry.getKey()).append(": ").append(lEntry.getValue()).append('\n');
+		}
+
+		for (Map.Entry<String, Histogram> lEntry : this.getHistograms().entrySet())
+		{
+			lResult.append(lEntry.getKey()).append(": ").append(lEntry.getValue()).append('\n');
+		}
+
+		return lResult.toString();
+	}
+}
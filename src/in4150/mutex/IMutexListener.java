@@ -0,0 +1,19 @@
+package in4150.mutex;
+
+/**
+ * An IMutexListener is told every time a mutex controller publishes its state, so a
+ * monitor does not have to poll for changes.
+ *
+ * The listener is called on the thread running the events of the controller, which
+ * waits for it to return. It should only note that something changed, and do any
+ * real work elsewhere.
+ */
+public interface IMutexListener
+{
+	/**
+	 * This function is called after the controller published a new state.
+	 *
+	 * @param pSnapshot - The state the controller published.
+	 */
+	public void snapshotPublished(MutexSnapshot pSnapshot);
+}
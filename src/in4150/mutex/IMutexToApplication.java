@@ -1,5 +1,7 @@
 package in4150.mutex;
 
+import java.util.concurrent.Executor;
+
 /**
  * This interface defines the functions an Application wanting to use Mutual
  * Exclusion must provide to the Mutual Exclusion layer.
@@ -10,11 +12,20 @@ package in4150.mutex;
 public interface IMutexToApplication
 {
 	/**
-	 * This function tells the application that it must now execute its Critical
-	 * Section.
+	 * This function tells the application that it may now execute its Critical
+	 * Section. The application must call releaseCriticalSection when it is done,
+	 * which it may do before returning or later from a thread of its own.
 	 */
 	public void doCriticalSection();
 
+	/**
+	 * This function asks the application for the executor that calls doCriticalSection.
+	 * The critical section never runs on the thread that received the Token.
+	 * 
+	 * @return An executor owned by the application.
+	 */
+	public Executor getCriticalSectionExecutor();
+
 	/**
 	 * This function asks the application if it is in its critical section right now.
 	 * 
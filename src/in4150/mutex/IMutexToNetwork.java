@@ -50,9 +50,12 @@ public interface IMutexToNetwork
 
 	/**
 	 * This function allows a user of the network to transmit a single Message to
-	 * all receivers.
+	 * all receivers, except ourselves. The sender never receives its own broadcast,
+	 * so a layer that needs the message itself must apply it locally. A receiver may
+	 * get the message more than once if a process passing it on leaves, so it must
+	 * be safe to receive again.
 	 * 
-	 * @param pMessage - The Message to deliver.d
+	 * @param pMessage - The Message to deliver.
 	 */
 	public void broadcastMessage(Message pMessage);
 }
\ No newline at end of file
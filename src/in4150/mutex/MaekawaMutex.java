@@ -0,0 +1,824 @@
+package in4150.mutex;
+
+import in4150.application.AccessMode;
+import in4150.application.IApplicationToMutex;
+import in4150.control.gui.IGUItoMutex;
+import in4150.network.INetworkFactory;
+import in4150.network.INetworkToMutex;
+import in4150.network.Message;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * The MaekawaMutex controller allows an application to coordinate access to its
+ * critical section with a number of other processes, without a token.
+ *
+ * The controller uses Maekawa's quorum based algorithm. The processes are laid out on
+ * a grid by their IDs, a fixed number of them per row, and the quorum of a process is
+ * its row and its column. Every two quorums share a process. A process enters its
+ * critical section once every member of its quorum locked for its request, and a
+ * member locks for one request at a time, so no two processes are in at once. A
+ * critical section takes about three messages per member: REQUEST, LOCKED and RELEASE.
+ *
+ * Requests are ordered by their Lamport timestamp, and then by ID. A member that
+ * locked for a request, and receives one that goes first, sends an INQUIRE to the
+ * process it locked for. That process gives up the lock with a RELINQUISH if it knows
+ * it can not enter yet, because some member sent it FAILED. This resolves the
+ * deadlocks of requests that each hold part of the locks they need.
+ *
+ * All processes must use the same grid width, so it is fixed when the controller is
+ * made rather than taken from the processes connected at the time. A width of the
+ * square root of the number of processes, rounded up, gives the smallest quorums:
+ * about twice that root. Without a number of processes the default width is used.
+ *
+ * The grid holds every ID up to the highest that connected, like the network hands
+ * them out, and the quorum of a request is taken from it when the request is made. A
+ * process that leaves keeps its place: its lock may be all that kept two processes
+ * out at once, so a request whose quorum holds it waits until the ID is taken again.
+ * The new process locks afresh, and is asked again for the requests waiting for it.
+ * This is safe as long as nobody it locked for before it left is still in. A process
+ * that joins only knows the IDs up to the highest connected then, so the highest ID
+ * must not be left free while a lower one is taken.
+ *
+ * All requests are served exclusively, including those for SHARED access.
+ *
+ * Like the SuzukiKasamiMutex, the controller runs every call as an event on its
+ * MutexEventLoop, and publishes a MutexSnapshot after every event. There is no token:
+ * the snapshot tells the process holds it while it is in its critical section.
+ */
+public class MaekawaMutex implements IGUItoMutex, IApplicationToMutex, INetworkToMutex
+{
+	// The number of processes on a row of the grid when the number of processes is not known.
+	public static final int DEFAULT_GRID_WIDTH = 16;
+
+	// Marks that no request holds our lock.
+	private static final long NONE = -1;
+
+	// Interface to the application layer above us.
+	private final IMutexToApplication fApplication;
+
+	// Interface to the network layer below us.
+	private final IMutexToNetwork fNetwork;
+
+	// The loop running all events that change the state below.
+	private final MutexEventLoop fEventLoop;
+
+	// The number of processes on a row of the grid.
+	private final int fGridWidth;
+
+	// Our Lamport clock, timestamping our requests.
+	private int fClock;
+
+	// The timestamp of the latest request of each process.
+	private final RequestLog fRequests;
+
+	// The timestamp of our request that is not released yet, or 0 if there is none.
+	private int fStamp;
+
+	// The members of the quorum of that request.
+	private BitSet fQuorum;
+
+	// The members that locked for it.
+	private final BitSet fVotes;
+
+	// The members that will not lock for it now: they sent FAILED, or we relinquished their lock.
+	private final BitSet fFailed;
+
+	// The members that asked us to give up their lock, waiting for us to know whether we can enter.
+	private final BitSet fInquiries;
+
+	// The highest ID that connected, so the grid holds all IDs up to it.
+	private int fHighestID;
+
+	// The number of requests the application made while its request was outstanding, not made yet.
+	private int fLocalRequests;
+
+	// A flag indicating to the application that it may indeed enter its critical section now.
+	private boolean fCanEnterCS;
+
+	// The request our lock is held by, as made by key, or NONE.
+	private long fLocked;
+
+	// True iff we asked the process our lock is held by to give it up.
+	private boolean fInquired;
+
+	// The requests waiting for our lock, as made by key, the first to be served first.
+	private final PriorityQueue<Long> fWaiting;
+
+	// The state as it was after the last event, readable from any thread.
+	private volatile MutexSnapshot fSnapshot;
+
+	// The listeners told about every published state.
+	private final List<IMutexListener> fListeners;
+
+	/**
+	 * Constructs a new MaekawaMutex controller for the provided application.
+	 *
+	 * @param pApplication - The application that wants to negotiate for access to Critical Section.
+	 * @param pManualMode - Debug variable. If true, the controller uses the debug network.
+	 */
+	public MaekawaMutex(IMutexToApplication pApplication, boolean pManualMode)
+	{
+		this(pApplication, MutexAlgorithm.rmiFactory(pManualMode));
+	}
+
+	/**
+	 * Constructs a new MaekawaMutex controller for the provided application,
+	 * communicating over the provided type of network. The controller runs its
+	 * events on a thread of its own, and uses the default grid width.
+	 *
+	 * @param pApplication - The application that wants to negotiate for access to Critical Section.
+	 * @param pNetworkFactory - Creates the network used to reach the other controllers.
+	 */
+	public MaekawaMutex(IMutexToApplication pApplication, INetworkFactory pNetworkFactory)
+	{
+		this(pApplication, pNetworkFactory, MutexEventLoop.newDedicatedExecutor("MaekawaMutex events"),
+			 DEFAULT_GRID_WIDTH);
+	}
+
+	/**
+	 * Constructs a new MaekawaMutex controller for the provided application,
+	 * communicating over the provided type of network.
+	 *
+	 * @param pApplication - The application that wants to negotiate for access to Critical Section.
+	 * @param pNetworkFactory - Creates the network used to reach the other controllers.
+	 * @param pEventExecutor - Runs the events of the controller, may be shared with other controllers.
+	 * @param pGridWidth - The number of processes on a row of the grid, the same for all processes.
+	 */
+	public MaekawaMutex(IMutexToApplication pApplication, INetworkFactory pNetworkFactory, Executor pEventExecutor,
+						int pGridWidth)
+	{
+		if (pGridWidth < 1)
+		{
+			throw new IllegalArgumentException("Grid width " + pGridWidth);
+		}
+
+		fApplication   = pApplication;
+		fListeners	   = new CopyOnWriteArrayList<IMutexListener>();
+		fGridWidth	   = pGridWidth;
+		fEventLoop	   = new MutexEventLoop(pEventExecutor);
+		fClock		   = 0;
+		fRequests	   = new RequestLog();
+		fStamp		   = 0;
+		fQuorum		   = new BitSet();
+		fVotes		   = new BitSet();
+		fFailed		   = new BitSet();
+		fInquiries	   = new BitSet();
+		fHighestID	   = 0;
+		fLocalRequests = 0;
+		fCanEnterCS	   = false;
+		fLocked		   = NONE;
+		fInquired	   = false;
+		fWaiting	   = new PriorityQueue<Long>();
+		fNetwork	   = pNetworkFactory.createNetwork(this);
+
+		// Connect to the others. Anything they send waits until the loop is started.
+		fNetwork.connect();
+
+		// Store all other connected networks for easy access.
+		for (Integer lPeer : fNetwork.getConnectedIDs())
+		{
+			fRequests.put(lPeer, 0);
+			fHighestID = Math.max(fHighestID, lPeer);
+		}
+
+		this.publish();
+
+		fEventLoop.start();
+	}
+
+	/**
+	 * @param pProcesses - The number of processes, IDs 1 up to it.
+	 *
+	 * @return The grid width giving the smallest quorums: the square root, rounded up.
+	 */
+	public static int gridWidth(int pProcesses)
+	{
+		int lWidth = (int)Math.sqrt(pProcesses);
+
+		// Round up, unless the number is a square.
+		if (lWidth * lWidth < pProcesses)
+		{
+			lWidth++;
+		}
+
+		return Math.max(lWidth, 1);
+	}
+
+	/**
+	 * Orders requests by timestamp, and then by the ID of the requester.
+	 *
+	 * @return The request as a single number, lower for the request to be served first.
+	 */
+	private static long key(int pStamp, int pProcess)
+	{
+		return ((long)pStamp << 32) | pProcess;
+	}
+
+	/**
+	 * @return The timestamp of a request made by key.
+	 */
+	private static int stampOf(long pKey)
+	{
+		return (int)(pKey >>> 32);
+	}
+
+	/**
+	 * @return The requester of a request made by key.
+	 */
+	private static int processOf(long pKey)
+	{
+		return (int)pKey;
+	}
+
+	/**
+	 * An Event changes the state of the controller on the loop, and publishes the
+	 * changed state when done.
+	 */
+	private abstract class Event implements Runnable
+	{
+		@Override
+		public final void run()
+		{
+			this.handle();
+
+			MaekawaMutex.this.publish();
+		}
+
+		/**
+		 * Changes the state of the controller.
+		 */
+		protected abstract void handle();
+	}
+
+	/**
+	 * Publishes the current state for the readers outside the loop.
+	 */
+	private void publish()
+	{
+		fSnapshot = new MutexSnapshot(fNetwork.getOwnID(), fCanEnterCS, fCanEnterCS, fRequests);
+
+		for (IMutexListener lListener : fListeners)
+		{
+			lListener.snapshotPublished(fSnapshot);
+		}
+	}
+
+	/**
+	 * Function called by the parent application if it wants to enter
+	 * the critical section.
+	 *
+	 * Asks the members of our quorum to lock for us.
+	 */
+	@Override
+	public void requestCriticalSection()
+	{
+		fEventLoop.post(new Event()
+		{
+			@Override
+			protected void handle()
+			{
+				// One request at a time, the next is made when this one is released.
+				if (fStamp != 0)
+				{
+					fLocalRequests++;
+				}
+				else
+				{
+					MaekawaMutex.this.sendRequest();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Access is always exclusive, the mode is not looked at.
+	 */
+	@Override
+	public void requestCriticalSection(AccessMode pMode)
+	{
+		this.requestCriticalSection();
+	}
+
+	/**
+	 * Without a token, the critical section is never granted without asking the
+	 * quorum, so this always fails, and the application must request and wait.
+	 */
+	@Override
+	public boolean tryRequestCriticalSection(AccessMode pMode)
+	{
+		return false;
+	}
+
+	/**
+	 * Function called by the parent application when it leaves the critical section,
+	 * either from doCriticalSection or later from a thread of its own.
+	 *
+	 * Releases the locks of the members of our quorum.
+	 */
+	@Override
+	public void releaseCriticalSection()
+	{
+		fEventLoop.post(new Event()
+		{
+			@Override
+			protected void handle()
+			{
+				// Only a granted critical section can be released.
+				if (!fCanEnterCS)
+				{
+					return;
+				}
+
+				fCanEnterCS = false;
+
+				MaekawaMutex.this.sendToQuorum(QuorumMessageType.RELEASE);
+
+				fStamp = 0;
+
+				if (fLocalRequests > 0)
+				{
+					fLocalRequests--;
+
+					MaekawaMutex.this.sendRequest();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Disconnects from the others and stops the event loop. Locks our quorum
+	 * members hold for us are never released.
+	 */
+	@Override
+	public void close()
+	{
+		fNetwork.disconnect();
+		fEventLoop.close();
+	}
+
+	/**
+	 * Asks the members of the quorum to lock for a new request of ours.
+	 */
+	private void sendRequest()
+	{
+		int lMyID = fNetwork.getOwnID();
+
+		fClock++;
+		fStamp	= fClock;
+		fQuorum	= this.getQuorum();
+		fVotes.clear();
+		fFailed.clear();
+		fInquiries.clear();
+
+		fRequests.put(lMyID, fStamp);
+
+		this.sendToQuorum(QuorumMessageType.REQUEST);
+	}
+
+	/**
+	 * @return The processes on our row or column of the grid, including ourselves and
+	 * those that left.
+	 */
+	private BitSet getQuorum()
+	{
+		int lMyID	  = fNetwork.getOwnID();
+		BitSet lQuorum = new BitSet();
+
+		for (int lPeer = 1; lPeer <= Math.max(fHighestID, lMyID); lPeer++)
+		{
+			if ((lPeer - 1) / fGridWidth == (lMyID - 1) / fGridWidth ||
+				(lPeer - 1) % fGridWidth == (lMyID - 1) % fGridWidth)
+			{
+				lQuorum.set(lPeer);
+			}
+		}
+
+		return lQuorum;
+	}
+
+	/**
+	 * Sends a message about our request to every member of its quorum.
+	 */
+	private void sendToQuorum(QuorumMessageType pType)
+	{
+		for (int lMember = fQuorum.nextSetBit(0); lMember >= 0; lMember = fQuorum.nextSetBit(lMember + 1))
+		{
+			this.send(pType, fStamp, lMember);
+		}
+	}
+
+	/**
+	 * Sends a message about a request. Messages to ourselves are handled as a later event.
+	 *
+	 * @param pType - What the message says.
+	 * @param pStamp - The timestamp of the request the message is about.
+	 * @param pReceiver - The process to send the message to.
+	 */
+	private void send(QuorumMessageType pType, int pStamp, int pReceiver)
+	{
+		QuorumMessage lMessage = new QuorumMessage(pType, fNetwork.getOwnID(), pStamp);
+
+		if (pReceiver == fNetwork.getOwnID())
+		{
+			this.receiveMessage(lMessage);
+		}
+		else
+		{
+			fNetwork.sendMessage(lMessage, pReceiver);
+		}
+	}
+
+	/**
+	 * Function called when a member locked for our request.
+	 */
+	private void receiveLocked(int pMember)
+	{
+		fVotes.set(pMember);
+		fFailed.clear(pMember);
+
+		// An inquiry may arrive before the lock it is about.
+		if (fInquiries.get(pMember) && !fFailed.isEmpty())
+		{
+			this.relinquishInquired();
+		}
+		else
+		{
+			this.enterIfLocked();
+		}
+	}
+
+	/**
+	 * Function called when a member will not lock for our request now.
+	 */
+	private void receiveFailed(int pMember)
+	{
+		if (fCanEnterCS)
+		{
+			return;
+		}
+
+		fFailed.set(pMember);
+
+		this.relinquishInquired();
+	}
+
+	/**
+	 * Function called when a member that locked for our request asks us to give it up.
+	 */
+	private void receiveInquire(int pMember)
+	{
+		// Once in, the lock is given up on release.
+		if (fCanEnterCS)
+		{
+			return;
+		}
+
+		fInquiries.set(pMember);
+
+		if (!fFailed.isEmpty())
+		{
+			this.relinquishInquired();
+		}
+	}
+
+	/**
+	 * Gives up the locks of the members that inquired, as we can not enter before others.
+	 * An inquiry about a lock that did not arrive yet waits for it.
+	 */
+	private void relinquishInquired()
+	{
+		for (int lMember = fInquiries.nextSetBit(0); lMember >= 0; lMember = fInquiries.nextSetBit(lMember + 1))
+		{
+			if (fVotes.get(lMember))
+			{
+				fVotes.clear(lMember);
+				fFailed.set(lMember);
+				fInquiries.clear(lMember);
+
+				this.send(QuorumMessageType.RELINQUISH, fStamp, lMember);
+			}
+		}
+	}
+
+	/**
+	 * Lets the application enter its critical section once every member locked for us.
+	 */
+	private void enterIfLocked()
+	{
+		if (fCanEnterCS || fStamp == 0 || fVotes.cardinality() < fQuorum.cardinality())
+		{
+			return;
+		}
+
+		fCanEnterCS = true;
+		fInquiries.clear();
+
+		// The application must see the grant before it runs.
+		this.publish();
+
+		// Grant the critical section on the application executor. The locks are released
+		// once the application releases it.
+		fApplication.getCriticalSectionExecutor().execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				fApplication.doCriticalSection();
+			}
+		});
+	}
+
+	/**
+	 * Function called when a process asks us to lock for its request.
+	 */
+	private void receiveRequest(int pRequester, int pStamp)
+	{
+		fClock = Math.max(fClock, pStamp);
+		fRequests.put(pRequester, pStamp);
+
+		long lRequest = key(pStamp, pRequester);
+
+		// A request may be sent again when we connect, while we already have it.
+		if (fLocked == lRequest)
+		{
+			this.send(QuorumMessageType.LOCKED, pStamp, pRequester);
+			return;
+		}
+
+		if (fWaiting.contains(lRequest))
+		{
+			return;
+		}
+
+		if (fLocked == NONE)
+		{
+			this.lock(lRequest);
+			return;
+		}
+
+		Long lFirst = fWaiting.peek();
+		fWaiting.add(lRequest);
+
+		if (lRequest < fLocked && (lFirst == null || lRequest < lFirst))
+		{
+			// The request that was to be served next is not anymore.
+			if (lFirst != null)
+			{
+				this.send(QuorumMessageType.FAILED, stampOf(lFirst), processOf(lFirst));
+			}
+
+			// The request goes before the one we locked for, which may give it up.
+			if (!fInquired)
+			{
+				fInquired = true;
+				this.send(QuorumMessageType.INQUIRE, stampOf(fLocked), processOf(fLocked));
+			}
+		}
+		else
+		{
+			this.send(QuorumMessageType.FAILED, pStamp, pRequester);
+		}
+	}
+
+	/**
+	 * Function called when the process we locked for gives the lock up.
+	 */
+	private void receiveRelinquish(int pRequester, int pStamp)
+	{
+		if (fLocked != key(pStamp, pRequester))
+		{
+			return;
+		}
+
+		fWaiting.add(fLocked);
+
+		this.unlock();
+	}
+
+	/**
+	 * Function called when a process leaves its critical section.
+	 */
+	private void receiveRelease(int pRequester, int pStamp)
+	{
+		long lRequest = key(pStamp, pRequester);
+
+		if (fLocked == lRequest)
+		{
+			this.unlock();
+		}
+		else
+		{
+			fWaiting.remove(lRequest);
+		}
+	}
+
+	/**
+	 * Locks for a request.
+	 */
+	private void lock(long pRequest)
+	{
+		fLocked	  = pRequest;
+		fInquired = false;
+
+		this.send(QuorumMessageType.LOCKED, stampOf(pRequest), processOf(pRequest));
+	}
+
+	/**
+	 * Unlocks, and locks for the request to be served first, if any.
+	 */
+	private void unlock()
+	{
+		fLocked	  = NONE;
+		fInquired = false;
+
+		Long lNext = fWaiting.poll();
+		if (lNext != null)
+		{
+			this.lock(lNext);
+		}
+	}
+
+	/**
+	 * Function called by the parent application just before entering
+	 * the critical section.
+	 *
+	 * @return true iff we the application is allowed to enter its critical section.
+	 */
+	@Override
+	public boolean canEnterCriticalSection()
+	{
+		return fSnapshot.canEnterCriticalSection();
+	}
+
+	@Override
+	public IGUItoMutex getGUIinterface()
+	{
+		return this;
+	}
+
+	@Override
+	public void processConnected(final int pProcessID)
+	{
+		fEventLoop.post(new Event()
+		{
+			@Override
+			protected void handle()
+			{
+				fRequests.put(pProcessID, 0);
+				fHighestID = Math.max(fHighestID, pProcessID);
+
+				// A process that took over the ID of a member knows nothing of our request, and one
+				// that just joined may not have received it.
+				if (fStamp != 0 && fQuorum.get(pProcessID))
+				{
+					fVotes.clear(pProcessID);
+					fFailed.clear(pProcessID);
+					fInquiries.clear(pProcessID);
+
+					MaekawaMutex.this.send(QuorumMessageType.REQUEST, fStamp, pProcessID);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void processDisconnected(final int pProcessID)
+	{
+		fEventLoop.post(new Event()
+		{
+			@Override
+			protected void handle()
+			{
+				fRequests.remove(pProcessID);
+
+				// Its requests will not be released.
+				Iterator<Long> lWaiting = fWaiting.iterator();
+				while (lWaiting.hasNext())
+				{
+					if (processOf(lWaiting.next()) == pProcessID)
+					{
+						lWaiting.remove();
+					}
+				}
+
+				if (fLocked != NONE && processOf(fLocked) == pProcessID)
+				{
+					MaekawaMutex.this.unlock();
+				}
+
+				// Its lock stays ours if we had it, and is waited for if not, so nobody else can
+				// take it. Giving it up would only make us wait for it again.
+				fInquiries.clear(pProcessID);
+			}
+		});
+	}
+
+	@Override
+	public void receiveMessage(final Message pMessage)
+	{
+		fEventLoop.post(new Event()
+		{
+			@Override
+			protected void handle()
+			{
+				if (!(pMessage instanceof QuorumMessage))
+				{
+					return;
+				}
+
+				QuorumMessage lMessage = (QuorumMessage)pMessage;
+				int lSender = lMessage.getSender();
+				int lStamp	= lMessage.getTimestamp();
+
+				switch (lMessage.getType())
+				{
+					case REQUEST:
+						MaekawaMutex.this.receiveRequest(lSender, lStamp);
+						break;
+
+					case RELINQUISH:
+						MaekawaMutex.this.receiveRelinquish(lSender, lStamp);
+						break;
+
+					case RELEASE:
+						MaekawaMutex.this.receiveRelease(lSender, lStamp);
+						break;
+
+					default:
+						// The answers of members are only about our current request.
+						if (lStamp == fStamp && fQuorum.get(lSender))
+						{
+							MaekawaMutex.this.receiveAnswer(lMessage.getType(), lSender);
+						}
+						break;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Function called when a member answers our current request.
+	 */
+	private void receiveAnswer(QuorumMessageType pType, int pMember)
+	{
+		switch (pType)
+		{
+			case LOCKED:
+				this.receiveLocked(pMember);
+				break;
+
+			case FAILED:
+				this.receiveFailed(pMember);
+				break;
+
+			case INQUIRE:
+				this.receiveInquire(pMember);
+				break;
+
+			default:
+				break;
+		}
+	}
+
+	@Override
+	public void addListener(IMutexListener pListener)
+	{
+		fListeners.add(pListener);
+	}
+
+	@Override
+	public void removeListener(IMutexListener pListener)
+	{
+		fListeners.remove(pListener);
+	}
+
+	@Override
+	public MutexSnapshot getSnapshot()
+	{
+		return fSnapshot;
+	}
+
+	@Override
+	public int getProcessID()
+	{
+		return fSnapshot.getProcessID();
+	}
+
+	@Override
+	public boolean hasToken()
+	{
+		return fSnapshot.hasToken();
+	}
+
+	@Override
+	public VectorClock getRequests()
+	{
+		return fSnapshot.getRequests();
+	}
+}
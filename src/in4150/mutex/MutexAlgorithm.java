@@ -0,0 +1,124 @@
+package in4150.mutex;
+
+import in4150.application.IApplicationToMutex;
+import in4150.control.DebugRMINetwork;
+import in4150.network.INetworkFactory;
+import in4150.network.INetworkToMutex;
+import in4150.network.RMINetwork;
+
+/**
+ * The MutexAlgorithm names the Mutual Exclusion controllers an application can
+ * choose from, and creates them.
+ */
+public enum MutexAlgorithm
+{
+	// Broadcasts its requests, the Token carries the queue of waiting processes.
+	SUZUKI_KASAMI
+	{
+		@Override
+		public IApplicationToMutex createMutex(IMutexToApplication pApplication, INetworkFactory pNetworkFactory)
+		{
+			return new SuzukiKasamiMutex(pApplication, pNetworkFactory);
+		}
+	},
+
+	// Sends its requests along a tree of the processes, towards the Privilege.
+	RAYMOND
+	{
+		@Override
+		public IApplicationToMutex createMutex(IMutexToApplication pApplication, INetworkFactory pNetworkFactory)
+		{
+			return new RaymondMutex(pApplication, pNetworkFactory);
+		}
+	},
+
+	// Asks the processes of its quorum to lock for it, without a token.
+	MAEKAWA
+	{
+		@Override
+		public IApplicationToMutex createMutex(IMutexToApplication pApplication, INetworkFactory pNetworkFactory)
+		{
+			return new MaekawaMutex(pApplication, pNetworkFactory);
+		}
+
+		/**
+		 * Lays the processes out on a grid as square as their number allows.
+		 */
+		@Override
+		public IApplicationToMutex createMutex(IMutexToApplication pApplication, INetworkFactory pNetworkFactory,
+											   int pProcesses)
+		{
+			if (pProcesses <= 0)
+			{
+				return this.createMutex(pApplication, pNetworkFactory);
+			}
+
+			return new MaekawaMutex(pApplication, pNetworkFactory,
+									MutexEventLoop.newDedicatedExecutor("MaekawaMutex events"),
+									MaekawaMutex.gridWidth(pProcesses));
+		}
+	};
+
+	/**
+	 * Creates a controller for the provided application.
+	 *
+	 * @param pApplication - The application that wants to negotiate for access to Critical Section.
+	 * @param pNetworkFactory - Creates the network used to reach the other controllers.
+	 *
+	 * @return The controller, connected to the others.
+	 */
+	public abstract IApplicationToMutex createMutex(IMutexToApplication pApplication, INetworkFactory pNetworkFactory);
+
+	/**
+	 * Creates a controller for the provided application, that knows how many processes
+	 * take part. Controllers that do not need to know ignore it.
+	 *
+	 * @param pApplication - The application that wants to negotiate for access to Critical Section.
+	 * @param pNetworkFactory - Creates the network used to reach the other controllers.
+	 * @param pProcesses - The number of processes taking part, the same for all, or 0 if unknown.
+	 *
+	 * @return The controller, connected to the others.
+	 */
+	public IApplicationToMutex createMutex(IMutexToApplication pApplication, INetworkFactory pNetworkFactory,
+										   int pProcesses)
+	{
+		return this.createMutex(pApplication, pNetworkFactory);
+	}
+
+	/**
+	 * Creates a controller for the provided application, communicating over RMI.
+	 *
+	 * @param pApplication - The application that wants to negotiate for access to Critical Section.
+	 * @param pManualMode - Debug variable. If true, the controller uses the debug network.
+	 *
+	 * @return The controller, connected to the others.
+	 */
+	public IApplicationToMutex createMutex(IMutexToApplication pApplication, boolean pManualMode)
+	{
+		return this.createMutex(pApplication, rmiFactory(pManualMode));
+	}
+
+	/**
+	 * @param pManualMode - Debug variable. If true, the factory creates the debug network.
+	 *
+	 * @return A factory of RMI networks.
+	 */
+	public static INetworkFactory rmiFactory(final boolean pManualMode)
+	{
+		return new INetworkFactory()
+		{
+			@Override
+			public IMutexToNetwork createNetwork(INetworkToMutex pMutexLayer)
+			{
+				if (pManualMode)
+				{
+					return new DebugRMINetwork(pMutexLayer);
+				}
+				else
+				{
+					return new RMINetwork(pMutexLayer);
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,280 @@
+package in4150.mutex;
+
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A MutexEventLoop runs the events of one mutex controller one at a time, in the
+ * order they were posted. Any thread may post an event; posting never blocks and
+ * takes no lock, the mailbox is a lock-free queue.
+ *
+ * The loop does not own a thread. Once an event is posted, it schedules itself on
+ * its executor and drains the mailbox, so many loops can share one pool, and a
+ * busy loop gives up its thread after a number of events to let others run.
+ * Because only one drain runs at a time, the events never run concurrently and
+ * the state they touch needs no locking.
+ *
+ * A closed loop drops the events posted to it, and cancels those that are Futures so
+ * nobody waits for them forever. If it ran on an executor created by
+ * newDedicatedExecutor, that executor is shut down with it.
+ */
+public class MutexEventLoop implements Runnable
+{
+	// The number of events drained before the thread is given back to the executor.
+	private static final int MAX_BATCH = 256;
+
+	// The executor running the loop.
+	private final Executor fExecutor;
+
+	// Events waiting to run, in order.
+	private final Queue<Runnable> fMailbox;
+
+	// True while the loop is scheduled on the executor, or not started yet.
+	private final AtomicBoolean fScheduled;
+
+	// True once the loop is closed.
+	private volatile boolean fClosed;
+
+	// The thread draining the mailbox, or null while the loop is not running.
+	private volatile Thread fRunner;
+
+	/**
+	 * An executor with a single daemon thread, for a loop of its own.
+	 */
+	private static class DedicatedExecutor extends ThreadPoolExecutor
+	{
+		DedicatedExecutor(final String pName)
+		{
+			super(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable pTask)
+				{
+					Thread lThread = new Thread(pTask, pName);
+					lThread.setDaemon(true);
+					return lThread;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Constructs a new MutexEventLoop. Events posted before it is started wait until it is.
+	 *
+	 * @param pExecutor - The executor running the loop.
+	 */
+	public MutexEventLoop(Executor pExecutor)
+	{
+		fExecutor	= pExecutor;
+		fMailbox	= new ConcurrentLinkedQueue<Runnable>();
+		fScheduled	= new AtomicBoolean(true);
+		fClosed		= false;
+	}
+
+	/**
+	 * @param pName - The name of the thread.
+	 *
+	 * @return An executor with a single daemon thread, for a loop of its own.
+	 */
+	public static ExecutorService newDedicatedExecutor(String pName)
+	{
+		return new DedicatedExecutor(pName);
+	}
+
+	/**
+	 * Starts running the events, including those posted so far.
+	 */
+	public void start()
+	{
+		fScheduled.set(false);
+
+		this.schedule();
+	}
+
+	/**
+	 * Posts an event to run on the loop.
+	 *
+	 * @param pEvent - The event.
+	 */
+	public void post(Runnable pEvent)
+	{
+		fMailbox.add(pEvent);
+
+		// Closed before or while posting, a close running now may miss the event.
+		if (fClosed)
+		{
+			this.drop();
+			return;
+		}
+
+		this.schedule();
+	}
+
+	/**
+	 * Posts an event and waits until it ran, ignoring interrupts. Called from an event
+	 * of this loop, the event runs at once instead, as the loop would wait for itself.
+	 *
+	 * @param pEvent - The event.
+	 *
+	 * @return true iff the event ran, false if the loop was closed before it could.
+	 */
+	public boolean postAndWait(Runnable pEvent)
+	{
+		if (this.inLoop())
+		{
+			pEvent.run();
+			return true;
+		}
+
+		FutureTask<Void> lTask = new FutureTask<Void>(pEvent, null);
+		boolean lInterrupted = false;
+
+		this.post(lTask);
+
+		try
+		{
+			while (true)
+			{
+				try
+				{
+					lTask.get();
+					return true;
+				}
+				catch (InterruptedException lException)
+				{
+					// Keep waiting, and restore the interrupt when done.
+					lInterrupted = true;
+				}
+				catch (CancellationException lException)
+				{
+					return false;
+				}
+				catch (ExecutionException lException)
+				{
+					throw new IllegalStateException(lException.getCause());
+				}
+			}
+		}
+		finally
+		{
+			if (lInterrupted)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return true iff the calling thread is running an event of this loop.
+	 */
+	public boolean inLoop()
+	{
+		return fRunner == Thread.currentThread();
+	}
+
+	/**
+	 * Drops the events still waiting, and those posted later. The event running now
+	 * finishes. Shuts down the executor if it was created for this loop.
+	 */
+	public void close()
+	{
+		fClosed = true;
+
+		this.drop();
+
+		if (fExecutor instanceof DedicatedExecutor)
+		{
+			((DedicatedExecutor)fExecutor).shutdown();
+		}
+	}
+
+	/**
+	 * @return The number of events waiting to run. Counts the mailbox, so it is meant for monitoring.
+	 */
+	public int getBacklog()
+	{
+		return fMailbox.size();
+	}
+
+	/**
+	 * Empties the mailbox of a closed loop, cancelling the events that are Futures.
+	 */
+	private void drop()
+	{
+		Runnable lEvent;
+		while ((lEvent = fMailbox.poll()) != null)
+		{
+			if (lEvent instanceof Future)
+			{
+				((Future<?>)lEvent).cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Hands the loop to the executor, unless it is already scheduled.
+	 */
+	private void schedule()
+	{
+		if (!fMailbox.isEmpty() && fScheduled.compareAndSet(false, true))
+		{
+			try
+			{
+				fExecutor.execute(this);
+			}
+			catch (RejectedExecutionException lException)
+			{
+				// Closed while posting, the event is dropped.
+				if (!fClosed)
+				{
+					throw lException;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drains the mailbox.
+	 */
+	@Override
+	public void run()
+	{
+		Runnable lEvent;
+		int lCount = 0;
+
+		fRunner = Thread.currentThread();
+
+		while (lCount < MAX_BATCH && (lEvent = fMailbox.poll()) != null)
+		{
+			try
+			{
+				lEvent.run();
+			}
+			catch (RuntimeException lException)
+			{
+				// A failing event must not stop the events after it.
+				lException.printStackTrace();
+			}
+
+			lCount++;
+		}
+
+		fRunner = null;
+
+		// Events posted while we were finishing would otherwise wait forever.
+		fScheduled.set(false);
+		this.schedule();
+	}
+}
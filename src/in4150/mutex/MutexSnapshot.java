@@ -0,0 +1,73 @@
+package in4150.mutex;
+
+/**
+ * A MutexSnapshot is the state of a mutex controller as it was after one of its
+ * events. It never changes, so any thread can read it while the controller
+ * goes on.
+ *
+ * A controller publishes a snapshot after every event, so taking one must be cheap.
+ * The known requests are kept as a version of the RequestLog of the controller,
+ * and only copied out when read.
+ */
+public final class MutexSnapshot
+{
+	// The ID of the process.
+	private final int fProcessID;
+
+	// True iff the process held the Token.
+	private final boolean fHasToken;
+
+	// True iff the application was granted the critical section.
+	private final boolean fCanEnterCS;
+
+	// The known requests of all processes.
+	private final RequestLog.Version fRequests;
+
+	/**
+	 * Constructs a new MutexSnapshot.
+	 *
+	 * @param pProcessID - The ID of the process.
+	 * @param pHasToken - True iff the process holds the Token.
+	 * @param pCanEnterCS - True iff the application is granted the critical section.
+	 * @param pRequests - The known requests now.
+	 */
+	MutexSnapshot(int pProcessID, boolean pHasToken, boolean pCanEnterCS, RequestLog pRequests)
+	{
+		fProcessID	= pProcessID;
+		fHasToken	= pHasToken;
+		fCanEnterCS	= pCanEnterCS;
+		fRequests	= pRequests.version();
+	}
+
+	/**
+	 * @return The ID of the process.
+	 */
+	public int getProcessID()
+	{
+		return fProcessID;
+	}
+
+	/**
+	 * @return true iff the process held the Token.
+	 */
+	public boolean hasToken()
+	{
+		return fHasToken;
+	}
+
+	/**
+	 * @return true iff the application was granted the critical section.
+	 */
+	public boolean canEnterCriticalSection()
+	{
+		return fCanEnterCS;
+	}
+
+	/**
+	 * @return A copy of the known requests of all processes.
+	 */
+	public VectorClock getRequests()
+	{
+		return fRequests.toClock();
+	}
+}
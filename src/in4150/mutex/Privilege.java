@@ -0,0 +1,39 @@
+package in4150.mutex;
+
+import in4150.network.Message;
+import in4150.network.wire.IWireFormat;
+import in4150.network.wire.WireInput;
+import in4150.network.wire.WireOutput;
+
+/**
+ * The Privilege message is the token of the RaymondMutex. It is passed along the
+ * edges of the tree, and the process holding it may enter its critical section.
+ * Unlike the Token of the SuzukiKasamiMutex it carries nothing: the holder pointers
+ * and queues of the processes tell where it must go.
+ */
+public class Privilege extends Message
+{
+	// Unique Serial ID.
+	private static final long serialVersionUID = -7390265913620874519L;
+
+	// Writes nothing, the type tag is all there is.
+	public static final IWireFormat<Privilege> WIRE_FORMAT = new IWireFormat<Privilege>()
+	{
+		@Override
+		public void write(Privilege pPrivilege, WireOutput pOutput)
+		{
+		}
+
+		@Override
+		public Privilege read(WireInput pInput)
+		{
+			return new Privilege();
+		}
+	};
+
+	@Override
+	public String toString()
+	{
+		return "Privilege";
+	}
+}
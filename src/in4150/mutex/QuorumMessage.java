@@ -0,0 +1,99 @@
+package in4150.mutex;
+
+import in4150.network.Message;
+import in4150.network.wire.IWireFormat;
+import in4150.network.wire.WireInput;
+import in4150.network.wire.WireOutput;
+
+import java.io.IOException;
+
+/**
+ * A QuorumMessage is sent between a MaekawaMutex controller requesting its critical
+ * section and the members of its quorum. It names the request it is about by its
+ * timestamp.
+ */
+public class QuorumMessage extends Message
+{
+	// Unique Serial ID.
+	private static final long serialVersionUID = 5172968313042758160L;
+
+	// Writes the type, the sender and the timestamp.
+	public static final IWireFormat<QuorumMessage> WIRE_FORMAT = new IWireFormat<QuorumMessage>()
+	{
+		@Override
+		public void write(QuorumMessage pMessage, WireOutput pOutput)
+		{
+			pOutput.writeByte(pMessage.fType.ordinal());
+			pOutput.writeVarInt(pMessage.fSender);
+			pOutput.writeVarInt(pMessage.fTimestamp);
+		}
+
+		@Override
+		public QuorumMessage read(WireInput pInput) throws IOException
+		{
+			int lType = pInput.readByte();
+
+			if (lType >= QuorumMessageType.values().length)
+			{
+				throw new IOException("Unknown quorum message type " + lType);
+			}
+
+			int lSender = pInput.readVarInt();
+
+			return new QuorumMessage(QuorumMessageType.values()[lType], lSender, pInput.readVarInt());
+		}
+	};
+
+	// What the message says.
+	private final QuorumMessageType fType;
+
+	// The ID of the process sending the message.
+	private final int fSender;
+
+	// The timestamp of the request the message is about.
+	private final int fTimestamp;
+
+	/**
+	 * Constructs a new QuorumMessage.
+	 * 
+	 * @param pType - What the message says.
+	 * @param pSender - The ID of the process sending the message.
+	 * @param pTimestamp - The timestamp of the request the message is about.
+	 */
+	public QuorumMessage(QuorumMessageType pType, int pSender, int pTimestamp)
+	{
+		fType		= pType;
+		fSender		= pSender;
+		fTimestamp	= pTimestamp;
+	}
+
+	/**
+	 * @return What the message says.
+	 */
+	public QuorumMessageType getType()
+	{
+		return fType;
+	}
+
+	/**
+	 * @return The ID of the process sending the message.
+	 */
+	public int getSender()
+	{
+		return fSender;
+	}
+
+	/**
+	 * @return The timestamp of the request the message is about.
+	 */
+	public int getTimestamp()
+	{
+		return fTimestamp;
+	}
+
+	@Override
+	public String toString()
+	{
+		return fType + " of request " + fTimestamp + " from Process " + fSender;
+	}
+}
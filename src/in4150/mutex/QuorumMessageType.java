@@ -0,0 +1,11 @@
+package in4150.mutex;
+
+/**
+ * A QuorumMessageType defines the type of QuorumMessages the MaekawaMutex controllers
+ * send each other. Requesters send REQUEST, RELINQUISH and RELEASE to the members of
+ * their quorum, the members answer with LOCKED, FAILED and INQUIRE.
+ */
+public enum QuorumMessageType
+{
+	REQUEST, LOCKED, FAILED, INQUIRE, RELINQUISH, RELEASE
+}
@@ -0,0 +1,523 @@
+package in4150.mutex;
+
+import in4150.application.AccessMode;
+import in4150.application.IApplicationToMutex;
+import in4150.control.gui.IGUItoMutex;
+import in4150.network.INetworkFactory;
+import in4150.network.INetworkToMutex;
+import in4150.network.Message;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The RaymondMutex controller allows an application to coordinate access to its
+ * critical section with a number of other processes, like the SuzukiKasamiMutex,
+ * without broadcasting its requests.
+ *
+ * The controller uses Raymond's tree based token algorithm. The processes form a
+ * binary tree by their IDs: the parent of process i is process i / 2, so process 1
+ * is the root. Every process points to the neighbour in the tree on the path to the
+ * Privilege, its holder, and sends its requests only there. A process forwards the
+ * first request it receives to its own holder, and queues the others, so a request
+ * takes at most the height of the tree in messages, and the Privilege as many to
+ * come back along the same path.
+ *
+ * The first process creates the Privilege. It must be process 1, which is the case
+ * when the network hands out the lowest free ID. Processes joining later are leaves
+ * of the tree, pointing to their parent. Like the Token of the SuzukiKasamiMutex,
+ * the Privilege is lost if the process holding it leaves.
+ *
+ * A process whose holder leaves points to its parent again, and asks anew once the
+ * parent is back. This finds the Privilege if it was above the process that left,
+ * and a process that takes its ID over joins as a leaf that points up. It does not
+ * if the Privilege was below it: the subtree of a process that left is cut off from
+ * the rest until the ID is taken again, and the new process then points up where the
+ * old one pointed down, so requests from above and below wait on each other forever.
+ *
+ * All requests are served exclusively, including those for SHARED access.
+ *
+ * Like the SuzukiKasamiMutex, the controller runs every call as an event on its
+ * MutexEventLoop, and publishes a MutexSnapshot after every event.
+ */
+public class RaymondMutex implements IGUItoMutex, IApplicationToMutex, INetworkToMutex
+{
+	// Interface to the application layer above us.
+	private final IMutexToApplication fApplication;
+
+	// Interface to the network layer below us.
+	private final IMutexToNetwork fNetwork;
+
+	// The loop running all events that change the state below.
+	private final MutexEventLoop fEventLoop;
+
+	// The requests we made, and the number of requests each neighbour sent us.
+	private final RequestLog fRequests;
+
+	// The neighbours that asked for the Privilege, and ourselves if we did, in order of arrival.
+	private final Queue<Integer> fQueue;
+
+	// The neighbour on the path to the Privilege, or our own ID if we hold it.
+	private int fHolder;
+
+	// A flag indicating that we asked our holder for the Privilege, and did not receive it yet.
+	private boolean fAsked;
+
+	// The number of requests we sent to our holders.
+	private int fSentRequests;
+
+	// A flag indicating to the application that it may indeed enter its critical section now.
+	private boolean fCanEnterCS;
+
+	// The state as it was after the last event, readable from any thread.
+	private volatile MutexSnapshot fSnapshot;
+
+	// The listeners told about every published state.
+	private final List<IMutexListener> fListeners;
+
+	/**
+	 * Constructs a new RaymondMutex controller for the provided application.
+	 *
+	 * @param pApplication - The application that wants to negotiate for access to Critical Section.
+	 * @param pManualMode - Debug variable. If true, the controller uses the debug network.
+	 */
+	public RaymondMutex(IMutexToApplication pApplication, boolean pManualMode)
+	{
+		this(pApplication, MutexAlgorithm.rmiFactory(pManualMode));
+	}
+
+	/**
+	 * Constructs a new RaymondMutex controller for the provided application,
+	 * communicating over the provided type of network. The controller runs its
+	 * events on a thread of its own.
+	 *
+	 * @param pApplication - The application that wants to negotiate for access to Critical Section.
+	 * @param pNetworkFactory - Creates the network used to reach the other controllers.
+	 */
+	public RaymondMutex(IMutexToApplication pApplication, INetworkFactory pNetworkFactory)
+	{
+		this(pApplication, pNetworkFactory, MutexEventLoop.newDedicatedExecutor("RaymondMutex events"));
+	}
+
+	/**
+	 * Constructs a new RaymondMutex controller for the provided application,
+	 * communicating over the provided type of network.
+	 *
+	 * @param pApplication - The application that wants to negotiate for access to Critical Section.
+	 * @param pNetworkFactory - Creates the network used to reach the other controllers.
+	 * @param pEventExecutor - Runs the events of the controller, may be shared with other controllers.
+	 */
+	public RaymondMutex(IMutexToApplication pApplication, INetworkFactory pNetworkFactory, Executor pEventExecutor)
+	{
+		fApplication  = pApplication;
+		fListeners	  = new CopyOnWriteArrayList<IMutexListener>();
+		fEventLoop	  = new MutexEventLoop(pEventExecutor);
+		fRequests	  = new RequestLog();
+		fQueue		  = new ArrayDeque<Integer>();
+		fAsked		  = false;
+		fSentRequests = 0;
+		fCanEnterCS	  = false;
+		fNetwork	  = pNetworkFactory.createNetwork(this);
+
+		// Connect to the others. Anything they send waits until the loop is started.
+		fNetwork.connect();
+
+		// If we are the first, we get the Privilege. Otherwise it is found through our parent.
+		Integer[] lConnected = fNetwork.getConnectedIDs();
+		if (lConnected.length == 1)
+		{
+			fHolder = fNetwork.getOwnID();
+		}
+		else
+		{
+			fHolder = parent(fNetwork.getOwnID());
+		}
+
+		// Store all other connected networks for easy access.
+		for (Integer lPeer : lConnected)
+		{
+			fRequests.put(lPeer, 0);
+		}
+
+		this.publish();
+
+		fEventLoop.start();
+	}
+
+	/**
+	 * @param pProcess - The ID of a process.
+	 *
+	 * @return The ID of the parent of the process in the tree.
+	 */
+	private static int parent(int pProcess)
+	{
+		return pProcess / 2;
+	}
+
+	/**
+	 * An Event changes the state of the controller on the loop, and publishes the
+	 * changed state when done.
+	 */
+	private abstract class Event implements Runnable
+	{
+		@Override
+		public final void run()
+		{
+			this.handle();
+
+			RaymondMutex.this.publish();
+		}
+
+		/**
+		 * Changes the state of the controller.
+		 */
+		protected abstract void handle();
+	}
+
+	/**
+	 * Publishes the current state for the readers outside the loop.
+	 */
+	private void publish()
+	{
+		fSnapshot = new MutexSnapshot(fNetwork.getOwnID(), this.hasPrivilege(), fCanEnterCS, fRequests);
+
+		for (IMutexListener lListener : fListeners)
+		{
+			lListener.snapshotPublished(fSnapshot);
+		}
+	}
+
+	/**
+	 * Function called by the parent application if it wants to enter
+	 * the critical section.
+	 *
+	 * Asks the holder for the Privilege, unless we hold it or asked already.
+	 */
+	@Override
+	public void requestCriticalSection()
+	{
+		fEventLoop.post(new Event()
+		{
+			@Override
+			protected void handle()
+			{
+				int lMyID = fNetwork.getOwnID();
+
+				fRequests.incrementClock(lMyID);
+				fQueue.add(lMyID);
+
+				RaymondMutex.this.assignPrivilege();
+				RaymondMutex.this.makeRequest();
+			}
+		});
+	}
+
+	/**
+	 * Access is always exclusive, the mode is not looked at.
+	 */
+	@Override
+	public void requestCriticalSection(AccessMode pMode)
+	{
+		this.requestCriticalSection();
+	}
+
+	/**
+	 * Function called by the parent application if it wants to enter the critical
+	 * section only if it is granted at once.
+	 *
+	 * Decided on the loop, without sending anything: granted iff we hold the Privilege,
+	 * do not use it, and nobody asked us for it. Called on the loop, from
+	 * doCriticalSection on a direct executor, it decides at once. Once the controller
+	 * is closed it is never granted.
+	 */
+	@Override
+	public boolean tryRequestCriticalSection(AccessMode pMode)
+	{
+		final AtomicBoolean lGranted = new AtomicBoolean();
+
+		boolean lDecided = fEventLoop.postAndWait(new Event()
+		{
+			@Override
+			protected void handle()
+			{
+				boolean lIdle = RaymondMutex.this.hasPrivilege() && !fCanEnterCS && fQueue.isEmpty();
+
+				if (lIdle)
+				{
+					fRequests.incrementClock(fNetwork.getOwnID());
+					fCanEnterCS = true;
+				}
+
+				lGranted.set(lIdle);
+			}
+		});
+
+		return lDecided && lGranted.get();
+	}
+
+	/**
+	 * Function called by the parent application when it leaves the critical section,
+	 * either from doCriticalSection or later from a thread of its own.
+	 *
+	 * Passes the Privilege along to the neighbour that asked first, if any.
+	 */
+	@Override
+	public void releaseCriticalSection()
+	{
+		fEventLoop.post(new Event()
+		{
+			@Override
+			protected void handle()
+			{
+				// Only a granted critical section can be released.
+				if (!fCanEnterCS)
+				{
+					return;
+				}
+
+				fCanEnterCS = false;
+
+				RaymondMutex.this.assignPrivilege();
+				RaymondMutex.this.makeRequest();
+			}
+		});
+	}
+
+	/**
+	 * Disconnects from the others and stops the event loop. The Privilege, if held
+	 * here, is lost.
+	 */
+	@Override
+	public void close()
+	{
+		fNetwork.disconnect();
+		fEventLoop.close();
+	}
+
+	/**
+	 * Function called when a neighbour asks for the Privilege, for itself or for
+	 * processes further away.
+	 *
+	 * @param pRequest - The received Request details.
+	 */
+	private void receiveRequest(Request pRequest)
+	{
+		fRequests.put(pRequest.getRequester(), pRequest.getRequestNumber());
+		fQueue.add(pRequest.getRequester());
+
+		this.assignPrivilege();
+		this.makeRequest();
+	}
+
+	/**
+	 * Function called when a neighbour passes us the Privilege.
+	 */
+	private void receivePrivilege()
+	{
+		fHolder = fNetwork.getOwnID();
+
+		this.assignPrivilege();
+		this.makeRequest();
+	}
+
+	/**
+	 * If we hold the Privilege and do not use it, passes it to the neighbour that
+	 * asked first, or uses it ourselves if we did.
+	 */
+	private void assignPrivilege()
+	{
+		int lMyID = fNetwork.getOwnID();
+
+		if (fHolder != lMyID || fCanEnterCS || fQueue.isEmpty())
+		{
+			return;
+		}
+
+		fHolder = fQueue.poll();
+		fAsked	= false;
+
+		if (fHolder == lMyID)
+		{
+			fCanEnterCS = true;
+
+			this.grantCriticalSection();
+		}
+		else
+		{
+			fNetwork.sendMessage(new Privilege(), fHolder);
+		}
+	}
+
+	/**
+	 * If someone here waits for the Privilege held elsewhere, asks our holder for it
+	 * once.
+	 */
+	private void makeRequest()
+	{
+		if (fHolder == fNetwork.getOwnID() || fQueue.isEmpty() || fAsked)
+		{
+			return;
+		}
+
+		fAsked = true;
+		fSentRequests++;
+
+		fNetwork.sendMessage(new Request(fNetwork.getOwnID(), fSentRequests, 0), fHolder);
+	}
+
+	/**
+	 * Lets the application enter its critical section.
+	 */
+	private void grantCriticalSection()
+	{
+		// The application must see the grant before it runs.
+		this.publish();
+
+		// Grant the critical section on the application executor, so receiving the Privilege
+		// returns at once. It is passed on once the application releases it.
+		fApplication.getCriticalSectionExecutor().execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				fApplication.doCriticalSection();
+			}
+		});
+	}
+
+	/**
+	 * @return true iff we hold the Privilege. Only valid on the loop.
+	 */
+	private boolean hasPrivilege()
+	{
+		return fHolder == fNetwork.getOwnID();
+	}
+
+	/**
+	 * Function called by the parent application just before entering
+	 * the critical section.
+	 *
+	 * @return true iff we the application is allowed to enter its critical section.
+	 */
+	@Override
+	public boolean canEnterCriticalSection()
+	{
+		MutexSnapshot lSnapshot = fSnapshot;
+
+		return lSnapshot.canEnterCriticalSection() && lSnapshot.hasToken();
+	}
+
+	@Override
+	public IGUItoMutex getGUIinterface()
+	{
+		return this;
+	}
+
+	@Override
+	public void processConnected(final int pProcessID)
+	{
+		fEventLoop.post(new Event()
+		{
+			@Override
+			protected void handle()
+			{
+				fRequests.put(pProcessID, 0);
+
+				// Whatever we asked of the process that had this ID before is lost, so ask again.
+				if (fHolder == pProcessID)
+				{
+					fAsked = false;
+
+					RaymondMutex.this.makeRequest();
+				}
+			}
+		});
+	}
+
+	@Override
+	public void processDisconnected(final int pProcessID)
+	{
+		fEventLoop.post(new Event()
+		{
+			@Override
+			protected void handle()
+			{
+				fRequests.remove(pProcessID);
+
+				// A neighbour that left waits for nothing anymore.
+				fQueue.remove(pProcessID);
+
+				// If our path to the Privilege ran through it, the path now runs through our parent,
+				// and what we asked is lost. The root has nowhere else to look.
+				int lMyID = fNetwork.getOwnID();
+				if (fHolder == pProcessID && lMyID != 1)
+				{
+					fHolder	= parent(lMyID);
+					fAsked	= false;
+
+					RaymondMutex.this.makeRequest();
+				}
+			}
+		});
+	}
+
+	@Override
+	public void receiveMessage(final Message pMessage)
+	{
+		fEventLoop.post(new Event()
+		{
+			@Override
+			protected void handle()
+			{
+				if (pMessage instanceof Request)
+				{
+					RaymondMutex.this.receiveRequest((Request)pMessage);
+				}
+				else if (pMessage instanceof Privilege)
+				{
+					RaymondMutex.this.receivePrivilege();
+				}
+			}
+		});
+	}
+
+	@Override
+	public void addListener(IMutexListener pListener)
+	{
+		fListeners.add(pListener);
+	}
+
+	@Override
+	public void removeListener(IMutexListener pListener)
+	{
+		fListeners.remove(pListener);
+	}
+
+	@Override
+	public MutexSnapshot getSnapshot()
+	{
+		return fSnapshot;
+	}
+
+	@Override
+	public int getProcessID()
+	{
+		return fSnapshot.getProcessID();
+	}
+
+	@Override
+	public boolean hasToken()
+	{
+		return fSnapshot.hasToken();
+	}
+
+	@Override
+	public VectorClock getRequests()
+	{
+		return fSnapshot.getRequests();
+	}
+}
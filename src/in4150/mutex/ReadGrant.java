@@ -0,0 +1,78 @@
+package in4150.mutex;
+
+import in4150.network.Message;
+import in4150.network.wire.IWireFormat;
+import in4150.network.wire.WireInput;
+import in4150.network.wire.WireOutput;
+
+import java.io.IOException;
+
+/**
+ * A ReadGrant message lets the process which receives it enter its critical section
+ * for reading, without the Token. The holder of the Token that sent it keeps the
+ * Token until the reader sends a ReadRelease.
+ */
+public class ReadGrant extends Message
+{
+	// Unique Serial ID.
+	private static final long serialVersionUID = -4411843024475262118L;
+
+	// Writes the grantor and the granted request number.
+	public static final IWireFormat<ReadGrant> WIRE_FORMAT = new IWireFormat<ReadGrant>()
+	{
+		@Override
+		public void write(ReadGrant pGrant, WireOutput pOutput)
+		{
+			pOutput.writeVarInt(pGrant.fGrantor);
+			pOutput.writeVarInt(pGrant.fRequestNumber);
+		}
+
+		@Override
+		public ReadGrant read(WireInput pInput) throws IOException
+		{
+			int lGrantor = pInput.readVarInt();
+
+			return new ReadGrant(lGrantor, pInput.readVarInt());
+		}
+	};
+
+	// The ID of the process holding the Token.
+	private final int fGrantor;
+
+	// The sequence number of the request that is granted.
+	private final int fRequestNumber;
+
+	/**
+	 * Constructs a new ReadGrant.
+	 * 
+	 * @param pGrantor - The ID of the process holding the Token.
+	 * @param pRequestNumber - The sequence number of the request that is granted.
+	 */
+	public ReadGrant(int pGrantor, int pRequestNumber)
+	{
+		fGrantor		= pGrantor;
+		fRequestNumber	= pRequestNumber;
+	}
+
+	/**
+	 * @return The ID of the process holding the Token.
+	 */
+	public int getGrantor()
+	{
+		return fGrantor;
+	}
+
+	/**
+	 * @return The sequence number of the request that is granted.
+	 */
+	public int getRequestNumber()
+	{
+		return fRequestNumber;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Read grant of request " + fRequestNumber + " from Process " + fGrantor;
+	}
+}
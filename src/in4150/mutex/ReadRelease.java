@@ -0,0 +1,77 @@
+package in4150.mutex;
+
+import in4150.network.Message;
+import in4150.network.wire.IWireFormat;
+import in4150.network.wire.WireInput;
+import in4150.network.wire.WireOutput;
+
+import java.io.IOException;
+
+/**
+ * A ReadRelease message tells the holder of the Token that a reader it sent a
+ * ReadGrant left its critical section, or did not want to enter it.
+ */
+public class ReadRelease extends Message
+{
+	// Unique Serial ID.
+	private static final long serialVersionUID = 2310928431870129604L;
+
+	// Writes the reader and the released request number.
+	public static final IWireFormat<ReadRelease> WIRE_FORMAT = new IWireFormat<ReadRelease>()
+	{
+		@Override
+		public void write(ReadRelease pRelease, WireOutput pOutput)
+		{
+			pOutput.writeVarInt(pRelease.fReader);
+			pOutput.writeVarInt(pRelease.fRequestNumber);
+		}
+
+		@Override
+		public ReadRelease read(WireInput pInput) throws IOException
+		{
+			int lReader = pInput.readVarInt();
+
+			return new ReadRelease(lReader, pInput.readVarInt());
+		}
+	};
+
+	// The ID of the process that was granted to read.
+	private final int fReader;
+
+	// The sequence number of the request that was granted.
+	private final int fRequestNumber;
+
+	/**
+	 * Constructs a new ReadRelease.
+	 * 
+	 * @param pReader - The ID of the process that was granted to read.
+	 * @param pRequestNumber - The sequence number of the request that was granted.
+	 */
+	public ReadRelease(int pReader, int pRequestNumber)
+	{
+		fReader			= pReader;
+		fRequestNumber	= pRequestNumber;
+	}
+
+	/**
+	 * @return The ID of the process that was granted to read.
+	 */
+	public int getReader()
+	{
+		return fReader;
+	}
+
+	/**
+	 * @return The sequence number of the request that was granted.
+	 */
+	public int getRequestNumber()
+	{
+		return fRequestNumber;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Read release of request " + fRequestNumber + " from Process " + fReader;
+	}
+}
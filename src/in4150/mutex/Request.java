@@ -1,6 +1,12 @@
 package in4150.mutex;
 
+import in4150.application.AccessMode;
 import in4150.network.Message;
+import in4150.network.wire.IWireFormat;
+import in4150.network.wire.WireInput;
+import in4150.network.wire.WireOutput;
+
+import java.io.IOException;
 
 /**
  * A Request message asks the process which receives it for permission to
@@ -14,22 +20,73 @@ public class Request extends Message
 	// Unique Serial ID.
 	private static final long serialVersionUID = 893125914590790467L;
 
+	// Writes the requester, the sequence number, the known Token version and the access mode.
+	public static final IWireFormat<Request> WIRE_FORMAT = new IWireFormat<Request>()
+	{
+		@Override
+		public void write(Request pRequest, WireOutput pOutput)
+		{
+			pOutput.writeVarInt(pRequest.fRequester);
+			pOutput.writeVarInt(pRequest.fRequestNumber);
+			pOutput.writeVarInt(pRequest.fTokenVersion);
+			pOutput.writeByte(pRequest.fMode.ordinal());
+		}
+
+		@Override
+		public Request read(WireInput pInput) throws IOException
+		{
+			int lRequester	= pInput.readVarInt();
+			int lNumber		= pInput.readVarInt();
+			int lVersion	= pInput.readVarInt();
+			int lMode		= pInput.readByte();
+
+			if (lMode >= AccessMode.values().length)
+			{
+				throw new IOException("Unknown access mode " + lMode);
+			}
+
+			return new Request(lRequester, lNumber, lVersion, AccessMode.values()[lMode]);
+		}
+	};
+
 	// The ID of the process doing the request.
 	private final int fRequester;
 
 	// The sequence number of this request.
 	private final int fRequestNumber;
 
+	// The version of the Token the requester last held, or 0 if it never did.
+	private final int fTokenVersion;
+
+	// How the requester wants to use its critical section.
+	private final AccessMode fMode;
+
 	/**
 	 * Constructs a new Request.
 	 * 
 	 * @param pRequester - The ID of the process doing the request.
 	 * @param pRequestNumber - The sequence number of this request.
+	 * @param pTokenVersion - The version of the Token the requester last held, or 0.
 	 */
-	public Request(int pRequester, int pRequestNumber)
+	public Request(int pRequester, int pRequestNumber, int pTokenVersion)
+	{
+		this(pRequester, pRequestNumber, pTokenVersion, AccessMode.EXCLUSIVE);
+	}
+
+	/**
+	 * Constructs a new Request for the provided kind of access.
+	 * 
+	 * @param pRequester - The ID of the process doing the request.
+	 * @param pRequestNumber - The sequence number of this request.
+	 * @param pTokenVersion - The version of the Token the requester last held, or 0.
+	 * @param pMode - How the requester wants to use its critical section.
+	 */
+	public Request(int pRequester, int pRequestNumber, int pTokenVersion, AccessMode pMode)
 	{
 		fRequester		= pRequester;
 		fRequestNumber	= pRequestNumber;
+		fTokenVersion	= pTokenVersion;
+		fMode			= pMode;
 	}
 
 	/**
@@ -48,11 +105,32 @@ public class Request extends Message
 		return fRequestNumber;
 	}
 
+	/**
+	 * @return The version of the Token the requester last held, or 0 if it never did.
+	 */
+	public int getTokenVersion()
+	{
+		return fTokenVersion;
+	}
+
+	/**
+	 * @return How the requester wants to use its critical section.
+	 */
+	public AccessMode getMode()
+	{
+		return fMode;
+	}
+
 	@Override
 	public String toString()
 	{
 		String lResult = "Request number " + fRequestNumber + " from Process " + fRequester;
 
+		if (fMode == AccessMode.SHARED)
+		{
+			lResult += " to read";
+		}
+
 		return lResult;
 	}
 }
\ No newline at end of file
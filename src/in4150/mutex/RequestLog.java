@@ -0,0 +1,202 @@
+package in4150.mutex;
+
+import java.util.Arrays;
+
+/**
+ * A RequestLog holds the known requests of a mutex controller, and records every
+ * change made to them. A snapshot of the controller keeps a Version of the log,
+ * which counts the changes made so far, so it can show the requests as they were
+ * without copying them for every event. They are only rebuilt when read.
+ *
+ * Changes are appended and never overwritten, so a Version stays valid while the
+ * controller goes on. Once the changes outnumber the requests, the log starts over
+ * from a copy of the requests, which keeps rebuilding cheap and costs a constant
+ * amount per change on average.
+ *
+ * Only the controller uses the log, on its event loop. A Version may be read from
+ * any thread that received it safely, as through a volatile field.
+ */
+final class RequestLog
+{
+	// The number of changes the log holds at least before it starts over.
+	private static final int MIN_CHANGES = 16;
+
+	// Marks a change removing the element of a process.
+	private static final int REMOVED = Integer.MIN_VALUE;
+
+	// The requests as they are now.
+	private final VectorClock fRequests;
+
+	// A copy of the requests as they were when the log started over, never changed.
+	private VectorClock fBase;
+
+	// The process of each change since the log started over.
+	private int[] fUnits;
+
+	// The value of each change, or REMOVED.
+	private int[] fValues;
+
+	// The number of changes since the log started over.
+	private int fCount;
+
+	/**
+	 * The requests as they were after some number of changes.
+	 */
+	static final class Version
+	{
+		// The requests the changes are applied to.
+		private final VectorClock fBase;
+
+		// The process of each change.
+		private final int[] fUnits;
+
+		// The value of each change, or REMOVED.
+		private final int[] fValues;
+
+		// The number of changes that belong to this version.
+		private final int fCount;
+
+		Version(VectorClock pBase, int[] pUnits, int[] pValues, int pCount)
+		{
+			fBase	= pBase;
+			fUnits	= pUnits;
+			fValues	= pValues;
+			fCount	= pCount;
+		}
+
+		/**
+		 * @return A copy of the requests of this version.
+		 */
+		VectorClock toClock()
+		{
+			VectorClock lResult = fBase.clone();
+
+			for (int i = 0; i < fCount; i++)
+			{
+				if (fValues[i] == REMOVED)
+				{
+					lResult.remove(fUnits[i]);
+				}
+				else
+				{
+					lResult.put(fUnits[i], fValues[i]);
+				}
+			}
+
+			return lResult;
+		}
+	}
+
+	/**
+	 * Constructs a new, empty RequestLog.
+	 */
+	RequestLog()
+	{
+		fRequests	= new VectorClock();
+
+		this.startOver();
+	}
+
+	/**
+	 * @param pUnit - The ID of a process.
+	 *
+	 * @return The request of the process, or 0 if it is not present.
+	 */
+	int get(int pUnit)
+	{
+		return fRequests.get(pUnit);
+	}
+
+	/**
+	 * @param pUnit - The ID of a process.
+	 *
+	 * @return true iff the process is present.
+	 */
+	boolean containsKey(int pUnit)
+	{
+		return fRequests.containsKey(pUnit);
+	}
+
+	/**
+	 * Sets the request of a process.
+	 *
+	 * @param pUnit - The ID of the process.
+	 * @param pValue - The new request, not negative.
+	 */
+	void put(int pUnit, int pValue)
+	{
+		fRequests.put(pUnit, pValue);
+
+		this.record(pUnit, pValue);
+	}
+
+	/**
+	 * Increases the request of a process by 1.
+	 *
+	 * @param pUnit - The ID of the process.
+	 */
+	void incrementClock(int pUnit)
+	{
+		fRequests.incrementClock(pUnit);
+
+		this.record(pUnit, fRequests.get(pUnit));
+	}
+
+	/**
+	 * Removes a process.
+	 *
+	 * @param pUnit - The ID of the process.
+	 */
+	void remove(int pUnit)
+	{
+		if (fRequests.containsKey(pUnit))
+		{
+			fRequests.remove(pUnit);
+
+			this.record(pUnit, REMOVED);
+		}
+	}
+
+	/**
+	 * @return The requests as they are now, unaffected by later changes.
+	 */
+	Version version()
+	{
+		return new Version(fBase, fUnits, fValues, fCount);
+	}
+
+	/**
+	 * Appends a change that was made to the requests.
+	 */
+	private void record(int pUnit, int pValue)
+	{
+		if (fCount >= Math.max(fRequests.size(), MIN_CHANGES))
+		{
+			// The change is in the copy already.
+			this.startOver();
+			return;
+		}
+
+		if (fCount == fUnits.length)
+		{
+			// Versions keep the old arrays, which hold all changes they count.
+			fUnits	= Arrays.copyOf(fUnits, fCount * 2);
+			fValues	= Arrays.copyOf(fValues, fCount * 2);
+		}
+
+		fUnits[fCount]	= pUnit;
+		fValues[fCount]	= pValue;
+		fCount++;
+	}
+
+	/**
+	 * Starts the log over from a copy of the requests. Versions keep the old copy and arrays.
+	 */
+	private void startOver()
+	{
+		fBase	= fRequests.clone();
+		fUnits	= new int[MIN_CHANGES];
+		fValues	= new int[MIN_CHANGES];
+		fCount	= 0;
+	}
+}
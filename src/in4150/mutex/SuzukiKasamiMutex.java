@@ -1,11 +1,28 @@
 package in4150.mutex;
 
+import in4150.application.AccessMode;
 import in4150.application.IApplicationToMutex;
-import in4150.control.DebugRMINetwork;
 import in4150.control.gui.IGUItoMutex;
+import in4150.metrics.Histogram;
+import in4150.metrics.MBeans;
+import in4150.metrics.MetricSet;
+import in4150.network.INetworkFactory;
 import in4150.network.INetworkToMutex;
 import in4150.network.Message;
-import in4150.network.RMINetwork;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
 
 /**
  * The SuzukiKasamiMutex controller allows an application to coordinate access to its
@@ -14,6 +31,38 @@ import in4150.network.RMINetwork;
  * The controller uses the Suzuki-Kasami token based mutual exclusion algorithm as 
  * described in the Lecture Notes, page 52.
  * 
+ * Like the original algorithm, the Token carries the queue of waiting processes. A
+ * holder only looks at the requests that arrived since it last released the Token,
+ * adds the ones still outstanding to the queue, and passes the Token to its head.
+ * 
+ * Requests the application makes while we hold the Token are not broadcast. If the
+ * Token is idle, the critical section is granted at once. Otherwise they are served
+ * when the current critical section is released, as far as the TokenHoldPolicy
+ * allows while others are waiting.
+ * 
+ * Requests for SHARED access do not need the Token itself. When readers are at the
+ * head of the queue, the holder sends each a ReadGrant and keeps the Token until all
+ * of them sent a ReadRelease, so any number of readers are in their critical sections
+ * at once. A writer at the head of the queue waits for them, and the readers behind
+ * it wait for the writer.
+ * 
+ * Messages arrive on network threads, and the application requests and releases from
+ * threads of its own. None of them touch the controller state: every call becomes an
+ * event on the MutexEventLoop of the controller, which runs the events one at a time.
+ * After every event the controller publishes a MutexSnapshot, which is what the gui
+ * and the application read.
+ * 
+ * The controller measures itself in a MetricSet, which may be read while it runs:
+ * how long the application waits for and holds its critical section, how long the
+ * Token lies idle with us, and the Requests and Token hops it takes. The controllers
+ * of many locks may share one MetricSet, adding up their measurements, so a lock
+ * costs no histograms of its own.
+ * 
+ * A controller with a MetricSet of its own registers a SuzukiKasamiMutexMXBean with
+ * the platform MBeanServer, showing its published state and metrics to jconsole and
+ * other JMX clients, until it is closed. One sharing a MetricSet leaves showing it to
+ * the owner of the set.
+ * 
  * @author Frits de Nijs
  * @author Peter Dijkshoorn
  */
@@ -25,18 +74,129 @@ public class SuzukiKasamiMutex implements IGUItoMutex, IApplicationToMutex, INet
 	// Interface to the network layer below us.
 	private final IMutexToNetwork fNetwork;
 
+	// The loop running all events that change the state below.
+	private final MutexEventLoop fEventLoop;
+
 	// Vector maintaining the known requests as received from the other processes.
-	private final VectorClock fCSRequests;
+	private final RequestLog fCSRequests;
 
 	// A container for the Token. If we don't have the Token, this is null.
 	private Token fToken;
 
+	// The Token as we last held it, so a delta against it can be applied. Null if we never held it.
+	private Token fKeptToken;
+
+	// The version of the Token each process last held, as told in its requests.
+	private final VectorClock fTokenVersions;
+
+	// The processes that requested since we last released the Token, in order of arrival.
+	private final Queue<Integer> fPending;
+
+	// The processes in the pending list, so none is listed twice.
+	private final BitSet fPendingSet;
+
+	// Bounds the critical sections served from one visit of the Token.
+	private final TokenHoldPolicy fHoldPolicy;
+
+	// The number of requests the application made while we held the Token, not served yet.
+	private int fLocalRequests;
+
+	// The number of critical sections served since the Token arrived.
+	private int fVisitEntries;
+
+	// The time the Token arrived, in nanoseconds.
+	private long fVisitStart;
+
+	// Hands out our request numbers if they are shared with other controllers, or null.
+	private final AtomicInteger fRequestNumbers;
+
 	// A flag indicating to the application that it may indeed enter its critical section now.
 	private boolean fCanEnterCS;
 
-	// A flag indicating to the application that it may indeed enter its critical section now.
+	// A flag indicating that we hold the Token for our own critical section, and keep it until released.
 	private boolean fProcessingToken;
 
+	// The processes whose latest known request is for SHARED access.
+	private final BitSet fSharedRequests;
+
+	// How the application uses the critical section it is granted.
+	private AccessMode fGrantMode;
+
+	// How the application will use the critical section of our request that is not granted yet.
+	private AccessMode fOwnMode;
+
+	// The access the requests made while granted need: EXCLUSIVE if any of them does.
+	private AccessMode fLocalMode;
+
+	// The readers we sent a ReadGrant that did not release it yet, with the granted request number.
+	private final VectorClock fReadGrants;
+
+	// The holder of the Token that granted us to read, or -1 if it did not.
+	private int fReadGrantor;
+
+	// The state as it was after the last event, readable from any thread.
+	private volatile MutexSnapshot fSnapshot;
+
+	// The listeners told about every published state.
+	private final List<IMutexListener> fListeners;
+
+	// The measurements of the controller, maybe shared with others, readable from any thread.
+	private final MetricSet fMetrics;
+
+	// The time from a request of the application to its grant, in nanoseconds.
+	private final Histogram fGrantLatency;
+
+	// The time the application holds its critical section, in nanoseconds.
+	private final Histogram fHoldTime;
+
+	// The time the Token lies with us while nobody uses it, in nanoseconds.
+	private final Histogram fTokenIdleTime;
+
+	// The number of critical sections served from one visit of the Token.
+	private final Histogram fGrantsPerVisit;
+
+	// The number of Requests we broadcast.
+	private final LongAdder fRequestsSent;
+
+	// The number of Requests we received.
+	private final LongAdder fRequestsReceived;
+
+	// The number of Requests we received that were overtaken by newer ones.
+	private final LongAdder fStaleRequests;
+
+	// The number of times we passed the Token on.
+	private final LongAdder fTokenHops;
+
+	// The number of critical sections granted to the application.
+	private final LongAdder fGrants;
+
+	// The times of the requests of the application not granted yet, in order.
+	private final Queue<Long> fRequestTimes;
+
+	// The time the application entered its critical section.
+	private long fGrantTime;
+
+	// The time the Token became idle with us, or -1 if it is not.
+	private long fIdleSince;
+
+	// The version of the Token after the last event, readable from any thread.
+	private volatile int fPublishedVersion;
+
+	// The length of the queue of the Token after the last event, readable from any thread.
+	private volatile int fPublishedQueueLength;
+
+	// The number of requests waiting to be queued after the last event, readable from any thread.
+	private volatile int fPublishedPending;
+
+	// The number of local requests after the last event, readable from any thread.
+	private volatile int fPublishedLocalRequests;
+
+	// The number of readers after the last event, readable from any thread.
+	private volatile int fPublishedReaders;
+
+	// The name of our management bean, or null if it is not registered.
+	private final ObjectName fMBeanName;
+
 	/**
 	 * Constructs a new SuzukiKasamiMutex controller for the provided application.
 	 * 
@@ -44,35 +204,307 @@ public class SuzukiKasamiMutex implements IGUItoMutex, IApplicationToMutex, INet
 	 * @param pManualMode - Debug variable. If true, the controller uses the debug network.
 	 */
 	public SuzukiKasamiMutex(IMutexToApplication pApplication, boolean pManualMode)
+	{
+		this(pApplication, MutexAlgorithm.rmiFactory(pManualMode));
+	}
+
+	/**
+	 * Constructs a new SuzukiKasamiMutex controller for the provided application,
+	 * communicating over the provided type of network. The controller runs its
+	 * events on a thread of its own.
+	 * 
+	 * @param pApplication - The application that wants to negotiate for access to Critical Section.
+	 * @param pNetworkFactory - Creates the network used to reach the other controllers.
+	 */
+	public SuzukiKasamiMutex(IMutexToApplication pApplication, INetworkFactory pNetworkFactory)
+	{
+		this(pApplication, pNetworkFactory, MutexEventLoop.newDedicatedExecutor("SuzukiKasamiMutex events"));
+	}
+
+	/**
+	 * Constructs a new SuzukiKasamiMutex controller for the provided application,
+	 * communicating over the provided type of network.
+	 * 
+	 * @param pApplication - The application that wants to negotiate for access to Critical Section.
+	 * @param pNetworkFactory - Creates the network used to reach the other controllers.
+	 * @param pEventExecutor - Runs the events of the controller, may be shared with other controllers.
+	 */
+	public SuzukiKasamiMutex(IMutexToApplication pApplication, INetworkFactory pNetworkFactory, Executor pEventExecutor)
+	{
+		this(pApplication, pNetworkFactory, pEventExecutor, TokenHoldPolicy.DEFAULT);
+	}
+
+	/**
+	 * Constructs a new SuzukiKasamiMutex controller for the provided application,
+	 * communicating over the provided type of network.
+	 * 
+	 * @param pApplication - The application that wants to negotiate for access to Critical Section.
+	 * @param pNetworkFactory - Creates the network used to reach the other controllers.
+	 * @param pEventExecutor - Runs the events of the controller, may be shared with other controllers.
+	 * @param pHoldPolicy - Bounds the critical sections served from one visit of the Token.
+	 */
+	public SuzukiKasamiMutex(IMutexToApplication pApplication, INetworkFactory pNetworkFactory, Executor pEventExecutor,
+							 TokenHoldPolicy pHoldPolicy)
+	{
+		this(pApplication, pNetworkFactory, pEventExecutor, pHoldPolicy, null, null, null);
+	}
+
+	/**
+	 * Constructs a new SuzukiKasamiMutex controller for the provided application, that
+	 * may replace an earlier controller for the same critical section. Only one
+	 * controller of all processes may ever start with the Token. To stay ahead of
+	 * the requests of an earlier controller, request numbers come from a sequence that
+	 * outlives the controllers.
+	 * 
+	 * @param pApplication - The application that wants to negotiate for access to Critical Section.
+	 * @param pNetworkFactory - Creates the network used to reach the other controllers.
+	 * @param pEventExecutor - Runs the events of the controller, may be shared with other controllers.
+	 * @param pHoldPolicy - Bounds the critical sections served from one visit of the Token.
+	 * @param pInitialHolder - True iff this controller creates the Token.
+	 * @param pRequestNumbers - Hands out our request numbers, never decreasing.
+	 * @param pMetrics - Collects our measurements with those of other controllers, or null for a set and
+	 * management bean of our own.
+	 */
+	public SuzukiKasamiMutex(IMutexToApplication pApplication, INetworkFactory pNetworkFactory, Executor pEventExecutor,
+							 TokenHoldPolicy pHoldPolicy, boolean pInitialHolder, AtomicInteger pRequestNumbers,
+							 MetricSet pMetrics)
+	{
+		this(pApplication, pNetworkFactory, pEventExecutor, pHoldPolicy, Boolean.valueOf(pInitialHolder), pRequestNumbers,
+			 pMetrics);
+	}
+
+	/**
+	 * Constructs a new SuzukiKasamiMutex controller.
+	 * 
+	 * @param pInitialHolder - True iff this controller creates the Token, or null if the first process does.
+	 * @param pRequestNumbers - Hands out our request numbers, or null to count them ourselves.
+	 * @param pMetrics - Collects our measurements with those of other controllers, or null if they are ours.
+	 */
+	private SuzukiKasamiMutex(IMutexToApplication pApplication, INetworkFactory pNetworkFactory, Executor pEventExecutor,
+							  TokenHoldPolicy pHoldPolicy, Boolean pInitialHolder, AtomicInteger pRequestNumbers,
+							  MetricSet pMetrics)
 	{
 		fApplication	 = pApplication;
-		fCSRequests		 = new VectorClock();
+		fListeners		 = new CopyOnWriteArrayList<IMutexListener>();
+		fRequestNumbers	 = pRequestNumbers;
+		fHoldPolicy		 = pHoldPolicy;
+		fLocalRequests	 = 0;
+		fVisitEntries	 = 0;
+		fVisitStart		 = 0;
+		fEventLoop		 = new MutexEventLoop(pEventExecutor);
+		fCSRequests		 = new RequestLog();
+		fTokenVersions	 = new VectorClock();
+		fPending		 = new ArrayDeque<Integer>();
+		fPendingSet		 = new BitSet();
 		fCanEnterCS		 = false;
 		fProcessingToken = false;
+		fSharedRequests	 = new BitSet();
+		fGrantMode		 = AccessMode.EXCLUSIVE;
+		fOwnMode		 = AccessMode.EXCLUSIVE;
+		fLocalMode		 = AccessMode.EXCLUSIVE;
+		fReadGrants		 = new VectorClock();
+		fReadGrantor	 = -1;
+		fMetrics		 = pMetrics == null ? new MetricSet() : pMetrics;
+		fGrantLatency	 = fMetrics.histogram("request to grant (ns)");
+		fHoldTime		 = fMetrics.histogram("hold time (ns)");
+		fTokenIdleTime	 = fMetrics.histogram("Token idle time (ns)");
+		fGrantsPerVisit	 = fMetrics.histogram("grants per Token visit");
+		fRequestsSent	 = fMetrics.counter("Requests sent");
+		fRequestsReceived = fMetrics.counter("Requests received");
+		fStaleRequests	 = fMetrics.counter("stale Requests ignored");
+		fTokenHops		 = fMetrics.counter("Token hops");
+		fGrants			 = fMetrics.counter("grants");
+		fRequestTimes	 = new ArrayDeque<Long>();
+		fGrantTime		 = 0;
+		fIdleSince		 = -1;
+		fNetwork		 = pNetworkFactory.createNetwork(this);
+
+		// Connect to the others. Anything they send waits until the loop is started.
+		fNetwork.connect();
+
+		// If we are the first, we get the Token.
+		if (pInitialHolder == null ? fNetwork.getConnectedIDs().length == 1 : pInitialHolder.booleanValue())
+		{
+			fToken = new Token();
+		}
+
+		this.measureIdle();
+
+		// Store all other connected networks for easy access.
+		Integer[] lConnected = fNetwork.getConnectedIDs();
+		for (Integer lPeer : lConnected)
+		{
+			fCSRequests.put(lPeer, 0);
+		}
 
-		if (pManualMode)
+		this.publish();
+
+		// The owner of a shared set shows it.
+		if (pMetrics == null)
 		{
-			fNetwork = new DebugRMINetwork(this);
+			fMBeanName = MBeans.register(new Monitor(), "SuzukiKasamiMutex", fNetwork.getOwnID());
 		}
 		else
 		{
-			fNetwork = new RMINetwork(this);
+			fMBeanName = null;
 		}
 
-		// Connect to the others.
-		fNetwork.connect();
+		fEventLoop.start();
+	}
 
-		// If we are the first, we get the Token.
-		if (fNetwork.getConnectedIDs().length == 1)
+	/**
+	 * An Event changes the state of the controller on the loop, and publishes the
+	 * changed state when done.
+	 */
+	private abstract class Event implements Runnable
+	{
+		@Override
+		public final void run()
 		{
-			fToken = new Token(new VectorClock());
+			this.handle();
+
+			SuzukiKasamiMutex.this.measureIdle();
+			SuzukiKasamiMutex.this.publish();
 		}
 
-		// Store all other connected networks for easy access.
-		Integer[] lConnected = fNetwork.getConnectedIDs();
-		for (Integer lPeer : lConnected)
+		/**
+		 * Changes the state of the controller.
+		 */
+		protected abstract void handle();
+	}
+
+	/**
+	 * Publishes the current state for the readers outside the loop.
+	 */
+	private void publish()
+	{
+		fPublishedVersion		= this.getKnownTokenVersion();
+		fPublishedQueueLength	= fToken == null ? 0 : fToken.getQueueLength();
+		fPublishedPending		= fPending.size();
+		fPublishedLocalRequests	= fLocalRequests;
+		fPublishedReaders		= fReadGrants.size();
+		fSnapshot				= new MutexSnapshot(fNetwork.getOwnID(), fToken != null, fCanEnterCS, fCSRequests);
+
+		for (IMutexListener lListener : fListeners)
+		{
+			lListener.snapshotPublished(fSnapshot);
+		}
+	}
+
+	/**
+	 * The Monitor shows the published state of the controller through JMX.
+	 */
+	private class Monitor implements SuzukiKasamiMutexMXBean
+	{
+		@Override
+		public int getProcessID()
+		{
+			return fSnapshot.getProcessID();
+		}
+
+		@Override
+		public boolean isTokenHolder()
+		{
+			return fSnapshot.hasToken();
+		}
+
+		@Override
+		public boolean isInCriticalSection()
+		{
+			return fSnapshot.canEnterCriticalSection();
+		}
+
+		@Override
+		public int getTokenVersion()
+		{
+			return fPublishedVersion;
+		}
+
+		@Override
+		public SortedMap<Integer, Integer> getRequests()
 		{
-			fCSRequests.put(Integer.toString(lPeer), 0);
+			VectorClock lRequests = fSnapshot.getRequests();
+			SortedMap<Integer, Integer> lResult = new TreeMap<Integer, Integer>();
+
+			for (int lID : lRequests.getOrderedIDs())
+			{
+				lResult.put(lID, lRequests.get(lID));
+			}
+
+			return lResult;
+		}
+
+		@Override
+		public Integer[] getConnectedIDs()
+		{
+			return fNetwork.getConnectedIDs();
+		}
+
+		@Override
+		public int getTokenQueueLength()
+		{
+			return fPublishedQueueLength;
+		}
+
+		@Override
+		public int getPendingRequests()
+		{
+			return fPublishedPending;
+		}
+
+		@Override
+		public int getLocalRequests()
+		{
+			return fPublishedLocalRequests;
+		}
+
+		@Override
+		public int getReaders()
+		{
+			return fPublishedReaders;
+		}
+
+		@Override
+		public int getEventBacklog()
+		{
+			return fEventLoop.getBacklog();
+		}
+
+		@Override
+		public SortedMap<String, Long> getMetrics()
+		{
+			return fMetrics.getValues();
+		}
+	}
+
+	/**
+	 * Disconnects from the others, removes our management bean and stops the event
+	 * loop. A Token held here is lost.
+	 */
+	@Override
+	public void close()
+	{
+		MBeans.unregister(fMBeanName);
+
+		fNetwork.disconnect();
+		fEventLoop.close();
+	}
+
+	/**
+	 * Notes when the Token starts or stops lying idle with us.
+	 */
+	private void measureIdle()
+	{
+		boolean lIdle = this.hasTokenNow() && !fCanEnterCS && fReadGrants.size() == 0;
+
+		if (lIdle && fIdleSince == -1)
+		{
+			fIdleSince = System.nanoTime();
+		}
+		else if (!lIdle && fIdleSince != -1)
+		{
+			fTokenIdleTime.record(System.nanoTime() - fIdleSince);
+			fIdleSince = -1;
 		}
 	}
 
@@ -84,18 +516,180 @@ public class SuzukiKasamiMutex implements IGUItoMutex, IApplicationToMutex, INet
 	 */
 	@Override
 	public void requestCriticalSection()
+	{
+		this.requestCriticalSection(AccessMode.EXCLUSIVE);
+	}
+
+	/**
+	 * Function called by the parent application if it wants to enter
+	 * the critical section for the provided kind of access.
+	 * 
+	 * Requests permission to enter the CS from all other Mutex controllers.
+	 */
+	@Override
+	public void requestCriticalSection(final AccessMode pMode)
+	{
+		fEventLoop.post(new Event()
+		{
+			@Override
+			protected void handle()
+			{
+				SuzukiKasamiMutex.this.localRequest(pMode);
+			}
+		});
+	}
+
+	/**
+	 * Function called by the parent application if it wants to enter the critical
+	 * section only if it is granted at once.
+	 * 
+	 * Decided on the loop, without sending anything: granted iff we hold an idle Token.
+	 * Called on the loop, from doCriticalSection on a direct executor, it decides at
+	 * once. Once the controller is closed it is never granted.
+	 */
+	@Override
+	public boolean tryRequestCriticalSection(final AccessMode pMode)
+	{
+		final AtomicBoolean lGranted = new AtomicBoolean();
+
+		boolean lDecided = fEventLoop.postAndWait(new Event()
+		{
+			@Override
+			protected void handle()
+			{
+				lGranted.set(SuzukiKasamiMutex.this.tryLocalRequest(pMode));
+			}
+		});
+
+		return lDecided && lGranted.get();
+	}
+
+	/**
+	 * Function called by the parent application when it leaves the critical section,
+	 * either from doCriticalSection or later from a thread of its own.
+	 * 
+	 * Passes the Token along to the processes that are waiting for it.
+	 */
+	@Override
+	public void releaseCriticalSection()
+	{
+		fEventLoop.post(new Event()
+		{
+			@Override
+			protected void handle()
+			{
+				SuzukiKasamiMutex.this.releaseToken();
+			}
+		});
+	}
+
+	/**
+	 * Handles a request of the application. While we hold the Token, it is granted at
+	 * once if the Token is idle, or waits for the current critical section to be released.
+	 * 
+	 * @param pMode - How the application will use its critical section.
+	 */
+	private void localRequest(AccessMode pMode)
+	{
+		fRequestTimes.add(System.nanoTime());
+
+		if (fCanEnterCS || fProcessingToken)
+		{
+			// Served on release, in the strictest mode asked for.
+			if (fLocalRequests == 0 || pMode == AccessMode.EXCLUSIVE)
+			{
+				fLocalMode = pMode;
+			}
+
+			fLocalRequests++;
+		}
+		else if (this.hasTokenNow() &&
+				 (fReadGrants.size() == 0 || (pMode == AccessMode.SHARED && !fToken.hasQueued())))
+		{
+			// Nobody is waiting for an idle Token, or we read along with readers, so it can be ours without asking.
+			this.nextRequestNumber();
+			fVisitEntries = 1;
+			fVisitStart	  = System.nanoTime();
+
+			this.grantWithToken(pMode);
+		}
+		else
+		{
+			fOwnMode = pMode;
+
+			this.sendRequest();
+
+			// Holding the Token, we wait in line behind the writer waiting for the readers.
+			if (this.hasTokenNow())
+			{
+				fToken.enqueue(fNetwork.getOwnID());
+			}
+		}
+	}
+
+	/**
+	 * Handles a request of the application that may not wait. It is granted iff the
+	 * Token is with us and nobody uses or waits for it, or we only read along with
+	 * readers that nobody waits behind.
+	 * 
+	 * @param pMode - How the application will use its critical section.
+	 * 
+	 * @return true iff the critical section is granted, in which case the caller holds it.
+	 */
+	private boolean tryLocalRequest(AccessMode pMode)
+	{
+		if (fCanEnterCS || fProcessingToken || fLocalRequests > 0 || !this.hasTokenNow() ||
+			(fReadGrants.size() > 0 && (pMode != AccessMode.SHARED || fToken.hasQueued())))
+		{
+			return false;
+		}
+
+		this.nextRequestNumber();
+		fVisitEntries	 = 1;
+		fVisitStart		 = System.nanoTime();
+		fProcessingToken = true;
+		fCanEnterCS		 = true;
+		fGrantMode		 = pMode;
+
+		this.countGrant(fVisitStart);
+
+		return true;
+	}
+
+	/**
+	 * Broadcasts a new request of ours.
+	 */
+	private void sendRequest()
 	{
 		// Obtain our own ID.
 		int lMyID		= fNetwork.getOwnID();
 
-		// Increment our own Request sequence number.
-		fCSRequests.incrementClock(Integer.toString(lMyID));
-
 		// Get our incremented Request number.
-		int lMyRequest	= fCSRequests.get(Integer.toString(lMyID));
+		int lMyRequest	= this.nextRequestNumber();
 
 		// Broadcast the request.
-		fNetwork.broadcastMessage(new Request(lMyID, lMyRequest));
+		fRequestsSent.increment();
+		fNetwork.broadcastMessage(new Request(lMyID, lMyRequest, this.getKnownTokenVersion(), fOwnMode));
+	}
+
+	/**
+	 * Increments our own Request sequence number.
+	 * 
+	 * @return Our new request number.
+	 */
+	private int nextRequestNumber()
+	{
+		int lMyID		= fNetwork.getOwnID();
+		int lMyRequest	= fCSRequests.get(lMyID) + 1;
+
+		if (fRequestNumbers != null)
+		{
+			lMyRequest = Math.max(lMyRequest, fRequestNumbers.incrementAndGet());
+		}
+
+		fCSRequests.put(lMyID, lMyRequest);
+
+		return lMyRequest;
 	}
 
 	/**
@@ -106,13 +700,35 @@ public class SuzukiKasamiMutex implements IGUItoMutex, IApplicationToMutex, INet
 	 */
 	private void receiveRequest(Request pRequest)
 	{
+		fRequestsReceived.increment();
+
+		// A request overtaken by a newer one of the same process tells us nothing.
+		if (pRequest.getRequestNumber() <= fCSRequests.get(pRequest.getRequester()))
+		{
+			fStaleRequests.increment();
+			return;
+		}
+
 		// Update our knowledge of requests.
-		fCSRequests.put(Integer.toString(pRequest.getRequester()), pRequest.getRequestNumber());
+		fCSRequests.put(pRequest.getRequester(), pRequest.getRequestNumber());
 
-		// If we have the token, we should pass it along to the requesting process.
-		if (this.hasToken() && !fProcessingToken)
+		// Remember which Token the requester has, so it only gets sent what it lacks.
+		fTokenVersions.put(pRequest.getRequester(), pRequest.getTokenVersion());
+
+		// Remember whether the requester only reads, so it may be granted along with other readers.
+		fSharedRequests.set(pRequest.getRequester(), pRequest.getMode() == AccessMode.SHARED);
+
+		// The next holder to hand off the Token may have to queue the requester.
+		if (!fPendingSet.get(pRequest.getRequester()))
 		{
-			sendToken(pRequest.getRequester());
+			fPendingSet.set(pRequest.getRequester());
+			fPending.add(pRequest.getRequester());
+		}
+
+		// If we have the token, we should pass it along to the requesting process, or let it read along.
+		if (this.hasTokenNow() && (!fProcessingToken || fGrantMode == AccessMode.SHARED))
+		{
+			this.handOffToken();
 		}
 	}
 
@@ -123,56 +739,340 @@ public class SuzukiKasamiMutex implements IGUItoMutex, IApplicationToMutex, INet
 	 */
 	private void receiveToken(Token pToken)
 	{
-		fProcessingToken = true;
+		// Store the token, completing it from our kept copy if it is a delta.
+		fToken = pToken.receive(fKeptToken);
+
+		// A new visit of the Token starts.
+		fVisitEntries = 1;
+		fVisitStart	  = System.nanoTime();
 
 		// Allow the parent process access to the critical section.
-		fCanEnterCS = true;
+		this.grantWithToken(fOwnMode);
 
-		// Store the token.
-		fToken = pToken;
+		// If we only read, the readers waiting behind us may read along.
+		this.handOffToken();
+	}
 
-		fApplication.doCriticalSection();
+	/**
+	 * Function called when the holder of the Token lets us read along with others.
+	 * 
+	 * @param pGrant - The received ReadGrant.
+	 */
+	private void receiveReadGrant(ReadGrant pGrant)
+	{
+		int lMyID = fNetwork.getOwnID();
+
+		// Only our outstanding request to read can be granted, any other grant is handed back.
+		if (fCanEnterCS || this.hasTokenNow() || fOwnMode != AccessMode.SHARED ||
+			pGrant.getRequestNumber() != fCSRequests.get(lMyID))
+		{
+			fNetwork.sendMessage(new ReadRelease(lMyID, pGrant.getRequestNumber()), pGrant.getGrantor());
+			return;
+		}
+
+		fReadGrantor = pGrant.getGrantor();
+		fCanEnterCS	 = true;
+		fGrantMode	 = AccessMode.SHARED;
+
+		this.grantCriticalSection();
+	}
+
+	/**
+	 * Function called when a reader we granted leaves its critical section.
+	 * 
+	 * @param pRelease - The received ReadRelease.
+	 */
+	private void receiveReadRelease(ReadRelease pRelease)
+	{
+		int lReader = pRelease.getReader();
+
+		// The release of an earlier grant may arrive after the reader was granted again.
+		if (fReadGrants.containsKey(lReader) && fReadGrants.get(lReader) == pRelease.getRequestNumber())
+		{
+			this.endRead(lReader);
+		}
+	}
+
+	/**
+	 * Forgets the grant of a reader, and passes the Token on once the last reader is done.
+	 * 
+	 * @param pReader - The reader that is done.
+	 */
+	private void endRead(int pReader)
+	{
+		fReadGrants.remove(pReader);
+
+		if (fReadGrants.size() == 0 && !fCanEnterCS)
+		{
+			this.handOffToken();
+		}
+	}
+
+	/**
+	 * Lets the application enter its critical section with the Token we hold.
+	 * 
+	 * @param pMode - How the application uses its critical section.
+	 */
+	private void grantWithToken(AccessMode pMode)
+	{
+		fProcessingToken = true;
+		fCanEnterCS		 = true;
+		fGrantMode		 = pMode;
+
+		this.grantCriticalSection();
+	}
+
+	/**
+	 * Lets the application enter its critical section.
+	 */
+	private void grantCriticalSection()
+	{
+		Long lRequestTime = fRequestTimes.poll();
+
+		this.countGrant(lRequestTime == null ? -1 : lRequestTime);
+
+		// The application must see the grant before it runs.
+		this.publish();
+
+		// Grant the critical section on the application executor, so receiving the Token
+		// returns at once. The Token is passed on once the application releases it.
+		fApplication.getCriticalSectionExecutor().execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				fApplication.doCriticalSection();
+			}
+		});
+	}
+
+	/**
+	 * Counts a critical section granted to the application.
+	 * 
+	 * @param pRequestTime - The time the application asked for it, or -1 if that is unknown.
+	 */
+	private void countGrant(long pRequestTime)
+	{
+		fGrantTime = System.nanoTime();
+		fGrants.increment();
+
+		if (pRequestTime != -1)
+		{
+			fGrantLatency.record(fGrantTime - pRequestTime);
+		}
+	}
+
+	/**
+	 * Ends the granted critical section, and passes the Token along to the processes
+	 * that are waiting for it.
+	 */
+	private void releaseToken()
+	{
+		// Only a granted critical section can be released.
+		if (!fCanEnterCS)
+		{
+			return;
+		}
 
 		fCanEnterCS = false;
+		fHoldTime.record(System.nanoTime() - fGrantTime);
 
-		// Update the Token to include knowledge of our satisfied request.
-		fToken.satisfiedRequest(Integer.toString(fNetwork.getOwnID()), fCSRequests.get(Integer.toString(fNetwork.getOwnID())));
+		int lMyID = fNetwork.getOwnID();
 
-		// Attempt to pass the token along to processes with a higher ID.
-		for (int lProcess : fNetwork.getConnectedIDs())
+		if (!this.hasTokenNow())
 		{
-			if (lProcess > fNetwork.getOwnID())
+			// We read on a grant of the holder, which waits for us before passing the Token on.
+			if (fReadGrantor != -1)
 			{
-				if (this.hasToken() &&
-					fCSRequests.get(Integer.toString(lProcess)) > 
-					fToken.getSatisfiedRequests().get(Integer.toString(lProcess)))
-				{
+				fNetwork.sendMessage(new ReadRelease(lMyID, fCSRequests.get(lMyID)), fReadGrantor);
+				fReadGrantor = -1;
+			}
 
-					this.sendToken(lProcess);
-				}
+			if (fLocalRequests > 0)
+			{
+				fLocalRequests--;
+				fOwnMode = fLocalMode;
+
+				this.sendRequest();
 			}
+
+			return;
 		}
 
-		// Attempt to pass the token along to processes with a lower ID.
-		for (int lProcess : fNetwork.getConnectedIDs())
+		// Update the Token to include knowledge of our satisfied request.
+		fToken.satisfiedRequest(lMyID, fCSRequests.get(lMyID));
+
+		if (fLocalRequests > 0)
 		{
-			if (lProcess < fNetwork.getOwnID())
+			fLocalRequests--;
+
+			this.queuePending();
+
+			// While readers are in, only another reader may enter, and only if no writer waits for them.
+			boolean lFree = fReadGrants.size() == 0 || (fLocalMode == AccessMode.SHARED && !fToken.hasQueued());
+
+			// Serve the next local request from this visit if nobody waits, or the policy allows.
+			if (lFree && (!fToken.hasQueued() ||
+						  fHoldPolicy.allowsAnother(fVisitEntries, System.nanoTime() - fVisitStart)))
 			{
-				if (this.hasToken() &&
-					fCSRequests.get(Integer.toString(lProcess)) > 
-					fToken.getSatisfiedRequests().get(Integer.toString(lProcess)))
-				{
-					this.sendToken(lProcess);
-				}
+				this.nextRequestNumber();
+				fVisitEntries++;
+
+				this.grantWithToken(fLocalMode);
+
+				// If we only read, the readers waiting may read along.
+				this.handOffToken();
+				return;
 			}
+
+			// Otherwise wait in line like the others.
+			fOwnMode = fLocalMode;
+			this.sendRequest();
+			fToken.enqueue(lMyID);
 		}
 
-		// Done looking through received requests.
+		// Done with the Token ourselves; handing it off may grant it to us again.
 		fProcessingToken = false;
+
+		this.handOffToken();
+	}
+
+	/**
+	 * Passes the Token we hold to the process at the head of its queue, if any. Readers
+	 * at the head of the queue are granted to read instead, as long as nobody writes.
+	 */
+	private void handOffToken()
+	{
+		// Nobody else may enter while we write.
+		if (fCanEnterCS && fGrantMode == AccessMode.EXCLUSIVE)
+		{
+			return;
+		}
+
+		this.queuePending();
+
+		int lMyID = fNetwork.getOwnID();
+
+		// Let the readers that waited longest read along, until a writer is next.
+		int lNext = this.nextWaiting();
+		while (lNext != -1 && this.wantsToRead(lNext))
+		{
+			fToken.dequeue();
+
+			if (lNext == lMyID)
+			{
+				this.startOwnVisit(AccessMode.SHARED);
+			}
+			else
+			{
+				this.sendReadGrant(lNext);
+			}
+
+			lNext = this.nextWaiting();
+		}
+
+		// The writer waits until all readers are done, and the Token stays while the
+		// application says it is inside. Decide before dequeueing, so nobody is skipped.
+		if (lNext == -1 || fCanEnterCS || fReadGrants.size() > 0 ||
+			(lNext != lMyID && fApplication.inCriticalSection()))
+		{
+			return;
+		}
+
+		// Pass the token along to the process that waited longest.
+		fToken.dequeue();
+
+		if (lNext == lMyID)
+		{
+			this.startOwnVisit(fOwnMode);
+		}
+		else
+		{
+			this.sendToken(lNext);
+		}
 	}
 
 	/**
-	 * Internal function handling the sending of the Token.
+	 * @return The process at the head of the queue of the Token, skipping those that left, or -1.
+	 */
+	private int nextWaiting()
+	{
+		int lNext = fToken.peek();
+		while (lNext != -1 && !fCSRequests.containsKey(lNext))
+		{
+			fToken.dequeue();
+			lNext = fToken.peek();
+		}
+
+		return lNext;
+	}
+
+	/**
+	 * @param pProcess - A process in the queue of the Token.
+	 * 
+	 * @return true iff the outstanding request of the process is known to be for SHARED access.
+	 */
+	private boolean wantsToRead(int pProcess)
+	{
+		if (pProcess == fNetwork.getOwnID())
+		{
+			return fOwnMode == AccessMode.SHARED;
+		}
+
+		// A request overtaken by one we did not receive yet tells nothing about the mode.
+		return fSharedRequests.get(pProcess) &&
+			   fCSRequests.get(pProcess) > fToken.getSatisfiedRequests().get(pProcess);
+	}
+
+	/**
+	 * Grants the outstanding request of a reader, keeping the Token until it is released.
+	 * 
+	 * @param pReader - The process that wants to read.
+	 */
+	private void sendReadGrant(int pReader)
+	{
+		int lNumber = fCSRequests.get(pReader);
+
+		fToken.satisfiedRequest(pReader, lNumber);
+		fReadGrants.put(pReader, lNumber);
+
+		fNetwork.sendMessage(new ReadGrant(fNetwork.getOwnID(), lNumber), pReader);
+	}
+
+	/**
+	 * Grants our own request that waited in line while we held the Token.
+	 * 
+	 * @param pMode - How the application uses its critical section.
+	 */
+	private void startOwnVisit(AccessMode pMode)
+	{
+		fVisitEntries = 1;
+		fVisitStart	  = System.nanoTime();
+
+		this.grantWithToken(pMode);
+	}
+
+	/**
+	 * Adds the processes we heard from whose requests are still outstanding to the
+	 * queue of the Token we hold.
+	 */
+	private void queuePending()
+	{
+		Integer lRequester;
+		while ((lRequester = fPending.poll()) != null)
+		{
+			fPendingSet.clear(lRequester);
+
+			if (fCSRequests.get(lRequester) > fToken.getSatisfiedRequests().get(lRequester))
+			{
+				fToken.enqueue(lRequester);
+			}
+		}
+	}
+
+	/**
+	 * Internal function handling the sending of the Token. Only called by handOffToken,
+	 * once it made sure nobody uses the Token and took the receiver from its queue.
 	 * 
 	 * @param lProcess - Process that should receive the Token.
 	 */
@@ -180,17 +1080,52 @@ public class SuzukiKasamiMutex implements IGUItoMutex, IApplicationToMutex, INet
 	{
 		Token lToken = fToken;
 
-		// We can only send the token if we have it, and are not using it at the moment.
-		if (this.hasToken() && !this.fCanEnterCS && !fApplication.inCriticalSection())
-		{
-			// Record that we no longer have it.
-			fToken = null;
+		// Record that we no longer have it, but keep a copy.
+		fToken	   = null;
+		fKeptToken = lToken;
 
-			// And send it.
-			fNetwork.sendMessage(lToken, lProcess);
+		fTokenHops.increment();
+		fGrantsPerVisit.record(fVisitEntries);
+
+		// The version a process reported only holds while the request it came with is
+		// outstanding. A later request may come from a controller that has since replaced
+		// the one that kept the copy, and we may get the Token before that request.
+		int lKnown = 0;
+		if (fCSRequests.get(lProcess) > lToken.getSatisfiedRequests().get(lProcess))
+		{
+			lKnown = fTokenVersions.get(lProcess);
 		}
+
+		// And send what the receiver does not know yet.
+		fNetwork.sendMessage(lToken.delta(lKnown), lProcess);
 	}
 
+	/**
+	 * @return true iff we hold the Token. Only valid on the loop.
+	 */
+	private boolean hasTokenNow()
+	{
+		return fToken != null;
+	}
+
+	/**
+	 * @return The version of the Token we hold or last held, or 0 if we never held it.
+	 */
+	private int getKnownTokenVersion()
+	{
+		if (fToken != null)
+		{
+			return fToken.getVersion();
+		}
+		else if (fKeptToken != null)
+		{
+			return fKeptToken.getVersion();
+		}
+		else
+		{
+			return 0;
+		}
+	}
 
 	/**
 	 * Function called by the parent application just before entering
@@ -201,7 +1136,8 @@ public class SuzukiKasamiMutex implements IGUItoMutex, IApplicationToMutex, INet
 	@Override
 	public boolean canEnterCriticalSection()
 	{
-		return fCanEnterCS && this.hasToken();
+		// Readers enter on a ReadGrant, without the Token.
+		return fSnapshot.canEnterCriticalSection();
 	}
 
 	@Override
@@ -211,45 +1147,117 @@ public class SuzukiKasamiMutex implements IGUItoMutex, IApplicationToMutex, INet
 	}
 
 	@Override
-	public void processConnected(int pProcessID)
+	public void processConnected(final int pProcessID)
 	{
-		fCSRequests.put(Integer.toString(pProcessID), 0);
+		fEventLoop.post(new Event()
+		{
+			@Override
+			protected void handle()
+			{
+				fCSRequests.put(pProcessID, 0);
+				fTokenVersions.remove(pProcessID);
+				fSharedRequests.clear(pProcessID);
+			}
+		});
 	}
 
 	@Override
-	public void processDisconnected(int pProcessID)
+	public void processDisconnected(final int pProcessID)
 	{
-		fCSRequests.remove(Integer.toString(pProcessID));
+		fEventLoop.post(new Event()
+		{
+			@Override
+			protected void handle()
+			{
+				fCSRequests.remove(pProcessID);
+				fTokenVersions.remove(pProcessID);
+				fSharedRequests.clear(pProcessID);
+
+				// A grantor that left waits for nobody.
+				if (fReadGrantor == pProcessID)
+				{
+					fReadGrantor = -1;
+				}
+
+				// A reader that left will not release.
+				if (fReadGrants.containsKey(pProcessID))
+				{
+					SuzukiKasamiMutex.this.endRead(pProcessID);
+				}
+			}
+		});
 	}
 
 	@Override
-	public void receiveMessage(Message pMessage)
+	public void receiveMessage(final Message pMessage)
 	{
-		if (pMessage instanceof Request)
-		{
-			this.receiveRequest((Request)pMessage);
-		}
-		else if (pMessage instanceof Token)
+		fEventLoop.post(new Event()
 		{
-			this.receiveToken((Token)pMessage);
-		}
+			@Override
+			protected void handle()
+			{
+				if (pMessage instanceof Request)
+				{
+					SuzukiKasamiMutex.this.receiveRequest((Request)pMessage);
+				}
+				else if (pMessage instanceof Token)
+				{
+					SuzukiKasamiMutex.this.receiveToken((Token)pMessage);
+				}
+				else if (pMessage instanceof ReadGrant)
+				{
+					SuzukiKasamiMutex.this.receiveReadGrant((ReadGrant)pMessage);
+				}
+				else if (pMessage instanceof ReadRelease)
+				{
+					SuzukiKasamiMutex.this.receiveReadRelease((ReadRelease)pMessage);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return The measurements of the controller, updated while it runs, added up with
+	 * those of the controllers sharing them.
+	 */
+	public MetricSet getMetrics()
+	{
+		return fMetrics;
+	}
+
+	@Override
+	public void addListener(IMutexListener pListener)
+	{
+		fListeners.add(pListener);
+	}
+
+	@Override
+	public void removeListener(IMutexListener pListener)
+	{
+		fListeners.remove(pListener);
+	}
+
+	@Override
+	public MutexSnapshot getSnapshot()
+	{
+		return fSnapshot;
 	}
 
 	@Override
 	public int getProcessID()
 	{
-		return fNetwork.getOwnID();
+		return fSnapshot.getProcessID();
 	}
 
 	@Override
 	public boolean hasToken()
 	{
-		return fToken != null;
+		return fSnapshot.hasToken();
 	}
 
 	@Override
 	public VectorClock getRequests()
 	{
-		return fCSRequests.clone();
+		return fSnapshot.getRequests();
 	}
 }
\ No newline at end of file
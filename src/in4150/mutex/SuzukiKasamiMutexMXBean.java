@@ -0,0 +1,70 @@
+package in4150.mutex;
+
+import java.util.SortedMap;
+
+/**
+ * The management interface of a SuzukiKasamiMutex, as seen through JMX. Everything
+ * is read from the state the controller published after its last event.
+ */
+public interface SuzukiKasamiMutexMXBean
+{
+	/**
+	 * @return The ID of the process.
+	 */
+	public int getProcessID();
+
+	/**
+	 * @return true iff the process holds the Token.
+	 */
+	public boolean isTokenHolder();
+
+	/**
+	 * @return true iff the application was granted the critical section.
+	 */
+	public boolean isInCriticalSection();
+
+	/**
+	 * @return The version of the Token the process holds or last held, or 0 if it never did.
+	 */
+	public int getTokenVersion();
+
+	/**
+	 * @return The latest known request number of every process, by ID.
+	 */
+	public SortedMap<Integer, Integer> getRequests();
+
+	/**
+	 * @return The IDs of all connected processes, including our own.
+	 */
+	public Integer[] getConnectedIDs();
+
+	/**
+	 * @return The number of processes in the queue of the Token, or 0 if we do not hold it.
+	 */
+	public int getTokenQueueLength();
+
+	/**
+	 * @return The number of received requests not yet added to the queue of the Token.
+	 */
+	public int getPendingRequests();
+
+	/**
+	 * @return The number of requests of the application waiting for the current critical section.
+	 */
+	public int getLocalRequests();
+
+	/**
+	 * @return The number of readers we granted that did not release yet.
+	 */
+	public int getReaders();
+
+	/**
+	 * @return The number of events waiting to run on the loop of the controller.
+	 */
+	public int getEventBacklog();
+
+	/**
+	 * @return Every counter, and the count, mean, percentiles and maximum of every histogram.
+	 */
+	public SortedMap<String, Long> getMetrics();
+}
@@ -1,11 +1,27 @@
 package in4150.mutex;
 
 import in4150.network.Message;
+import in4150.network.wire.IWireFormat;
+import in4150.network.wire.WireInput;
+import in4150.network.wire.WireOutput;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.BitSet;
 
 /**
  * The process which receives the message Token is allowed to enter its Critical Section 
  * once. The token remembers which requests have been satisfied.
  * 
+ * Every hand-off increases the version of the Token, and every satisfied request is
+ * stamped with the version in which it changed. That allows the holder to send only
+ * the entries that changed since a version the receiver has seen: a delta. The
+ * receiver applies a delta to the copy it kept the last time it held the Token.
+ * A Token sent to a process that never held it carries every entry that is not zero.
+ * 
+ * The Token also carries the queue of processes waiting for it, in the order their
+ * requests were first seen by a holder. The queue is always sent in full.
+ * 
  * @author Frits de Nijs
  * @author Peter Dijkshoorn
  */
@@ -14,17 +30,109 @@ public class Token extends Message
 	// Unique Serial ID.
 	private static final long serialVersionUID = 6621256152983740001L;
 
+	// The version of the Token before it was ever sent.
+	private static final int INITIAL_VERSION = 1;
+
+	// Writes the versions, each entry as the gap to the previous ID, its value and stamp, then the queue.
+	public static final IWireFormat<Token> WIRE_FORMAT = new IWireFormat<Token>()
+	{
+		@Override
+		public void write(Token pToken, WireOutput pOutput)
+		{
+			pOutput.writeVarInt(pToken.fVersion);
+			pOutput.writeVarInt(pToken.fBaseVersion);
+
+			int[] lIDs = pToken.fSatisfiedRequests.getOrderedIDs();
+			pOutput.writeVarInt(lIDs.length);
+
+			int lPrevious = -1;
+			for (int lID : lIDs)
+			{
+				pOutput.writeVarInt(lID - lPrevious - 1);
+				pOutput.writeVarInt(pToken.fSatisfiedRequests.get(lID));
+				pOutput.writeVarInt(pToken.fChangedIn.get(lID));
+				lPrevious = lID;
+			}
+
+			pOutput.writeVarInt(pToken.fQueue.size());
+			for (int lQueued : pToken.fQueue)
+			{
+				pOutput.writeVarInt(lQueued);
+			}
+		}
+
+		@Override
+		public Token read(WireInput pInput) throws IOException
+		{
+			int lVersion	= pInput.readVarInt();
+			int lBase		= pInput.readVarInt();
+			int lSize		= pInput.readVarInt();
+
+			VectorClock lSatisfied	= new VectorClock();
+			VectorClock lChangedIn	= new VectorClock();
+
+			int lID = -1;
+			for (int i = 0; i < lSize; i++)
+			{
+				lID += pInput.readVarInt() + 1;
+				lSatisfied.put(lID, pInput.readVarInt());
+				lChangedIn.put(lID, pInput.readVarInt());
+			}
+
+			ArrayDeque<Integer> lQueue = new ArrayDeque<Integer>();
+			int lQueueSize = pInput.readVarInt();
+			for (int i = 0; i < lQueueSize; i++)
+			{
+				lQueue.add(pInput.readVarInt());
+			}
+
+			return new Token(lVersion, lBase, lSatisfied, lChangedIn, lQueue);
+		}
+	};
+
+	// The number of hand-offs this Token went through, starting at 1.
+	private final int fVersion;
+
+	// The version this Token is a delta against, or 0 if it carries every entry.
+	private final int fBaseVersion;
+
 	// This clock records which requests were satisfied.
 	private final VectorClock fSatisfiedRequests;
 
+	// This clock records in which version each satisfied request changed.
+	private final VectorClock fChangedIn;
+
+	// The processes waiting for the Token, longest waiting first.
+	private final ArrayDeque<Integer> fQueue;
+
+	// The processes in the queue, so none is queued twice.
+	private final BitSet fQueued;
+
 	/**
-	 * Constructs a new Token.
-	 * 
-	 * @param pSatisfiedRequests - The requests satisfied when this token was constructed.
+	 * Constructs a new Token that has not satisfied any requests.
 	 */
-	public Token(VectorClock pSatisfiedRequests)
+	public Token()
 	{
-		fSatisfiedRequests = pSatisfiedRequests;
+		this(INITIAL_VERSION, 0, new VectorClock(), new VectorClock(), new ArrayDeque<Integer>());
+	}
+
+	/**
+	 * Constructs a Token from its parts.
+	 */
+	private Token(int pVersion, int pBaseVersion, VectorClock pSatisfiedRequests, VectorClock pChangedIn,
+				  ArrayDeque<Integer> pQueue)
+	{
+		fVersion			= pVersion;
+		fBaseVersion		= pBaseVersion;
+		fSatisfiedRequests	= pSatisfiedRequests;
+		fChangedIn			= pChangedIn;
+		fQueue				= pQueue;
+		fQueued				= new BitSet();
+
+		for (int lQueued : pQueue)
+		{
+			fQueued.set(lQueued);
+		}
 	}
 
 	/**
@@ -35,15 +143,148 @@ public class Token extends Message
 		return fSatisfiedRequests;
 	}
 
+	/**
+	 * @return The number of hand-offs this Token went through.
+	 */
+	public int getVersion()
+	{
+		return fVersion;
+	}
+
 	/**
 	 * Sets the Token satisfied requests to the provided value.
 	 * 
 	 * @param pProcess - Process that had its CS request satisfied.
 	 * @param pRequest - The request that is satisfied.
 	 */
-	public void satisfiedRequest(String pProcess, int pRequest)
+	public void satisfiedRequest(int pProcess, int pRequest)
 	{
-		fSatisfiedRequests.put(pProcess, pRequest);
+		if (fSatisfiedRequests.get(pProcess) != pRequest)
+		{
+			fSatisfiedRequests.put(pProcess, pRequest);
+			fChangedIn.put(pProcess, fVersion);
+		}
+	}
+
+	/**
+	 * Adds a process to the end of the queue, unless it is queued already.
+	 * 
+	 * @param pProcess - The process waiting for the Token.
+	 */
+	public void enqueue(int pProcess)
+	{
+		if (!fQueued.get(pProcess))
+		{
+			fQueued.set(pProcess);
+			fQueue.add(pProcess);
+		}
+	}
+
+	/**
+	 * Removes the process at the head of the queue.
+	 * 
+	 * @return The process that waited longest, or -1 if none is waiting.
+	 */
+	public int dequeue()
+	{
+		Integer lProcess = fQueue.poll();
+
+		if (lProcess == null)
+		{
+			return -1;
+		}
+
+		fQueued.clear(lProcess);
+		return lProcess;
+	}
+
+	/**
+	 * @return The process that waited longest, or -1 if none is waiting.
+	 */
+	public int peek()
+	{
+		Integer lProcess = fQueue.peek();
+
+		return lProcess == null ? -1 : lProcess;
+	}
+
+	/**
+	 * @return The number of processes waiting for the Token.
+	 */
+	public int getQueueLength()
+	{
+		return fQueue.size();
+	}
+
+	/**
+	 * @return true iff processes are waiting for the Token.
+	 */
+	public boolean hasQueued()
+	{
+		return !fQueue.isEmpty();
+	}
+
+	/**
+	 * Builds the Token to send to a process, holding only the entries it does not know.
+	 * 
+	 * @param pKnownVersion - The version the receiver last held, or 0 if it never did.
+	 * 
+	 * @return The Token to send.
+	 */
+	public Token delta(int pKnownVersion)
+	{
+		// A version we have not reached cannot be known, send everything.
+		int lBase = pKnownVersion <= fVersion ? Math.max(pKnownVersion, 0) : 0;
+
+		VectorClock lSatisfied	= new VectorClock(fSatisfiedRequests.capacity());
+		VectorClock lChangedIn	= new VectorClock(fSatisfiedRequests.capacity());
+
+		for (int lID = 0; lID < fSatisfiedRequests.capacity(); lID++)
+		{
+			int lRequest = fSatisfiedRequests.get(lID);
+
+			if (lRequest != 0 && fChangedIn.get(lID) > lBase)
+			{
+				lSatisfied.put(lID, lRequest);
+				lChangedIn.put(lID, fChangedIn.get(lID));
+			}
+		}
+
+		return new Token(fVersion, lBase, lSatisfied, lChangedIn, new ArrayDeque<Integer>(fQueue));
+	}
+
+	/**
+	 * Rebuilds the complete Token from a received one, and advances it to the next
+	 * version. A delta is applied to the copy we kept, which is reused.
+	 * 
+	 * A delta only applies to a copy at least as recent as its base. Without one, for
+	 * instance after the controller that kept it was replaced, the entries that did not
+	 * change since the base are taken as zero. That can only make a process look like
+	 * it still waits, which costs it a visit of the Token it gives back at once, and
+	 * the entry is right again once it leaves. The Token itself is never lost.
+	 * 
+	 * @param pKept - The Token as we last held it, or null if we never did.
+	 * 
+	 * @return The complete Token, owned by the receiver.
+	 */
+	public Token receive(Token pKept)
+	{
+		VectorClock lSatisfied	= fSatisfiedRequests;
+		VectorClock lChangedIn	= fChangedIn;
+
+		if (fBaseVersion > 0 && pKept != null && pKept.fVersion >= fBaseVersion)
+		{
+			lSatisfied	= pKept.fSatisfiedRequests;
+			lChangedIn	= pKept.fChangedIn;
+
+			for (int lID : fSatisfiedRequests.getOrderedIDs())
+			{
+				lSatisfied.put(lID, fSatisfiedRequests.get(lID));
+				lChangedIn.put(lID, fChangedIn.get(lID));
+			}
+		}
+
+		return new Token(fVersion + 1, 0, lSatisfied, lChangedIn, fQueue);
 	}
 
 	@Override
@@ -51,6 +292,16 @@ public class Token extends Message
 	{
 		String lResult = "Token " + fSatisfiedRequests.toString();
 
+		if (!fQueue.isEmpty())
+		{
+			lResult += " queue " + fQueue.toString();
+		}
+
+		if (fBaseVersion > 0)
+		{
+			lResult += " since version " + fBaseVersion;
+		}
+
 		return lResult;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,77 @@
+package in4150.mutex;
+
+/**
+ * A TokenHoldPolicy bounds how long a process may keep the Token to serve its own
+ * requests while other processes are waiting for it. During one visit of the
+ * Token, the process enters its critical section at most a number of times, and
+ * only starts another entry within a time limit after the Token arrived.
+ *
+ * Local requests made while the Token is held are served from the same visit,
+ * without any messages, as long as the policy allows. When nobody else waits, the
+ * process keeps serving its own requests regardless of the policy.
+ */
+public final class TokenHoldPolicy
+{
+	// Each visit of the Token serves a single critical section, like the original algorithm.
+	public static final TokenHoldPolicy DEFAULT = new TokenHoldPolicy(1, Long.MAX_VALUE);
+
+	// The number of critical sections one visit of the Token may serve.
+	private final int fMaxEntries;
+
+	// The time after the Token arrived in which another critical section may start, in microseconds.
+	private final long fMaxHoldMicros;
+
+	/**
+	 * Constructs a new TokenHoldPolicy.
+	 *
+	 * @param pMaxEntries - The number of critical sections one visit of the Token may serve, at least 1.
+	 * @param pMaxHoldMicros - The time after the Token arrived in which another critical section may start.
+	 */
+	public TokenHoldPolicy(int pMaxEntries, long pMaxHoldMicros)
+	{
+		if (pMaxEntries < 1 || pMaxHoldMicros < 0)
+		{
+			throw new IllegalArgumentException("Invalid policy of " + pMaxEntries + " entries in " +
+											   pMaxHoldMicros + " microseconds");
+		}
+
+		fMaxEntries		= pMaxEntries;
+		fMaxHoldMicros	= pMaxHoldMicros;
+	}
+
+	/**
+	 * @return The number of critical sections one visit of the Token may serve.
+	 */
+	public int getMaxEntries()
+	{
+		return fMaxEntries;
+	}
+
+	/**
+	 * @return The time after the Token arrived in which another critical section may start, in microseconds.
+	 */
+	public long getMaxHoldMicros()
+	{
+		return fMaxHoldMicros;
+	}
+
+	/**
+	 * Decides whether a visit of the Token may serve another critical section while
+	 * others are waiting.
+	 *
+	 * @param pEntries - The number of critical sections the visit served so far.
+	 * @param pHeldNanos - The time since the Token arrived, in nanoseconds.
+	 *
+	 * @return true iff another critical section may start.
+	 */
+	public boolean allowsAnother(int pEntries, long pHeldNanos)
+	{
+		return pEntries < fMaxEntries && pHeldNanos / 1000 < fMaxHoldMicros;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "TokenHoldPolicy " + fMaxEntries + " entries in " + fMaxHoldMicros + " us";
+	}
+}
@@ -1,83 +1,259 @@
 package in4150.mutex;
 
+import in4150.network.wire.IWireFormat;
+import in4150.network.wire.WireInput;
+import in4150.network.wire.WireOutput;
+
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Arrays;
-import java.util.HashMap;
 
 /**
  * Implements a VectorClock that records the time stamps of all send and receive
  * events. It contains functions to compare and merge two VectorClocks.
  * 
+ * The clock is indexed directly by process ID and backed by primitive arrays, so
+ * reading, incrementing, merging and comparing never allocate. The arrays grow
+ * when an ID beyond the current capacity is written.
+ * 
  * @author Frits de Nijs
  * @author Peter Dijkshoorn
  */
-public class VectorClock extends HashMap<String, Integer> implements Serializable
+public class VectorClock implements Serializable, Cloneable
 {
 	// Unique Serial.
 	private static final long serialVersionUID = 6668164199894268488L;
 
+	// The capacity of a freshly constructed clock.
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Writes the present elements as their number, followed by the gap to the previous
+	 * ID and the value of each element, all as variable length integers.
+	 */
+	public static final IWireFormat<VectorClock> WIRE_FORMAT = new IWireFormat<VectorClock>()
+	{
+		@Override
+		public void write(VectorClock pClock, WireOutput pOutput)
+		{
+			pOutput.writeVarInt(pClock.fSize);
+
+			int lPrevious = -1;
+			for (int lUnit = 0; lUnit < pClock.fPresent.length; lUnit++)
+			{
+				if (pClock.fPresent[lUnit])
+				{
+					pOutput.writeVarInt(lUnit - lPrevious - 1);
+					pOutput.writeVarInt(pClock.fValues[lUnit]);
+					lPrevious = lUnit;
+				}
+			}
+		}
+
+		@Override
+		public VectorClock read(WireInput pInput) throws IOException
+		{
+			int lSize = pInput.readVarInt();
+
+			VectorClock lClock = new VectorClock();
+
+			int lUnit = -1;
+			for (int i = 0; i < lSize; i++)
+			{
+				lUnit += pInput.readVarInt() + 1;
+				lClock.put(lUnit, pInput.readVarInt());
+			}
+
+			return lClock;
+		}
+	};
+
+	// The value of each element, indexed by process ID. Absent elements are 0.
+	private int[] fValues;
+
+	// Which elements are present in the clock, indexed by process ID.
+	private boolean[] fPresent;
+
+	// The number of elements present in the clock.
+	private int fSize;
+
+	/**
+	 * Constructs a new, empty VectorClock.
+	 */
+	public VectorClock()
+	{
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Constructs a new, empty VectorClock with room for the provided number of IDs.
+	 * 
+	 * @param pCapacity - The number of IDs the clock can hold before growing.
+	 */
+	public VectorClock(int pCapacity)
+	{
+		fValues		= new int[Math.max(pCapacity, 1)];
+		fPresent	= new boolean[fValues.length];
+		fSize		= 0;
+	}
+
 	/**
 	 * Increases the component of pUnit by 1.
 	 * 
 	 * @param pUnit - The ID of the vector element being increased.
 	 */
-	public void incrementClock(String pUnit)
+	public void incrementClock(int pUnit)
 	{
-		// If we have it in the vector, increment.
-		if (this.containsKey(pUnit))
+		this.ensureCapacity(pUnit);
+
+		// If we do not have it in the vector yet, it starts at 0.
+		if (!fPresent[pUnit])
 		{
-			this.put(pUnit, this.get(pUnit).intValue() + 1);
+			fPresent[pUnit] = true;
+			fSize++;
 		}
-		// Else, store with value 1 (starts at 0, +1).
-		else
+
+		fValues[pUnit]++;
+	}
+
+	/**
+	 * Returns the component of pUnit, or 0 if it is not present.
+	 * 
+	 * @param pUnit - The ID of the vector element being read.
+	 * 
+	 * @return The value of the element.
+	 */
+	public int get(int pUnit)
+	{
+		if (pUnit < 0 || pUnit >= fValues.length)
 		{
-			this.put(pUnit, 1);
+			return 0;
 		}
+
+		return fValues[pUnit];
 	}
 
 	/**
-	 * GUI operation, returns the IDs in some neat order.
+	 * Sets the component of pUnit to the provided value.
 	 * 
-	 * @return The IDs of the elements in the Clock.
+	 * @param pUnit - The ID of the vector element being set.
+	 * @param pValue - The new value of the element.
 	 */
-	public String[] getOrderedIDs()
+	public void put(int pUnit, int pValue)
 	{
-		String[] lResult = new String[this.size()];
+		this.ensureCapacity(pUnit);
 
-		lResult = this.keySet().toArray(lResult);
+		if (!fPresent[pUnit])
+		{
+			fPresent[pUnit] = true;
+			fSize++;
+		}
 
-		Arrays.sort(lResult);
+		fValues[pUnit] = pValue;
+	}
 
-		return lResult;
+	/**
+	 * Removes the component of pUnit from the clock.
+	 * 
+	 * @param pUnit - The ID of the vector element being removed.
+	 */
+	public void remove(int pUnit)
+	{
+		if (this.containsKey(pUnit))
+		{
+			fPresent[pUnit] = false;
+			fValues[pUnit]	= 0;
+			fSize--;
+		}
 	}
 
 	/**
-	 * GUI operation, returns the values in some neat order.
+	 * @param pUnit - The ID of a vector element.
 	 * 
-	 * @return The Values of the elements in the Clock.
+	 * @return true iff the element is present in the clock.
 	 */
-	public Integer[] getOrderedValues()
+	public boolean containsKey(int pUnit)
 	{
-		Integer[] lResult = new Integer[this.size()];
-		String[] lKeySet  = this.getOrderedIDs();
+		return pUnit >= 0 && pUnit < fPresent.length && fPresent[pUnit];
+	}
+
+	/**
+	 * @return The number of elements present in the clock.
+	 */
+	public int size()
+	{
+		return fSize;
+	}
+
+	/**
+	 * @return One more than the highest ID this clock can currently hold.
+	 */
+	public int capacity()
+	{
+		return fValues.length;
+	}
+
+	/**
+	 * Makes sure the clock can hold the element pUnit, growing it if needed.
+	 * 
+	 * @param pUnit - The ID of the vector element that must fit.
+	 */
+	private void ensureCapacity(int pUnit)
+	{
+		if (pUnit < 0)
+		{
+			throw new IllegalArgumentException("Negative process ID " + pUnit);
+		}
+
+		if (pUnit >= fValues.length)
+		{
+			int lCapacity = Math.max(pUnit + 1, fValues.length * 2);
+
+			fValues		= Arrays.copyOf(fValues, lCapacity);
+			fPresent	= Arrays.copyOf(fPresent, lCapacity);
+		}
+	}
+
+	/**
+	 * GUI operation, returns the IDs in some neat order.
+	 * 
+	 * @return The IDs of the elements in the Clock.
+	 */
+	public int[] getOrderedIDs()
+	{
+		int[] lResult = new int[fSize];
 
 		int i = 0;
-		for (String lKey : lKeySet)
+		for (int lUnit = 0; lUnit < fPresent.length; lUnit++)
 		{
-			lResult[i] = this.get(lKey);
-			i++;
+			if (fPresent[lUnit])
+			{
+				lResult[i] = lUnit;
+				i++;
+			}
 		}
 
 		return lResult;
 	}
 
-	@Override
-	public Integer get(Object key)
+	/**
+	 * GUI operation, returns the values in some neat order.
+	 * 
+	 * @return The Values of the elements in the Clock.
+	 */
+	public int[] getOrderedValues()
 	{
-		Integer lResult = super.get(key);
+		int[] lResult = new int[fSize];
 
-		if (lResult == null)
-			lResult = 0;
+		int i = 0;
+		for (int lUnit = 0; lUnit < fPresent.length; lUnit++)
+		{
+			if (fPresent[lUnit])
+			{
+				lResult[i] = fValues[lUnit];
+				i++;
+			}
+		}
 
 		return lResult;
 	}
@@ -85,32 +261,44 @@ public class VectorClock extends HashMap<String, Integer> implements Serializabl
 	@Override
 	public VectorClock clone()
 	{
-		return (VectorClock) super.clone();
+		try
+		{
+			VectorClock lResult = (VectorClock) super.clone();
+
+			lResult.fValues  = fValues.clone();
+			lResult.fPresent = fPresent.clone();
+
+			return lResult;
+		}
+		catch (CloneNotSupportedException lException)
+		{
+			throw new AssertionError(lException);
+		}
 	}
 
 	@Override
 	public String toString()
 	{
-		String[] lIDs		= this.getOrderedIDs();
-		Integer[] lRequests = this.getOrderedValues();
-
-		String lText = "(";
+		StringBuilder lText = new StringBuilder("(");
 
-		for (int i = 0; i < lRequests.length; i++)
+		boolean lFirst = true;
+		for (int lUnit = 0; lUnit < fPresent.length; lUnit++)
 		{
-			lText += lIDs[i];
-			lText += " = ";
-			lText += lRequests[i].toString();
-
-			if (i + 1 < lRequests.length)
+			if (fPresent[lUnit])
 			{
-				lText += ", ";
+				if (!lFirst)
+				{
+					lText.append(", ");
+				}
+
+				lText.append(lUnit).append(" = ").append(fValues[lUnit]);
+				lFirst = false;
 			}
 		}
 
-		lText += ")";
+		lText.append(")");
 
-		return lText;
+		return lText.toString();
 	}
 
 	/**
@@ -124,22 +312,17 @@ public class VectorClock extends HashMap<String, Integer> implements Serializabl
 	 */
 	public static VectorClock max(VectorClock pOne, VectorClock pTwo)
 	{
-		// Create new Clock.
-		VectorClock lResult = new VectorClock();
+		// Create new Clock, large enough for both.
+		VectorClock lResult = new VectorClock(Math.max(pOne.capacity(), pTwo.capacity()));
 
-		// Go over all elements in clock One, put them in the new clock.
-		for (String lEntry : pOne.keySet())
+		// Go over all elements that may be in either clock, absent elements are 0.
+		for (int lUnit = 0; lUnit < lResult.fValues.length; lUnit++)
 		{
-			lResult.put(lEntry, pOne.get(lEntry));
-		}
-
-		// Go over all elements in clock Two,
-		for (String lEntry : pTwo.keySet())
-		{
-			// Insert the Clock Two value if it is not present in One, or if it is higher.
-			if (!lResult.containsKey(lEntry) || lResult.get(lEntry) < pTwo.get(lEntry))
+			if (pOne.containsKey(lUnit) || pTwo.containsKey(lUnit))
 			{
-				lResult.put(lEntry, pTwo.get(lEntry));
+				lResult.fValues[lUnit]	= Math.max(pOne.get(lUnit), pTwo.get(lUnit));
+				lResult.fPresent[lUnit]	= true;
+				lResult.fSize++;
 			}
 		}
 
@@ -156,6 +339,8 @@ public class VectorClock extends HashMap<String, Integer> implements Serializabl
 	 * VectorComparison.SMALLER			If One < Two.
 	 * VectorComparison.SIMULTANEOUS	If One <> Two.
 	 * 
+	 * Absent elements count as zero.
+	 * 
 	 * @param pOne - First Clock being compared.
 	 * @param pTwo - Second Clock being compared.
 	 * 
@@ -164,58 +349,37 @@ public class VectorClock extends HashMap<String, Integer> implements Serializabl
 	public static VectorComparison compare(VectorClock pOne, VectorClock pTwo)
 	{
 		// Initially we assume it is all possible things.
-		boolean lEqual	 = true;
 		boolean lGreater = true;
 		boolean lSmaller = true;
 
-		// Go over all elements in Clock one.
-		for (String lEntry : pOne.keySet())
+		// Go over all elements that may be in either clock.
+		int lLength = Math.max(pOne.capacity(), pTwo.capacity());
+		for (int lUnit = 0; lUnit < lLength; lUnit++)
 		{
-			// Compare if also present in clock two.
-			if (pTwo.containsKey(lEntry))
+			int lOne = pOne.get(lUnit);
+			int lTwo = pTwo.get(lUnit);
+
+			// Greater / smaller depends on the difference.
+			if (lOne < lTwo)
 			{
-				// If there is a difference, it can never be equal.
-				// Greater / smaller depends on the difference.
-				if (pOne.get(lEntry) < pTwo.get(lEntry))
-				{
-					lEqual	 = false;
-					lGreater = false;
-				}
-				if (pOne.get(lEntry) > pTwo.get(lEntry))
-				{
-					lEqual	 = false;
-					lSmaller = false;
-				}
+				lGreater = false;
 			}
-			// Else assume zero (default value is 0).
-			else if (pOne.get(lEntry) != 0)
+			else if (lOne > lTwo)
 			{
-				lEqual	 = false;
 				lSmaller = false;
 			}
 		}
 
-		// Go over all elements in Clock two.
-		for (String lEntry : pTwo.keySet())
-		{
-			// Only elements we have not found in One still need to be checked.
-			if (!pOne.containsKey(lEntry) && (pTwo.get(lEntry) != 0))
-			{
-				lEqual	 = false;
-				lGreater = false;
-			}
-		}
-
 		// Return based on determined information.
-		if (lEqual)
+		if (lGreater && lSmaller)
 		{
 			return VectorComparison.EQUAL;
 		}
-		else if (lGreater && !lSmaller)
+		else if (lGreater)
 		{
 			return VectorComparison.GREATER;
 		}
-		else if (lSmaller && !lGreater)
+		else if (lSmaller)
 		{
 			return VectorComparison.SMALLER;
 		}
@@ -0,0 +1,100 @@
+package in4150.network;
+
+import in4150.network.wire.IWireFormat;
+import in4150.network.wire.WireCodec;
+import in4150.network.wire.WireInput;
+import in4150.network.wire.WireOutput;
+
+import java.io.IOException;
+
+/**
+ * A Broadcast carries a Message to a process, together with the processes in its
+ * subtree. The receiving process delivers the Message, and passes it on to the
+ * processes in its subtree.
+ */
+public class Broadcast extends Message
+{
+	// Unique Serial ID.
+	private static final long serialVersionUID = -2214873641559105117L;
+
+	// Writes the message, followed by the subtree as the gap to each previous ID.
+	public static final IWireFormat<Broadcast> WIRE_FORMAT = new IWireFormat<Broadcast>()
+	{
+		@Override
+		public void write(Broadcast pBroadcast, WireOutput pOutput)
+		{
+			WireCodec.write(pBroadcast.fPayload, pOutput);
+
+			pOutput.writeVarInt(pBroadcast.fSubtree.length);
+
+			int lPrevious = -1;
+			for (int lID : pBroadcast.fSubtree)
+			{
+				pOutput.writeVarInt(lID - lPrevious - 1);
+				lPrevious = lID;
+			}
+		}
+
+		@Override
+		public Broadcast read(WireInput pInput) throws IOException
+		{
+			Object lPayload = WireCodec.read(pInput);
+
+			if (!(lPayload instanceof Message))
+			{
+				throw new IOException("Broadcast of " + lPayload);
+			}
+
+			int[] lSubtree = new int[pInput.readVarInt()];
+
+			int lID = -1;
+			for (int i = 0; i < lSubtree.length; i++)
+			{
+				lID += pInput.readVarInt() + 1;
+				lSubtree[i] = lID;
+			}
+
+			return new Broadcast((Message)lPayload, lSubtree);
+		}
+	};
+
+	// The message that is broadcast.
+	private final Message fPayload;
+
+	// The processes the receiver passes the message on to, in increasing order.
+	private final int[] fSubtree;
+
+	/**
+	 * Constructs a new Broadcast.
+	 *
+	 * @param pPayload - The message that is broadcast.
+	 * @param pSubtree - The processes the receiver passes the message on to, in increasing order.
+	 */
+	public Broadcast(Message pPayload, int[] pSubtree)
+	{
+		fPayload = pPayload;
+		fSubtree = pSubtree;
+	}
+
+	/**
+	 * @return The message that is broadcast.
+	 */
+	public Message getPayload()
+	{
+		return fPayload;
+	}
+
+	/**
+	 * @return The processes the receiver passes the message on to, in increasing order.
+	 */
+	public int[] getSubtree()
+	{
+		return fSubtree;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Broadcast of " + fPayload + " to " + fSubtree.length + " more";
+	}
+}
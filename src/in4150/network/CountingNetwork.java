@@ -0,0 +1,117 @@
+package in4150.network;
+
+import in4150.mutex.IMutexToNetwork;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The CountingNetwork is placed on top of another Network, and counts the messages
+ * sent through it. A broadcast counts as one message to every other process, which
+ * is what the network below sends for it.
+ *
+ * Networks created by one factory share their counter, so it holds the messages of
+ * all processes together.
+ */
+public class CountingNetwork implements IMutexToNetwork, INetworkToMutex
+{
+	// The layer above us.
+	private final INetworkToMutex fMutexLayer;
+
+	// The network carrying our messages.
+	private final IMutexToNetwork fNetwork;
+
+	// The number of messages sent, shared with other networks.
+	private final AtomicLong fMessages;
+
+	/**
+	 * Constructs a new CountingNetwork for the provided layer.
+	 *
+	 * @param pMutexLayer - The layer that should receive incoming messages.
+	 * @param pNetworkFactory - Creates the network carrying our messages.
+	 * @param pMessages - Counts the messages sent.
+	 */
+	public CountingNetwork(INetworkToMutex pMutexLayer, INetworkFactory pNetworkFactory, AtomicLong pMessages)
+	{
+		fMutexLayer	= pMutexLayer;
+		fMessages	= pMessages;
+		fNetwork	= pNetworkFactory.createNetwork(this);
+	}
+
+	/**
+	 * Creates a factory placing CountingNetworks on top of other networks.
+	 *
+	 * @param pNetworkFactory - Creates the networks carrying the messages.
+	 * @param pMessages - Counts the messages sent by all created networks.
+	 *
+	 * @return A factory creating CountingNetworks.
+	 */
+	public static INetworkFactory factory(final INetworkFactory pNetworkFactory, final AtomicLong pMessages)
+	{
+		return new INetworkFactory()
+		{
+			@Override
+			public IMutexToNetwork createNetwork(INetworkToMutex pMutexLayer)
+			{
+				return new CountingNetwork(pMutexLayer, pNetworkFactory, pMessages);
+			}
+		};
+	}
+
+	@Override
+	public void connect()
+	{
+		fNetwork.connect();
+	}
+
+	@Override
+	public void disconnect()
+	{
+		fNetwork.disconnect();
+	}
+
+	@Override
+	public int getOwnID()
+	{
+		return fNetwork.getOwnID();
+	}
+
+	@Override
+	public Integer[] getConnectedIDs()
+	{
+		return fNetwork.getConnectedIDs();
+	}
+
+	@Override
+	public void sendMessage(Message pMessage, int pReceiver)
+	{
+		fMessages.incrementAndGet();
+
+		fNetwork.sendMessage(pMessage, pReceiver);
+	}
+
+	@Override
+	public void broadcastMessage(Message pMessage)
+	{
+		fMessages.addAndGet(fNetwork.getConnectedIDs().length - 1);
+
+		fNetwork.broadcastMessage(pMessage);
+	}
+
+	@Override
+	public void receiveMessage(Message pMessage)
+	{
+		fMutexLayer.receiveMessage(pMessage);
+	}
+
+	@Override
+	public void processConnected(int pProcessID)
+	{
+		fMutexLayer.processConnected(pProcessID);
+	}
+
+	@Override
+	public void processDisconnected(int pProcessID)
+	{
+		fMutexLayer.processDisconnected(pProcessID);
+	}
+}
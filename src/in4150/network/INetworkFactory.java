@@ -0,0 +1,19 @@
+package in4150.network;
+
+import in4150.mutex.IMutexToNetwork;
+
+/**
+ * An INetworkFactory creates the Network a Mutual Exclusion layer uses, allowing
+ * the layer to be combined with any type of Network.
+ */
+public interface INetworkFactory
+{
+	/**
+	 * This function creates a new, unconnected Network for the provided layer.
+	 * 
+	 * @param pMutexLayer - The layer that should receive incoming messages.
+	 * 
+	 * @return The Network the layer should use.
+	 */
+	public IMutexToNetwork createNetwork(INetworkToMutex pMutexLayer);
+}
@@ -0,0 +1,107 @@
+package in4150.network;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A LoopbackHub connects the LoopbackNetworks of processes running in the same JVM.
+ * It plays the part of the RMI registry: it hands out IDs and knows who is connected.
+ * It also owns the threads that deliver messages, so their number does not grow with
+ * the number of processes.
+ */
+public class LoopbackHub
+{
+	// The hub used when none is given.
+	private static final LoopbackHub DEFAULT = new LoopbackHub(Runtime.getRuntime().availableProcessors());
+
+	// All connected networks, by ID.
+	private final Map<Integer, LoopbackNetwork> fNetworks;
+
+	// The threads delivering messages.
+	private final ExecutorService fExecutor;
+
+	/**
+	 * Constructs a new, empty LoopbackHub.
+	 * 
+	 * @param pThreads - The number of threads delivering messages.
+	 */
+	public LoopbackHub(int pThreads)
+	{
+		fNetworks = new ConcurrentHashMap<Integer, LoopbackNetwork>();
+		fExecutor = Executors.newFixedThreadPool(pThreads, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable pTask)
+			{
+				Thread lThread = new Thread(pTask, "LoopbackHub delivery");
+				lThread.setDaemon(true);
+				return lThread;
+			}
+		});
+	}
+
+	/**
+	 * @return The hub shared by all LoopbackNetworks that were not given one.
+	 */
+	public static LoopbackHub getDefault()
+	{
+		return DEFAULT;
+	}
+
+	/**
+	 * Connects a network to the hub under the lowest free ID. Networks connecting
+	 * later only learn about it once this returns.
+	 * 
+	 * @param pNetwork - The network connecting.
+	 * @param pConnected - Receives the IDs of the networks already connected, and the new ID.
+	 * 
+	 * @return The ID assigned to the network.
+	 */
+	synchronized int connect(LoopbackNetwork pNetwork, List<Integer> pConnected)
+	{
+		pConnected.addAll(fNetworks.keySet());
+
+		int lID = 1;
+		while (fNetworks.containsKey(lID))
+		{
+			lID++;
+		}
+
+		fNetworks.put(lID, pNetwork);
+		pConnected.add(lID);
+
+		return lID;
+	}
+
+	/**
+	 * Disconnects the network with the provided ID from the hub.
+	 * 
+	 * @param pID - The ID of the network disconnecting.
+	 */
+	synchronized void disconnect(int pID)
+	{
+		fNetworks.remove(pID);
+	}
+
+	/**
+	 * @param pID - The ID of a network.
+	 * 
+	 * @return The network connected under that ID, or null.
+	 */
+	LoopbackNetwork lookup(int pID)
+	{
+		return fNetworks.get(pID);
+	}
+
+	/**
+	 * @return The threads delivering messages.
+	 */
+	ExecutorService getExecutor()
+	{
+		return fExecutor;
+	}
+}
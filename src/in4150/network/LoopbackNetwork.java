@@ -0,0 +1,284 @@
+package in4150.network;
+
+import in4150.mutex.IMutexToNetwork;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The LoopbackNetwork is a type of Network connecting processes that run in the same
+ * JVM. Messages are passed by reference through in-memory queues, without sockets or
+ * a registry. Connecting, ID assignment and broadcasting behave like the RMINetwork.
+ * 
+ * Every network has a mailbox that is drained by the threads of its LoopbackHub,
+ * one batch at a time, so messages from one sender arrive in the order they were
+ * sent and never on the sending thread.
+ */
+public class LoopbackNetwork implements IMutexToNetwork, Runnable
+{
+	// The layer above us.
+	private final INetworkToMutex fMutexLayer;
+
+	// The hub connecting us to the others.
+	private final LoopbackHub fHub;
+
+	// Messages and notifications waiting to be delivered to us.
+	private final Queue<Object> fMailbox;
+
+	// True while a drain of our mailbox is scheduled or running.
+	private final AtomicBoolean fDraining;
+
+	// True iff we are connected to the hub.
+	private volatile boolean fConnected;
+
+	// Our personal location in the network ring.
+	private int fID;
+
+	// All known elements in the network ring, read while notifications may change it.
+	private final List<Integer> fConnectedIDs;
+
+	/**
+	 * Constructs a new LoopbackNetwork on the default hub.
+	 * 
+	 * @param pMutexLayer - The layer that should receive incoming messages.
+	 */
+	public LoopbackNetwork(INetworkToMutex pMutexLayer)
+	{
+		this(pMutexLayer, LoopbackHub.getDefault());
+	}
+
+	/**
+	 * Constructs a new LoopbackNetwork for the provided layer.
+	 * 
+	 * @param pMutexLayer - The layer that should receive incoming messages.
+	 * @param pHub - The hub connecting us to the others.
+	 */
+	public LoopbackNetwork(INetworkToMutex pMutexLayer, LoopbackHub pHub)
+	{
+		fMutexLayer		= pMutexLayer;
+		fHub			= pHub;
+		fMailbox		= new ConcurrentLinkedQueue<Object>();
+		fDraining		= new AtomicBoolean(false);
+		fConnected		= false;
+		fID				= 0;
+		fConnectedIDs	= new CopyOnWriteArrayList<Integer>();
+	}
+
+	/**
+	 * Creates a factory for LoopbackNetworks on the provided hub.
+	 * 
+	 * @param pHub - The hub connecting the networks.
+	 * 
+	 * @return A factory creating LoopbackNetworks.
+	 */
+	public static INetworkFactory factory(final LoopbackHub pHub)
+	{
+		return new INetworkFactory()
+		{
+			@Override
+			public IMutexToNetwork createNetwork(INetworkToMutex pMutexLayer)
+			{
+				return new LoopbackNetwork(pMutexLayer, pHub);
+			}
+		};
+	}
+
+	/**
+	 * Connects this LoopbackNetwork to the others on the hub.
+	 */
+	@Override
+	public void connect()
+	{
+		// Connecting only makes sense when we are not connected now.
+		if (!fConnected)
+		{
+			// Claim an ID and learn who is already there, including ourselves.
+			fConnectedIDs.clear();
+			fID = fHub.connect(this, fConnectedIDs);
+			fConnected = true;
+
+			// Notify any active processes, we are here as well.
+			this.notifyOthers(NotificationType.CONNECTED);
+		}
+	}
+
+	/**
+	 * Disconnects this Network from the hub.
+	 */
+	@Override
+	public void disconnect()
+	{
+		// Disconnect only makes sense if we are connected.
+		if (fConnected)
+		{
+			fHub.disconnect(fID);
+
+			// Inform the others.
+			this.notifyOthers(NotificationType.DISCONNECTED);
+
+			fConnected = false;
+		}
+	}
+
+	/**
+	 * Informs all other connected networks about a change in our connection.
+	 */
+	private void notifyOthers(NotificationType pType)
+	{
+		// The notification to send.
+		Notification lNotification = new Notification(pType, fID);
+
+		// Send it to all others.
+		for (int lID : fConnectedIDs)
+		{
+			if (lID != fID)
+			{
+				this.post(lID, lNotification);
+			}
+		}
+	}
+
+	/**
+	 * Puts a message or notification in the mailbox of another network.
+	 */
+	private void post(int pReceiver, Object pContent)
+	{
+		LoopbackNetwork lReceiver = fHub.lookup(pReceiver);
+
+		if (lReceiver != null)
+		{
+			lReceiver.deliver(pContent);
+		}
+	}
+
+	/**
+	 * Puts a message or notification in our mailbox, and starts draining it if
+	 * nobody is.
+	 */
+	private void deliver(Object pContent)
+	{
+		fMailbox.add(pContent);
+
+		if (fDraining.compareAndSet(false, true))
+		{
+			fHub.getExecutor().execute(this);
+		}
+	}
+
+	/**
+	 * Drains our mailbox on a thread of the hub.
+	 */
+	@Override
+	public void run()
+	{
+		while (true)
+		{
+			Object lContent;
+			while ((lContent = fMailbox.poll()) != null)
+			{
+				this.receive(lContent);
+			}
+
+			fDraining.set(false);
+
+			// Something may have arrived after the last poll but before we stopped draining.
+			if (fMailbox.isEmpty() || !fDraining.compareAndSet(false, true))
+			{
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Called when our mailbox yields a message.
+	 * 
+	 * @param pContent contains the information that was sent.
+	 */
+	private void receive(Object pContent)
+	{
+		// If this was a network message,
+		if (pContent instanceof Message)
+		{
+			// Pass it along.
+			fMutexLayer.receiveMessage((Message)pContent);
+		}
+		// If this was a network notification,
+		else if (pContent instanceof Notification)
+		{
+			Notification lNotification = (Notification)pContent;
+			int lProcess = lNotification.getNotifyingProcess();
+
+			// Attempt to interpret it.
+			switch (lNotification.getNotification())
+			{
+				case CONNECTED:
+				{
+					if (!fConnectedIDs.contains(lProcess))
+					{
+						// This is a new connecting ID, add it.
+						fConnectedIDs.add(lProcess);
+						fMutexLayer.processConnected(lProcess);
+					}
+					break;
+				}
+				case DISCONNECTED:
+				{
+					if (fConnectedIDs.remove(Integer.valueOf(lProcess)))
+					{
+						// This was a connected ID, it is gone now.
+						fMutexLayer.processDisconnected(lProcess);
+					}
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * broadcastMessage sends the provided message to ALL others, but not to ourselves.
+	 */
+	@Override
+	public void broadcastMessage(Message pMessage)
+	{
+		if (fConnected)
+		{
+			for (int lID : fConnectedIDs)
+			{
+				if (lID != fID)
+				{
+					this.sendMessage(pMessage, lID);
+				}
+			}
+		}
+	}
+
+	/**
+	 * sendMessage sends the provided message to the intended receiver.
+	 */
+	@Override
+	public void sendMessage(Message pMessage, int pReceiver)
+	{
+		if (fConnected)
+		{
+			this.post(pReceiver, pMessage);
+		}
+	}
+
+	@Override
+	public Integer[] getConnectedIDs()
+	{
+		Integer[] lResult = fConnectedIDs.toArray(new Integer[0]);
+		Arrays.sort(lResult);
+		return lResult;
+	}
+
+	@Override
+	public int getOwnID()
+	{
+		return fID;
+	}
+}
@@ -1,5 +1,11 @@
 package in4150.network;
 
+import in4150.network.wire.IWireFormat;
+import in4150.network.wire.WireCodec;
+import in4150.network.wire.WireInput;
+import in4150.network.wire.WireOutput;
+
+import java.io.IOException;
 import java.io.Serializable;
 
 /**
@@ -13,12 +19,42 @@ public class Notification implements Serializable
 	// Unique Serial ID
 	private static final long serialVersionUID = -95495152847004654L;
 
+	// Writes the event, the process and the endpoint.
+	public static final IWireFormat<Notification> WIRE_FORMAT = new IWireFormat<Notification>()
+	{
+		@Override
+		public void write(Notification pNotification, WireOutput pOutput)
+		{
+			pOutput.writeByte(pNotification.fNotification.ordinal());
+			pOutput.writeVarInt(pNotification.fNotifyingProcess);
+			WireCodec.write(pNotification.fEndpoint, pOutput);
+		}
+
+		@Override
+		public Notification read(WireInput pInput) throws IOException
+		{
+			int lType = pInput.readByte();
+
+			if (lType >= NotificationType.values().length)
+			{
+				throw new IOException("Unknown notification type " + lType);
+			}
+
+			int lProcess = pInput.readVarInt();
+
+			return new Notification(NotificationType.values()[lType], lProcess, (Serializable)WireCodec.read(pInput));
+		}
+	};
+
 	// The event this notification is about.
 	private final NotificationType fNotification;
 
 	// The process sending this notification.
 	private final int fNotifyingProcess;
 
+	// How the notifying process can be reached, specific to the network used. May be null.
+	private final Serializable fEndpoint;
+
 	/**
 	 * Constructs a new Notification.
 	 * 
@@ -26,9 +62,22 @@ public class Notification implements Serializable
 	 * @param pProcess - The process sending this notification.
 	 */
 	public Notification(NotificationType pType, int pProcess)
+	{
+		this(pType, pProcess, null);
+	}
+
+	/**
+	 * Constructs a new Notification that also tells the receiver how to reach the sender.
+	 * 
+	 * @param pType - The event this notification is about.
+	 * @param pProcess - The process sending this notification.
+	 * @param pEndpoint - How the notifying process can be reached, or null.
+	 */
+	public Notification(NotificationType pType, int pProcess, Serializable pEndpoint)
 	{
 		fNotification		= pType;
 		fNotifyingProcess	= pProcess;
+		fEndpoint			= pEndpoint;
 	}
 
 	/**
@@ -46,4 +95,12 @@ public class Notification implements Serializable
 	{
 		return fNotifyingProcess;
 	}
+
+	/**
+	 * @return How the notifying process can be reached, or null if it did not say.
+	 */
+	public Serializable getEndpoint()
+	{
+		return fEndpoint;
+	}
 }
\ No newline at end of file
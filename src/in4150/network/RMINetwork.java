@@ -1,19 +1,33 @@
 package in4150.network;
 
+import in4150.metrics.MBeans;
+import in4150.metrics.MetricSet;
 import in4150.mutex.IMutexToNetwork;
 import in4150.network.rmi.IRMIClient;
+import in4150.network.rmi.IRMISocket;
 import in4150.network.rmi.RMIAddress;
 import in4150.network.rmi.RMISocket;
 
+import java.rmi.ConnectException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
 import java.rmi.registry.Registry;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.ObjectName;
 
 /**
  * The RMINetwork is one type of Network that can be used to transmit messages from
  * one point to another. It uses the Java RMI system to communicate.
  * 
+ * While connected, the network registers an RMINetworkMXBean with the platform
+ * MBeanServer, showing its connections, outbound queues and send times.
+ * 
  * @author Frits de Nijs
  * @author Peter Dijkshoorn
  */
@@ -22,17 +36,23 @@ public class RMINetwork implements IRMIClient, IMutexToNetwork
 	// The layer above us.
 	private final INetworkToMutex fMutexLayer;
 
-	// The layer below us.
-	private RMISocket fSocket;
+	// The layer below us, read by the management bean.
+	private volatile RMISocket fSocket;
 
 	// True iff our socket is connected.
-	private boolean fConnected;
+	private volatile boolean fConnected;
 
 	// Our personal location in the network ring.
 	private int fID;
 
-	// All known elements in the network ring.
-	private final ArrayList<Integer> fConnectedIDs;
+	// All known elements in the network ring, read while notifications may change it.
+	private final List<Integer> fConnectedIDs;
+
+	// The send latency of every type of message, kept over reconnects.
+	private final MetricSet fMetrics;
+
+	// The name of our management bean, or null while it is not registered.
+	private ObjectName fMBeanName;
 
 	/**
 	 * Constructs a new RMINetwork for the provided layer.
@@ -45,7 +65,8 @@ public class RMINetwork implements IRMIClient, IMutexToNetwork
 		fConnected		= false;
 		fSocket			= null;
 		fID				= 0;
-		fConnectedIDs	= new ArrayList<Integer>();
+		fConnectedIDs	= new CopyOnWriteArrayList<Integer>();
+		fMetrics		= new MetricSet();
 	}
 
 	/**
@@ -70,7 +91,7 @@ public class RMINetwork implements IRMIClient, IMutexToNetwork
 					try
 					{
 						// This ones free, connect.
-						fSocket = new RMISocket(Integer.toString(fID), this);
+						fSocket = new RMISocket(Integer.toString(fID), this, fMetrics);
 						fConnectedIDs.add(fID);
 						fConnected = true;
 					}
@@ -84,6 +105,8 @@ public class RMINetwork implements IRMIClient, IMutexToNetwork
 
 			// Notify any active processes, we are here as well.
 			this.notifyConnected();
+
+			fMBeanName = MBeans.register(new Monitor(), "RMINetwork", fID);
 		}
 	}
 
@@ -122,8 +145,8 @@ public class RMINetwork implements IRMIClient, IMutexToNetwork
 	 */
 	private void notifyConnected()
 	{
-		// The notification to send.
-		Notification lNotification = new Notification(NotificationType.CONNECTED, fID);
+		// The notification to send, it carries our socket so the others can reach us directly.
+		Notification lNotification = new Notification(NotificationType.CONNECTED, fID, fSocket);
 
 		// Send it to all others.
 		for (int lID : fConnectedIDs)
@@ -147,6 +170,9 @@ public class RMINetwork implements IRMIClient, IMutexToNetwork
 			// Inform the others.
 			this.notifyDisconnected();
 
+			MBeans.unregister(fMBeanName);
+			fMBeanName = null;
+
 			// And close the socket.
 			fSocket.unregister();
 			fSocket = null;
@@ -197,6 +223,13 @@ public class RMINetwork implements IRMIClient, IMutexToNetwork
 			{
 				case CONNECTED:
 				{
+					// Remember how to reach the new process, if it told us.
+					if (lNotification.getEndpoint() instanceof IRMISocket)
+					{
+						fSocket.connected(new RMIAddress(Integer.toString(lNotification.getNotifyingProcess())),
+										  (IRMISocket)lNotification.getEndpoint());
+					}
+
 					if (!fConnectedIDs.contains(lNotification.getNotifyingProcess()))
 					{
 						// This is a new connecting ID, add it.
@@ -207,12 +240,7 @@ public class RMINetwork implements IRMIClient, IMutexToNetwork
 				}
 				case DISCONNECTED:
 				{
-					if (fConnectedIDs.contains(lNotification.getNotifyingProcess()))
-					{
-						// This was a connected ID, remove it.
-						fConnectedIDs.remove(new Integer(lNotification.getNotifyingProcess()));
-						fMutexLayer.processDisconnected(lNotification.getNotifyingProcess());
-					}
+					this.processLeft(lNotification.getNotifyingProcess());
 					break;
 				}
 			}
@@ -220,7 +248,53 @@ public class RMINetwork implements IRMIClient, IMutexToNetwork
 	}
 
 	/**
-	 * broadcastMessage sends the provided message to ALL others.
+	 * Forgets a process that left the network.
+	 * 
+	 * @param pProcessID - The process that left.
+	 */
+	private void processLeft(int pProcessID)
+	{
+		RMISocket lSocket = fSocket;
+
+		if (lSocket != null)
+		{
+			lSocket.disconnected(new RMIAddress(Integer.toString(pProcessID)));
+		}
+
+		if (fConnectedIDs.contains(pProcessID))
+		{
+			// This was a connected ID, remove it.
+			fConnectedIDs.remove(new Integer(pProcessID));
+			fMutexLayer.processDisconnected(pProcessID);
+		}
+	}
+
+	/**
+	 * Called when the Socket could not deliver messages to another process. A process
+	 * that is gone can not tell us it left, so it is treated as if it did. Other
+	 * failures are reported; the messages are lost either way.
+	 */
+	@Override
+	public void undeliverable(RMIAddress pTo, Exception pCause)
+	{
+		System.err.println("RMINetwork " + fID + " could not deliver to " + pTo + ": " + pCause);
+
+		if (pCause instanceof NotBoundException || pCause instanceof ConnectException ||
+			pCause instanceof NoSuchObjectException)
+		{
+			try
+			{
+				this.processLeft(Integer.parseInt(pTo.objectname));
+			}
+			catch (NumberFormatException lException)
+			{
+				// Not a process, the debug buffer perhaps.
+			}
+		}
+	}
+
+	/**
+	 * broadcastMessage sends the provided message to ALL others, but not to ourselves.
 	 */
 	@Override
 	public void broadcastMessage(Message pMessage)
@@ -229,7 +303,10 @@ public class RMINetwork implements IRMIClient, IMutexToNetwork
 		{
 			for (int lID : fConnectedIDs)
 			{
-				this.sendMessage(pMessage, lID);
+				if (lID != fID)
+				{
+					this.sendMessage(pMessage, lID);
+				}
 			}
 		}
 	}
@@ -260,4 +337,55 @@ public class RMINetwork implements IRMIClient, IMutexToNetwork
 	{
 		return fID;
 	}
+
+	/**
+	 * The Monitor shows the state of the network through JMX.
+	 */
+	private class Monitor implements RMINetworkMXBean
+	{
+		@Override
+		public int getOwnID()
+		{
+			return fID;
+		}
+
+		@Override
+		public boolean isConnected()
+		{
+			return fConnected;
+		}
+
+		@Override
+		public Integer[] getConnectedIDs()
+		{
+			return RMINetwork.this.getConnectedIDs();
+		}
+
+		@Override
+		public SortedMap<String, Integer> getOutboundQueues()
+		{
+			RMISocket lSocket = fSocket;
+
+			if (lSocket == null)
+			{
+				return new TreeMap<String, Integer>();
+			}
+
+			return lSocket.getOutboundQueues();
+		}
+
+		@Override
+		public SortedMap<String, Long> getMetrics()
+		{
+			return fMetrics.getValues();
+		}
+	}
+
+	/**
+	 * @return The time it takes to send every type of message, updated while connected.
+	 */
+	public MetricSet getMetrics()
+	{
+		return fMetrics;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package in4150.network;
+
+import java.util.SortedMap;
+
+/**
+ * The management interface of an RMINetwork, as seen through JMX.
+ */
+public interface RMINetworkMXBean
+{
+	/**
+	 * @return The ID of the process.
+	 */
+	public int getOwnID();
+
+	/**
+	 * @return true iff the network is connected.
+	 */
+	public boolean isConnected();
+
+	/**
+	 * @return The IDs of all connected processes, including our own.
+	 */
+	public Integer[] getConnectedIDs();
+
+	/**
+	 * @return The number of messages waiting to be sent to each process, by name of its socket.
+	 */
+	public SortedMap<String, Integer> getOutboundQueues();
+
+	/**
+	 * @return The count, mean, percentiles and maximum of the send time of every type of message.
+	 */
+	public SortedMap<String, Long> getMetrics();
+}
@@ -0,0 +1,313 @@
+package in4150.network;
+
+import in4150.mutex.IMutexToNetwork;
+import in4150.network.tcp.ITCPClient;
+import in4150.network.tcp.TCPSocket;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The TCPNetwork is a type of Network that transmits messages over plain TCP
+ * connections instead of RMI. Every process listens on the base port plus its ID
+ * and keeps one persistent connection to each other process.
+ *
+ * Like the RMINetwork, all processes run on one host. The lowest ID whose port is
+ * still free is ours, and the processes listening on the other ports are the ones
+ * already connected.
+ */
+public class TCPNetwork implements ITCPClient, IMutexToNetwork
+{
+	// The port the process with ID 0 would listen on.
+	public static final int DEFAULT_BASE_PORT = 41500;
+
+	// The highest ID a process can get, and the number of ports searched for others.
+	public static final int DEFAULT_MAX_PROCESSES = 256;
+
+	// The layer above us.
+	private final INetworkToMutex fMutexLayer;
+
+	// The host all processes run on.
+	private final String fHost;
+
+	// The port the process with ID 0 would listen on.
+	private final int fBasePort;
+
+	// The highest ID a process can get.
+	private final int fMaxProcesses;
+
+	// The layer below us.
+	private TCPSocket fSocket;
+
+	// True iff our socket is connected.
+	private volatile boolean fConnected;
+
+	// Our personal location in the network ring.
+	private int fID;
+
+	// All known elements in the network ring, read while notifications may change it.
+	private final List<Integer> fConnectedIDs;
+
+	/**
+	 * Constructs a new TCPNetwork on the local host, using the default ports.
+	 *
+	 * @param pMutexLayer - The layer that should receive incoming messages.
+	 */
+	public TCPNetwork(INetworkToMutex pMutexLayer)
+	{
+		this(pMutexLayer, "localhost", DEFAULT_BASE_PORT, DEFAULT_MAX_PROCESSES);
+	}
+
+	/**
+	 * Constructs a new TCPNetwork for the provided layer.
+	 *
+	 * @param pMutexLayer - The layer that should receive incoming messages.
+	 * @param pHost - The host all processes run on.
+	 * @param pBasePort - The port the process with ID 0 would listen on.
+	 * @param pMaxProcesses - The highest ID a process can get.
+	 */
+	public TCPNetwork(INetworkToMutex pMutexLayer, String pHost, int pBasePort, int pMaxProcesses)
+	{
+		fMutexLayer		= pMutexLayer;
+		fHost			= pHost;
+		fBasePort		= pBasePort;
+		fMaxProcesses	= pMaxProcesses;
+		fConnected		= false;
+		fSocket			= null;
+		fID				= 0;
+		fConnectedIDs	= new CopyOnWriteArrayList<Integer>();
+	}
+
+	/**
+	 * Creates a factory for TCPNetworks using the provided ports.
+	 *
+	 * @param pHost - The host all processes run on.
+	 * @param pBasePort - The port the process with ID 0 would listen on.
+	 * @param pMaxProcesses - The highest ID a process can get.
+	 *
+	 * @return A factory creating TCPNetworks.
+	 */
+	public static INetworkFactory factory(final String pHost, final int pBasePort, final int pMaxProcesses)
+	{
+		return new INetworkFactory()
+		{
+			@Override
+			public IMutexToNetwork createNetwork(INetworkToMutex pMutexLayer)
+			{
+				return new TCPNetwork(pMutexLayer, pHost, pBasePort, pMaxProcesses);
+			}
+		};
+	}
+
+	/**
+	 * @return The address the process with the provided ID listens at.
+	 */
+	private InetSocketAddress getAddress(int pID)
+	{
+		return new InetSocketAddress(fHost, fBasePort + pID);
+	}
+
+	/**
+	 * Connects this TCPNetwork to any other networks currently active.
+	 */
+	@Override
+	public void connect()
+	{
+		// Connecting only makes sense when we are not connected now.
+		if (!fConnected)
+		{
+			// First, search for a free ID. Binding the port claims it.
+			fID = 0;
+			while (fSocket == null)
+			{
+				fID++;
+
+				if (fID > fMaxProcesses)
+				{
+					new IllegalStateException("No free ID below " + fMaxProcesses).printStackTrace();
+					System.exit(0);
+				}
+
+				try
+				{
+					fSocket = new TCPSocket(fID, this.getAddress(fID), this);
+				}
+				catch (BindException lException)
+				{
+					// This one is taken, try the next.
+				}
+				catch (IOException lException)
+				{
+					lException.printStackTrace();
+					System.exit(0);
+				}
+			}
+
+			// Then, connect to the processes that are already active.
+			fConnectedIDs.clear();
+			fConnectedIDs.add(fID);
+
+			for (int lOther = 1; lOther <= fMaxProcesses; lOther++)
+			{
+				if (lOther != fID && fSocket.open(lOther, this.getAddress(lOther)))
+				{
+					fConnectedIDs.add(lOther);
+				}
+			}
+
+			fSocket.start();
+			fConnected = true;
+
+			// Notify any active processes, we are here as well.
+			this.notifyOthers(NotificationType.CONNECTED);
+		}
+	}
+
+	/**
+	 * Disconnects this Network from the others.
+	 */
+	@Override
+	public void disconnect()
+	{
+		// Disconnect only makes sense if we are connected.
+		if (fConnected)
+		{
+			// Inform the others.
+			this.notifyOthers(NotificationType.DISCONNECTED);
+
+			fConnected = false;
+
+			// And close the socket.
+			fSocket.close();
+			fSocket = null;
+		}
+	}
+
+	/**
+	 * Informs all other connected networks about a change in our connection.
+	 */
+	private void notifyOthers(NotificationType pType)
+	{
+		// The notification to send.
+		Notification lNotification = new Notification(pType, fID);
+
+		// Send it to all others.
+		for (int lID : fConnectedIDs)
+		{
+			if (lID != fID)
+			{
+				fSocket.send(lID, lNotification);
+			}
+		}
+	}
+
+	/**
+	 * Called when the Socket receives a message.
+	 *
+	 * @param pContent contains the information that was sent.
+	 */
+	@Override
+	public void receive(Object pContent)
+	{
+		// If this was a network message,
+		if (pContent instanceof Message)
+		{
+			// Pass it along.
+			fMutexLayer.receiveMessage((Message)pContent);
+		}
+		// If this was a network notification,
+		else if (pContent instanceof Notification)
+		{
+			Notification lNotification = (Notification)pContent;
+
+			// Attempt to interpret it.
+			switch (lNotification.getNotification())
+			{
+				case CONNECTED:
+				{
+					if (!fConnectedIDs.contains(lNotification.getNotifyingProcess()))
+					{
+						// This is a new connecting ID, add it.
+						fConnectedIDs.add(lNotification.getNotifyingProcess());
+						fMutexLayer.processConnected(lNotification.getNotifyingProcess());
+					}
+					break;
+				}
+				case DISCONNECTED:
+				{
+					this.connectionLost(lNotification.getNotifyingProcess());
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Called when the connection to a process is gone, either because it said so
+	 * or because the connection was closed.
+	 */
+	@Override
+	public void connectionLost(int pPeer)
+	{
+		if (fConnectedIDs.remove(Integer.valueOf(pPeer)))
+		{
+			// This was a connected ID, it is gone now.
+			fMutexLayer.processDisconnected(pPeer);
+		}
+	}
+
+	/**
+	 * broadcastMessage sends the provided message to ALL others, but not to ourselves.
+	 */
+	@Override
+	public void broadcastMessage(Message pMessage)
+	{
+		if (fConnected)
+		{
+			for (int lID : fConnectedIDs)
+			{
+				if (lID != fID)
+				{
+					this.sendMessage(pMessage, lID);
+				}
+			}
+		}
+	}
+
+	/**
+	 * sendMessage sends the provided message to the intended receiver.
+	 */
+	@Override
+	public void sendMessage(Message pMessage, int pReceiver)
+	{
+		if (fConnected)
+		{
+			if (pReceiver == fID)
+			{
+				fSocket.loopback(pMessage);
+			}
+			else
+			{
+				fSocket.send(pReceiver, pMessage);
+			}
+		}
+	}
+
+	@Override
+	public Integer[] getConnectedIDs()
+	{
+		Integer[] lResult = fConnectedIDs.toArray(new Integer[0]);
+		Arrays.sort(lResult);
+		return lResult;
+	}
+
+	@Override
+	public int getOwnID()
+	{
+		return fID;
+	}
+}
@@ -0,0 +1,342 @@
+package in4150.network;
+
+import in4150.mutex.IMutexToNetwork;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The TreeBroadcastNetwork is placed on top of another Network, and spreads broadcast
+ * messages along a tree instead of sending them to every process itself.
+ *
+ * The sender splits the other processes into at most fanout groups and sends the
+ * message to the first process of each group, together with the rest of its group.
+ * Every receiver delivers the message and splits its group in the same way. The
+ * sender does at most fanout sends, and a message reaches every process in a number
+ * of hops logarithmic in the number of processes.
+ *
+ * Groups are formed of the processes that did not leave as far as we know, so a
+ * process that left is routed around. A process may still leave after it was sent
+ * a broadcast to pass on. Each process remembers the broadcasts it handed to others
+ * for a while, and passes them on to the rest of the group itself once it learns
+ * that the process they were handed to left. Some of the group may then receive
+ * the message twice; a Request that arrives again is stale and ignored.
+ */
+public class TreeBroadcastNetwork implements IMutexToNetwork, INetworkToMutex
+{
+	// How long a broadcast handed to another process is remembered, in milliseconds.
+	private static final long HANDOVER_TIME = 2000;
+
+	// The layer above us.
+	private final INetworkToMutex fMutexLayer;
+
+	// The network carrying our messages.
+	private final IMutexToNetwork fNetwork;
+
+	// The number of processes each process passes a broadcast on to.
+	private final int fFanout;
+
+	// True iff we are connected.
+	private volatile boolean fConnected;
+
+	// The processes we know to have left, guarded by itself.
+	private final BitSet fLeft;
+
+	// The broadcasts handed to other processes to pass on, oldest first, guarded by itself.
+	private final ArrayDeque<Handover> fHandovers;
+
+	/**
+	 * A broadcast handed to another process, to pass on to the rest of its group.
+	 */
+	private static class Handover
+	{
+		// The time it was handed over, in milliseconds.
+		private final long fTime;
+
+		// The process it was handed to.
+		private final int fRelay;
+
+		// The broadcast, holding the rest of the group.
+		private final Broadcast fBroadcast;
+
+		Handover(long pTime, int pRelay, Broadcast pBroadcast)
+		{
+			fTime		= pTime;
+			fRelay		= pRelay;
+			fBroadcast	= pBroadcast;
+		}
+	}
+
+	/**
+	 * Constructs a new TreeBroadcastNetwork for the provided layer.
+	 *
+	 * @param pMutexLayer - The layer that should receive incoming messages.
+	 * @param pNetworkFactory - Creates the network carrying our messages.
+	 * @param pFanout - The number of processes each process passes a broadcast on to.
+	 */
+	public TreeBroadcastNetwork(INetworkToMutex pMutexLayer, INetworkFactory pNetworkFactory, int pFanout)
+	{
+		if (pFanout < 1)
+		{
+			throw new IllegalArgumentException("Fanout " + pFanout + " is not positive");
+		}
+
+		fMutexLayer	= pMutexLayer;
+		fFanout		= pFanout;
+		fConnected	= false;
+		fLeft		= new BitSet();
+		fHandovers	= new ArrayDeque<Handover>();
+		fNetwork	= pNetworkFactory.createNetwork(this);
+	}
+
+	/**
+	 * Creates a factory placing TreeBroadcastNetworks on top of other networks.
+	 *
+	 * @param pNetworkFactory - Creates the networks carrying the messages.
+	 * @param pFanout - The number of processes each process passes a broadcast on to.
+	 *
+	 * @return A factory creating TreeBroadcastNetworks.
+	 */
+	public static INetworkFactory factory(final INetworkFactory pNetworkFactory, final int pFanout)
+	{
+		return new INetworkFactory()
+		{
+			@Override
+			public IMutexToNetwork createNetwork(INetworkToMutex pMutexLayer)
+			{
+				return new TreeBroadcastNetwork(pMutexLayer, pNetworkFactory, pFanout);
+			}
+		};
+	}
+
+	@Override
+	public void connect()
+	{
+		fNetwork.connect();
+
+		fConnected = true;
+	}
+
+	@Override
+	public void disconnect()
+	{
+		fConnected = false;
+
+		fNetwork.disconnect();
+
+		synchronized (fLeft)
+		{
+			fLeft.clear();
+		}
+
+		synchronized (fHandovers)
+		{
+			fHandovers.clear();
+		}
+	}
+
+	@Override
+	public int getOwnID()
+	{
+		return fNetwork.getOwnID();
+	}
+
+	@Override
+	public Integer[] getConnectedIDs()
+	{
+		return fNetwork.getConnectedIDs();
+	}
+
+	@Override
+	public void sendMessage(Message pMessage, int pReceiver)
+	{
+		fNetwork.sendMessage(pMessage, pReceiver);
+	}
+
+	/**
+	 * broadcastMessage spreads the provided message to all others along a tree, but
+	 * not to ourselves.
+	 */
+	@Override
+	public void broadcastMessage(Message pMessage)
+	{
+		if (!fConnected)
+		{
+			return;
+		}
+
+		Integer[] lConnected = fNetwork.getConnectedIDs();
+		int lOwnID = fNetwork.getOwnID();
+
+		// All others, in increasing order.
+		int[] lOthers = new int[lConnected.length];
+		int lCount = 0;
+		for (int lID : lConnected)
+		{
+			if (lID != lOwnID)
+			{
+				lOthers[lCount++] = lID;
+			}
+		}
+
+		this.spread(pMessage, lOthers, 0, lCount);
+	}
+
+	/**
+	 * Sends a message to a range of processes, by splitting those that did not leave into
+	 * at most fanout groups and sending it to the first process of each. The others
+	 * in a group are handed to that process to pass on to.
+	 *
+	 * @param pMessage - The message to spread.
+	 * @param pTargets - The processes, in increasing order.
+	 * @param pFrom - The first process of the range.
+	 * @param pTo - The end of the range, exclusive.
+	 */
+	private void spread(Message pMessage, int[] pTargets, int pFrom, int pTo)
+	{
+		int[] lTargets	= this.remaining(pTargets, pFrom, pTo);
+		int lCount		= lTargets.length;
+		int lGroups		= Math.min(fFanout, lCount);
+		long lNow		= System.currentTimeMillis();
+
+		for (int i = 0; i < lGroups; i++)
+		{
+			int lStart	= (int)((long)i * lCount / lGroups);
+			int lEnd	= (int)((long)(i + 1) * lCount / lGroups);
+
+			if (lEnd - lStart == 1)
+			{
+				// A group of one gets the message itself.
+				fNetwork.sendMessage(pMessage, lTargets[lStart]);
+			}
+			else
+			{
+				Broadcast lBroadcast = new Broadcast(pMessage, Arrays.copyOfRange(lTargets, lStart + 1, lEnd));
+
+				this.remember(new Handover(lNow, lTargets[lStart], lBroadcast));
+
+				fNetwork.sendMessage(lBroadcast, lTargets[lStart]);
+			}
+		}
+	}
+
+	/**
+	 * @param pTargets - The processes, in increasing order.
+	 * @param pFrom - The first process of the range.
+	 * @param pTo - The end of the range, exclusive.
+	 *
+	 * @return The processes of the range that did not leave as far as we know, in order.
+	 */
+	private int[] remaining(int[] pTargets, int pFrom, int pTo)
+	{
+		int[] lResult = new int[pTo - pFrom];
+		int lCount = 0;
+
+		synchronized (fLeft)
+		{
+			for (int i = pFrom; i < pTo; i++)
+			{
+				if (!fLeft.get(pTargets[i]))
+				{
+					lResult[lCount++] = pTargets[i];
+				}
+			}
+		}
+
+		return lCount == lResult.length ? lResult : Arrays.copyOf(lResult, lCount);
+	}
+
+	/**
+	 * Remembers a broadcast handed to another process, and forgets those handed over
+	 * too long ago.
+	 */
+	private void remember(Handover pHandover)
+	{
+		synchronized (fHandovers)
+		{
+			while (!fHandovers.isEmpty() && pHandover.fTime - fHandovers.peek().fTime > HANDOVER_TIME)
+			{
+				fHandovers.poll();
+			}
+
+			fHandovers.add(pHandover);
+		}
+	}
+
+	/**
+	 * Passes on the broadcasts that were recently handed to a process that left, to
+	 * the rest of their groups.
+	 *
+	 * @param pRelay - The process that left.
+	 */
+	private void takeOver(int pRelay)
+	{
+		List<Broadcast> lOrphans = new ArrayList<Broadcast>();
+
+		synchronized (fHandovers)
+		{
+			Iterator<Handover> lHandovers = fHandovers.iterator();
+			while (lHandovers.hasNext())
+			{
+				Handover lHandover = lHandovers.next();
+
+				if (lHandover.fRelay == pRelay)
+				{
+					lOrphans.add(lHandover.fBroadcast);
+					lHandovers.remove();
+				}
+			}
+		}
+
+		for (Broadcast lOrphan : lOrphans)
+		{
+			this.spread(lOrphan.getPayload(), lOrphan.getSubtree(), 0, lOrphan.getSubtree().length);
+		}
+	}
+
+	@Override
+	public void receiveMessage(Message pMessage)
+	{
+		if (pMessage instanceof Broadcast)
+		{
+			Broadcast lBroadcast = (Broadcast)pMessage;
+
+			// Pass it on first, the processes below us should not wait for our layer.
+			this.spread(lBroadcast.getPayload(), lBroadcast.getSubtree(), 0, lBroadcast.getSubtree().length);
+
+			fMutexLayer.receiveMessage(lBroadcast.getPayload());
+		}
+		else
+		{
+			fMutexLayer.receiveMessage(pMessage);
+		}
+	}
+
+	@Override
+	public void processConnected(int pProcessID)
+	{
+		synchronized (fLeft)
+		{
+			fLeft.clear(pProcessID);
+		}
+
+		fMutexLayer.processConnected(pProcessID);
+	}
+
+	@Override
+	public void processDisconnected(int pProcessID)
+	{
+		synchronized (fLeft)
+		{
+			fLeft.set(pProcessID);
+		}
+
+		this.takeOver(pProcessID);
+
+		fMutexLayer.processDisconnected(pProcessID);
+	}
+}
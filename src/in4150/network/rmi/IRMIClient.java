@@ -2,4 +2,11 @@ package in4150.network.rmi;
 
 public interface IRMIClient {
 	public void receive(Object content);
+	/**
+	 * called when messages sent to the socket at the provided address could not be delivered
+	 * 
+	 * @param to
+	 * @param cause a NotBoundException, ConnectException or NoSuchObjectException if the peer is gone
+	 */
+	public void undeliverable(RMIAddress to, Exception cause);
 }
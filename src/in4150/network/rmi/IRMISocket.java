@@ -5,4 +5,5 @@ import java.rmi.RemoteException;
 
 public interface IRMISocket extends Remote{
 	public void receive(RMIAddress from, RMIMessage msg) throws RemoteException;
+	public void receiveBatch(RMIAddress from, RMIMessage[] msgs) throws RemoteException;
 }
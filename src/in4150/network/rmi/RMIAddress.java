@@ -34,4 +34,26 @@ public class RMIAddress implements Serializable{
 		}
 		return myIp;
 	}
+
+	/**
+	 * two addresses are equal when they name the same object in the same registry
+	 */
+	@Override
+	public boolean equals(Object other){
+		if (!(other instanceof RMIAddress)){
+			return false;
+		}
+		RMIAddress address = (RMIAddress)other;
+		return this.port == address.port && this.host.equals(address.host) && this.objectname.equals(address.objectname);
+	}
+
+	@Override
+	public int hashCode(){
+		return (this.host.hashCode() * 31 + this.port) * 31 + this.objectname.hashCode();
+	}
+
+	@Override
+	public String toString(){
+		return this.host + ":" + this.port + "/" + this.objectname;
+	}
 }
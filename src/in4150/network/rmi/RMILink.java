@@ -0,0 +1,122 @@
+package in4150.network.rmi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * outbound queue towards a single remote socket
+ * messages are queued in the order they are sent, and travel their delay on the link:
+ * a message is handed over once it has arrived and every message before it was handed over
+ * messages that arrive while a remote call is in flight are combined into the next call,
+ * at most one call per link is in flight so the order of messages on the link is kept
+ * 
+ * as the order is kept, a message with a long delay holds back the messages sent after it
+ * to the same receiver, even those with a shorter delay: the debug delays of a link add up
+ * to head-of-line blocking instead of reordering messages, messages to other receivers are
+ * not held back
+ */
+class RMILink implements Runnable{
+	private final RMISocket socket;
+	private final RMIAddress to;
+	private final ScheduledExecutorService executor;
+	private final ConcurrentLinkedQueue<RMIMessage> queue;
+	/**
+	 * true while a drain of this link is scheduled or running, or waits for the first message to arrive
+	 */
+	private final AtomicBoolean draining;
+	
+	RMILink(RMISocket socket, RMIAddress to, ScheduledExecutorService executor){
+		this.socket = socket;
+		this.to = to;
+		this.executor = executor;
+		this.queue = new ConcurrentLinkedQueue<RMIMessage>();
+		this.draining = new AtomicBoolean(false);
+	}
+	
+	/**
+	 * queues a message that starts travelling, and starts draining the link if it is idle
+	 * 
+	 * @param message
+	 */
+	void offer(RMIMessage message){
+		this.queue.add(message);
+		if (this.draining.compareAndSet(false, true)){
+			try{
+				this.executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				this.discard(e);
+			}
+		}
+	}
+	
+	/**
+	 * counts the messages waiting, meant for monitoring as it walks the queue
+	 * 
+	 * @return the number of messages not yet handed to a remote call
+	 */
+	int size(){
+		return this.queue.size();
+	}
+	
+	/**
+	 * sends everything that has arrived in one remote call, until the queue is empty
+	 * or the first message still travels, in which case the drain waits for it
+	 */
+	public void run(){
+		List<RMIMessage> batch = new ArrayList<RMIMessage>();
+		while (true){
+			long now = System.nanoTime();
+			RMIMessage message;
+			// only this drain takes messages, so the head it looked at is the one it polls
+			while ((message = this.queue.peek()) != null && message.getQueued() - now <= 0){
+				this.queue.poll();
+				message.arrive();
+				batch.add(message);
+			}
+			if (batch.isEmpty()){
+				if (message != null){
+					// the messages behind it wait as well, or they would overtake it
+					try{
+						this.executor.schedule(this, message.getQueued() - now, TimeUnit.NANOSECONDS);
+					} catch (RejectedExecutionException e) {
+						this.discard(e);
+					}
+					return;
+				}
+				this.draining.set(false);
+				// a message may have been queued after the last poll but before we stopped draining
+				if (this.queue.isEmpty() || !this.draining.compareAndSet(false, true)){
+					return;
+				}
+				continue;
+			}
+			this.socket.deliver(this.to, batch.toArray(new RMIMessage[batch.size()]));
+			batch.clear();
+		}
+	}
+	
+	/**
+	 * gives up on the queued messages once the socket has been unregistered and its scheduler
+	 * takes no more drains, the client hears they are undeliverable instead of the sender
+	 * getting the rejection
+	 * 
+	 * @param cause the rejection of the scheduler
+	 */
+	private void discard(RejectedExecutionException cause){
+		List<RMIMessage> lost = new ArrayList<RMIMessage>();
+		RMIMessage message;
+		while ((message = this.queue.poll()) != null){
+			message.arrive();
+			lost.add(message);
+		}
+		this.draining.set(false);
+		if (!lost.isEmpty()){
+			this.socket.failed(this.to, lost.toArray(new RMIMessage[lost.size()]), cause);
+		}
+	}
+}
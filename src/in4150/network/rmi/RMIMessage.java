@@ -1,30 +1,37 @@
 package in4150.network.rmi;
 
 
+import in4150.network.wire.WireCodec;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.rmi.AccessException;
-import java.rmi.NotBoundException;
-import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
+import java.util.concurrent.TimeUnit;
 /**
  * message container with all RMI specific stuff
  * content will be unpacked by other end of the RMI connection
+ * only the content crosses the connection, written in the wire format of the WireCodec
  * 
  * TODO: might need an id and/or senttime?
  * 
  * @author Peter Dijkshoorn
  *
  */
-public class RMIMessage implements Serializable, Runnable{
+public class RMIMessage implements Serializable{
 	/**
 	 * to be able to correctly serialize this class
 	 */
 	private static final long serialVersionUID = 2066773020858558356L;
-	private int delay;
-	private RMIAddress to;
-	private RMIAddress from;
-	private Object content;
-	private boolean traveling;
+	private transient int delay;
+	private transient RMIAddress to;
+	private transient RMIAddress from;
+	private transient Object content;
+	private transient boolean traveling;
+	/**
+	 * the time the message has travelled its delay and may be handed to its receiver, not sent along
+	 */
+	private transient long queued;
 	
 	
 	public RMIMessage(RMIAddress from, RMIAddress to, Object content){
@@ -42,53 +49,65 @@ public class RMIMessage implements Serializable, Runnable{
 		return this.content;
 	}
 	
+	public RMIAddress getTo(){
+		return this.to;
+	}
+	
+	public RMIAddress getFrom(){
+		return this.from;
+	}
+	
 	public boolean isTraveling(){
 		return this.traveling;
 	}
 	
+	public long getQueued(){
+		return this.queued;
+	}
+	
 	/**
 	 * starts the travel of the message along the dark tubes of cyberspace
 	 * this way artificial delay for debug and demonstration purposes is implemented
+	 * 
+	 * the message waits on the link to its receiver instead of occupying a thread,
+	 * behind the messages sent before it
+	 * 
+	 * @param link the link that delivers the message when it arrives
 	 */
-	public void travel(){
-		new Thread(this).start();
+	void travel(RMILink link){
+		this.traveling = true;
+		this.queued = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.delay);
+		link.offer(this);
 	}
 	
 	/**
-	 * the thread sleeps {@code this.delay} amount of time after which it arrives at the destination
+	 * called by the link once {@code this.delay} has passed, the message arrives at the destination
 	 */
-	public void run(){
-		this.traveling = true;
-		
-		try {
-			Thread.sleep(this.delay);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}
+	void arrive(){
 		this.traveling = false;
-		try{
-			/*
-			// Lookup the network,
-			ICOSocket lReceiver = (ICOSocket) Naming.lookup(CONetwork.NETWORK_URL);
-			 */
-			((IRMISocket)LocateRegistry.getRegistry(this.to.host,this.to.port).lookup(this.to.objectname)).receive(this.from, this);
-		} catch (AccessException e) {
-			// TODO something useful with the exception, failed to contact remote obj
-			e.printStackTrace();
-			System.exit(0);
-		} catch (RemoteException e) {
-			// TODO something useful with the exception, failed to contact remote obj
-			e.printStackTrace();
-			System.exit(0);
-		} catch (NotBoundException e) {
-			// TODO something useful with the exception, address does not exist
-			e.printStackTrace();
-			System.exit(0);
-		} catch (NullPointerException e){
-			// TODO something useful with the exception, address is empty
-			e.printStackTrace();
-			System.exit(0);
-		}
-		
+	}
+	
+	/**
+	 * writes the content in the wire format instead of serializing the whole message
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException{
+		byte[] payload = WireCodec.encode(this.content);
+		out.writeInt(payload.length);
+		out.write(payload);
+	}
+	
+	/**
+	 * reads the content written by writeObject, the message has arrived so it is not travelling
+	 * 
+	 * @param in
+	 * @throws IOException
+	 */
+	private void readObject(ObjectInputStream in) throws IOException{
+		byte[] payload = new byte[in.readInt()];
+		in.readFully(payload);
+		this.content = WireCodec.decode(payload);
 	}
 }
@@ -2,7 +2,12 @@
 
 package in4150.network.rmi;
 
+import in4150.metrics.Histogram;
+import in4150.metrics.MetricSet;
+
 import java.rmi.AccessException;
+import java.rmi.ConnectException;
+import java.rmi.NoSuchObjectException;
 import java.rmi.NotBoundException;
 import java.rmi.RMISecurityManager;
 import java.rmi.RemoteException;
@@ -11,6 +16,13 @@ import java.rmi.registry.Registry;
 import java.rmi.server.ExportException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
 
 
 
@@ -25,8 +37,37 @@ public class RMISocket extends UnicastRemoteObject implements IRMISocket{
 	 * serial needed to avoid serializable problems
 	 */
 	private static final long serialVersionUID = 6776813661285758657L;
+	/**
+	 * number of threads delivering messages, independent of the message rate
+	 */
+	private static final int DELIVERY_THREADS = 4;
 	private RMIAddress address;
 	private IRMIClient client;
+	/**
+	 * remote stubs of the sockets we have sent to, so the registry is only
+	 * needed the first time a peer is contacted
+	 */
+	private transient Map<RMIAddress, IRMISocket> stubs;
+	/**
+	 * drains the links, and holds a link back until its first message has travelled its delay
+	 */
+	private transient ScheduledThreadPoolExecutor scheduler;
+	/**
+	 * outbound queue per receiver, drained by the scheduler threads
+	 */
+	private transient ConcurrentHashMap<RMIAddress, RMILink> links;
+	/**
+	 * per type of message, the time from queueing a message to the remote call delivering it returning
+	 */
+	private transient MetricSet metrics;
+	/**
+	 * the histograms of the metrics, by type of message
+	 */
+	private transient ConcurrentHashMap<Class<?>, Histogram> histograms;
+	/**
+	 * the number of messages that could not be delivered
+	 */
+	private transient LongAdder failures;
 	
 	/**
 	 * installs a RMI Socket by stating an address and registers it
@@ -36,8 +77,32 @@ public class RMISocket extends UnicastRemoteObject implements IRMISocket{
 	 * @throws RemoteException
 	 */
 	public RMISocket(String address, IRMIClient client) throws RemoteException{
+		this(address, client, new MetricSet());
+	}
+	
+	/**
+	 * installs a RMI Socket by stating an address and registers it
+	 * 
+	 * @param address
+	 * @param client
+	 * @param metrics receives the send latency of every type of message
+	 * @throws RemoteException
+	 */
+	public RMISocket(String address, IRMIClient client, MetricSet metrics) throws RemoteException{
 		this.address = new RMIAddress(address);
 		this.client = client;
+		this.metrics = metrics;
+		this.histograms = new ConcurrentHashMap<Class<?>, Histogram>();
+		this.failures = metrics.counter("undeliverable messages");
+		this.stubs = new ConcurrentHashMap<RMIAddress, IRMISocket>();
+		this.links = new ConcurrentHashMap<RMIAddress, RMILink>();
+		this.scheduler = new ScheduledThreadPoolExecutor(DELIVERY_THREADS, new ThreadFactory(){
+			public Thread newThread(Runnable task){
+				Thread thread = new Thread(task, "RMISocket " + address + " delivery");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 
 		this.register();
 	}
@@ -65,7 +130,159 @@ public class RMISocket extends UnicastRemoteObject implements IRMISocket{
 	 */
 	public void send(RMIAddress to,Object load, int delay){
 		RMIMessage message = new RMIMessage(this.address,to,load, delay);
-		message.travel();
+		message.travel(this.link(to));
+	}
+
+	/**
+	 * returns the outbound queue towards the provided address, creating it on first use
+	 * 
+	 * @param to
+	 * @return the link to the receiver
+	 */
+	private RMILink link(RMIAddress to){
+		RMILink link = this.links.get(to);
+		if (link == null){
+			RMILink created = new RMILink(this, to, this.scheduler);
+			link = this.links.putIfAbsent(to, created);
+			if (link == null){
+				link = created;
+			}
+		}
+		return link;
+	}
+
+	/**
+	 * hands a batch of messages to the socket they are addressed to in a single remote call
+	 * a stale cached stub is dropped and the peer is looked up once more before giving up
+	 * 
+	 * only a call that never reached the peer is made again, any other failure may come
+	 * after the peer received the batch, and sending it twice would deliver a Token twice
+	 * 
+	 * @param to
+	 * @param messages in the order they were sent
+	 */
+	void deliver(RMIAddress to, RMIMessage[] messages){
+		try{
+			try{
+				this.lookup(to).receiveBatch(this.address, messages);
+			} catch (ConnectException e) {
+				// the cached stub may belong to a socket that has since been replaced
+				this.resend(to, messages);
+			} catch (NoSuchObjectException e) {
+				// the cached stub belongs to a socket that is no longer exported
+				this.resend(to, messages);
+			}
+			long delivered = System.nanoTime();
+			for (RMIMessage message : messages){
+				this.histogram(message.getContent().getClass()).record(delivered - message.getQueued());
+			}
+		} catch (RemoteException e) {
+			this.failed(to, messages, e);
+		} catch (NotBoundException e) {
+			// the peer has left the registry
+			this.failed(to, messages, e);
+		}
+	}
+
+	/**
+	 * returns the send latency histogram of a type of message, naming it only the first time
+	 * 
+	 * @param type
+	 * @return the histogram of the type
+	 */
+	private Histogram histogram(Class<?> type){
+		Histogram histogram = this.histograms.get(type);
+		if (histogram == null){
+			histogram = this.metrics.histogram("send " + type.getSimpleName() + " (ns)");
+			this.histograms.putIfAbsent(type, histogram);
+		}
+		return histogram;
+	}
+
+	/**
+	 * counts a batch that could not be delivered and tells the client, which decides what
+	 * the loss means, the batch is not sent again as the peer may have received part of it
+	 * 
+	 * @param to
+	 * @param messages
+	 * @param cause
+	 */
+	void failed(RMIAddress to, RMIMessage[] messages, Exception cause){
+		this.failures.add(messages.length);
+		this.client.undeliverable(to, cause);
+	}
+
+	/**
+	 * drops the cached stub of a peer the batch never reached, and sends it through a fresh stub
+	 * 
+	 * @param to
+	 * @param messages in the order they were sent
+	 * @throws RemoteException
+	 * @throws NotBoundException
+	 */
+	private void resend(RMIAddress to, RMIMessage[] messages) throws RemoteException, NotBoundException{
+		this.stubs.remove(to);
+		this.lookup(to).receiveBatch(this.address, messages);
+	}
+
+	/**
+	 * returns the remote stub of the socket at the provided address,
+	 * consulting the registry only when it is not cached yet
+	 * 
+	 * @param to
+	 * @return the stub of the remote socket
+	 * @throws RemoteException
+	 * @throws NotBoundException
+	 */
+	private IRMISocket lookup(RMIAddress to) throws RemoteException, NotBoundException{
+		IRMISocket stub = this.stubs.get(to);
+		if (stub == null){
+			stub = (IRMISocket)LocateRegistry.getRegistry(to.host,to.port).lookup(to.objectname);
+			this.stubs.put(to, stub);
+		}
+		return stub;
+	}
+
+	/**
+	 * returns the send latency of every type of message, updated while the socket runs
+	 * 
+	 * @return the metrics of the socket
+	 */
+	public MetricSet getMetrics(){
+		return this.metrics;
+	}
+
+	/**
+	 * returns the number of messages waiting to be sent, per receiver that was ever sent to
+	 * 
+	 * @return the queue depths by name of the receiving socket
+	 */
+	public SortedMap<String, Integer> getOutboundQueues(){
+		SortedMap<String, Integer> depths = new TreeMap<String, Integer>();
+		for (Map.Entry<RMIAddress, RMILink> entry : this.links.entrySet()){
+			depths.put(entry.getKey().objectname, entry.getValue().size());
+		}
+		return depths;
+	}
+
+	/**
+	 * records the stub a peer handed over when it connected, so sending to it
+	 * never has to go through the registry
+	 * 
+	 * @param peer
+	 * @param stub
+	 */
+	public void connected(RMIAddress peer, IRMISocket stub){
+		this.stubs.put(peer, stub);
+	}
+
+	/**
+	 * forgets the stub of a peer that has disconnected
+	 * 
+	 * @param peer
+	 */
+	public void disconnected(RMIAddress peer){
+		this.stubs.remove(peer);
 	}
 
 	/**
@@ -80,6 +297,20 @@ public class RMISocket extends UnicastRemoteObject implements IRMISocket{
 	public void receive(RMIAddress from, RMIMessage msg) throws RemoteException{
 		client.receive(msg.getContent());
 	}
+
+	/**
+	 * receives a batch of messages from the socket on the other end
+	 * passes them to the upper layer in the order they were sent
+	 * 
+	 * @param from
+	 * @param msgs
+	 * @throws RemoteException
+	 */
+	public void receiveBatch(RMIAddress from, RMIMessage[] msgs) throws RemoteException{
+		for (RMIMessage msg : msgs){
+			client.receive(msg.getContent());
+		}
+	}
 	
 	/**
 	 * starts RMI register if not present at port stated in our address
@@ -133,6 +364,8 @@ public class RMISocket extends UnicastRemoteObject implements IRMISocket{
 	 * @author Peter Dijkshoorn
 	 */
 	public void unregister(){
+		// messages that have arrived on their links are still delivered, later ones are undeliverable
+		this.scheduler.shutdown();
 		try {
 			LocateRegistry.getRegistry(this.address.port).unbind(this.address.objectname);
 		} catch (AccessException e) {
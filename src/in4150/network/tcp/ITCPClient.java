@@ -0,0 +1,22 @@
+package in4150.network.tcp;
+
+/**
+ * This interface defines the functions a user of a TCPSocket must provide.
+ */
+public interface ITCPClient
+{
+	/**
+	 * Called on the socket thread for every object received, in the order the
+	 * sender sent them.
+	 * 
+	 * @param pContent - The object that was received.
+	 */
+	public void receive(Object pContent);
+
+	/**
+	 * Called on the socket thread when the last connection to a peer was closed.
+	 * 
+	 * @param pPeer - The ID of the peer that can no longer be reached.
+	 */
+	public void connectionLost(int pPeer);
+}
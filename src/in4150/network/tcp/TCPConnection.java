@@ -0,0 +1,213 @@
+package in4150.network.tcp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A TCPConnection is one persistent channel to a peer. It keeps the frames waiting
+ * to be written and the bytes read so far. Only the socket thread reads and writes
+ * the channel, other threads only add frames.
+ */
+class TCPConnection
+{
+	// Peer ID of a connection that has not said hello yet.
+	static final int UNKNOWN_PEER = -1;
+
+	// Size of the buffer reading from the channel, grown for larger frames.
+	private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+	// The channel to the peer.
+	private final SocketChannel fChannel;
+
+	// Frames waiting to be written, in order.
+	private final Queue<ByteBuffer> fOutbound;
+
+	// True while the connection is waiting for the socket thread to write it.
+	private final AtomicBoolean fScheduled;
+
+	// The ID of the peer at the other end.
+	private int fPeer;
+
+	// Bytes read from the channel that do not form a complete frame yet.
+	private ByteBuffer fInbound;
+
+	// The registration of the channel with the selector.
+	private SelectionKey fKey;
+
+	/**
+	 * Constructs a new TCPConnection over a connected channel.
+	 *
+	 * @param pChannel - The channel to the peer.
+	 * @param pPeer - The ID of the peer, or UNKNOWN_PEER until it says hello.
+	 */
+	TCPConnection(SocketChannel pChannel, int pPeer)
+	{
+		fChannel	= pChannel;
+		fPeer		= pPeer;
+		fOutbound	= new ConcurrentLinkedQueue<ByteBuffer>();
+		fScheduled	= new AtomicBoolean(false);
+		fInbound	= ByteBuffer.allocate(READ_BUFFER_SIZE);
+	}
+
+	SocketChannel getChannel()
+	{
+		return fChannel;
+	}
+
+	int getPeer()
+	{
+		return fPeer;
+	}
+
+	void setPeer(int pPeer)
+	{
+		fPeer = pPeer;
+	}
+
+	void setKey(SelectionKey pKey)
+	{
+		fKey = pKey;
+	}
+
+	/**
+	 * Queues a frame for writing.
+	 *
+	 * @param pFrame - The complete frame, including its length prefix.
+	 *
+	 * @return true iff the connection still needs to be handed to the socket thread.
+	 */
+	boolean queue(ByteBuffer pFrame)
+	{
+		fOutbound.add(pFrame);
+
+		return fScheduled.compareAndSet(false, true);
+	}
+
+	/**
+	 * Called by the socket thread when it picks up a scheduled connection.
+	 */
+	void unschedule()
+	{
+		fScheduled.set(false);
+	}
+
+	/**
+	 * @return true iff frames are waiting to be written.
+	 */
+	boolean hasOutbound()
+	{
+		return !fOutbound.isEmpty();
+	}
+
+	/**
+	 * Writes as many waiting frames as the channel accepts. If the channel is full,
+	 * the connection asks the selector to tell it when it can write again.
+	 *
+	 * @throws IOException If the channel failed.
+	 */
+	void flush() throws IOException
+	{
+		ByteBuffer lFrame;
+		while ((lFrame = fOutbound.peek()) != null)
+		{
+			fChannel.write(lFrame);
+
+			if (lFrame.hasRemaining())
+			{
+				// The channel is full, continue when it is writable.
+				if (fKey != null)
+				{
+					fKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				}
+				return;
+			}
+
+			fOutbound.poll();
+		}
+
+		if (fKey != null)
+		{
+			fKey.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	/**
+	 * Reads what the channel has available and returns the payloads of the complete
+	 * frames read, in order.
+	 *
+	 * @param pMaxFrame - The largest frame payload accepted.
+	 * @param pFrames - Receives the payload of each complete frame.
+	 *
+	 * @return false iff the peer closed the connection.
+	 *
+	 * @throws IOException If the channel failed or a frame is malformed.
+	 */
+	boolean read(int pMaxFrame, Queue<byte[]> pFrames) throws IOException
+	{
+		int lRead = fChannel.read(fInbound);
+
+		if (lRead < 0)
+		{
+			return false;
+		}
+
+		fInbound.flip();
+
+		while (fInbound.remaining() >= TCPSocket.HEADER_SIZE)
+		{
+			int lLength = fInbound.getInt(fInbound.position());
+
+			if (lLength < 0 || lLength > pMaxFrame)
+			{
+				throw new IOException("Malformed frame of " + lLength + " bytes from " + fPeer);
+			}
+
+			if (fInbound.remaining() < TCPSocket.HEADER_SIZE + lLength)
+			{
+				break;
+			}
+
+			byte[] lPayload = new byte[lLength];
+			fInbound.position(fInbound.position() + TCPSocket.HEADER_SIZE);
+			fInbound.get(lPayload);
+			pFrames.add(lPayload);
+		}
+
+		fInbound.compact();
+
+		// Make room for a frame that does not fit in the buffer.
+		if (!fInbound.hasRemaining())
+		{
+			ByteBuffer lLarger = ByteBuffer.allocate(fInbound.capacity() * 2);
+			fInbound.flip();
+			lLarger.put(fInbound);
+			fInbound = lLarger;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Closes the channel, ignoring failures.
+	 */
+	void close()
+	{
+		if (fKey != null)
+		{
+			fKey.cancel();
+		}
+
+		try
+		{
+			fChannel.close();
+		}
+		catch (IOException lException)
+		{
+		}
+	}
+}
@@ -0,0 +1,481 @@
+package in4150.network.tcp;
+
+import in4150.network.wire.WireCodec;
+import in4150.network.wire.WireOutput;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A TCPSocket is the end point of the TCP network. It listens on its own port, keeps
+ * one persistent connection per peer and exchanges length-prefixed frames over them.
+ *
+ * A single thread runs the selector loop. It accepts, reads and writes all channels
+ * and hands every received object to the client. Other threads only queue frames
+ * and wake the selector.
+ *
+ * The first frame on every connection is a hello carrying the ID of the sender, so
+ * both ends know which peer a connection belongs to.
+ *
+ * Anyone can connect to the port, so frames are read with WireCodec.decodeUntrusted:
+ * only objects with a registered wire format are accepted. A connection sending
+ * anything else, or a frame that cannot be read, is dropped like a failed one.
+ */
+public class TCPSocket implements Runnable
+{
+	// Size of the length prefix of every frame.
+	static final int HEADER_SIZE = 4;
+
+	// The largest frame payload accepted from a peer.
+	private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+	// How long a closing socket keeps trying to write queued frames.
+	private static final long CLOSE_TIMEOUT = 1000;
+
+	// Our own ID, sent in the hello frame.
+	private final int fOwnID;
+
+	// The layer receiving our objects.
+	private final ITCPClient fClient;
+
+	// The selector watching all channels.
+	private final Selector fSelector;
+
+	// The channel accepting connections from peers.
+	private final ServerSocketChannel fServer;
+
+	// The connection used to send to each peer.
+	private final Map<Integer, TCPConnection> fConnections;
+
+	// Connections with frames waiting to be written.
+	private final Queue<TCPConnection> fScheduled;
+
+	// New outgoing connections waiting to be registered with the selector.
+	private final Queue<TCPConnection> fRegistrations;
+
+	// Objects sent to ourselves, delivered by the socket thread.
+	private final Queue<Object> fLoopback;
+
+	// The thread running the selector loop.
+	private final Thread fThread;
+
+	// False once the socket was asked to close.
+	private volatile boolean fRunning;
+
+	/**
+	 * Constructs a new TCPSocket listening at the provided address.
+	 *
+	 * @param pOwnID - Our own ID.
+	 * @param pAddress - The address to listen at.
+	 * @param pClient - The layer receiving our objects.
+	 *
+	 * @throws IOException If the address is in use or cannot be bound.
+	 */
+	public TCPSocket(int pOwnID, InetSocketAddress pAddress, ITCPClient pClient) throws IOException
+	{
+		fOwnID			= pOwnID;
+		fClient			= pClient;
+		fConnections	= new ConcurrentHashMap<Integer, TCPConnection>();
+		fScheduled		= new ConcurrentLinkedQueue<TCPConnection>();
+		fRegistrations	= new ConcurrentLinkedQueue<TCPConnection>();
+		fLoopback		= new ConcurrentLinkedQueue<Object>();
+		fRunning		= true;
+
+		fSelector	= Selector.open();
+		fServer		= ServerSocketChannel.open();
+
+		try
+		{
+			fServer.bind(pAddress);
+			fServer.configureBlocking(false);
+			fServer.register(fSelector, SelectionKey.OP_ACCEPT);
+		}
+		catch (IOException lException)
+		{
+			fServer.close();
+			fSelector.close();
+			throw lException;
+		}
+
+		fThread = new Thread(this, "TCPSocket " + pOwnID);
+		fThread.setDaemon(true);
+	}
+
+	/**
+	 * Starts the selector loop. Objects are only received once it runs.
+	 */
+	public void start()
+	{
+		fThread.start();
+	}
+
+	/**
+	 * Opens a persistent connection to a peer.
+	 *
+	 * @param pPeer - The ID of the peer.
+	 * @param pAddress - The address the peer listens at.
+	 *
+	 * @return true iff the peer accepted the connection.
+	 */
+	public boolean open(int pPeer, InetSocketAddress pAddress)
+	{
+		SocketChannel lChannel = null;
+
+		try
+		{
+			lChannel = SocketChannel.open(pAddress);
+			lChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			lChannel.configureBlocking(false);
+		}
+		catch (IOException lException)
+		{
+			if (lChannel != null)
+			{
+				try
+				{
+					lChannel.close();
+				}
+				catch (IOException lIgnored)
+				{
+				}
+			}
+
+			return false;
+		}
+
+		TCPConnection lConnection = new TCPConnection(lChannel, pPeer);
+		fConnections.put(pPeer, lConnection);
+
+		// Say hello, then register with the selector on the socket thread.
+		lConnection.queue(hello(fOwnID));
+		fRegistrations.add(lConnection);
+		fSelector.wakeup();
+
+		return true;
+	}
+
+	/**
+	 * Sends an object to a peer over its persistent connection. Objects sent to
+	 * one peer arrive in the order they were sent.
+	 *
+	 * @param pPeer - The ID of the peer.
+	 * @param pContent - The object to send.
+	 */
+	public void send(int pPeer, Object pContent)
+	{
+		TCPConnection lConnection = fConnections.get(pPeer);
+
+		if (lConnection != null && fRunning)
+		{
+			if (lConnection.queue(encode(pContent)))
+			{
+				fScheduled.add(lConnection);
+				fSelector.wakeup();
+			}
+		}
+	}
+
+	/**
+	 * Delivers an object to our own client from the socket thread, like it was
+	 * received from a peer.
+	 *
+	 * @param pContent - The object to deliver.
+	 */
+	public void loopback(Object pContent)
+	{
+		if (fRunning)
+		{
+			fLoopback.add(pContent);
+			fSelector.wakeup();
+		}
+	}
+
+	/**
+	 * Closes the socket. Frames queued before this call are still written, for at
+	 * most a second, before all connections are closed.
+	 */
+	public void close()
+	{
+		fRunning = false;
+		fSelector.wakeup();
+
+		if (Thread.currentThread() != fThread && fThread.isAlive())
+		{
+			try
+			{
+				fThread.join();
+			}
+			catch (InterruptedException lException)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * The selector loop.
+	 */
+	@Override
+	public void run()
+	{
+		Queue<byte[]> lFrames = new ArrayDeque<byte[]>();
+		long lDeadline = Long.MAX_VALUE;
+
+		try
+		{
+			while (fRunning || (this.hasOutbound() && System.currentTimeMillis() < lDeadline))
+			{
+				if (!fRunning && lDeadline == Long.MAX_VALUE)
+				{
+					lDeadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+				}
+
+				this.registerConnections();
+				this.writeConnections();
+				this.deliverLoopback();
+
+				fSelector.select(fRunning ? 0 : 10);
+
+				Iterator<SelectionKey> lKeys = fSelector.selectedKeys().iterator();
+				while (lKeys.hasNext())
+				{
+					SelectionKey lKey = lKeys.next();
+					lKeys.remove();
+
+					if (!lKey.isValid())
+					{
+						continue;
+					}
+
+					if (lKey.isAcceptable())
+					{
+						this.accept();
+					}
+					else
+					{
+						TCPConnection lConnection = (TCPConnection)lKey.attachment();
+
+						try
+						{
+							if (lKey.isReadable())
+							{
+								this.read(lConnection, lFrames);
+							}
+							if (lKey.isValid() && lKey.isWritable())
+							{
+								lConnection.flush();
+							}
+						}
+						catch (IOException lException)
+						{
+							this.lost(lConnection);
+						}
+						catch (RuntimeException lException)
+						{
+							// A malformed frame or a failing client, the other connections carry on.
+							lException.printStackTrace();
+							this.lost(lConnection);
+						}
+					}
+				}
+			}
+		}
+		catch (IOException lException)
+		{
+			lException.printStackTrace();
+		}
+		finally
+		{
+			for (TCPConnection lConnection : fConnections.values())
+			{
+				lConnection.close();
+			}
+
+			try
+			{
+				fServer.close();
+				fSelector.close();
+			}
+			catch (IOException lException)
+			{
+			}
+		}
+	}
+
+	/**
+	 * @return true iff any connection has frames waiting to be written.
+	 */
+	private boolean hasOutbound()
+	{
+		for (TCPConnection lConnection : fConnections.values())
+		{
+			if (lConnection.hasOutbound())
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Registers new outgoing connections with the selector.
+	 */
+	private void registerConnections() throws IOException
+	{
+		TCPConnection lConnection;
+		while ((lConnection = fRegistrations.poll()) != null)
+		{
+			lConnection.setKey(lConnection.getChannel().register(fSelector, SelectionKey.OP_READ, lConnection));
+
+			// Frames queued before registration are written now, later ones get scheduled.
+			lConnection.unschedule();
+			this.write(lConnection);
+		}
+	}
+
+	/**
+	 * Writes all connections that have frames waiting.
+	 */
+	private void writeConnections()
+	{
+		TCPConnection lConnection;
+		while ((lConnection = fScheduled.poll()) != null)
+		{
+			lConnection.unschedule();
+
+			this.write(lConnection);
+		}
+	}
+
+	/**
+	 * Writes a single connection, dropping it if the channel failed.
+	 */
+	private void write(TCPConnection pConnection)
+	{
+		try
+		{
+			pConnection.flush();
+		}
+		catch (IOException lException)
+		{
+			this.lost(pConnection);
+		}
+	}
+
+	/**
+	 * Delivers all objects sent to ourselves.
+	 */
+	private void deliverLoopback()
+	{
+		Object lContent;
+		while ((lContent = fLoopback.poll()) != null)
+		{
+			fClient.receive(lContent);
+		}
+	}
+
+	/**
+	 * Accepts a connection from a peer. It is identified by its hello frame.
+	 */
+	private void accept() throws IOException
+	{
+		SocketChannel lChannel = fServer.accept();
+
+		if (lChannel != null)
+		{
+			lChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			lChannel.configureBlocking(false);
+
+			TCPConnection lConnection = new TCPConnection(lChannel, TCPConnection.UNKNOWN_PEER);
+			lConnection.setKey(lChannel.register(fSelector, SelectionKey.OP_READ, lConnection));
+		}
+	}
+
+	/**
+	 * Reads a connection and hands all complete frames to the client.
+	 */
+	private void read(TCPConnection pConnection, Queue<byte[]> pFrames) throws IOException
+	{
+		if (!pConnection.read(MAX_FRAME_SIZE, pFrames))
+		{
+			this.lost(pConnection);
+		}
+
+		byte[] lFrame;
+		while ((lFrame = pFrames.poll()) != null)
+		{
+			if (pConnection.getPeer() == TCPConnection.UNKNOWN_PEER)
+			{
+				// The hello frame, from now on we can reply over this connection.
+				int lPeer = ByteBuffer.wrap(lFrame).getInt();
+
+				pConnection.setPeer(lPeer);
+
+				// If both sides connected at once, we keep sending over our own connection.
+				fConnections.putIfAbsent(lPeer, pConnection);
+			}
+			else
+			{
+				fClient.receive(WireCodec.decodeUntrusted(lFrame));
+			}
+		}
+	}
+
+	/**
+	 * Closes a connection that failed or was closed by the peer, and tells the
+	 * client if it was the connection used to reach that peer.
+	 */
+	private void lost(TCPConnection pConnection)
+	{
+		pConnection.close();
+
+		int lPeer = pConnection.getPeer();
+
+		if (lPeer != TCPConnection.UNKNOWN_PEER && fConnections.remove(lPeer, pConnection) && fRunning)
+		{
+			fClient.connectionLost(lPeer);
+		}
+	}
+
+	/**
+	 * Builds the hello frame of a process.
+	 */
+	private static ByteBuffer hello(int pOwnID)
+	{
+		ByteBuffer lFrame = ByteBuffer.allocate(HEADER_SIZE + 4);
+
+		lFrame.putInt(4);
+		lFrame.putInt(pOwnID);
+		lFrame.flip();
+
+		return lFrame;
+	}
+
+	/**
+	 * Builds a frame carrying an object in the wire format.
+	 */
+	private static ByteBuffer encode(Object pContent)
+	{
+		WireOutput lOutput = new WireOutput();
+
+		// Leave room for the length, known once the object is written.
+		lOutput.writeInt(0);
+		WireCodec.write(pContent, lOutput);
+		lOutput.setInt(0, lOutput.length() - HEADER_SIZE);
+
+		return ByteBuffer.wrap(lOutput.buffer(), 0, lOutput.length());
+	}
+}
@@ -0,0 +1,29 @@
+package in4150.network.wire;
+
+import java.io.IOException;
+
+/**
+ * An IWireFormat writes one type of object to the compact binary wire format, and
+ * reads it back.
+ */
+public interface IWireFormat<T>
+{
+	/**
+	 * This function writes the fields of an object, without its type tag.
+	 * 
+	 * @param pObject - The object to write.
+	 * @param pOutput - The output receiving the bytes.
+	 */
+	public void write(T pObject, WireOutput pOutput);
+
+	/**
+	 * This function reads the fields written by write, and rebuilds the object.
+	 * 
+	 * @param pInput - The input providing the bytes.
+	 * 
+	 * @return The object that was written.
+	 * 
+	 * @throws IOException If the bytes do not form a valid object.
+	 */
+	public T read(WireInput pInput) throws IOException;
+}
@@ -0,0 +1,251 @@
+package in4150.network.wire;
+
+import in4150.control.BufferedMessage;
+import in4150.lock.LockMessage;
+import in4150.mutex.Privilege;
+import in4150.mutex.QuorumMessage;
+import in4150.mutex.ReadGrant;
+import in4150.mutex.ReadRelease;
+import in4150.mutex.Request;
+import in4150.mutex.Token;
+import in4150.network.Broadcast;
+import in4150.network.Notification;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.rmi.NoSuchObjectException;
+import java.rmi.Remote;
+import java.rmi.server.RemoteObject;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The WireCodec turns the objects exchanged by the networks into the compact binary
+ * wire format and back. Every object starts with a one byte type tag, followed by
+ * the fields written by the IWireFormat registered for that tag.
+ *
+ * Objects of a type without a format fall back to Java serialization, so any
+ * Serializable object can still be sent. Reading them back lets the sender create
+ * objects of any class we know, so bytes from an untrusted peer are read with
+ * decodeUntrusted, which refuses them.
+ *
+ * The tags are part of the wire format: a tag must never be reused for another type.
+ */
+public final class WireCodec
+{
+	// Tag of the null reference.
+	private static final int TAG_NULL = 0;
+
+	// Tag of an object written with Java serialization.
+	private static final int TAG_SERIALIZED = 1;
+
+	// The highest tag that can be registered.
+	private static final int MAX_TAG = 255;
+
+	// The format registered for each tag.
+	private static final IWireFormat<?>[] FORMATS = new IWireFormat<?>[MAX_TAG + 1];
+
+	// The tag registered for each type.
+	private static final Map<Class<?>, Integer> TAGS = new HashMap<Class<?>, Integer>();
+
+	static
+	{
+		register(2, Notification.class, Notification.WIRE_FORMAT);
+		register(3, Request.class, Request.WIRE_FORMAT);
+		register(4, Token.class, Token.WIRE_FORMAT);
+		register(5, BufferedMessage.class, BufferedMessage.WIRE_FORMAT);
+		register(6, Broadcast.class, Broadcast.WIRE_FORMAT);
+		register(7, LockMessage.class, LockMessage.WIRE_FORMAT);
+		register(8, ReadGrant.class, ReadGrant.WIRE_FORMAT);
+		register(9, ReadRelease.class, ReadRelease.WIRE_FORMAT);
+		register(10, Privilege.class, Privilege.WIRE_FORMAT);
+		register(11, QuorumMessage.class, QuorumMessage.WIRE_FORMAT);
+	}
+
+	private WireCodec()
+	{
+	}
+
+	/**
+	 * Registers the format of a type under a tag.
+	 *
+	 * @param pTag - The tag identifying the type on the wire.
+	 * @param pType - The type, objects of subtypes are not covered.
+	 * @param pFormat - The format writing and reading objects of the type.
+	 */
+	private static <T> void register(int pTag, Class<T> pType, IWireFormat<T> pFormat)
+	{
+		FORMATS[pTag] = pFormat;
+		TAGS.put(pType, pTag);
+	}
+
+	/**
+	 * Writes an object, including its type tag. Used by formats to write nested objects.
+	 *
+	 * @param pObject - The object to write, may be null.
+	 * @param pOutput - The output receiving the bytes.
+	 */
+	@SuppressWarnings("unchecked")
+	public static void write(Object pObject, WireOutput pOutput)
+	{
+		if (pObject == null)
+		{
+			pOutput.writeByte(TAG_NULL);
+			return;
+		}
+
+		Integer lTag = TAGS.get(pObject.getClass());
+
+		if (lTag != null)
+		{
+			pOutput.writeByte(lTag);
+			((IWireFormat<Object>)FORMATS[lTag]).write(pObject, pOutput);
+		}
+		else
+		{
+			pOutput.writeByte(TAG_SERIALIZED);
+			pOutput.writeBytes(serialize(pObject));
+		}
+	}
+
+	/**
+	 * Reads an object written by write.
+	 *
+	 * @param pInput - The input providing the bytes.
+	 *
+	 * @return The object, or null.
+	 *
+	 * @throws IOException If the bytes do not form a valid object.
+	 */
+	public static Object read(WireInput pInput) throws IOException
+	{
+		int lTag = pInput.readByte();
+
+		if (lTag == TAG_NULL)
+		{
+			return null;
+		}
+		else if (lTag == TAG_SERIALIZED)
+		{
+			if (!pInput.isSerializedAllowed())
+			{
+				throw new IOException("Refusing an object written with Java serialization");
+			}
+
+			return deserialize(pInput.readBytes());
+		}
+		else if (FORMATS[lTag] != null)
+		{
+			return FORMATS[lTag].read(pInput);
+		}
+		else
+		{
+			throw new IOException("Unknown wire tag " + lTag);
+		}
+	}
+
+	/**
+	 * @param pObject - The object to encode, may be null.
+	 *
+	 * @return The object in the wire format.
+	 */
+	public static byte[] encode(Object pObject)
+	{
+		WireOutput lOutput = new WireOutput();
+
+		write(pObject, lOutput);
+
+		return lOutput.toByteArray();
+	}
+
+	/**
+	 * @param pBytes - An object in the wire format.
+	 *
+	 * @return The object.
+	 *
+	 * @throws IOException If the bytes do not form a valid object.
+	 */
+	public static Object decode(byte[] pBytes) throws IOException
+	{
+		return read(new WireInput(pBytes));
+	}
+
+	/**
+	 * Like decode, but only reads types with a registered format, also when nested.
+	 *
+	 * @param pBytes - An object in the wire format, received from a peer we do not trust.
+	 *
+	 * @return The object.
+	 *
+	 * @throws IOException If the bytes do not form a valid object, or use Java serialization.
+	 */
+	public static Object decodeUntrusted(byte[] pBytes) throws IOException
+	{
+		WireInput lInput = new WireInput(pBytes);
+
+		lInput.setSerializedAllowed(false);
+
+		return read(lInput);
+	}
+
+	/**
+	 * Java serialization of an object without a format. Exported remote objects are
+	 * replaced by their stub, like RMI itself does.
+	 */
+	private static byte[] serialize(Object pObject)
+	{
+		Object lObject = pObject;
+
+		if (lObject instanceof Remote)
+		{
+			try
+			{
+				lObject = RemoteObject.toStub((Remote)lObject);
+			}
+			catch (NoSuchObjectException lException)
+			{
+				// Not exported, serialize the object itself.
+			}
+		}
+
+		try
+		{
+			ByteArrayOutputStream lBytes = new ByteArrayOutputStream();
+			ObjectOutputStream lOutput = new ObjectOutputStream(lBytes);
+
+			lOutput.writeObject(lObject);
+			lOutput.close();
+
+			return lBytes.toByteArray();
+		}
+		catch (NotSerializableException lException)
+		{
+			throw new IllegalArgumentException("Cannot encode " + pObject, lException);
+		}
+		catch (IOException lException)
+		{
+			throw new IllegalStateException(lException);
+		}
+	}
+
+	/**
+	 * Reads an object written with Java serialization.
+	 */
+	private static Object deserialize(byte[] pBytes) throws IOException
+	{
+		try
+		{
+			ObjectInputStream lInput = new ObjectInputStream(new ByteArrayInputStream(pBytes));
+
+			return lInput.readObject();
+		}
+		catch (ClassNotFoundException lException)
+		{
+			throw new IOException(lException);
+		}
+	}
+}
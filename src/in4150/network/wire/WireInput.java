@@ -0,0 +1,173 @@
+package in4150.network.wire;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A WireInput reads the compact binary wire format written by a WireOutput.
+ */
+public class WireInput
+{
+	// The bytes being read.
+	private final byte[] fBuffer;
+
+	// The position of the next byte to read.
+	private int fPosition;
+
+	// The position just after the last byte that may be read.
+	private final int fLimit;
+
+	// A flag indicating that objects written with Java serialization may be read.
+	private boolean fSerializedAllowed;
+
+	/**
+	 * Constructs a new WireInput reading all provided bytes.
+	 * 
+	 * @param pBuffer - The bytes to read.
+	 */
+	public WireInput(byte[] pBuffer)
+	{
+		this(pBuffer, 0, pBuffer.length);
+	}
+
+	/**
+	 * Constructs a new WireInput reading part of the provided bytes.
+	 * 
+	 * @param pBuffer - The bytes to read.
+	 * @param pOffset - The position of the first byte to read.
+	 * @param pLength - The number of bytes to read.
+	 */
+	public WireInput(byte[] pBuffer, int pOffset, int pLength)
+	{
+		fBuffer				= pBuffer;
+		fPosition			= pOffset;
+		fLimit				= pOffset + pLength;
+		fSerializedAllowed	= true;
+	}
+
+	/**
+	 * @param pSerializedAllowed - True iff objects written with Java serialization may be read.
+	 */
+	void setSerializedAllowed(boolean pSerializedAllowed)
+	{
+		fSerializedAllowed = pSerializedAllowed;
+	}
+
+	/**
+	 * @return true iff objects written with Java serialization may be read.
+	 */
+	boolean isSerializedAllowed()
+	{
+		return fSerializedAllowed;
+	}
+
+	/**
+	 * Makes sure another pBytes bytes can be read.
+	 */
+	private void require(int pBytes) throws EOFException
+	{
+		if (pBytes < 0 || fLimit - fPosition < pBytes)
+		{
+			throw new EOFException("Wire data ends " + (pBytes - (fLimit - fPosition)) + " bytes early");
+		}
+	}
+
+	/**
+	 * @return The next byte, between 0 and 255.
+	 * 
+	 * @throws IOException If no bytes are left.
+	 */
+	public int readByte() throws IOException
+	{
+		this.require(1);
+
+		return fBuffer[fPosition++] & 0xFF;
+	}
+
+	/**
+	 * @return The next integer written as a variable length quantity.
+	 * 
+	 * @throws IOException If the bytes do not form one.
+	 */
+	public int readVarInt() throws IOException
+	{
+		int lResult = 0;
+
+		for (int lShift = 0; lShift < 35; lShift += 7)
+		{
+			int lByte = this.readByte();
+
+			lResult |= (lByte & 0x7F) << lShift;
+
+			if ((lByte & 0x80) == 0)
+			{
+				return lResult;
+			}
+		}
+
+		throw new IOException("Malformed variable length integer");
+	}
+
+	/**
+	 * @return The next integer written as four bytes.
+	 * 
+	 * @throws IOException If fewer than four bytes are left.
+	 */
+	public int readInt() throws IOException
+	{
+		this.require(4);
+
+		int lResult = ((fBuffer[fPosition] & 0xFF) << 24)
+					| ((fBuffer[fPosition + 1] & 0xFF) << 16)
+					| ((fBuffer[fPosition + 2] & 0xFF) << 8)
+					|  (fBuffer[fPosition + 3] & 0xFF);
+
+		fPosition += 4;
+
+		return lResult;
+	}
+
+	/**
+	 * @return The next array of bytes, written with its length.
+	 * 
+	 * @throws IOException If the array is not complete.
+	 */
+	public byte[] readBytes() throws IOException
+	{
+		int lLength = this.readVarInt();
+
+		this.require(lLength);
+
+		byte[] lResult = new byte[lLength];
+		System.arraycopy(fBuffer, fPosition, lResult, 0, lLength);
+		fPosition += lLength;
+
+		return lResult;
+	}
+
+	/**
+	 * @return The next string, written as UTF-8 with its length.
+	 * 
+	 * @throws IOException If the string is not complete.
+	 */
+	public String readString() throws IOException
+	{
+		int lLength = this.readVarInt();
+
+		this.require(lLength);
+
+		String lResult = new String(fBuffer, fPosition, lLength, StandardCharsets.UTF_8);
+		fPosition += lLength;
+
+		return lResult;
+	}
+
+	/**
+	 * @return The number of bytes left to read.
+	 */
+	public int remaining()
+	{
+		return fLimit - fPosition;
+	}
+}
@@ -0,0 +1,156 @@
+package in4150.network.wire;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A WireOutput collects the bytes of the compact binary wire format in a growing
+ * array. Integers are written as variable length quantities, 7 bits per byte, so
+ * small IDs and request numbers take a single byte.
+ */
+public class WireOutput
+{
+	// The bytes written so far, followed by free space.
+	private byte[] fBuffer;
+
+	// The number of bytes written.
+	private int fLength;
+
+	/**
+	 * Constructs a new, empty WireOutput.
+	 */
+	public WireOutput()
+	{
+		this(64);
+	}
+
+	/**
+	 * Constructs a new, empty WireOutput with room for the provided number of bytes.
+	 * 
+	 * @param pCapacity - The initial room.
+	 */
+	public WireOutput(int pCapacity)
+	{
+		fBuffer = new byte[Math.max(pCapacity, 8)];
+		fLength = 0;
+	}
+
+	/**
+	 * Makes sure another pBytes bytes fit.
+	 */
+	private void ensureCapacity(int pBytes)
+	{
+		if (fLength + pBytes > fBuffer.length)
+		{
+			fBuffer = Arrays.copyOf(fBuffer, Math.max(fLength + pBytes, fBuffer.length * 2));
+		}
+	}
+
+	/**
+	 * Writes a single byte.
+	 * 
+	 * @param pValue - The byte to write.
+	 */
+	public void writeByte(int pValue)
+	{
+		this.ensureCapacity(1);
+
+		fBuffer[fLength++] = (byte)pValue;
+	}
+
+	/**
+	 * Writes an integer as a variable length quantity. Non-negative values below 128
+	 * take one byte, negative values take five.
+	 * 
+	 * @param pValue - The integer to write.
+	 */
+	public void writeVarInt(int pValue)
+	{
+		this.ensureCapacity(5);
+
+		while ((pValue & ~0x7F) != 0)
+		{
+			fBuffer[fLength++] = (byte)((pValue & 0x7F) | 0x80);
+			pValue >>>= 7;
+		}
+
+		fBuffer[fLength++] = (byte)pValue;
+	}
+
+	/**
+	 * Writes an integer as four bytes, most significant first.
+	 * 
+	 * @param pValue - The integer to write.
+	 */
+	public void writeInt(int pValue)
+	{
+		this.ensureCapacity(4);
+
+		fBuffer[fLength++] = (byte)(pValue >>> 24);
+		fBuffer[fLength++] = (byte)(pValue >>> 16);
+		fBuffer[fLength++] = (byte)(pValue >>> 8);
+		fBuffer[fLength++] = (byte)pValue;
+	}
+
+	/**
+	 * Writes an array of bytes, preceded by its length.
+	 * 
+	 * @param pBytes - The bytes to write.
+	 */
+	public void writeBytes(byte[] pBytes)
+	{
+		this.writeVarInt(pBytes.length);
+		this.ensureCapacity(pBytes.length);
+
+		System.arraycopy(pBytes, 0, fBuffer, fLength, pBytes.length);
+		fLength += pBytes.length;
+	}
+
+	/**
+	 * Writes a string as UTF-8, preceded by its length.
+	 * 
+	 * @param pText - The string to write.
+	 */
+	public void writeString(String pText)
+	{
+		this.writeBytes(pText.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Overwrites four bytes written earlier with an integer, most significant first.
+	 * 
+	 * @param pPosition - Where the four bytes start.
+	 * @param pValue - The integer to write.
+	 */
+	public void setInt(int pPosition, int pValue)
+	{
+		fBuffer[pPosition]		= (byte)(pValue >>> 24);
+		fBuffer[pPosition + 1]	= (byte)(pValue >>> 16);
+		fBuffer[pPosition + 2]	= (byte)(pValue >>> 8);
+		fBuffer[pPosition + 3]	= (byte)pValue;
+	}
+
+	/**
+	 * @return The number of bytes written.
+	 */
+	public int length()
+	{
+		return fLength;
+	}
+
+	/**
+	 * @return The array holding the bytes written, which may be longer than length().
+	 */
+	public byte[] buffer()
+	{
+		return fBuffer;
+	}
+
+	/**
+	 * @return A copy of exactly the bytes written.
+	 */
+	public byte[] toByteArray()
+	{
+		return Arrays.copyOf(fBuffer, fLength);
+	}
+}